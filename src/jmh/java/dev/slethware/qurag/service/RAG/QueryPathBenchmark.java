@@ -0,0 +1,131 @@
+package dev.slethware.qurag.service.RAG;
+
+import dev.slethware.qurag.dto.request.QueryRequest;
+import dev.slethware.qurag.dto.response.ChunkInfo;
+import dev.slethware.qurag.dto.response.QueryResponse;
+import dev.slethware.qurag.service.concurrency.CircuitBreaker;
+import dev.slethware.qurag.service.metrics.QuragMetrics;
+import dev.slethware.qurag.service.vectorstore.HnswVectorStore;
+import dev.slethware.qurag.support.BenchmarkText;
+import dev.slethware.qurag.support.CountingVectorStore;
+import dev.slethware.qurag.support.FakeChatModel;
+import dev.slethware.qurag.support.FakeEmbeddingModel;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query-side costs in {@link RagQueryServiceImpl} at various topK, with in-memory fakes for the
+ * embedding model, vector store and chat model so it runs offline.
+ * <p>
+ * {@code chunkIndexFormat} covers stores that return chunk_index as a number and those that return a
+ * decimal string such as "3.0".
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryPathBenchmark {
+
+    private static final int CORPUS_SIZE = 2_000;
+
+    @Param({"1", "5", "20", "100"})
+    public int topK;
+
+    @Param({"number", "decimal-string"})
+    public String chunkIndexFormat;
+
+    private CountingVectorStore vectorStore;
+    private Bm25Index bm25Index;
+    private ContextPacker contextPacker;
+    private RagQueryServiceImpl ragQueryService;
+    private QueryRequest request;
+    private SearchRequest searchRequest;
+    private List<Document> retrieved;
+    private List<Document> candidates;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        FakeEmbeddingModel embeddingModel = new FakeEmbeddingModel();
+        vectorStore = new CountingVectorStore(embeddingModel);
+
+        List<Document> corpus = new ArrayList<>(CORPUS_SIZE);
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put("document_id", "doc-" + (i / 50));
+            metadata.put("chunk_index", "number".equals(chunkIndexFormat) ? (Object) (i % 50) : (i % 50) + ".0");
+            corpus.add(new Document(BenchmarkText.generate(600, i), metadata));
+        }
+        vectorStore.add(corpus);
+        bm25Index = new Bm25Index();
+        bm25Index.add(corpus);
+
+        QueryResultCache disabledCache = new QueryResultCache(embeddingModel, false, 1, 1, false, 0.0);
+        ragQueryService = new RagQueryServiceImpl(ChatClient.builder(new FakeChatModel("Five business days.")),
+                vectorStore, disabledCache, bm25Index, new QueryScopeResolver(),
+                new ContextPacker(QuragMetrics.noop(), false, 3, 0.7, 3000),
+                QuragMetrics.noop(),
+                new DeadlineGuard(new CircuitBreaker("chat", 5, Duration.ofSeconds(30)), 15_000));
+
+        request = QueryRequest.builder()
+                .question("How long are refunds processed after approval?")
+                .topK(topK)
+                .similarityThreshold(0.0)
+                .build();
+        searchRequest = SearchRequest.builder()
+                .query(request.getQuestion())
+                .topK(topK)
+                .similarityThreshold(0.0)
+                .build();
+        retrieved = vectorStore.similaritySearch(searchRequest);
+
+        contextPacker = new ContextPacker(QuragMetrics.noop(), true, 3, 0.7, 3000);
+        // Attach vectors the way HnswVectorStore returns them, so packing includes MMR
+        candidates = vectorStore.similaritySearch(SearchRequest.from(searchRequest)
+                        .topK(contextPacker.candidateCount(topK))
+                        .build())
+                .stream()
+                .map(candidate -> {
+                    Map<String, Object> metadata = new HashMap<>(candidate.getMetadata());
+                    metadata.put(HnswVectorStore.EMBEDDING_METADATA, embeddingModel.embed(candidate.getText()));
+                    return Document.builder().id(candidate.getId()).text(candidate.getText()).metadata(metadata)
+                            .score(candidate.getScore()).build();
+                })
+                .toList();
+    }
+
+    @Benchmark
+    public List<ChunkInfo> mapChunkInfo() {
+        return ChunkInfoMapper.map(retrieved);
+    }
+
+    @Benchmark
+    public List<Document> retrieve() {
+        return vectorStore.similaritySearch(searchRequest);
+    }
+
+    @Benchmark
+    public List<Document> keywordSearch() {
+        return bm25Index.search(request.getQuestion(), topK);
+    }
+
+    @Benchmark
+    public List<Document> packContext() {
+        return contextPacker.pack(candidates, topK);
+    }
+
+    @Benchmark
+    public QueryResponse query() {
+        return ragQueryService.query(request);
+    }
+}
@@ -0,0 +1,54 @@
+package dev.slethware.qurag.service.document;
+
+import dev.slethware.qurag.support.BenchmarkText;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.tika.TikaDocumentReader;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-format extraction cost: a new {@link TikaDocumentReader} with auto-detection, as every upload used to
+ * build, against the shared {@link DocumentParsers} entry for the validated content type.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DocumentParsersBenchmark {
+
+    @Param({"text/plain", "application/pdf",
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.document"})
+    public String contentType;
+
+    private byte[] file;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map<String, byte[]> samples = DocumentParsers.samples();
+        file = DocumentParsers.TEXT.equals(contentType)
+                ? BenchmarkText.generate(100 * 1024, 42).getBytes(StandardCharsets.UTF_8)
+                : samples.get(contentType);
+    }
+
+    @Benchmark
+    public List<Document> autoDetect() {
+        return new TikaDocumentReader(new ByteArrayResource(file)).get();
+    }
+
+    @Benchmark
+    public String registry() throws IOException {
+        StringWriter out = new StringWriter();
+        DocumentParsers.parse(new ByteArrayInputStream(file), contentType, out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,64 @@
+package dev.slethware.qurag.service.document;
+
+import dev.slethware.qurag.support.BenchmarkText;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.tika.TikaDocumentReader;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingest stages run by {@link DocumentIngestionPipeline}: Tika extraction, token splitting and metadata stamping.
+ * Each stage gets the previous stage's output prepared once per trial, so it is measured on its own.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class IngestBenchmark {
+
+    @Param({"1KB", "100KB", "1MB", "10MB", "200MB"})
+    public String documentSize;
+
+    private byte[] file;
+    private List<Document> parsed;
+    private List<Document> chunks;
+    private dev.slethware.qurag.entity.Document document;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        file = BenchmarkText.generate(BenchmarkText.parseSize(documentSize), 42).getBytes(StandardCharsets.UTF_8);
+        parsed = parse();
+        chunks = chunk();
+        document = dev.slethware.qurag.entity.Document.builder()
+                .id(UUID.randomUUID())
+                .originalFilename("benchmark.txt")
+                .fileType("text/plain")
+                .uploadedAt(LocalDateTime.now())
+                .build();
+    }
+
+    @Benchmark
+    public List<Document> parse() {
+        return new TikaDocumentReader(new ByteArrayResource(file)).get();
+    }
+
+    @Benchmark
+    public List<Document> chunk() {
+        return new TokenTextSplitter().apply(parsed);
+    }
+
+    @Benchmark
+    public List<Document> stampMetadata() {
+        DocumentIngestionPipeline.stampMetadata(chunks, document, 0);
+        return chunks;
+    }
+}
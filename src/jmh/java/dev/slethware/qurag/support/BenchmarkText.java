@@ -0,0 +1,56 @@
+package dev.slethware.qurag.support;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Deterministic English-like text for benchmarks, so runs compare the same input.
+ */
+public final class BenchmarkText {
+
+    private static final String[] WORDS = {
+            "refund", "invoice", "customer", "policy", "payment", "account", "office", "holiday", "contract",
+            "delivery", "warranty", "support", "request", "approval", "document", "report", "quarter", "budget",
+            "the", "a", "is", "are", "within", "for", "of", "and", "to", "on", "after", "before", "must", "may",
+            "processed", "archived", "reviewed", "signed", "closed", "opened", "days", "years", "business"
+    };
+
+    private BenchmarkText() {
+    }
+
+    public static String generate(long bytes, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder((int) Math.min(bytes + 64, Integer.MAX_VALUE - 8));
+        int wordsInSentence = 0;
+        int sentencesInParagraph = 0;
+        while (text.length() < bytes) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            text.append(wordsInSentence == 0 ? capitalize(word) : word);
+            if (++wordsInSentence < 8 + random.nextInt(10)) {
+                text.append(' ');
+                continue;
+            }
+            text.append('.');
+            wordsInSentence = 0;
+            text.append(++sentencesInParagraph % 6 == 0 ? "\n\n" : " ");
+        }
+        text.setLength((int) bytes);
+        return text.toString();
+    }
+
+    // Accepts sizes like "1KB", "10MB"
+    public static long parseSize(String size) {
+        String normalized = size.trim().toUpperCase(Locale.ROOT);
+        if (normalized.endsWith("MB")) {
+            return Long.parseLong(normalized.substring(0, normalized.length() - 2)) * 1024 * 1024;
+        }
+        if (normalized.endsWith("KB")) {
+            return Long.parseLong(normalized.substring(0, normalized.length() - 2)) * 1024;
+        }
+        return Long.parseLong(normalized);
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
@@ -0,0 +1,189 @@
+package dev.slethware.qurag.config;
+
+import dev.slethware.qurag.service.concurrency.AiCallScheduler;
+import dev.slethware.qurag.service.concurrency.Bulkhead;
+import dev.slethware.qurag.service.concurrency.BulkheadChatModel;
+import dev.slethware.qurag.service.concurrency.BulkheadEmbeddingModel;
+import dev.slethware.qurag.service.concurrency.CircuitBreaker;
+import dev.slethware.qurag.service.concurrency.ScheduledChatModel;
+import dev.slethware.qurag.service.concurrency.ScheduledEmbeddingModel;
+import dev.slethware.qurag.service.embedding.CachingEmbeddingModel;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Set;
+
+@Configuration
+public class ConcurrencyConfig {
+
+    // Bookkeeping methods that never reach S3 and so do not need a permit
+    private static final Set<String> LOCAL_S3_METHODS = Set.of("close", "serviceName", "serviceClientConfiguration",
+            "utilities", "waiter", "toString", "hashCode", "equals");
+
+    @Bean
+    public Bulkhead chatBulkhead(@Value("${qurag.bulkhead.chat.max-concurrent}") int maxConcurrent,
+                                 @Value("${qurag.bulkhead.chat.max-wait-ms}") long maxWaitMs) {
+        return new Bulkhead("chat", maxConcurrent, Duration.ofMillis(maxWaitMs));
+    }
+
+    @Bean
+    public Bulkhead embeddingBulkhead(@Value("${qurag.bulkhead.embedding.max-concurrent}") int maxConcurrent,
+                                      @Value("${qurag.bulkhead.embedding.max-wait-ms}") long maxWaitMs) {
+        return new Bulkhead("embedding", maxConcurrent, Duration.ofMillis(maxWaitMs));
+    }
+
+    @Bean
+    public Bulkhead s3Bulkhead(@Value("${qurag.bulkhead.s3.max-concurrent}") int maxConcurrent,
+                               @Value("${qurag.bulkhead.s3.max-wait-ms}") long maxWaitMs) {
+        return new Bulkhead("s3", maxConcurrent, Duration.ofMillis(maxWaitMs));
+    }
+
+    // Chat and embedding calls share the provider's quota with everything else using the same key, so each
+    // scheduler is sized from the quota of its own model
+    @Bean
+    public AiCallScheduler chatScheduler(
+            @Value("${qurag.ai-scheduler.chat.requests-per-minute}") int requestsPerMinute,
+            @Value("${qurag.ai-scheduler.chat.burst}") int burst,
+            @Value("${qurag.ai-scheduler.interactive-max-wait-ms}") long maxWaitMs) {
+        return new AiCallScheduler("chat", requestsPerMinute / 60.0, burst, Duration.ofMillis(maxWaitMs));
+    }
+
+    @Bean
+    public AiCallScheduler embeddingScheduler(
+            @Value("${qurag.ai-scheduler.embedding.requests-per-minute}") int requestsPerMinute,
+            @Value("${qurag.ai-scheduler.embedding.burst}") int burst,
+            @Value("${qurag.ai-scheduler.interactive-max-wait-ms}") long maxWaitMs) {
+        return new AiCallScheduler("embedding", requestsPerMinute / 60.0, burst, Duration.ofMillis(maxWaitMs));
+    }
+
+    // Opened by chat calls that time out or fail, so queries fall back to an extractive answer straight away
+    @Bean
+    public CircuitBreaker chatCircuitBreaker(@Value("${qurag.circuit.chat.failure-threshold}") int failureThreshold,
+                                             @Value("${qurag.circuit.chat.open-ms}") long openMs) {
+        return new CircuitBreaker("chat", failureThreshold, Duration.ofMillis(openMs));
+    }
+
+    // Wraps the clients themselves so every caller, including the vector store's own embedding calls, is covered
+    @Bean
+    public static BulkheadPostProcessor bulkheadPostProcessor(
+            @Qualifier("chatBulkhead") ObjectProvider<Bulkhead> chat,
+            @Qualifier("embeddingBulkhead") ObjectProvider<Bulkhead> embedding,
+            @Qualifier("s3Bulkhead") ObjectProvider<Bulkhead> s3,
+            @Qualifier("chatScheduler") ObjectProvider<AiCallScheduler> chatScheduler,
+            @Qualifier("embeddingScheduler") ObjectProvider<AiCallScheduler> embeddingScheduler) {
+        return new BulkheadPostProcessor(chat, embedding, s3, chatScheduler, embeddingScheduler);
+    }
+
+    // S3Client has far more operations than the application uses, so a proxy guards all of them at once
+    static S3Client guard(S3Client client, Bulkhead bulkhead) {
+        return (S3Client) Proxy.newProxyInstance(S3Client.class.getClassLoader(), new Class<?>[]{S3Client.class},
+                (proxy, method, args) -> {
+                    if (LOCAL_S3_METHODS.contains(method.getName())) {
+                        return invoke(client, method, args);
+                    }
+                    if (method.getReturnType() == ResponseInputStream.class) {
+                        return bulkhead.open(release ->
+                                releasingOnClose((ResponseInputStream<?>) invoke(client, method, args), release));
+                    }
+                    return bulkhead.call(() -> invoke(client, method, args));
+                });
+    }
+
+    // A streamed body is read after getObject returns, so its permit is held until the stream is closed or aborted
+    private static <T> ResponseInputStream<T> releasingOnClose(ResponseInputStream<T> stream, Runnable release) {
+        InputStream body = new FilterInputStream(stream) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    release.run();
+                }
+            }
+        };
+        return new ResponseInputStream<>(stream.response(), AbortableInputStream.create(body, () -> {
+            try {
+                stream.abort();
+            } finally {
+                release.run();
+            }
+        }));
+    }
+
+    private static Object invoke(S3Client client, Method method, Object[] args) {
+        try {
+            return method.invoke(client, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Declared with its concrete type so the ordering is visible before the post-processor is created; it runs
+    // ahead of the embedding cache, leaving the cache outermost so hits never wait for a permit. The scheduler
+    // goes outside the bulkhead, so calls queued for the quota do not hold permits
+    public static class BulkheadPostProcessor implements BeanPostProcessor, Ordered {
+
+        private final ObjectProvider<Bulkhead> chat;
+        private final ObjectProvider<Bulkhead> embedding;
+        private final ObjectProvider<Bulkhead> s3;
+        private final ObjectProvider<AiCallScheduler> chatScheduler;
+        private final ObjectProvider<AiCallScheduler> embeddingScheduler;
+
+        BulkheadPostProcessor(ObjectProvider<Bulkhead> chat, ObjectProvider<Bulkhead> embedding,
+                              ObjectProvider<Bulkhead> s3, ObjectProvider<AiCallScheduler> chatScheduler,
+                              ObjectProvider<AiCallScheduler> embeddingScheduler) {
+            this.chat = chat;
+            this.embedding = embedding;
+            this.s3 = s3;
+            this.chatScheduler = chatScheduler;
+            this.embeddingScheduler = embeddingScheduler;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (bean instanceof ChatModel model && !(bean instanceof ScheduledChatModel)) {
+                return new ScheduledChatModel(new BulkheadChatModel(model, chat.getObject()),
+                        chatScheduler.getObject());
+            }
+            if (bean instanceof EmbeddingModel model && !(bean instanceof ScheduledEmbeddingModel)
+                    && !(bean instanceof CachingEmbeddingModel)) {
+                return new ScheduledEmbeddingModel(new BulkheadEmbeddingModel(model, embedding.getObject()),
+                        embeddingScheduler.getObject());
+            }
+            if (bean instanceof S3Client client && !Proxy.isProxyClass(bean.getClass())) {
+                return guard(client, s3.getObject());
+            }
+            return bean;
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+    }
+}
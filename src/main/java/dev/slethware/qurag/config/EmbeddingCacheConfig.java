@@ -0,0 +1,34 @@
+package dev.slethware.qurag.config;
+
+import dev.slethware.qurag.repository.EmbeddingCacheRepository;
+import dev.slethware.qurag.service.embedding.CachingEmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(name = "qurag.embedding-cache.enabled", havingValue = "true")
+public class EmbeddingCacheConfig {
+
+    // Wraps the auto-configured model so the vector store and query path both go through the cache.
+    // The repository is resolved lazily because post-processors are created before JPA is ready.
+    @Bean
+    public static BeanPostProcessor embeddingCachePostProcessor(
+            ObjectProvider<EmbeddingCacheRepository> embeddingCacheRepository,
+            @Value("${qurag.embedding-cache.model-name}") String modelName,
+            @Value("${qurag.embedding-cache.max-size}") long maxSize) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof EmbeddingModel model && !(bean instanceof CachingEmbeddingModel)) {
+                    return new CachingEmbeddingModel(model, embeddingCacheRepository::getIfAvailable, modelName, maxSize);
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,37 @@
+package dev.slethware.qurag.config;
+
+import dev.slethware.qurag.service.vectorstore.HnswVectorStore;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+// Pinecone's auto-configuration only applies when spring.ai.vectorstore.type is pinecone, so exactly one store is active
+@Configuration
+@ConditionalOnProperty(name = "spring.ai.vectorstore.type", havingValue = "hnsw")
+public class HnswVectorStoreConfig {
+
+    @Value("${qurag.vectorstore.hnsw.m}")
+    private int m;
+
+    @Value("${qurag.vectorstore.hnsw.ef-construction}")
+    private int efConstruction;
+
+    @Value("${qurag.vectorstore.hnsw.ef-search}")
+    private int efSearch;
+
+    @Value("${qurag.vectorstore.hnsw.snapshot-path:}")
+    private String snapshotPath;
+
+    @Value("${qurag.vectorstore.hnsw.snapshot-interval-seconds}")
+    private long snapshotIntervalSeconds;
+
+    @Bean(destroyMethod = "close")
+    public HnswVectorStore vectorStore(EmbeddingModel embeddingModel) {
+        return new HnswVectorStore(embeddingModel, m, efConstruction, efSearch,
+                snapshotPath.isBlank() ? null : Path.of(snapshotPath), snapshotIntervalSeconds);
+    }
+}
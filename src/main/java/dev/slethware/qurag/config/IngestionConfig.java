@@ -0,0 +1,65 @@
+package dev.slethware.qurag.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class IngestionConfig {
+
+    @Value("${qurag.ingestion.parse-threads}")
+    private int parseThreads;
+
+    @Value("${qurag.ingestion.embed-threads}")
+    private int embedThreads;
+
+    @Value("${qurag.ingestion.embed-queue-capacity}")
+    private int embedQueueCapacity;
+
+    @Value("${qurag.ingestion.embed-handoff-wait-seconds}")
+    private long embedHandoffWaitSeconds;
+
+    @Bean
+    public ThreadPoolTaskExecutor ingestionParseExecutor() {
+        // Admission into this pool is bounded by DocumentIngestionPipeline, so the queue itself is not
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(parseThreads);
+        executor.setMaxPoolSize(parseThreads);
+        executor.setThreadNamePrefix("ingest-parse-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor ingestionEmbedExecutor() {
+        // When the embed stage is saturated, whoever hands off waits for queue space instead of embedding on its
+        // own thread, which for a bulk upload's flush may be the request thread; past the wait it is rejected
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(embedThreads);
+        executor.setMaxPoolSize(embedThreads);
+        executor.setQueueCapacity(embedQueueCapacity);
+        executor.setRejectedExecutionHandler(this::awaitEmbedQueue);
+        executor.setThreadNamePrefix("ingest-embed-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    // The pool never grows past its core threads, so a task put straight on the queue is always picked up
+    private void awaitEmbedQueue(Runnable task, ThreadPoolExecutor pool) {
+        try {
+            if (pool.isShutdown() || !pool.getQueue().offer(task, embedHandoffWaitSeconds, TimeUnit.SECONDS)) {
+                throw new RejectedExecutionException("Embedding queue stayed full for " + embedHandoffWaitSeconds + "s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for the embedding queue", e);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package dev.slethware.qurag.config;
+
+import dev.slethware.qurag.service.S3.CachingS3Service;
+import dev.slethware.qurag.service.S3.S3ServiceImpl;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(name = "qurag.s3-cache.enabled", havingValue = "true")
+public class S3CacheConfig {
+
+    // Primary, so everything injecting S3Service reads through the cache; declared with its concrete type so
+    // its metrics are bound like any other MeterBinder bean
+    @Bean
+    @Primary
+    public CachingS3Service cachingS3Service(S3ServiceImpl s3Service,
+                                             @Value("${qurag.s3-cache.directory}") String directory,
+                                             @Value("${qurag.s3-cache.max-size-bytes}") long maxBytes,
+                                             @Value("${qurag.s3-cache.max-object-bytes}") long maxObjectBytes,
+                                             @Value("${qurag.s3-cache.revalidate-after-seconds}") long revalidateAfterSeconds)
+            throws IOException {
+        return new CachingS3Service(s3Service, Path.of(directory), maxBytes, maxObjectBytes,
+                Duration.ofSeconds(revalidateAfterSeconds));
+    }
+}
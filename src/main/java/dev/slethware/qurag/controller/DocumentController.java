@@ -1,9 +1,14 @@
 package dev.slethware.qurag.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.slethware.qurag.dto.response.ApiResponse;
+import dev.slethware.qurag.dto.response.BulkUploadResponse;
 import dev.slethware.qurag.dto.response.DocumentDetailResponse;
+import dev.slethware.qurag.dto.response.DocumentPageResponse;
 import dev.slethware.qurag.dto.response.DocumentResponse;
+import dev.slethware.qurag.dto.response.DocumentStatusResponse;
 import dev.slethware.qurag.service.document.DocumentService;
+import dev.slethware.qurag.service.S3.S3ObjectStream;
 import dev.slethware.qurag.service.S3.S3Service;
 import dev.slethware.qurag.utility.ApiResponseUtil;
 import io.swagger.v3.oas.annotations.Operation;
@@ -14,7 +19,10 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.UUID;
 
@@ -24,18 +32,22 @@ import java.util.UUID;
 @Tag(name = "Document Management", description = "Endpoints for uploading, retrieving, and managing documents with automatic text extraction and chunking")
 public class DocumentController {
 
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+
     private final DocumentService documentService;
     private final S3Service s3Service;
+    private final ObjectMapper objectMapper;
 
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @Operation(
             summary = "Upload a document",
-            description = "Uploads a document (PDF, DOCX, or TXT), extracts text using Tika, chunks the content, generates embeddings via Google Gemini, and stores them in Pinecone vector database. The original file is stored in S3."
+            description = "Uploads a document (PDF, DOCX, or TXT) and stores the original file in S3. Text extraction with Tika, chunking, embedding via Google Gemini and indexing in Pinecone then run in the background; poll the status endpoint with the returned document ID to follow progress."
     )
     @io.swagger.v3.oas.annotations.responses.ApiResponses(value = {
-            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "201", description = "Document uploaded and processed successfully"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "202", description = "Document stored and accepted for processing"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "An identical document was already uploaded; the existing document is returned"),
             @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "Invalid file type or file size exceeds 200MB"),
-            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "500", description = "Failed to process document")
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "503", description = "Too many documents are being processed, retry later")
     })
     public ResponseEntity<ApiResponse<DocumentResponse>> uploadDocument(
             @Parameter(description = "Document file (PDF, DOCX, or TXT, max 200MB)", required = true,
@@ -44,22 +56,61 @@ public class DocumentController {
 
         DocumentResponse response = documentService.uploadDocument(file);
 
+        if (response.isDuplicate()) {
+            return new ResponseEntity<>(
+                    ApiResponseUtil.successFull("Identical document already uploaded", response),
+                    HttpStatus.OK
+            );
+        }
+
         return new ResponseEntity<>(
-                ApiResponseUtil.created("Document uploaded and processed successfully", response),
-                HttpStatus.CREATED
+                ApiResponseUtil.accepted("Document accepted for processing", response),
+                HttpStatus.ACCEPTED
+        );
+    }
+
+    @PostMapping(value = "/upload/bulk", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(
+            summary = "Upload many documents at once",
+            description = "Accepts any number of PDF, DOCX and TXT files and ZIP archives of them. Archives are read entry by entry without being unpacked in full. Every file or entry is validated like a single upload and reported individually as accepted, duplicate or rejected. Accepted documents are parsed in parallel and their chunks are embedded together in shared batches; poll each document's status endpoint to follow progress."
+    )
+    @io.swagger.v3.oas.annotations.responses.ApiResponses(value = {
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "202", description = "Files processed; check each result for its outcome"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "No files were uploaded")
+    })
+    public ResponseEntity<ApiResponse<BulkUploadResponse>> uploadDocuments(
+            @Parameter(description = "Document files and ZIP archives (each document max 200MB)", required = true,
+                    content = @Content(mediaType = MediaType.MULTIPART_FORM_DATA_VALUE))
+            @RequestParam("files") List<MultipartFile> files) {
+
+        BulkUploadResponse response = documentService.uploadDocuments(files);
+
+        return new ResponseEntity<>(
+                ApiResponseUtil.accepted("Bulk upload processed", response),
+                HttpStatus.ACCEPTED
         );
     }
 
     @GetMapping
     @Operation(
-            summary = "List all documents",
-            description = "Retrieves a list of all uploaded documents with their metadata including filename, file type, file size, chunk count, and upload timestamp."
+            summary = "List documents",
+            description = "Retrieves uploaded documents newest first, one page at a time, with their metadata including filename, file type, file size, chunk count, and upload timestamp. Pass the returned next_cursor to fetch the following page. Optionally filter by exact file type or filename prefix."
     )
     @io.swagger.v3.oas.annotations.responses.ApiResponses(value = {
-            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Documents retrieved successfully")
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Documents retrieved successfully"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "Invalid limit or cursor")
     })
-    public ResponseEntity<ApiResponse<List<DocumentResponse>>> getAllDocuments() {
-        List<DocumentResponse> documents = documentService.getAllDocuments();
+    public ResponseEntity<ApiResponse<DocumentPageResponse>> getAllDocuments(
+            @Parameter(description = "Number of documents per page (1-500)")
+            @RequestParam(defaultValue = "50") int limit,
+            @Parameter(description = "Cursor returned as next_cursor by the previous page")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Only documents with this MIME type")
+            @RequestParam(required = false) String fileType,
+            @Parameter(description = "Only documents whose original filename starts with this prefix")
+            @RequestParam(required = false) String filenamePrefix) {
+
+        DocumentPageResponse documents = documentService.getAllDocuments(cursor, limit, fileType, filenamePrefix);
 
         return new ResponseEntity<>(
                 ApiResponseUtil.successFull("Documents retrieved successfully", documents),
@@ -67,21 +118,54 @@ public class DocumentController {
         );
     }
 
+    @GetMapping(value = "/export", produces = NDJSON_VALUE)
+    @Operation(
+            summary = "Export document metadata",
+            description = "Streams the metadata of every matching document as newline-delimited JSON, newest first. Accepts the same filters as the listing endpoint."
+    )
+    @io.swagger.v3.oas.annotations.responses.ApiResponses(value = {
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Export streamed successfully")
+    })
+    public ResponseEntity<StreamingResponseBody> exportDocuments(
+            @Parameter(description = "Only documents with this MIME type")
+            @RequestParam(required = false) String fileType,
+            @Parameter(description = "Only documents whose original filename starts with this prefix")
+            @RequestParam(required = false) String filenamePrefix) {
+
+        StreamingResponseBody body = outputStream -> documentService.exportDocuments(fileType, filenamePrefix, document -> {
+            try {
+                outputStream.write(objectMapper.writeValueAsBytes(document));
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON_VALUE))
+                .body(body);
+    }
+
     @GetMapping("/{id}")
     @Operation(
             summary = "Get document details",
-            description = "Retrieves detailed information about a specific document including extracted text, individual chunks, and metadata. The document is fetched from S3 and re-processed for display."
+            description = "Retrieves detailed information about a specific document including extracted text, a page of its chunks, and metadata. Text and chunks are read from the store populated at ingest; only documents uploaded before that existed are fetched from S3 and re-processed."
     )
     @io.swagger.v3.oas.annotations.responses.ApiResponses(value = {
             @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Document details retrieved successfully"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "Invalid chunk page or page size"),
             @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "Document not found"),
             @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "500", description = "Failed to extract document details")
     })
     public ResponseEntity<ApiResponse<DocumentDetailResponse>> getDocumentById(
             @Parameter(description = "Document ID", required = true)
-            @PathVariable UUID id) {
+            @PathVariable UUID id,
+            @Parameter(description = "Zero-based chunk page index")
+            @RequestParam(defaultValue = "0") int page,
+            @Parameter(description = "Number of chunks per page (1-500)")
+            @RequestParam(defaultValue = "50") int size) {
 
-        DocumentDetailResponse response = documentService.getDocumentById(id);
+        DocumentDetailResponse response = documentService.getDocumentById(id, page, size);
 
         return new ResponseEntity<>(
                 ApiResponseUtil.successFull("Document details retrieved successfully", response),
@@ -89,21 +173,102 @@ public class DocumentController {
         );
     }
 
+    @PutMapping(value = "/{id}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(
+            summary = "Replace a document with a new version",
+            description = "Uploads a new version of an existing document (PDF, DOCX, or TXT). The new version is re-chunked in the background and compared with the stored chunks by content hash: only new or moved chunks are embedded and written to the index, and chunks that no longer exist are deleted, so a small edit costs little to re-index. The previous version keeps answering queries until the new one is fully indexed; if processing fails, the document goes back to the previous version and the status reports the failure reason. Poll the status endpoint to follow progress."
+    )
+    @io.swagger.v3.oas.annotations.responses.ApiResponses(value = {
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "202", description = "New version stored and accepted for processing"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "The file is identical to the stored version; nothing changed"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "Invalid file, or the document is still being processed"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "Document not found"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "503", description = "Too many documents are being processed, retry later")
+    })
+    public ResponseEntity<ApiResponse<DocumentResponse>> updateDocument(
+            @Parameter(description = "Document ID", required = true)
+            @PathVariable UUID id,
+            @Parameter(description = "New version of the document (PDF, DOCX, or TXT, max 200MB)", required = true,
+                    content = @Content(mediaType = MediaType.MULTIPART_FORM_DATA_VALUE))
+            @RequestParam("file") MultipartFile file) {
+
+        DocumentResponse response = documentService.updateDocument(id, file);
+
+        if (response.isDuplicate()) {
+            return new ResponseEntity<>(
+                    ApiResponseUtil.successFull("Document is unchanged", response),
+                    HttpStatus.OK
+            );
+        }
+
+        return new ResponseEntity<>(
+                ApiResponseUtil.accepted("New document version accepted for processing", response),
+                HttpStatus.ACCEPTED
+        );
+    }
+
+    @DeleteMapping("/{id}")
+    @Operation(
+            summary = "Delete a document",
+            description = "Removes a document's vectors from the index in batches, then its chunks, extracted text and metadata, and finally the original file in S3."
+    )
+    @io.swagger.v3.oas.annotations.responses.ApiResponses(value = {
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Document deleted successfully"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "The document is still being processed"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "Document not found")
+    })
+    public ResponseEntity<ApiResponse<Void>> deleteDocument(
+            @Parameter(description = "Document ID", required = true)
+            @PathVariable UUID id) {
+
+        documentService.deleteDocument(id);
+
+        return new ResponseEntity<>(
+                ApiResponseUtil.successFull("Document deleted successfully", null),
+                HttpStatus.OK
+        );
+    }
+
+    @GetMapping("/{id}/status")
+    @Operation(
+            summary = "Get document processing status",
+            description = "Reports the current ingestion stage of a document (PENDING, PARSING, CHUNKING, EMBEDDING, COMPLETED or FAILED), how many chunks have been indexed so far, and the failure reason if processing failed."
+    )
+    @io.swagger.v3.oas.annotations.responses.ApiResponses(value = {
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Document status retrieved successfully"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "Document not found")
+    })
+    public ResponseEntity<ApiResponse<DocumentStatusResponse>> getDocumentStatus(
+            @Parameter(description = "Document ID", required = true)
+            @PathVariable UUID id) {
+
+        DocumentStatusResponse response = documentService.getDocumentStatus(id);
+
+        return new ResponseEntity<>(
+                ApiResponseUtil.successFull("Document status retrieved successfully", response),
+                HttpStatus.OK
+        );
+    }
+
     @GetMapping("/{id}/download")
     @Operation(
             summary = "Download original document",
-            description = "Downloads the original uploaded document from S3 storage"
+            description = "Streams the original uploaded document from S3 storage. A single byte range may be requested with the Range header to resume or partially fetch large files."
     )
     @io.swagger.v3.oas.annotations.responses.ApiResponses(value = {
             @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Document downloaded successfully"),
-            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "Document not found")
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "206", description = "Requested byte range downloaded successfully"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "Document not found"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "416", description = "Requested range is not satisfiable")
     })
-    public ResponseEntity<byte[]> downloadDocument(
+    public ResponseEntity<StreamingResponseBody> downloadDocument(
             @Parameter(description = "Document ID", required = true)
-            @PathVariable UUID id) {
+            @PathVariable UUID id,
+            @Parameter(description = "Optional single byte range, e.g. bytes=0-1048575")
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range) {
 
         DocumentResponse document = documentService.getDocumentMetadata(id);
-        byte[] fileBytes = s3Service.downloadFile(document.getFilename());
+        long fileSize = document.getFileSize();
 
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.parseMediaType(document.getFileType()));
@@ -112,7 +277,49 @@ public class DocumentController {
                         .filename(document.getOriginalFilename())
                         .build()
         );
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        // Multi-range requests are answered with the whole file, which RFC 9110 allows
+        List<HttpRange> ranges;
+        try {
+            ranges = range != null ? HttpRange.parseRanges(range) : List.of();
+        } catch (IllegalArgumentException e) {
+            ranges = List.of();
+        }
+
+        if (ranges.size() != 1) {
+            S3ObjectStream object = s3Service.openStream(document.getFilename());
+            headers.setContentLength(object.getContentLength());
+            return new ResponseEntity<>(streamBody(object), headers, HttpStatus.OK);
+        }
+
+        long start;
+        long end;
+        try {
+            start = ranges.get(0).getRangeStart(fileSize);
+            end = ranges.get(0).getRangeEnd(fileSize);
+        } catch (IllegalArgumentException e) {
+            start = fileSize;
+            end = -1;
+        }
+
+        if (start >= fileSize || start > end) {
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + fileSize);
+            return new ResponseEntity<>(headers, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        }
+
+        S3ObjectStream object = s3Service.openStream(document.getFilename(), start, end);
+        headers.setContentLength(object.getContentLength());
+        headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + fileSize);
+
+        return new ResponseEntity<>(streamBody(object), headers, HttpStatus.PARTIAL_CONTENT);
+    }
 
-        return new ResponseEntity<>(fileBytes, headers, HttpStatus.OK);
+    private StreamingResponseBody streamBody(S3ObjectStream object) {
+        return outputStream -> {
+            try (object) {
+                object.transferTo(outputStream);
+            }
+        };
     }
 }
\ No newline at end of file
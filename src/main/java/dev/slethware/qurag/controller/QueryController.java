@@ -1,8 +1,12 @@
 package dev.slethware.qurag.controller;
 
+import dev.slethware.qurag.dto.request.BatchQueryRequest;
 import dev.slethware.qurag.dto.request.QueryRequest;
 import dev.slethware.qurag.dto.response.ApiResponse;
+import dev.slethware.qurag.dto.response.BatchQueryResponse;
+import dev.slethware.qurag.dto.response.QueryCacheStatsResponse;
 import dev.slethware.qurag.dto.response.QueryResponse;
+import dev.slethware.qurag.service.RAG.BatchQueryService;
 import dev.slethware.qurag.service.RAG.RagQueryService;
 import dev.slethware.qurag.utility.ApiResponseUtil;
 import io.swagger.v3.oas.annotations.Operation;
@@ -10,8 +14,11 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 
 @RestController
 @RequestMapping("/query")
@@ -20,11 +27,12 @@ import org.springframework.web.bind.annotation.*;
 public class QueryController {
 
     private final RagQueryService ragQueryService;
+    private final BatchQueryService batchQueryService;
 
     @PostMapping
     @Operation(
             summary = "Query documents using RAG",
-            description = "Performs a Retrieval Augmented Generation (RAG) query"
+            description = "Performs a Retrieval Augmented Generation (RAG) query. If the answer cannot be generated within latencyBudgetMs, the chat model keeps timing out, or the service is too busy to call it, the answer is extracted from the retrieved chunks and the response is marked degraded."
     )
     @io.swagger.v3.oas.annotations.responses.ApiResponses(value = {
             @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Query processed successfully"),
@@ -44,4 +52,64 @@ public class QueryController {
                 HttpStatus.OK
         );
     }
+
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(
+            summary = "Query documents using RAG with a streamed answer",
+            description = "Same as the query endpoint, but responds with server-sent events: a 'chunks' event with the retrieved chunks, 'token' events as the answer is generated, then a 'summary' event with the full answer and time to first token. While the chat model is unavailable or the service is too busy to call it, the answer is extracted from the chunks and sent as a single token, with the summary marked degraded. Failures after the stream has started arrive as an 'error' event."
+    )
+    @io.swagger.v3.oas.annotations.responses.ApiResponses(value = {
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Event stream started"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "Invalid query request - question cannot be blank")
+    })
+    public Flux<ServerSentEvent<Object>> streamQuery(
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    description = "Query request containing the question, topK (default: 5), and similarity threshold (default: 0.7)",
+                    required = true
+            )
+            @Valid @RequestBody QueryRequest request) {
+
+        return ragQueryService.streamQuery(request);
+    }
+
+    @PostMapping("/batch")
+    @Operation(
+            summary = "Query documents in bulk",
+            description = "Runs many queries in one request. All questions are embedded in a single call, queries run concurrently, and results come back in request order. Each result holds either a response or an error, so one failing query does not fail the batch. With retrievalOnly set, only the retrieved chunks are returned and no answers are generated."
+    )
+    @io.swagger.v3.oas.annotations.responses.ApiResponses(value = {
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Batch processed; check each result for errors"),
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "Invalid batch - no queries, or more than the configured maximum")
+    })
+    public ResponseEntity<ApiResponse<BatchQueryResponse>> batchQuery(
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    description = "List of query requests, plus retrievalOnly (default: false)",
+                    required = true
+            )
+            @Valid @RequestBody BatchQueryRequest request) {
+
+        BatchQueryResponse response = batchQueryService.query(request);
+
+        return new ResponseEntity<>(
+                ApiResponseUtil.successFull("Batch query processed successfully", response),
+                HttpStatus.OK
+        );
+    }
+
+    @GetMapping("/cache/stats")
+    @Operation(
+            summary = "Query cache statistics",
+            description = "Reports exact and semantic cache hits, misses, hit ratio, evictions, invalidations and current size of the query result cache"
+    )
+    @io.swagger.v3.oas.annotations.responses.ApiResponses(value = {
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Cache statistics retrieved successfully")
+    })
+    public ResponseEntity<ApiResponse<QueryCacheStatsResponse>> getCacheStats() {
+        QueryCacheStatsResponse response = ragQueryService.getCacheStats();
+
+        return new ResponseEntity<>(
+                ApiResponseUtil.successFull("Cache statistics retrieved successfully", response),
+                HttpStatus.OK
+        );
+    }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package dev.slethware.qurag.dto.request;
+
+import jakarta.validation.constraints.NotEmpty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchQueryRequest {
+
+    // Items are validated one by one, so an invalid question fails only its own result
+    @NotEmpty(message = "Queries cannot be empty")
+    private List<QueryRequest> queries;
+
+    // Return the retrieved chunks only, without generating answers
+    @Builder.Default
+    private Boolean retrievalOnly = false;
+}
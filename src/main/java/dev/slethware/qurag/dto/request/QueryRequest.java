@@ -1,11 +1,15 @@
 package dev.slethware.qurag.dto.request;
 
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 @Data
 @Builder
 @NoArgsConstructor
@@ -20,4 +24,29 @@ public class QueryRequest {
 
     @Builder.Default
     private Double similarityThreshold = 0.3;
+
+    // HYBRID fuses vector and keyword (BM25) results; better for identifiers, error codes and part numbers
+    @Builder.Default
+    private RetrievalMode retrievalMode = RetrievalMode.VECTOR;
+
+    // Time allowed for retrieval and generation; past it the answer is extracted from the retrieved chunks.
+    // Falls back to the configured default when missing
+    @Positive(message = "Latency budget must be positive")
+    private Long latencyBudgetMs;
+
+    // Optional scope; all given criteria must match, and an empty or missing list means no restriction
+    private List<String> documentIds;
+
+    private List<String> filenames;
+
+    private List<String> fileTypes;
+
+    private LocalDateTime uploadedAfter;
+
+    private LocalDateTime uploadedBefore;
+
+    // An explicit "retrievalMode": null means the default, like leaving it out
+    public RetrievalMode getRetrievalMode() {
+        return retrievalMode != null ? retrievalMode : RetrievalMode.VECTOR;
+    }
 }
\ No newline at end of file
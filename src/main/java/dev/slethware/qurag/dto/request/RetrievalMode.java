@@ -0,0 +1,7 @@
+package dev.slethware.qurag.dto.request;
+
+public enum RetrievalMode {
+    VECTOR,
+    LEXICAL,
+    HYBRID
+}
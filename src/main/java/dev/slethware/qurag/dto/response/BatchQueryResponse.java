@@ -0,0 +1,25 @@
+package dev.slethware.qurag.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchQueryResponse {
+    // In request order
+    private List<BatchQueryResult> results;
+
+    private Integer succeeded;
+
+    private Integer failed;
+
+    @JsonProperty("total_time_ms")
+    private Long totalTimeMs;
+}
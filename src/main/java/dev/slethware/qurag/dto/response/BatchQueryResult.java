@@ -0,0 +1,20 @@
+package dev.slethware.qurag.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchQueryResult {
+    // Position of the query in the request
+    private Integer index;
+
+    // Exactly one of result and error is set
+    private QueryResponse result;
+
+    private ErrorResponse error;
+}
@@ -0,0 +1,7 @@
+package dev.slethware.qurag.dto.response;
+
+public enum BulkUploadOutcome {
+    ACCEPTED,
+    DUPLICATE,
+    REJECTED
+}
@@ -0,0 +1,23 @@
+package dev.slethware.qurag.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkUploadResponse {
+    // In upload order, archive entries in the order they appear in the archive
+    private List<BulkUploadResult> results;
+
+    private Integer accepted;
+
+    private Integer duplicates;
+
+    private Integer rejected;
+}
@@ -0,0 +1,23 @@
+package dev.slethware.qurag.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkUploadResult {
+    // The uploaded file name, or the entry name for files inside a ZIP archive
+    private String filename;
+
+    private BulkUploadOutcome outcome;
+
+    // Set for accepted and duplicate files
+    private DocumentResponse document;
+
+    // Set for rejected files
+    private ErrorResponse error;
+}
@@ -21,4 +21,8 @@ public class ChunkInfo {
 
     @JsonProperty("chunk_index")
     private Integer chunkIndex;
+
+    // Set when consecutive chunks were merged into this passage; chunk_index is then the first of the run
+    @JsonProperty("last_chunk_index")
+    private Integer lastChunkIndex;
 }
\ No newline at end of file
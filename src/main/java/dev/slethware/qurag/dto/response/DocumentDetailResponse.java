@@ -39,5 +39,17 @@ public class DocumentDetailResponse {
     @JsonProperty("extracted_text")
     private String extractedText;
 
+    @JsonProperty("extracted_text_truncated")
+    private boolean extractedTextTruncated;
+
     private List<String> chunks;
+
+    @JsonProperty("chunk_page")
+    private Integer chunkPage;
+
+    @JsonProperty("chunk_page_size")
+    private Integer chunkPageSize;
+
+    @JsonProperty("total_chunk_pages")
+    private Integer totalChunkPages;
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package dev.slethware.qurag.dto.response;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import dev.slethware.qurag.entity.ProcessingStatus;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -34,4 +35,9 @@ public class DocumentResponse {
 
     @JsonProperty("s3_url")
     private String s3Url;
+
+    private ProcessingStatus status;
+
+    // True when the upload matched an existing document and was not processed again
+    private boolean duplicate;
 }
\ No newline at end of file
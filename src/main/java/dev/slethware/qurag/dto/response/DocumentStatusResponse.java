@@ -0,0 +1,32 @@
+package dev.slethware.qurag.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import dev.slethware.qurag.entity.ProcessingStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentStatusResponse {
+    private UUID id;
+    private ProcessingStatus status;
+
+    @JsonProperty("chunk_count")
+    private Integer chunkCount;
+
+    @JsonProperty("processed_chunks")
+    private Integer processedChunks;
+
+    @JsonProperty("failure_reason")
+    private String failureReason;
+
+    @JsonProperty("updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,35 @@
+package dev.slethware.qurag.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueryCacheStatsResponse {
+    private Boolean enabled;
+
+    @JsonProperty("semantic_enabled")
+    private Boolean semanticEnabled;
+
+    @JsonProperty("exact_hits")
+    private Long exactHits;
+
+    @JsonProperty("semantic_hits")
+    private Long semanticHits;
+
+    private Long misses;
+
+    @JsonProperty("hit_ratio")
+    private Double hitRatio;
+
+    private Long evictions;
+
+    private Long invalidations;
+
+    private Long size;
+}
@@ -20,4 +20,10 @@ public class QueryResponse {
 
     @JsonProperty("total_chunks")
     private Integer totalChunks;
+
+    // Set when the answer was extracted from the chunks because the chat model was too slow or unavailable
+    private boolean degraded;
+
+    @JsonProperty("degraded_reason")
+    private String degradedReason;
 }
\ No newline at end of file
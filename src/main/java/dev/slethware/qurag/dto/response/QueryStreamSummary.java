@@ -0,0 +1,31 @@
+package dev.slethware.qurag.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueryStreamSummary {
+    private String answer;
+
+    @JsonProperty("total_chunks")
+    private Integer totalChunks;
+
+    private boolean cached;
+
+    @JsonProperty("time_to_first_token_ms")
+    private Long timeToFirstTokenMs;
+
+    @JsonProperty("total_time_ms")
+    private Long totalTimeMs;
+
+    private boolean degraded;
+
+    @JsonProperty("degraded_reason")
+    private String degradedReason;
+}
@@ -6,13 +6,19 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
 import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "documents")
+@Table(name = "documents", indexes = {
+        @Index(name = "idx_documents_checksum", columnList = "checksum"),
+        @Index(name = "idx_documents_uploaded_at_id", columnList = "uploaded_at DESC, id DESC"),
+        @Index(name = "idx_documents_file_type_uploaded_at_id", columnList = "file_type, uploaded_at DESC, id DESC"),
+        @Index(name = "idx_documents_original_filename", columnList = "original_filename")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -42,7 +48,23 @@ public class Document {
     @Column(nullable = false)
     private Integer chunkCount;
 
+    // SHA-256 of the file contents, used to recognise identical re-uploads
+    @Column(length = 64)
+    private String checksum;
+
+    // Null for rows ingested before the async pipeline existed; those are treated as completed
+    @Enumerated(EnumType.STRING)
+    private ProcessingStatus status;
+
+    private Integer processedChunks;
+
+    @Column(length = 2000)
+    private String failureReason;
+
     @CreatedDate
     @Column(nullable = false, updatable = false)
     private LocalDateTime uploadedAt;
+
+    @LastModifiedDate
+    private LocalDateTime updatedAt;
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package dev.slethware.qurag.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+@Entity
+@Table(name = "document_chunks",
+        uniqueConstraints = @UniqueConstraint(name = "uk_document_chunks_document_chunk_index",
+                columnNames = {"document_id", "chunk_index"}))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentChunk {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "document_id", nullable = false)
+    private UUID documentId;
+
+    @Column(name = "chunk_index", nullable = false)
+    private Integer chunkIndex;
+
+    // Id of the matching entry in the vector store
+    @Column(nullable = false)
+    private String vectorId;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String content;
+}
@@ -0,0 +1,27 @@
+package dev.slethware.qurag.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+@Entity
+@Table(name = "document_contents")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentContent {
+
+    @Id
+    private UUID documentId;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String extractedText;
+
+    // Set when the text was longer than qurag.ingestion.stored-text-max-chars and only its start is kept
+    private Boolean truncated;
+}
@@ -0,0 +1,41 @@
+package dev.slethware.qurag.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import java.time.LocalDateTime;
+
+// Written with EmbeddingCacheRepository.insertAllIfAbsent, which sets createdAt itself
+@Entity
+@Table(name = "embedding_cache")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@EntityListeners(AuditingEntityListener.class)
+public class EmbeddingCacheEntry {
+
+    // SHA-256 of the embedding model name and chunk text
+    @Id
+    @Column(length = 64)
+    private String contentHash;
+
+    @Column(nullable = false)
+    private String modelName;
+
+    @Column(nullable = false)
+    private Integer dimensions;
+
+    // Little-endian float32 values; sized for up to 4096 dimensions, since not every database leaves it unbounded
+    @Column(nullable = false, length = 16384)
+    private byte[] vector;
+
+    @CreatedDate
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,10 @@
+package dev.slethware.qurag.entity;
+
+public enum ProcessingStatus {
+    PENDING,
+    PARSING,
+    CHUNKING,
+    EMBEDDING,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,20 @@
+package dev.slethware.qurag.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.UUID;
+
+/**
+ * Published whenever the searchable content of a document is added, replaced or removed.
+ */
+@Getter
+public class DocumentsChangedEvent extends ApplicationEvent {
+
+    private final UUID documentId;
+
+    public DocumentsChangedEvent(Object source, UUID documentId) {
+        super(source);
+        this.documentId = documentId;
+    }
+}
@@ -0,0 +1,17 @@
+package dev.slethware.qurag.exception;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@Getter
+@Setter
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ServiceUnavailableException extends RuntimeException {
+    private HttpStatus status = HttpStatus.SERVICE_UNAVAILABLE;
+
+    public ServiceUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,39 @@
+package dev.slethware.qurag.repository;
+
+import dev.slethware.qurag.entity.DocumentChunk;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface DocumentChunkRepository extends JpaRepository<DocumentChunk, UUID> {
+
+    Page<DocumentChunk> findByDocumentIdOrderByChunkIndexAsc(UUID documentId, Pageable pageable);
+
+    // Chunks of documents whose vectors are in the store; legacy rows without a status count as indexed
+    @Query("select c.vectorId as vectorId, c.content as content, c.documentId as documentId, " +
+            "c.chunkIndex as chunkIndex, d.originalFilename as filename, d.fileType as fileType, " +
+            "d.uploadedAt as uploadedAt " +
+            "from DocumentChunk c join Document d on d.id = c.documentId " +
+            "where d.status is null or d.status = dev.slethware.qurag.entity.ProcessingStatus.COMPLETED " +
+            "order by c.id")
+    Slice<IndexedChunkSummary> findChunksOfIndexedDocuments(Pageable pageable);
+
+    @Query("select c.vectorId from DocumentChunk c where c.documentId = :documentId")
+    List<String> findVectorIdsByDocumentId(@Param("documentId") UUID documentId);
+
+    // Runs as one statement ahead of any pending inserts, so a replacement set can reuse the same chunk indexes
+    @Transactional
+    @Modifying
+    @Query("delete from DocumentChunk c where c.documentId = :documentId")
+    int deleteByDocumentId(@Param("documentId") UUID documentId);
+}
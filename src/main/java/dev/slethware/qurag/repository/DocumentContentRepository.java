@@ -0,0 +1,11 @@
+package dev.slethware.qurag.repository;
+
+import dev.slethware.qurag.entity.DocumentContent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.UUID;
+
+@Repository
+public interface DocumentContentRepository extends JpaRepository<DocumentContent, UUID> {
+}
@@ -1,11 +1,60 @@
 package dev.slethware.qurag.repository;
 
 import dev.slethware.qurag.entity.Document;
+import dev.slethware.qurag.entity.ProcessingStatus;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface DocumentRepository extends JpaRepository<Document, UUID> {
+
+    Optional<Document> findFirstByChecksumAndStatusNot(String checksum, ProcessingStatus status);
+
+    // Keyset page ordered newest first; rows strictly after (afterUploadedAt, afterId) when a cursor is given
+    @Query("select d.id as id, d.filename as filename, d.originalFilename as originalFilename, " +
+            "d.fileType as fileType, d.fileSize as fileSize, d.chunkCount as chunkCount, " +
+            "d.uploadedAt as uploadedAt, d.s3Url as s3Url, d.status as status " +
+            "from Document d " +
+            "where (:fileType is null or d.fileType = :fileType) " +
+            "and (:filenamePattern is null or d.originalFilename like :filenamePattern escape '\\') " +
+            "and (:afterUploadedAt is null or d.uploadedAt < :afterUploadedAt " +
+            "or (d.uploadedAt = :afterUploadedAt and d.id < :afterId)) " +
+            "order by d.uploadedAt desc, d.id desc")
+    List<DocumentSummary> findPage(@Param("fileType") String fileType,
+                                   @Param("filenamePattern") String filenamePattern,
+                                   @Param("afterUploadedAt") LocalDateTime afterUploadedAt,
+                                   @Param("afterId") UUID afterId,
+                                   Limit limit);
+
+    // Moves a settled document (completed, failed, or legacy without a status) to the given status in one step;
+    // returns 0 when it is still being processed or another request moved it first
+    @Transactional
+    @Modifying
+    @Query("update Document d set d.status = :status, d.updatedAt = local datetime where d.id = :id " +
+            "and (d.status is null or d.status in (dev.slethware.qurag.entity.ProcessingStatus.COMPLETED, " +
+            "dev.slethware.qurag.entity.ProcessingStatus.FAILED))")
+    int claimSettled(@Param("id") UUID id, @Param("status") ProcessingStatus status);
+
+    // Batches finish out of order, so only ever move the counter forward
+    @Transactional
+    @Modifying
+    @Query("update Document d set d.processedChunks = :processed, d.updatedAt = local datetime " +
+            "where d.id = :id and (d.processedChunks is null or d.processedChunks < :processed)")
+    int updateProcessedChunks(@Param("id") UUID id, @Param("processed") int processed);
+
+    // Streamed documents grow while their first chunks are already embedding, so only the count is touched
+    @Transactional
+    @Modifying
+    @Query("update Document d set d.chunkCount = :chunkCount, d.updatedAt = local datetime where d.id = :id")
+    int updateChunkCount(@Param("id") UUID id, @Param("chunkCount") int chunkCount);
 }
\ No newline at end of file
@@ -0,0 +1,19 @@
+package dev.slethware.qurag.repository;
+
+import dev.slethware.qurag.entity.ProcessingStatus;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// Columns needed for document listings, selected directly instead of hydrating Document entities
+public interface DocumentSummary {
+    UUID getId();
+    String getFilename();
+    String getOriginalFilename();
+    String getFileType();
+    Long getFileSize();
+    Integer getChunkCount();
+    LocalDateTime getUploadedAt();
+    String getS3Url();
+    ProcessingStatus getStatus();
+}
@@ -0,0 +1,35 @@
+package dev.slethware.qurag.repository;
+
+import dev.slethware.qurag.entity.EmbeddingCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface EmbeddingCacheRepository extends JpaRepository<EmbeddingCacheEntry, String> {
+
+    // A row another writer inserted first is kept; its vector is the same, and the rest of the batch still goes in
+    @Modifying
+    @Query(value = "insert into embedding_cache (content_hash, model_name, dimensions, vector, created_at) " +
+            "values (:contentHash, :modelName, :dimensions, :vector, :createdAt) on conflict do nothing",
+            nativeQuery = true)
+    int insertIfAbsent(@Param("contentHash") String contentHash,
+                       @Param("modelName") String modelName,
+                       @Param("dimensions") int dimensions,
+                       @Param("vector") byte[] vector,
+                       @Param("createdAt") LocalDateTime createdAt);
+
+    @Transactional
+    default void insertAllIfAbsent(List<EmbeddingCacheEntry> entries) {
+        LocalDateTime now = LocalDateTime.now();
+        for (EmbeddingCacheEntry entry : entries) {
+            insertIfAbsent(entry.getContentHash(), entry.getModelName(), entry.getDimensions(), entry.getVector(), now);
+        }
+    }
+}
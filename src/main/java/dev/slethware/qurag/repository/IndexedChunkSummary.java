@@ -0,0 +1,15 @@
+package dev.slethware.qurag.repository;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// Chunk text with the metadata the keyword index filters on, selected without hydrating entities
+public interface IndexedChunkSummary {
+    String getVectorId();
+    String getContent();
+    UUID getDocumentId();
+    Integer getChunkIndex();
+    String getFilename();
+    String getFileType();
+    LocalDateTime getUploadedAt();
+}
@@ -0,0 +1,8 @@
+package dev.slethware.qurag.service.RAG;
+
+import dev.slethware.qurag.dto.request.BatchQueryRequest;
+import dev.slethware.qurag.dto.response.BatchQueryResponse;
+
+public interface BatchQueryService {
+    BatchQueryResponse query(BatchQueryRequest request);
+}
@@ -0,0 +1,196 @@
+package dev.slethware.qurag.service.RAG;
+
+import dev.slethware.qurag.dto.request.BatchQueryRequest;
+import dev.slethware.qurag.dto.request.QueryRequest;
+import dev.slethware.qurag.dto.response.BatchQueryResponse;
+import dev.slethware.qurag.dto.response.BatchQueryResult;
+import dev.slethware.qurag.dto.response.ErrorResponse;
+import dev.slethware.qurag.dto.response.QueryResponse;
+import dev.slethware.qurag.exception.BadRequestException;
+import dev.slethware.qurag.exception.ResourceNotFoundException;
+import dev.slethware.qurag.exception.ServiceUnavailableException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Answers many questions in one request.
+ * <p>
+ * All questions are embedded up front in a single batched call, and each item's search reuses its question's
+ * vector, so the provider sees one request per batch instead of one per question. Items run on virtual threads;
+ * searches are capped by the retrieval limit and chat calls by the lower generation limit, each permit held only
+ * for its own stage. A failing item is reported in its result without failing the rest.
+ */
+@Slf4j
+@Service
+public class BatchQueryServiceImpl implements BatchQueryService {
+
+    private final RagQueryService ragQueryService;
+    private final EmbeddingModel embeddingModel;
+    private final Validator validator;
+    private final int maxSize;
+    private final int retrievalConcurrency;
+    private final int generationConcurrency;
+
+    public BatchQueryServiceImpl(RagQueryService ragQueryService,
+                                 EmbeddingModel embeddingModel,
+                                 Validator validator,
+                                 @Value("${qurag.query.batch.max-size}") int maxSize,
+                                 @Value("${qurag.query.batch.retrieval-concurrency}") int retrievalConcurrency,
+                                 @Value("${qurag.query.batch.generation-concurrency}") int generationConcurrency) {
+        this.ragQueryService = ragQueryService;
+        this.embeddingModel = embeddingModel;
+        this.validator = validator;
+        this.maxSize = maxSize;
+        this.retrievalConcurrency = retrievalConcurrency;
+        this.generationConcurrency = generationConcurrency;
+    }
+
+    @Override
+    public BatchQueryResponse query(BatchQueryRequest request) {
+        List<QueryRequest> queries = request.getQueries();
+        if (queries.size() > maxSize) {
+            throw new BadRequestException("A batch can contain at most " + maxSize + " queries");
+        }
+        boolean retrievalOnly = Boolean.TRUE.equals(request.getRetrievalOnly());
+        long start = System.nanoTime();
+
+        List<String> invalid = new ArrayList<>(queries.size());
+        for (QueryRequest query : queries) {
+            invalid.add(validate(query));
+        }
+        Map<String, float[]> embeddings = preEmbed(queries, invalid);
+
+        // Limits are per batch, so one large batch cannot starve another; the chat bulkhead still applies
+        QueryStageLimits limits = new QueryStageLimits(retrievalConcurrency, generationConcurrency);
+        List<CompletableFuture<BatchQueryResult>> futures = new ArrayList<>(queries.size());
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < queries.size(); i++) {
+                int index = i;
+                QueryRequest query = queries.get(i);
+                if (invalid.get(i) != null) {
+                    futures.add(CompletableFuture.completedFuture(
+                            failure(index, new BadRequestException(invalid.get(i)))));
+                    continue;
+                }
+                float[] embedding = embeddings.get(query.getQuestion());
+                futures.add(CompletableFuture.supplyAsync(() -> run(index, () -> retrievalOnly
+                        ? limits.retrieval(() -> ragQueryService.retrieveOnly(query, embedding))
+                        : ragQueryService.query(query, embedding, limits)), executor));
+            }
+        }
+
+        List<BatchQueryResult> results = futures.stream()
+                .map(CompletableFuture::join)
+                .toList();
+        int failed = (int) results.stream().filter(result -> result.getError() != null).count();
+        long totalTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("Batch of {} queries processed in {} ms ({} failed, retrieval only: {})",
+                queries.size(), totalTime, failed, retrievalOnly);
+
+        return BatchQueryResponse.builder()
+                .results(results)
+                .succeeded(results.size() - failed)
+                .failed(failed)
+                .totalTimeMs(totalTime)
+                .build();
+    }
+
+    private String validate(QueryRequest query) {
+        if (query == null) {
+            return "Query cannot be null";
+        }
+        Set<ConstraintViolation<QueryRequest>> violations = validator.validate(query);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+
+    // One embedding request for every distinct question, keyed by question for the searches that follow
+    private Map<String, float[]> preEmbed(List<QueryRequest> queries, List<String> invalid) {
+        Set<String> distinct = new LinkedHashSet<>();
+        for (int i = 0; i < queries.size(); i++) {
+            if (invalid.get(i) == null) {
+                distinct.add(queries.get(i).getQuestion());
+            }
+        }
+        List<String> questions = new ArrayList<>(distinct);
+        if (questions.isEmpty()) {
+            return Map.of();
+        }
+
+        try {
+            List<float[]> vectors = embeddingModel.embed(questions);
+            Map<String, float[]> embeddings = new HashMap<>();
+            for (int i = 0; i < questions.size(); i++) {
+                embeddings.put(questions.get(i), vectors.get(i));
+            }
+            return embeddings;
+        } catch (RuntimeException e) {
+            // Without a vector each search embeds its own question, so the batch can still complete
+            log.warn("Failed to pre-embed {} batch questions: {}", questions.size(), e.getMessage());
+            return Map.of();
+        }
+    }
+
+    private BatchQueryResult run(int index, Supplier<QueryResponse> work) {
+        try {
+            return BatchQueryResult.builder()
+                    .index(index)
+                    .result(work.get())
+                    .build();
+        } catch (RuntimeException e) {
+            return failure(index, e);
+        }
+    }
+
+    // Same status and wording the global exception handler would use for a single query
+    private BatchQueryResult failure(int index, RuntimeException e) {
+        ErrorResponse error;
+        if (e instanceof BadRequestException) {
+            error = error(e.getMessage(), "Bad Request", HttpStatus.BAD_REQUEST);
+        } else if (e instanceof ResourceNotFoundException) {
+            error = error(e.getMessage(), "Not Found", HttpStatus.NOT_FOUND);
+        } else if (e instanceof ServiceUnavailableException) {
+            error = error(e.getMessage(), "Service Unavailable", HttpStatus.SERVICE_UNAVAILABLE);
+        } else {
+            log.error("Batch query {} failed", index, e);
+            error = error("An unexpected error occurred", "Internal Server Error", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+
+        return BatchQueryResult.builder()
+                .index(index)
+                .error(error)
+                .build();
+    }
+
+    private ErrorResponse error(String message, String error, HttpStatus status) {
+        return ErrorResponse.builder()
+                .message(message)
+                .error(error)
+                .statusCode(status.value())
+                .build();
+    }
+}
@@ -0,0 +1,326 @@
+package dev.slethware.qurag.service.RAG;
+
+import dev.slethware.qurag.entity.DocumentChunk;
+import dev.slethware.qurag.entity.ProcessingStatus;
+import dev.slethware.qurag.event.DocumentsChangedEvent;
+import dev.slethware.qurag.repository.DocumentChunkRepository;
+import dev.slethware.qurag.repository.DocumentRepository;
+import dev.slethware.qurag.repository.IndexedChunkSummary;
+import dev.slethware.qurag.exception.ServiceUnavailableException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * In-process BM25 keyword index over chunk text, used for lexical and hybrid retrieval.
+ * <p>
+ * Built from the persisted chunks on the first lexical or hybrid search, so deployments that only run vector
+ * queries never hold chunk text on the heap, then kept current from {@link DocumentsChangedEvent}s on a
+ * background thread. Chunks are keyed by the same id as their vector, so lexical and vector results can be fused.
+ */
+@Slf4j
+@Component
+public class Bm25Index {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int REBUILD_PAGE_SIZE = 1000;
+
+    private static final Pattern TOKEN_SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}_-]+");
+    private static final Pattern COMPOUND_SEPARATORS = Pattern.compile("[-_]+");
+
+    private final DocumentRepository documentRepository;
+    private final DocumentChunkRepository documentChunkRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, IndexedChunk> chunks = new HashMap<>();
+    private final Map<String, Map<String, Integer>> postings = new HashMap<>();
+    private final Map<String, Set<String>> chunkIdsByDocument = new HashMap<>();
+    private long totalLength;
+
+    // One thread for the build and every update, so changes apply in order and never interleave with the build
+    private final ExecutorService updateExecutor = Executors.newSingleThreadExecutor(Thread.ofPlatform()
+            .name("keyword-index-update")
+            .daemon(true)
+            .factory());
+    private CompletableFuture<Void> pendingBuild;
+    private volatile boolean built;
+
+    @Autowired
+    public Bm25Index(DocumentRepository documentRepository, DocumentChunkRepository documentChunkRepository) {
+        this.documentRepository = documentRepository;
+        this.documentChunkRepository = documentChunkRepository;
+    }
+
+    // A standalone index with nothing persisted to load, filled only through add
+    public Bm25Index() {
+        this(null, null);
+        built = true;
+    }
+
+    @PreDestroy
+    public void close() {
+        updateExecutor.shutdownNow();
+    }
+
+    // A query that gives up waiting leaves the build running for the next one
+    private void ensureBuilt() {
+        if (built) {
+            return;
+        }
+        try {
+            startBuild().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Interrupted while the keyword index was being built");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to build the keyword index", e.getCause());
+        }
+    }
+
+    private synchronized CompletableFuture<Void> startBuild() {
+        if (pendingBuild == null || pendingBuild.isCompletedExceptionally()) {
+            pendingBuild = CompletableFuture.runAsync(() -> {
+                build();
+                built = true;
+            }, updateExecutor);
+        }
+        return pendingBuild;
+    }
+
+    private void build() {
+        long start = System.nanoTime();
+        int indexed = 0;
+        Pageable pageable = PageRequest.of(0, REBUILD_PAGE_SIZE);
+        Slice<IndexedChunkSummary> slice;
+        do {
+            slice = documentChunkRepository.findChunksOfIndexedDocuments(pageable);
+            add(slice.getContent().stream().map(this::toDocument).toList());
+            indexed += slice.getNumberOfElements();
+            pageable = slice.nextPageable();
+        } while (slice.hasNext());
+        log.info("Built keyword index over {} chunks in {} ms", indexed,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    // Not on the publishing thread, which is an ingestion worker or a request waiting on a delete
+    @EventListener
+    public void onDocumentsChanged(DocumentsChangedEvent event) {
+        updateExecutor.execute(() -> {
+            try {
+                refresh(event.getDocumentId());
+            } catch (RuntimeException e) {
+                log.error("Failed to update keyword index for document {}: {}",
+                        event.getDocumentId(), e.getMessage(), e);
+            }
+        });
+    }
+
+    private void refresh(UUID documentId) {
+        // Nothing to update before the build, which reads every document as it is by then
+        if (!built) {
+            return;
+        }
+
+        removeDocument(documentId.toString());
+
+        documentRepository.findById(documentId)
+                .filter(document -> document.getStatus() == null || document.getStatus() == ProcessingStatus.COMPLETED)
+                .ifPresent(document -> add(documentChunkRepository
+                        .findByDocumentIdOrderByChunkIndexAsc(document.getId(), Pageable.unpaged())
+                        .stream()
+                        .map(chunk -> toDocument(chunk, document))
+                        .toList()));
+    }
+
+    public void add(List<Document> documents) {
+        lock.writeLock().lock();
+        try {
+            for (Document document : documents) {
+                remove(document.getId());
+
+                List<String> tokens = tokenize(document.getText());
+                Map<String, Integer> termFrequencies = new HashMap<>();
+                tokens.forEach(token -> termFrequencies.merge(token, 1, Integer::sum));
+
+                String documentId = String.valueOf(document.getMetadata().get("document_id"));
+                chunks.put(document.getId(), new IndexedChunk(document.getId(), document.getText(),
+                        Map.copyOf(document.getMetadata()), documentId, tokens.size(), termFrequencies.keySet()));
+                termFrequencies.forEach((term, frequency) ->
+                        postings.computeIfAbsent(term, t -> new HashMap<>()).put(document.getId(), frequency));
+                chunkIdsByDocument.computeIfAbsent(documentId, id -> new HashSet<>()).add(document.getId());
+                totalLength += tokens.size();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeDocument(String documentId) {
+        lock.writeLock().lock();
+        try {
+            Set<String> chunkIds = chunkIdsByDocument.get(documentId);
+            if (chunkIds != null) {
+                new ArrayList<>(chunkIds).forEach(this::remove);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Document> search(String query, int topK) {
+        return search(query, topK, metadata -> true);
+    }
+
+    // Best-scoring chunks whose metadata passes the filter; score is the BM25 score and there is no "distance" metadata
+    public List<Document> search(String query, int topK, Predicate<Map<String, Object>> filter) {
+        ensureBuilt();
+        Set<String> terms = new LinkedHashSet<>(tokenize(query));
+
+        lock.readLock().lock();
+        try {
+            if (chunks.isEmpty()) {
+                return List.of();
+            }
+
+            int chunkCount = chunks.size();
+            double averageLength = (double) totalLength / chunkCount;
+            Map<String, Double> scores = new HashMap<>();
+            for (String term : terms) {
+                Map<String, Integer> posting = postings.get(term);
+                if (posting == null) {
+                    continue;
+                }
+                double idf = Math.log(1 + (chunkCount - posting.size() + 0.5) / (posting.size() + 0.5));
+                posting.forEach((chunkId, frequency) -> {
+                    IndexedChunk chunk = chunks.get(chunkId);
+                    if (!filter.test(chunk.metadata())) {
+                        return;
+                    }
+                    double lengthRatio = chunk.length() / averageLength;
+                    double score = idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * lengthRatio));
+                    scores.merge(chunkId, score, Double::sum);
+                });
+            }
+
+            return scores.entrySet().stream()
+                    .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                    .limit(topK)
+                    .map(entry -> {
+                        IndexedChunk chunk = chunks.get(entry.getKey());
+                        return Document.builder()
+                                .id(chunk.id())
+                                .text(chunk.text())
+                                .metadata(new HashMap<>(chunk.metadata()))
+                                .score(entry.getValue())
+                                .build();
+                    })
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return chunks.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Lowercased words and numbers; compound identifiers such as "ERR-4012" or "part_77" are also indexed
+    // whole, joined ("err4012") and split, so any of those spellings match
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        for (String raw : TOKEN_SEPARATORS.split(text.toLowerCase(Locale.ROOT))) {
+            String token = COMPOUND_SEPARATORS.matcher(raw).replaceAll(m -> "-");
+            token = token.replaceAll("^-+|-+$", "");
+            if (token.isEmpty()) {
+                continue;
+            }
+            tokens.add(token);
+            if (token.indexOf('-') >= 0) {
+                tokens.add(token.replace("-", ""));
+                for (String part : token.split("-")) {
+                    tokens.add(part);
+                }
+            }
+        }
+        return tokens;
+    }
+
+    // Caller holds the write lock
+    private void remove(String chunkId) {
+        IndexedChunk chunk = chunks.remove(chunkId);
+        if (chunk == null) {
+            return;
+        }
+        for (String term : chunk.terms()) {
+            Map<String, Integer> posting = postings.get(term);
+            posting.remove(chunkId);
+            if (posting.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+        Set<String> documentChunks = chunkIdsByDocument.get(chunk.documentId());
+        documentChunks.remove(chunkId);
+        if (documentChunks.isEmpty()) {
+            chunkIdsByDocument.remove(chunk.documentId());
+        }
+        totalLength -= chunk.length();
+    }
+
+    private Document toDocument(IndexedChunkSummary chunk) {
+        return toDocument(chunk.getVectorId(), chunk.getContent(), chunk.getDocumentId(), chunk.getChunkIndex(),
+                chunk.getFilename(), chunk.getFileType(), chunk.getUploadedAt());
+    }
+
+    private Document toDocument(DocumentChunk chunk, dev.slethware.qurag.entity.Document document) {
+        return toDocument(chunk.getVectorId(), chunk.getContent(), chunk.getDocumentId(), chunk.getChunkIndex(),
+                document.getOriginalFilename(), document.getFileType(), document.getUploadedAt());
+    }
+
+    // Same metadata keys the ingestion pipeline stamps on vectors, so scope filters apply to both searches
+    private Document toDocument(String vectorId, String content, UUID documentId, int chunkIndex, String filename,
+                                String fileType, LocalDateTime uploadedAt) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("document_id", documentId.toString());
+        metadata.put("chunk_index", chunkIndex);
+        metadata.put("filename", filename);
+        if (fileType != null) {
+            metadata.put("file_type", fileType);
+        }
+        if (uploadedAt != null) {
+            metadata.put("uploaded_at", QueryScope.uploadedAtMetadata(uploadedAt));
+        }
+        return Document.builder()
+                .id(vectorId)
+                .text(content)
+                .metadata(metadata)
+                .build();
+    }
+
+    private record IndexedChunk(String id, String text, Map<String, Object> metadata, String documentId,
+                                int length, Set<String> terms) {
+    }
+}
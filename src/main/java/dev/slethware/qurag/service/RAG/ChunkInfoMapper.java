@@ -0,0 +1,58 @@
+package dev.slethware.qurag.service.RAG;
+
+import dev.slethware.qurag.dto.response.ChunkInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Slf4j
+final class ChunkInfoMapper {
+
+    private ChunkInfoMapper() {
+    }
+
+    static List<ChunkInfo> map(List<Document> documents) {
+        List<ChunkInfo> chunks = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            chunks.add(map(document));
+        }
+        return chunks;
+    }
+
+    static ChunkInfo map(Document doc) {
+        Object distance = doc.getMetadata().get("distance");
+        Object documentId = doc.getMetadata().get("document_id");
+
+        return ChunkInfo.builder()
+                .content(doc.getText())
+                .similarityScore(distance != null ? 1.0 - toDouble(distance) : null)
+                .documentId(documentId != null ? documentId.toString() : null)
+                .chunkIndex(parseChunkIndex(doc.getMetadata().get("chunk_index")))
+                .lastChunkIndex(parseChunkIndex(doc.getMetadata().get(ContextPacker.LAST_CHUNK_INDEX)))
+                .build();
+    }
+
+    // Stores return chunk_index as a number, an integer string or a decimal string like "3.0"
+    static Integer parseChunkIndex(Object value) {
+        if (value == null) return null;
+        if (value instanceof Number number) return number.intValue();
+
+        String strValue = value.toString();
+        try {
+            return Integer.parseInt(strValue);
+        } catch (NumberFormatException notAnInteger) {
+            try {
+                return (int) Double.parseDouble(strValue);
+            } catch (NumberFormatException e) {
+                log.warn("Failed to parse chunk_index: {}", strValue);
+                return null;
+            }
+        }
+    }
+
+    private static double toDouble(Object value) {
+        return value instanceof Number number ? number.doubleValue() : Double.parseDouble(value.toString());
+    }
+}
@@ -0,0 +1,215 @@
+package dev.slethware.qurag.service.RAG;
+
+import dev.slethware.qurag.service.metrics.QuragMetrics;
+import dev.slethware.qurag.service.vectorstore.HnswVectorStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Post-retrieval stage that turns over-fetched candidates into the context actually sent to the chat model.
+ * <p>
+ * Candidates are diversified with maximal marginal relevance on the vectors the store returned with them,
+ * consecutive chunks of the same document are merged into one passage, and passages are packed in relevance order
+ * into a token budget. Stores that do not return vectors (Pinecone) keep their retrieval order, since re-embedding
+ * every candidate on each query would cost an embedding call per query.
+ */
+@Slf4j
+@Component
+public class ContextPacker {
+
+    static final String LAST_CHUNK_INDEX = "last_chunk_index";
+
+    private final QuragMetrics metrics;
+    private final boolean enabled;
+    private final int candidateFactor;
+    private final double mmrLambda;
+    private final int tokenBudget;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+    private final AtomicBoolean warnedWithoutVectors = new AtomicBoolean();
+
+    public ContextPacker(QuragMetrics metrics,
+                         @Value("${qurag.context.packing.enabled}") boolean enabled,
+                         @Value("${qurag.context.candidate-factor}") int candidateFactor,
+                         @Value("${qurag.context.mmr-lambda}") double mmrLambda,
+                         @Value("${qurag.context.token-budget}") int tokenBudget) {
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.candidateFactor = candidateFactor;
+        this.mmrLambda = mmrLambda;
+        this.tokenBudget = tokenBudget;
+    }
+
+    // How many candidates retrieval should fetch for a request asking for topK chunks
+    public int candidateCount(int topK) {
+        return enabled ? topK * candidateFactor : topK;
+    }
+
+    // Candidates arrive best first
+    public List<Document> pack(List<Document> candidates, int topK) {
+        if (!enabled || candidates.isEmpty()) {
+            return candidates;
+        }
+
+        List<Document> selected = diversify(candidates, topK);
+        List<Document> passages = mergeNeighbours(selected);
+
+        List<Document> packed = new ArrayList<>();
+        int packedTokens = 0;
+        for (Document passage : passages) {
+            int tokens = tokenCountEstimator.estimate(passage.getText());
+            // The best passage always goes in, even alone over budget, so a query never loses all context
+            if (!packed.isEmpty() && packedTokens + tokens > tokenBudget) {
+                continue;
+            }
+            packed.add(passage);
+            packedTokens += tokens;
+        }
+
+        int unpackedTokens = countTokens(candidates.subList(0, Math.min(topK, candidates.size())));
+        metrics.recordContextTokens("candidates", unpackedTokens);
+        metrics.recordContextTokens("packed", packedTokens);
+        log.info("Context packed from {} candidates ({} tokens for the top {}) to {} passages ({} tokens, budget {})",
+                candidates.size(), unpackedTokens, topK, packed.size(), packedTokens, tokenBudget);
+        return packed;
+    }
+
+    // Maximal marginal relevance: relevance comes from the retrieval rank, which is comparable across vector,
+    // keyword and fused results; redundancy is cosine similarity to the chunks already chosen, counted only between
+    // candidates that came back with a vector
+    private List<Document> diversify(List<Document> candidates, int topK) {
+        if (candidates.size() <= 1) {
+            return candidates;
+        }
+
+        List<float[]> embeddings = candidates.stream().map(ContextPacker::embedding).toList();
+        if (embeddings.stream().filter(Objects::nonNull).count() < 2) {
+            if (warnedWithoutVectors.compareAndSet(false, true)) {
+                log.warn("Vector store returned no embeddings with its results, skipping MMR and keeping retrieval order");
+            }
+            return candidates.subList(0, Math.min(topK, candidates.size()));
+        }
+
+        int count = candidates.size();
+        double[] maxSimilarityToSelected = new double[count];
+        boolean[] taken = new boolean[count];
+        List<Document> selected = new ArrayList<>(Math.min(topK, count));
+
+        while (selected.size() < Math.min(topK, count)) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < count; i++) {
+                if (taken[i]) {
+                    continue;
+                }
+                double relevance = 1.0 - (double) i / count;
+                double score = mmrLambda * relevance - (1 - mmrLambda) * maxSimilarityToSelected[i];
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = i;
+                }
+            }
+
+            taken[best] = true;
+            selected.add(candidates.get(best));
+            for (int i = 0; i < count; i++) {
+                if (!taken[i] && embeddings.get(i) != null && embeddings.get(best) != null) {
+                    maxSimilarityToSelected[i] = Math.max(maxSimilarityToSelected[i],
+                            QueryResultCache.cosineSimilarity(embeddings.get(i), embeddings.get(best)));
+                }
+            }
+        }
+        return selected;
+    }
+
+    // Runs of consecutive chunk_index values from one document become a single passage, placed where its
+    // best-ranked chunk was; merged text reads in document order
+    private List<Document> mergeNeighbours(List<Document> selected) {
+        Map<String, List<Document>> byDocument = new HashMap<>();
+        for (Document document : selected) {
+            byDocument.computeIfAbsent(documentKey(document), key -> new ArrayList<>()).add(document);
+        }
+
+        Map<Document, Document> passageByChunk = new IdentityHashMap<>();
+        for (List<Document> chunks : byDocument.values()) {
+            List<Document> ordered = new ArrayList<>(chunks);
+            ordered.sort(Comparator.comparing(ContextPacker::chunkIndex, Comparator.nullsLast(Comparator.naturalOrder())));
+
+            List<Document> run = new ArrayList<>();
+            for (Document chunk : ordered) {
+                if (!run.isEmpty() && !follows(run.get(run.size() - 1), chunk)) {
+                    mergeRun(run, passageByChunk);
+                    run = new ArrayList<>();
+                }
+                run.add(chunk);
+            }
+            mergeRun(run, passageByChunk);
+        }
+
+        List<Document> ordered = new ArrayList<>();
+        Set<Document> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Document chunk : selected) {
+            Document passage = passageByChunk.get(chunk);
+            if (seen.add(passage)) {
+                ordered.add(passage);
+            }
+        }
+        return ordered;
+    }
+
+    private void mergeRun(List<Document> run, Map<Document, Document> passageByChunk) {
+        if (run.size() == 1) {
+            passageByChunk.put(run.get(0), run.get(0));
+            return;
+        }
+
+        Document first = run.get(0);
+        Map<String, Object> metadata = new HashMap<>(first.getMetadata());
+        metadata.put(LAST_CHUNK_INDEX, chunkIndex(run.get(run.size() - 1)));
+        // Keep the closest distance so the passage reports its best chunk's similarity
+        run.stream()
+                .map(chunk -> chunk.getMetadata().get("distance"))
+                .filter(Objects::nonNull)
+                .map(distance -> Double.parseDouble(distance.toString()))
+                .min(Double::compare)
+                .ifPresent(distance -> metadata.put("distance", distance));
+
+        Document passage = Document.builder()
+                .id(first.getId())
+                .text(String.join(System.lineSeparator(), run.stream().map(Document::getText).toList()))
+                .metadata(metadata)
+                .score(run.stream().map(Document::getScore).filter(Objects::nonNull).max(Double::compare).orElse(null))
+                .build();
+        run.forEach(chunk -> passageByChunk.put(chunk, passage));
+    }
+
+    private boolean follows(Document previous, Document next) {
+        Integer previousIndex = chunkIndex(previous);
+        Integer nextIndex = chunkIndex(next);
+        return previousIndex != null && nextIndex != null && nextIndex == previousIndex + 1;
+    }
+
+    private static String documentKey(Document document) {
+        Object documentId = document.getMetadata().get("document_id");
+        return documentId != null ? documentId.toString() : document.getId();
+    }
+
+    private static float[] embedding(Document document) {
+        return document.getMetadata().get(HnswVectorStore.EMBEDDING_METADATA) instanceof float[] vector ? vector : null;
+    }
+
+    private static Integer chunkIndex(Document document) {
+        return ChunkInfoMapper.parseChunkIndex(document.getMetadata().get("chunk_index"));
+    }
+
+    private int countTokens(List<Document> documents) {
+        return documents.stream().mapToInt(document -> tokenCountEstimator.estimate(document.getText())).sum();
+    }
+}
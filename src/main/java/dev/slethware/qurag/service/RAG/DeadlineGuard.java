@@ -0,0 +1,175 @@
+package dev.slethware.qurag.service.RAG;
+
+import dev.slethware.qurag.dto.request.QueryRequest;
+import dev.slethware.qurag.exception.ServiceUnavailableException;
+import dev.slethware.qurag.service.concurrency.CircuitBreaker;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a blocking query within its latency budget.
+ * <p>
+ * Retrieval and generation each run on a virtual thread while the caller waits no longer than the deadline.
+ * Generation that runs past it is cancelled by interrupting its thread, and the query falls back to an answer
+ * extracted from the chunks it already retrieved. Timeouts and failures feed the chat {@link CircuitBreaker};
+ * while it is open, generation is skipped and every query falls back straight away. Calls our own bulkhead or
+ * AI call scheduler rejects never reached the model, so they fall back without counting against the breaker.
+ * <p>
+ * Streamed answers go through the breaker too, but have no deadline: once a token has been sent there is
+ * nothing left to fall back to.
+ */
+@Slf4j
+@Component
+public class DeadlineGuard {
+
+    static final String DEADLINE_EXCEEDED = "deadline_exceeded";
+    static final String CIRCUIT_OPEN = "circuit_open";
+    static final String OVERLOADED = "overloaded";
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final CircuitBreaker chatCircuitBreaker;
+    private final long defaultBudgetMs;
+
+    public DeadlineGuard(CircuitBreaker chatCircuitBreaker,
+                         @Value("${qurag.query.deadline.default-ms}") long defaultBudgetMs) {
+        this.chatCircuitBreaker = chatCircuitBreaker;
+        this.defaultBudgetMs = defaultBudgetMs;
+    }
+
+    // Waits for calls still running; each one is bounded by its query's deadline
+    @PreDestroy
+    public void close() {
+        executor.close();
+    }
+
+    public long budgetMs(QueryRequest request) {
+        return request.getLatencyBudgetMs() != null ? request.getLatencyBudgetMs() : defaultBudgetMs;
+    }
+
+    // As a System.nanoTime() value
+    public long deadline(QueryRequest request, long startNanos) {
+        return startNanos + TimeUnit.MILLISECONDS.toNanos(budgetMs(request));
+    }
+
+    // Without chunks there is nothing to fall back on, so running out of time here fails the query
+    public <T> T retrieve(Supplier<T> work, long deadline) {
+        Future<T> call = executor.submit(work::get);
+        try {
+            return await(call, deadline);
+        } catch (TimeoutException e) {
+            call.cancel(true);
+            throw new ServiceUnavailableException("Retrieval did not finish within the latency budget");
+        }
+    }
+
+    /**
+     * @return the generated answer, or a fallback naming why there is none
+     */
+    public Generation generate(Supplier<String> work, long deadline) {
+        if (deadline - System.nanoTime() <= 0) {
+            return Generation.fallback(DEADLINE_EXCEEDED);
+        }
+        if (!chatCircuitBreaker.tryAcquire()) {
+            return Generation.fallback(CIRCUIT_OPEN);
+        }
+
+        Future<String> call = executor.submit(work::get);
+        try {
+            String answer = await(call, deadline);
+            chatCircuitBreaker.onSuccess();
+            return new Generation(answer, null);
+        } catch (TimeoutException e) {
+            call.cancel(true);
+            chatCircuitBreaker.onFailure();
+            log.warn("Generation did not finish within the latency budget and was cancelled");
+            return Generation.fallback(DEADLINE_EXCEEDED);
+        } catch (ServiceUnavailableException e) {
+            chatCircuitBreaker.onIgnored();
+            if (Thread.currentThread().isInterrupted()) {
+                throw e;
+            }
+            log.warn("Generation was rejected before reaching the chat model: {}", e.getMessage());
+            return Generation.fallback(OVERLOADED);
+        } catch (RuntimeException | Error e) {
+            chatCircuitBreaker.onFailure();
+            throw e;
+        }
+    }
+
+    /**
+     * @param fallback builds the answer to stream instead, given why there is no generated one; used while the
+     *                 breaker is open, or when the stream is rejected locally before its first element
+     */
+    public <T> Flux<T> stream(Supplier<Flux<T>> work, Function<String, Flux<T>> fallback) {
+        return Flux.defer(() -> {
+            if (!chatCircuitBreaker.tryAcquire()) {
+                return fallback.apply(CIRCUIT_OPEN);
+            }
+
+            AtomicBoolean started = new AtomicBoolean();
+            return work.get()
+                    .doOnNext(element -> started.set(true))
+                    .doOnComplete(chatCircuitBreaker::onSuccess)
+                    .doOnCancel(chatCircuitBreaker::onIgnored)
+                    .onErrorResume(e -> {
+                        if (!(e instanceof ServiceUnavailableException)) {
+                            chatCircuitBreaker.onFailure();
+                            return Flux.error(e);
+                        }
+                        chatCircuitBreaker.onIgnored();
+                        if (started.get()) {
+                            return Flux.error(e);
+                        }
+                        log.warn("Streaming generation was rejected before reaching the chat model: {}",
+                                e.getMessage());
+                        return fallback.apply(OVERLOADED);
+                    });
+        });
+    }
+
+    private <T> T await(Future<T> call, long deadline) throws TimeoutException {
+        try {
+            return call.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            call.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Query was interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * @param fallbackReason why the answer has to be extracted instead, or null when it was generated
+     */
+    public record Generation(String answer, String fallbackReason) {
+
+        static Generation fallback(String reason) {
+            return new Generation(null, reason);
+        }
+
+        public boolean isFallback() {
+            return fallbackReason != null;
+        }
+    }
+}
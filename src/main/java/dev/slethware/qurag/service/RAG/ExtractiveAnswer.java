@@ -0,0 +1,88 @@
+package dev.slethware.qurag.service.RAG;
+
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Builds an answer from the retrieved chunks alone, for when the chat model cannot answer in time.
+ * <p>
+ * Sentences from the top chunks are scored by how many distinct question terms they contain, and the best few
+ * are returned in the order they appear, so the answer is always text the documents actually contain.
+ */
+final class ExtractiveAnswer {
+
+    static final String NO_CONTEXT_ANSWER = "No relevant information was found in the indexed documents.";
+
+    private static final int MAX_CHUNKS = 3;
+    private static final int MAX_SENTENCES = 3;
+    private static final int MAX_CHARS = 800;
+
+    // Too common to say anything about relevance
+    private static final Set<String> STOP_WORDS = Set.of("a", "an", "and", "are", "be", "can", "do", "does", "for",
+            "how", "i", "in", "is", "it", "of", "on", "or", "the", "to", "was", "what", "when", "where", "which",
+            "who", "why", "with");
+
+    private static final Pattern SENTENCE_END = Pattern.compile("(?<=[.!?])\\s+|\\n{2,}");
+
+    private ExtractiveAnswer() {
+    }
+
+    static String build(String question, List<Document> documents) {
+        Set<String> questionTerms = new HashSet<>(Bm25Index.tokenize(question));
+        questionTerms.removeAll(STOP_WORDS);
+
+        List<Sentence> sentences = new ArrayList<>();
+        for (Document document : documents.subList(0, Math.min(MAX_CHUNKS, documents.size()))) {
+            if (document.getText() == null) {
+                continue;
+            }
+            for (String text : SENTENCE_END.split(document.getText().strip())) {
+                String sentence = text.strip().replaceAll("\\s+", " ");
+                if (!sentence.isEmpty()) {
+                    sentences.add(new Sentence(sentences.size(), sentence, score(sentence, questionTerms)));
+                }
+            }
+        }
+        if (sentences.isEmpty()) {
+            return NO_CONTEXT_ANSWER;
+        }
+
+        // Without any overlap the top chunk's opening is still the most relevant text there is
+        List<Sentence> best = sentences.stream()
+                .filter(sentence -> sentence.score() > 0)
+                .sorted(Comparator.comparingInt(Sentence::score).reversed().thenComparingInt(Sentence::position))
+                .limit(MAX_SENTENCES)
+                .sorted(Comparator.comparingInt(Sentence::position))
+                .toList();
+        if (best.isEmpty()) {
+            best = List.of(sentences.get(0));
+        }
+
+        StringBuilder answer = new StringBuilder();
+        for (Sentence sentence : best) {
+            if (!answer.isEmpty() && answer.length() + sentence.text().length() + 1 > MAX_CHARS) {
+                break;
+            }
+            if (!answer.isEmpty()) {
+                answer.append(' ');
+            }
+            answer.append(sentence.text());
+        }
+        return answer.length() > MAX_CHARS ? answer.substring(0, MAX_CHARS).strip() + "..." : answer.toString();
+    }
+
+    private static int score(String sentence, Set<String> questionTerms) {
+        Set<String> terms = new HashSet<>(Bm25Index.tokenize(sentence));
+        terms.retainAll(questionTerms);
+        return terms.size();
+    }
+
+    private record Sentence(int position, String text, int score) {
+    }
+}
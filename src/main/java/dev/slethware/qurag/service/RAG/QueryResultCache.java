@@ -0,0 +1,248 @@
+package dev.slethware.qurag.service.RAG;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.slethware.qurag.dto.request.QueryRequest;
+import dev.slethware.qurag.dto.response.QueryCacheStatsResponse;
+import dev.slethware.qurag.dto.response.QueryResponse;
+import dev.slethware.qurag.event.DocumentsChangedEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches answers produced by {@link RagQueryServiceImpl}.
+ * <p>
+ * The exact tier is keyed on the normalized question plus the retrieval parameters. The optional semantic
+ * tier reuses an answer when a new question embeds within {@code max-distance} (cosine) of a cached one
+ * asked with the same parameters. A semantic lookup is not free: every miss embeds the question and scans the
+ * whole cache, so its cost grows with {@code max-size}.
+ * <p>
+ * Every entry is dropped whenever indexed documents change. Each change also starts a new generation; an answer
+ * is only stored if no change happened since its query began, so a query racing an upload cannot put back an
+ * answer built from the old documents.
+ * <p>
+ * As a {@link MeterBinder} it is bound to the application's registry, which exports the same counters
+ * as {@code GET /query/cache/stats}.
+ */
+@Slf4j
+@Component
+public class QueryResultCache implements MeterBinder {
+
+    private final EmbeddingModel embeddingModel;
+    private final boolean enabled;
+    private final boolean semanticEnabled;
+    private final double maxDistance;
+
+    private final Cache<String, CachedAnswer> answers;
+
+    // Question embeddings computed for a semantic lookup, kept briefly so the following put can reuse them
+    private final Cache<String, float[]> questionEmbeddings;
+
+    private final LongAdder exactHits = new LongAdder();
+    private final LongAdder semanticHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final AtomicLong generation = new AtomicLong();
+
+    public QueryResultCache(EmbeddingModel embeddingModel,
+                            @Value("${qurag.query-cache.enabled}") boolean enabled,
+                            @Value("${qurag.query-cache.max-size}") long maxSize,
+                            @Value("${qurag.query-cache.ttl-minutes}") long ttlMinutes,
+                            @Value("${qurag.query-cache.semantic.enabled}") boolean semanticEnabled,
+                            @Value("${qurag.query-cache.semantic.max-distance}") double maxDistance) {
+        this.embeddingModel = embeddingModel;
+        this.enabled = enabled;
+        this.semanticEnabled = semanticEnabled;
+        this.maxDistance = maxDistance;
+        this.answers = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        this.questionEmbeddings = Caffeine.newBuilder()
+                .maximumSize(1_000)
+                .expireAfterWrite(Duration.ofMinutes(1))
+                .build();
+    }
+
+    public QueryResponse get(QueryRequest request) {
+        if (!enabled) {
+            return null;
+        }
+
+        String parameters = parametersKey(request);
+        String question = normalize(request.getQuestion());
+
+        CachedAnswer exact = answers.getIfPresent(key(request));
+        if (exact != null) {
+            exactHits.increment();
+            return exact.response();
+        }
+
+        if (semanticEnabled) {
+            CachedAnswer nearest = findNearest(question, parameters);
+            if (nearest != null) {
+                semanticHits.increment();
+                return nearest.response();
+            }
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * The current generation, to be read before a query starts retrieving and passed back to
+     * {@link #put(QueryRequest, QueryResponse, long)}.
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    public void put(QueryRequest request, QueryResponse response) {
+        put(request, response, generation());
+    }
+
+    /**
+     * Stores an answer unless the documents changed after {@code generation} was read.
+     */
+    public void put(QueryRequest request, QueryResponse response, long generation) {
+        if (!enabled || generation != this.generation.get()) {
+            return;
+        }
+
+        String key = key(request);
+        String parameters = parametersKey(request);
+        String question = normalize(request.getQuestion());
+        float[] embedding = semanticEnabled ? embed(question) : null;
+
+        CachedAnswer answer = new CachedAnswer(response, parameters, embedding);
+        answers.put(key, answer);
+
+        // An invalidation between the check and the put may have missed this entry
+        if (generation != this.generation.get()) {
+            answers.asMap().remove(key, answer);
+        }
+    }
+
+    @EventListener
+    public void onDocumentsChanged(DocumentsChangedEvent event) {
+        invalidateAll();
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        answers.invalidateAll();
+        invalidations.increment();
+        log.debug("Query cache invalidated");
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, answers, "query_answers");
+        FunctionCounter.builder("qurag.query.cache.lookups", exactHits, LongAdder::sum)
+                .description("Query cache lookups by result")
+                .tag("result", "exact_hit")
+                .register(registry);
+        FunctionCounter.builder("qurag.query.cache.lookups", semanticHits, LongAdder::sum)
+                .description("Query cache lookups by result")
+                .tag("result", "semantic_hit")
+                .register(registry);
+        FunctionCounter.builder("qurag.query.cache.lookups", misses, LongAdder::sum)
+                .description("Query cache lookups by result")
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("qurag.query.cache.invalidations", invalidations, LongAdder::sum)
+                .description("Times the query cache was cleared because documents changed")
+                .register(registry);
+    }
+
+    public QueryCacheStatsResponse getStats() {
+        long exact = exactHits.sum();
+        long semantic = semanticHits.sum();
+        long miss = misses.sum();
+        long lookups = exact + semantic + miss;
+
+        return QueryCacheStatsResponse.builder()
+                .enabled(enabled)
+                .semanticEnabled(semanticEnabled)
+                .exactHits(exact)
+                .semanticHits(semantic)
+                .misses(miss)
+                .hitRatio(lookups == 0 ? 0.0 : (double) (exact + semantic) / lookups)
+                .evictions(answers.stats().evictionCount())
+                .invalidations(invalidations.sum())
+                .size(answers.estimatedSize())
+                .build();
+    }
+
+    // Linear in the cache size; only used when the semantic tier is enabled
+    private CachedAnswer findNearest(String question, String parameters) {
+        float[] embedding = embed(question);
+
+        CachedAnswer nearest = null;
+        double bestSimilarity = 1.0 - maxDistance;
+        for (CachedAnswer candidate : answers.asMap().values()) {
+            if (candidate.embedding() == null || !candidate.parameters().equals(parameters)) {
+                continue;
+            }
+            double similarity = cosineSimilarity(embedding, candidate.embedding());
+            if (similarity >= bestSimilarity) {
+                bestSimilarity = similarity;
+                nearest = candidate;
+            }
+        }
+        return nearest;
+    }
+
+    private float[] embed(String question) {
+        return questionEmbeddings.get(question, embeddingModel::embed);
+    }
+
+    // Also identifies concurrent identical questions, so they can share one generation
+    String key(QueryRequest request) {
+        return normalize(request.getQuestion()) + "|" + parametersKey(request);
+    }
+
+    static String normalize(String question) {
+        String normalized = question.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+        return normalized.replaceAll("[?!.]+$", "");
+    }
+
+    // Scope criteria are part of the key so a scoped answer is never served for a wider question
+    private String parametersKey(QueryRequest request) {
+        return request.getTopK() + "|" + request.getSimilarityThreshold() + "|" + request.getRetrievalMode()
+                + "|" + request.getDocumentIds() + "|" + request.getFilenames() + "|" + request.getFileTypes()
+                + "|" + request.getUploadedAfter() + "|" + request.getUploadedBefore();
+    }
+
+    static double cosineSimilarity(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        if (normA == 0 || normB == 0) {
+            return 0;
+        }
+        return dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    private record CachedAnswer(QueryResponse response, String parameters, float[] embedding) {
+    }
+}
@@ -0,0 +1,77 @@
+package dev.slethware.qurag.service.RAG;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The chunks a query may draw from, expressed on the {@code document_id}, {@code filename}, {@code file_type} and
+ * {@code uploaded_at} metadata that ingestion stamps on every chunk. A null criterion places no restriction;
+ * {@code uploadedAfter} is inclusive and {@code uploadedBefore} exclusive.
+ */
+public record QueryScope(Set<String> documentIds, Set<String> filenames, Set<String> fileTypes,
+                         Long uploadedAfter, Long uploadedBefore) {
+
+    public static final QueryScope UNRESTRICTED = new QueryScope(null, null, null, null, null);
+
+    // Epoch milliseconds in UTC, since vector store filters can only compare numbers
+    public static long uploadedAtMetadata(LocalDateTime uploadedAt) {
+        return uploadedAt.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    public boolean isRestricted() {
+        return documentIds != null || filenames != null || fileTypes != null
+                || uploadedAfter != null || uploadedBefore != null;
+    }
+
+    // True when the criteria resolved to no documents at all, so there is nothing to search
+    public boolean isEmpty() {
+        return documentIds != null && documentIds.isEmpty();
+    }
+
+    // Pushed down to the vector store so candidates are pruned before similarity ranking
+    public Filter.Expression toFilterExpression() {
+        FilterExpressionBuilder builder = new FilterExpressionBuilder();
+        List<FilterExpressionBuilder.Op> filters = new ArrayList<>();
+        if (documentIds != null) {
+            filters.add(builder.in("document_id", documentIds.toArray()));
+        }
+        if (filenames != null) {
+            filters.add(builder.in("filename", filenames.toArray()));
+        }
+        if (fileTypes != null) {
+            filters.add(builder.in("file_type", fileTypes.toArray()));
+        }
+        // As doubles: the SpEL-based stores cannot parse a long literal this size, and millisecond timestamps are
+        // exact as doubles, which is how Pinecone compares numbers anyway
+        if (uploadedAfter != null) {
+            filters.add(builder.gte("uploaded_at", uploadedAfter.doubleValue()));
+        }
+        if (uploadedBefore != null) {
+            filters.add(builder.lt("uploaded_at", uploadedBefore.doubleValue()));
+        }
+        return filters.stream().reduce(builder::and).orElseThrow().build();
+    }
+
+    // Same test applied in memory, for the keyword index
+    public boolean matches(Map<String, Object> metadata) {
+        return (documentIds == null || documentIds.contains(String.valueOf(metadata.get("document_id"))))
+                && (filenames == null || filenames.contains(String.valueOf(metadata.get("filename"))))
+                && (fileTypes == null || fileTypes.contains(String.valueOf(metadata.get("file_type"))))
+                && (uploadedAfter == null && uploadedBefore == null || uploadedInRange(metadata.get("uploaded_at")));
+    }
+
+    private boolean uploadedInRange(Object uploadedAt) {
+        if (!(uploadedAt instanceof Number number)) {
+            return false;
+        }
+        long millis = number.longValue();
+        return (uploadedAfter == null || millis >= uploadedAfter) && (uploadedBefore == null || millis < uploadedBefore);
+    }
+}
@@ -0,0 +1,52 @@
+package dev.slethware.qurag.service.RAG;
+
+import dev.slethware.qurag.dto.request.QueryRequest;
+import dev.slethware.qurag.exception.BadRequestException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.CollectionUtils;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+@Component
+public class QueryScopeResolver {
+
+    // Every criterion maps onto chunk metadata, so scoping a query never needs a database lookup
+    public QueryScope resolve(QueryRequest request) {
+        if (request.getUploadedAfter() != null && request.getUploadedBefore() != null
+                && !request.getUploadedAfter().isBefore(request.getUploadedBefore())) {
+            throw new BadRequestException("uploadedAfter must be before uploadedBefore");
+        }
+
+        Set<String> documentIds = CollectionUtils.isEmpty(request.getDocumentIds())
+                ? null
+                : request.getDocumentIds().stream()
+                        .map(this::parseDocumentId)
+                        .collect(Collectors.toCollection(LinkedHashSet::new));
+        Set<String> filenames = CollectionUtils.isEmpty(request.getFilenames())
+                ? null
+                : new LinkedHashSet<>(request.getFilenames());
+        Set<String> fileTypes = CollectionUtils.isEmpty(request.getFileTypes())
+                ? null
+                : new LinkedHashSet<>(request.getFileTypes());
+        Long uploadedAfter = request.getUploadedAfter() != null
+                ? QueryScope.uploadedAtMetadata(request.getUploadedAfter())
+                : null;
+        Long uploadedBefore = request.getUploadedBefore() != null
+                ? QueryScope.uploadedAtMetadata(request.getUploadedBefore())
+                : null;
+
+        QueryScope scope = new QueryScope(documentIds, filenames, fileTypes, uploadedAfter, uploadedBefore);
+        return scope.isRestricted() ? scope : QueryScope.UNRESTRICTED;
+    }
+
+    private String parseDocumentId(String documentId) {
+        try {
+            return UUID.fromString(documentId.trim()).toString();
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid document id: " + documentId);
+        }
+    }
+}
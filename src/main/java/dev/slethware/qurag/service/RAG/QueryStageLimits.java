@@ -0,0 +1,55 @@
+package dev.slethware.qurag.service.RAG;
+
+import dev.slethware.qurag.exception.ServiceUnavailableException;
+
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Separate concurrency limits for the retrieval and generation stages of a group of queries, such as one batch.
+ * <p>
+ * A query holds a stage's permit only while that stage runs, so queries waiting on the chat model do not hold
+ * back the searches of the others.
+ */
+public final class QueryStageLimits {
+
+    static final QueryStageLimits NONE = new QueryStageLimits(null, null);
+
+    private final Semaphore retrievalPermits;
+    private final Semaphore generationPermits;
+
+    public QueryStageLimits(int retrievalConcurrency, int generationConcurrency) {
+        this(new Semaphore(retrievalConcurrency), new Semaphore(generationConcurrency));
+    }
+
+    private QueryStageLimits(Semaphore retrievalPermits, Semaphore generationPermits) {
+        this.retrievalPermits = retrievalPermits;
+        this.generationPermits = generationPermits;
+    }
+
+    <T> T retrieval(Supplier<T> stage) {
+        return run(retrievalPermits, stage);
+    }
+
+    <T> T generation(Supplier<T> stage) {
+        return run(generationPermits, stage);
+    }
+
+    private static <T> T run(Semaphore permits, Supplier<T> stage) {
+        if (permits == null) {
+            return stage.get();
+        }
+
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Query was interrupted");
+        }
+        try {
+            return stage.get();
+        } finally {
+            permits.release();
+        }
+    }
+}
@@ -1,8 +1,19 @@
 package dev.slethware.qurag.service.RAG;
 
 import dev.slethware.qurag.dto.request.QueryRequest;
+import dev.slethware.qurag.dto.response.QueryCacheStatsResponse;
 import dev.slethware.qurag.dto.response.QueryResponse;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
 
 public interface RagQueryService {
     QueryResponse query(QueryRequest request);
+    // For callers that embedded the question already; a vector search reuses the embedding instead of making its own
+    QueryResponse query(QueryRequest request, float[] questionEmbedding);
+    // Retrieval and generation each run under their own permit from limits
+    QueryResponse query(QueryRequest request, float[] questionEmbedding, QueryStageLimits limits);
+    QueryResponse retrieveOnly(QueryRequest request);
+    QueryResponse retrieveOnly(QueryRequest request, float[] questionEmbedding);
+    Flux<ServerSentEvent<Object>> streamQuery(QueryRequest request);
+    QueryCacheStatsResponse getCacheStats();
 }
\ No newline at end of file
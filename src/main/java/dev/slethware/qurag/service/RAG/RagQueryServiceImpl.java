@@ -2,17 +2,38 @@ package dev.slethware.qurag.service.RAG;
 
 import dev.slethware.qurag.dto.request.QueryRequest;
 import dev.slethware.qurag.dto.response.ChunkInfo;
+import dev.slethware.qurag.dto.response.ErrorResponse;
+import dev.slethware.qurag.dto.response.QueryCacheStatsResponse;
 import dev.slethware.qurag.dto.response.QueryResponse;
+import dev.slethware.qurag.dto.response.QueryStreamSummary;
+import dev.slethware.qurag.dto.response.QueryStreamToken;
+import dev.slethware.qurag.service.concurrency.SingleFlight;
+import dev.slethware.qurag.service.embedding.QueryEmbeddings;
+import dev.slethware.qurag.service.metrics.QuragMetrics;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -20,74 +41,371 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class RagQueryServiceImpl implements RagQueryService {
 
+    private static final String SYSTEM_PROMPT = "You are a helpful assistant. Provide concise, direct answers. " +
+            "Avoid lengthy lists unless specifically requested. " +
+            "Summarize key points clearly and briefly.";
+
+    // Each side of a hybrid search fetches this many times topK candidates before fusion
+    private static final int HYBRID_CANDIDATE_FACTOR = 4;
+    private static final int HYBRID_MIN_CANDIDATES = 20;
+
+    // Same wording QuestionAnswerAdvisor uses, rendered here so the retrieved chunks are reused
+    private static final String USER_PROMPT_TEMPLATE = """
+            {question}
+
+            Context information is below, surrounded by ---------------------
+
+            ---------------------
+            {context}
+            ---------------------
+
+            Given the context and provided history information and not prior knowledge,
+            reply to the user comment. If the answer is not in the context, inform
+            the user that you can't answer the question.
+            """;
+
     private final ChatClient.Builder chatClientBuilder;
     private final VectorStore vectorStore;
+    private final QueryResultCache queryResultCache;
+    private final Bm25Index bm25Index;
+    private final QueryScopeResolver queryScopeResolver;
+    private final ContextPacker contextPacker;
+    private final QuragMetrics metrics;
+    private final DeadlineGuard deadlineGuard;
+    private final SingleFlight<String, QueryResponse> inFlightQueries = new SingleFlight<>();
+
+    // Runs the vector half of a hybrid search while the keyword half runs on the caller's thread, and the
+    // blocking start of each streamed query; virtual threads, so neither is capped by a fixed pool size
+    private final ExecutorService queryExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Scheduler queryScheduler = Schedulers.fromExecutorService(queryExecutor, "query");
+
+    @PreDestroy
+    public void close() {
+        queryExecutor.close();
+    }
 
     @Override
     public QueryResponse query(QueryRequest request) {
+        return query(request, null);
+    }
+
+    @Override
+    public QueryResponse query(QueryRequest request, float[] questionEmbedding) {
+        return query(request, questionEmbedding, QueryStageLimits.NONE);
+    }
+
+    @Override
+    public QueryResponse query(QueryRequest request, float[] questionEmbedding, QueryStageLimits limits) {
         log.info("Processing query: {}", request.getQuestion());
+        long start = System.nanoTime();
+        String mode = mode(request);
 
-        // Retrieve relevant chunks using vector search
-        SearchRequest searchRequest = SearchRequest.builder()
-                .query(request.getQuestion())
-                .topK(request.getTopK())
-                .similarityThreshold(request.getSimilarityThreshold())
-                .build();
+        try {
+            long cacheGeneration = queryResultCache.generation();
+            QueryResponse cached = metrics.timeQueryStage("cache", mode, () -> queryResultCache.get(request));
+            if (cached != null) {
+                log.info("Query served from cache");
+                metrics.recordQuery(mode, QuragMetrics.SUCCESS, true, elapsed(start), cached.getTotalChunks());
+                return cached;
+            }
 
-        List<Document> relevantDocuments = vectorStore.similaritySearch(searchRequest);
+            // Identical questions already being answered wait for that answer instead of generating their own.
+            // Only under the same budget: the one being joined started earlier and always answers by its own
+            // deadline, so the wait never runs past the joiner's
+            AtomicBoolean generated = new AtomicBoolean();
+            String flightKey = queryResultCache.key(request) + "|" + deadlineGuard.budgetMs(request);
+            QueryResponse response = inFlightQueries.execute(flightKey, () -> {
+                generated.set(true);
+                return answer(request, questionEmbedding, limits, mode, start, cacheGeneration);
+            });
+            if (!generated.get()) {
+                log.info("Query joined an identical in-flight query");
+                metrics.recordCoalescedQuery(mode);
+                metrics.recordQuery(mode, response.isDegraded() ? QuragMetrics.DEGRADED : QuragMetrics.SUCCESS,
+                        false, elapsed(start), response.getTotalChunks());
+            }
+            return response;
 
-        // Build chat client
-        ChatClient chatClient = chatClientBuilder
-                .defaultAdvisors(QuestionAnswerAdvisor.builder(vectorStore)
-                        .searchRequest(searchRequest)
-                        .build())
-                .build();
+        } catch (RuntimeException e) {
+            metrics.recordQuery(mode, QuragMetrics.ERROR, false, elapsed(start), 0);
+            throw e;
+        }
+    }
+
+    private QueryResponse answer(QueryRequest request, float[] questionEmbedding, QueryStageLimits limits,
+                                 String mode, long start, long cacheGeneration) {
+        long deadline = deadlineGuard.deadline(request, start);
 
-        // Fetch Answer from LLLM
-        String answer = chatClient.prompt()
-                .system("You are a helpful assistant. Provide concise, direct answers. " +
-                        "Avoid lengthy lists unless specifically requested. " +
-                        "Summarize key points clearly and briefly.")
-                .user(request.getQuestion())
-                .call()
-                .content();
+        // Retrieve relevant chunks once; they feed both the prompt and the response
+        List<Document> relevantDocuments = limits.retrieval(() -> deadlineGuard.retrieve(
+                () -> retrieve(request, questionEmbedding), deadline));
+
+        // Fetch Answer from LLM, unless it cannot arrive before the deadline. Time spent waiting for a permit
+        // comes out of the budget but never counts against the chat circuit breaker
+        long generateStart = System.nanoTime();
+        DeadlineGuard.Generation generation;
+        try {
+            generation = limits.generation(() -> deadlineGuard.generate(() -> prompt(request, relevantDocuments)
+                    .call()
+                    .content(), deadline));
+        } catch (RuntimeException e) {
+            metrics.recordQueryStage("generate", mode, QuragMetrics.ERROR, elapsed(generateStart));
+            throw e;
+        }
 
         // Build chunk info with similarity scores
-        List<ChunkInfo> chunksUsed = relevantDocuments.stream()
-                .map(doc -> ChunkInfo.builder()
-                        .content(doc.getText())
-                        .similarityScore(doc.getMetadata().get("distance") != null
-                                ? 1.0 - Double.parseDouble(doc.getMetadata().get("distance").toString())
-                                : null)
-                        .documentId(doc.getMetadata().get("document_id") != null
-                                ? doc.getMetadata().get("document_id").toString()
-                                : null)
-                        .chunkIndex(doc.getMetadata().get("chunk_index") != null
-                                ? parseChunkIndex(doc.getMetadata().get("chunk_index"))  // FIXED
-                                : null)
-                        .build())
-                .collect(Collectors.toList());
-
-        log.info("Query processed successfully with {} chunks", chunksUsed.size());
+        List<ChunkInfo> chunksUsed = ChunkInfoMapper.map(relevantDocuments);
+
+        if (generation.isFallback()) {
+            metrics.recordQueryStage("generate", mode, QuragMetrics.DEGRADED, elapsed(generateStart));
+            log.warn("Query answered extractively ({}) with {} chunks in {} ms",
+                    generation.fallbackReason(), chunksUsed.size(), elapsedMillis(start));
+            metrics.recordQuery(mode, QuragMetrics.DEGRADED, false, elapsed(start), chunksUsed.size());
+
+            // Not cached, so the next identical question gets a generated answer if the model has recovered
+            return QueryResponse.builder()
+                    .answer(ExtractiveAnswer.build(request.getQuestion(), relevantDocuments))
+                    .chunksUsed(chunksUsed)
+                    .totalChunks(chunksUsed.size())
+                    .degraded(true)
+                    .degradedReason(generation.fallbackReason())
+                    .build();
+        }
+        metrics.recordQueryStage("generate", mode, QuragMetrics.SUCCESS, elapsed(generateStart));
+
+        // Nothing reaches the client before this point, so this is also the blocking endpoint's time to first byte
+        log.info("Query processed successfully with {} chunks in {} ms", chunksUsed.size(), elapsedMillis(start));
+        metrics.recordQuery(mode, QuragMetrics.SUCCESS, false, elapsed(start), chunksUsed.size());
+
+        QueryResponse response = QueryResponse.builder()
+                .answer(generation.answer())
+                .chunksUsed(chunksUsed)
+                .totalChunks(chunksUsed.size())
+                .build();
 
+        queryResultCache.put(request, response, cacheGeneration);
+        return response;
+    }
+
+    // The chunks a query would be answered from, without calling the chat model
+    @Override
+    public QueryResponse retrieveOnly(QueryRequest request) {
+        return retrieveOnly(request, null);
+    }
+
+    @Override
+    public QueryResponse retrieveOnly(QueryRequest request, float[] questionEmbedding) {
+        List<ChunkInfo> chunksUsed = ChunkInfoMapper.map(retrieve(request, questionEmbedding));
         return QueryResponse.builder()
-                .answer(answer)
                 .chunksUsed(chunksUsed)
                 .totalChunks(chunksUsed.size())
                 .build();
     }
 
-    // Helper method to handle both integer and decimal strings
-    private Integer parseChunkIndex(Object value) {
-        if (value == null) return null;
+    @Override
+    public Flux<ServerSentEvent<Object>> streamQuery(QueryRequest request) {
+        String mode = mode(request);
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            return Flux.defer(() -> streamAnswer(request, mode, start))
+                    .onErrorResume(e -> {
+                        log.error("Streaming query failed: {}", e.getMessage(), e);
+                        metrics.recordQuery(mode, QuragMetrics.ERROR, false, elapsed(start), 0);
+                        return Flux.just(event("error", ErrorResponse.builder()
+                                .message(e.getMessage())
+                                .error("Internal Server Error")
+                                .statusCode(HttpStatus.INTERNAL_SERVER_ERROR.value())
+                                .build()));
+                    });
+        })
+        // Retrieval and the cache lookup block, so keep them off the request thread
+        .subscribeOn(queryScheduler);
+    }
+
+    // Unlike query, a stream has no deadline and is not coalesced with identical ones: its tokens are already on
+    // their way to the client, so there is no answer to cut short or hand to another caller. The chat circuit
+    // breaker still applies through the deadline guard
+    private Flux<ServerSentEvent<Object>> streamAnswer(QueryRequest request, String mode, long start) {
+        log.info("Processing streaming query: {}", request.getQuestion());
+
+        long cacheGeneration = queryResultCache.generation();
+        QueryResponse cached = metrics.timeQueryStage("cache", mode, () -> queryResultCache.get(request));
+        if (cached != null) {
+            long elapsed = elapsedMillis(start);
+            metrics.recordQuery(mode, QuragMetrics.SUCCESS, true, elapsed(start), cached.getTotalChunks());
+            return Flux.just(
+                    event("chunks", cached.getChunksUsed()),
+                    event("token", QueryStreamToken.builder().text(cached.getAnswer()).build()),
+                    event("summary", summary(cached, true, elapsed, elapsed)));
+        }
+
+        List<Document> relevantDocuments = retrieve(request, null);
+        List<ChunkInfo> chunksUsed = ChunkInfoMapper.map(relevantDocuments);
+
+        StringBuilder answer = new StringBuilder();
+        AtomicLong firstTokenMillis = new AtomicLong(-1);
+        long generateStart = System.nanoTime();
+
+        Flux<ServerSentEvent<Object>> tokens = prompt(request, relevantDocuments)
+                .stream()
+                .content()
+                .map(token -> {
+                    if (firstTokenMillis.compareAndSet(-1, elapsedMillis(start))) {
+                        metrics.recordTimeToFirstToken(mode, elapsed(start));
+                    }
+                    answer.append(token);
+                    return event("token", QueryStreamToken.builder().text(token).build());
+                });
+
+        // Built once the token stream completes, so it carries the full answer and timings
+        Flux<ServerSentEvent<Object>> summary = Flux.defer(() -> {
+            metrics.recordQueryStage("generate", mode, QuragMetrics.SUCCESS, elapsed(generateStart));
+            QueryResponse response = QueryResponse.builder()
+                    .answer(answer.toString())
+                    .chunksUsed(chunksUsed)
+                    .totalChunks(chunksUsed.size())
+                    .build();
+            queryResultCache.put(request, response, cacheGeneration);
+
+            long total = elapsedMillis(start);
+            log.info("Streaming query processed with {} chunks, first token after {} ms, completed in {} ms",
+                    chunksUsed.size(), firstTokenMillis.get(), total);
+            metrics.recordQuery(mode, QuragMetrics.SUCCESS, false, elapsed(start), chunksUsed.size());
+            return Flux.just(event("summary", summary(response, false, firstTokenMillis.get(), total)));
+        });
+
+        Flux<ServerSentEvent<Object>> generated = deadlineGuard.stream(() -> Flux.concat(tokens, summary),
+                        reason -> extractiveStream(request, relevantDocuments, chunksUsed, reason, mode, start,
+                                generateStart))
+                .doOnError(e -> metrics.recordQueryStage("generate", mode, QuragMetrics.ERROR, elapsed(generateStart)));
+        return Flux.concat(Flux.just(event("chunks", chunksUsed)), generated);
+    }
+
+    private Flux<ServerSentEvent<Object>> extractiveStream(QueryRequest request, List<Document> relevantDocuments,
+                                                           List<ChunkInfo> chunksUsed, String reason, String mode,
+                                                           long start, long generateStart) {
+        metrics.recordQueryStage("generate", mode, QuragMetrics.DEGRADED, elapsed(generateStart));
+        long total = elapsedMillis(start);
+        log.warn("Streaming query answered extractively ({}) with {} chunks in {} ms",
+                reason, chunksUsed.size(), total);
+        metrics.recordQuery(mode, QuragMetrics.DEGRADED, false, elapsed(start), chunksUsed.size());
+
+        // Not cached, so the next identical question gets a generated answer if the model has recovered
+        QueryResponse response = QueryResponse.builder()
+                .answer(ExtractiveAnswer.build(request.getQuestion(), relevantDocuments))
+                .chunksUsed(chunksUsed)
+                .totalChunks(chunksUsed.size())
+                .degraded(true)
+                .degradedReason(reason)
+                .build();
+        return Flux.just(
+                event("token", QueryStreamToken.builder().text(response.getAnswer()).build()),
+                event("summary", summary(response, false, total, total)));
+    }
+
+    @Override
+    public QueryCacheStatsResponse getCacheStats() {
+        return queryResultCache.getStats();
+    }
+
+    // Over-fetches candidates and packs them, so the result is exactly the context the model receives
+    private List<Document> retrieve(QueryRequest request, float[] questionEmbedding) {
+        QueryScope scope = queryScopeResolver.resolve(request);
+        if (scope.isEmpty()) {
+            log.info("Query scope matches no documents, skipping retrieval");
+            return List.of();
+        }
+
+        String mode = mode(request);
+        int candidates = contextPacker.candidateCount(request.getTopK());
+        List<Document> retrieved = metrics.timeQueryStage("retrieve", mode, () ->
+                switch (request.getRetrievalMode()) {
+                    case VECTOR -> vectorSearch(request, questionEmbedding, scope, candidates);
+                    case LEXICAL -> bm25Index.search(request.getQuestion(), candidates, scope::matches);
+                    case HYBRID -> hybridSearch(request, questionEmbedding, scope, candidates);
+                });
+        return metrics.timeQueryStage("pack", mode, () -> contextPacker.pack(retrieved, request.getTopK()));
+    }
+
+    private List<Document> vectorSearch(QueryRequest request, float[] questionEmbedding, QueryScope scope, int topK) {
+        SearchRequest.Builder searchRequest = SearchRequest.builder()
+                .query(request.getQuestion())
+                .topK(topK)
+                .similarityThreshold(request.getSimilarityThreshold());
+        if (scope.isRestricted()) {
+            searchRequest.filterExpression(scope.toFilterExpression());
+        }
+
+        if (questionEmbedding == null) {
+            return vectorStore.similaritySearch(searchRequest.build());
+        }
+        // The store embeds the query itself, so the embedding is offered to the model on the searching thread
+        return QueryEmbeddings.using(request.getQuestion(), questionEmbedding,
+                () -> vectorStore.similaritySearch(searchRequest.build()));
+    }
+
+    // Vector results go first so a chunk found by both searches keeps its similarity score
+    private List<Document> hybridSearch(QueryRequest request, float[] questionEmbedding, QueryScope scope,
+                                        int limit) {
+        int candidates = Math.max(limit * HYBRID_CANDIDATE_FACTOR, HYBRID_MIN_CANDIDATES);
+
+        CompletableFuture<List<Document>> vectorResults =
+                CompletableFuture.supplyAsync(() -> vectorSearch(request, questionEmbedding, scope, candidates),
+                        queryExecutor);
+        List<Document> lexicalResults = bm25Index.search(request.getQuestion(), candidates, scope::matches);
 
-        String strValue = value.toString();
         try {
-            // Handle decimal strings like by converting to double first
-            return (int) Double.parseDouble(strValue);
-        } catch (NumberFormatException e) {
-            log.warn("Failed to parse chunk_index: {}", strValue);
-            return null;
+            return ReciprocalRankFusion.fuse(List.of(vectorResults.join(), lexicalResults),
+                    ReciprocalRankFusion.DEFAULT_K, limit);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
         }
     }
-}
\ No newline at end of file
+
+    private ChatClient.ChatClientRequestSpec prompt(QueryRequest request, List<Document> relevantDocuments) {
+        return chatClientBuilder.build().prompt()
+                .system(SYSTEM_PROMPT)
+                .user(user -> user.text(USER_PROMPT_TEMPLATE)
+                        .param("question", request.getQuestion())
+                        .param("context", buildContext(relevantDocuments)));
+    }
+
+    private ServerSentEvent<Object> event(String name, Object data) {
+        return ServerSentEvent.builder(data)
+                .event(name)
+                .build();
+    }
+
+    private QueryStreamSummary summary(QueryResponse response, boolean cached, long firstTokenMillis, long totalMillis) {
+        return QueryStreamSummary.builder()
+                .answer(response.getAnswer())
+                .totalChunks(response.getTotalChunks())
+                .cached(cached)
+                .timeToFirstTokenMs(firstTokenMillis)
+                .totalTimeMs(totalMillis)
+                .degraded(response.isDegraded())
+                .degradedReason(response.getDegradedReason())
+                .build();
+    }
+
+    private String mode(QueryRequest request) {
+        return request.getRetrievalMode().name().toLowerCase(Locale.ROOT);
+    }
+
+    private Duration elapsed(long startNanos) {
+        return Duration.ofNanos(System.nanoTime() - startNanos);
+    }
+
+    private long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private String buildContext(List<Document> documents) {
+        return documents.stream()
+                .map(Document::getText)
+                .collect(Collectors.joining(System.lineSeparator()));
+    }
+}
@@ -0,0 +1,35 @@
+package dev.slethware.qurag.service.RAG;
+
+import org.springframework.ai.document.Document;
+
+import java.util.*;
+
+/**
+ * Merges ranked result lists by reciprocal rank fusion: each document scores the sum of 1 / (k + rank)
+ * over the lists it appears in. Only ranks are used, so BM25 and cosine scores need no normalization.
+ */
+final class ReciprocalRankFusion {
+
+    static final int DEFAULT_K = 60;
+
+    private ReciprocalRankFusion() {
+    }
+
+    // When a document appears in several lists, the copy from the earliest list is kept
+    static List<Document> fuse(List<List<Document>> rankings, int k, int topK) {
+        Map<String, Double> scores = new HashMap<>();
+        Map<String, Document> documents = new LinkedHashMap<>();
+        for (List<Document> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Document document = ranking.get(rank);
+                scores.merge(document.getId(), 1.0 / (k + rank + 1), Double::sum);
+                documents.putIfAbsent(document.getId(), document);
+            }
+        }
+
+        return documents.values().stream()
+                .sorted(Comparator.comparingDouble((Document document) -> scores.get(document.getId())).reversed())
+                .limit(topK)
+                .toList();
+    }
+}
@@ -0,0 +1,87 @@
+package dev.slethware.qurag.service.S3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * An object, or a byte range of it, served from the local S3 cache.
+ * <p>
+ * {@link #transferTo(OutputStream)} hands the file to {@link FileChannel#transferTo}. The servlet response is
+ * only an {@link OutputStream}, so the target is a {@link Channels#newChannel} wrapper: the JDK reads the file
+ * into a temporary buffer and writes it to the stream, one copy per chunk. What it saves over
+ * {@link #getInputStream()} is the per-read loop, not the copy. Reads through {@link #getInputStream()} are
+ * positional reads of the same channel.
+ */
+class CachedObjectStream extends S3ObjectStream {
+
+    private final FileChannel channel;
+    private final long position;
+
+    CachedObjectStream(FileChannel channel, long position, long length, long totalLength, String eTag) {
+        super(new RangeInputStream(channel, position, length), length, totalLength, eTag);
+        this.channel = channel;
+        this.position = position;
+    }
+
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        long transferred = 0;
+        while (transferred < getContentLength()) {
+            long count = channel.transferTo(position + transferred, getContentLength() - transferred, target);
+            if (count <= 0) {
+                throw new IOException("Cached object ended " + (getContentLength() - transferred)
+                        + " bytes early");
+            }
+            transferred += count;
+        }
+        return transferred;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static class RangeInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+
+        RangeInputStream(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = channel.read(ByteBuffer.wrap(buffer, offset, (int) Math.min(length, remaining)), position);
+            if (read > 0) {
+                position += read;
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package dev.slethware.qurag.service.S3;
+
+import dev.slethware.qurag.exception.BadRequestException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read-through cache of S3 objects in a size-bounded local directory.
+ * <p>
+ * A whole-object read that misses is streamed to the caller as usual while a copy is written to disk; the copy
+ * is kept only if the caller read the object to the end. Hits, for the whole object or a range of it, are
+ * served from that file. Uploads and deletes through this service drop the entry straight away. Keys are
+ * UUID-prefixed and never overwritten, so a hit only asks S3 for the object's current ETag with a HEAD request
+ * once its entry was last checked more than {@code revalidateAfter} ago, to catch objects changed behind the
+ * cache's back; an entry whose ETag no longer matches is dropped and read again. Range reads that miss go
+ * straight to S3 without filling the cache.
+ * <p>
+ * The least recently used entries are evicted once the directory would exceed {@code maxBytes}; objects larger
+ * than {@code maxObjectBytes} are never cached. Entries are not carried over restarts.
+ */
+@Slf4j
+public class CachingS3Service implements S3Service, MeterBinder {
+
+    private static final String SUFFIX = ".s3cache";
+
+    private final S3Service delegate;
+    private final Path directory;
+    private final long maxBytes;
+    private final long maxObjectBytes;
+    private final long revalidateAfterNanos;
+
+    // In access order, so the first entry is the least recently used
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder staleEntries = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    public CachingS3Service(S3Service delegate, Path directory, long maxBytes, long maxObjectBytes,
+                            Duration revalidateAfter) throws IOException {
+        this.delegate = delegate;
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxObjectBytes = Math.min(maxObjectBytes, maxBytes);
+        this.revalidateAfterNanos = revalidateAfter.toNanos();
+        Files.createDirectories(directory);
+        clearLeftovers();
+    }
+
+    @Override
+    public String uploadFile(MultipartFile file, String filename) {
+        invalidate(filename);
+        return delegate.uploadFile(file, filename);
+    }
+
+    @Override
+    public String uploadFile(InputStream inputStream, long contentLength, String contentType, String filename) {
+        invalidate(filename);
+        return delegate.uploadFile(inputStream, contentLength, contentType, filename);
+    }
+
+    @Override
+    public byte[] downloadFile(String fileKey) {
+        try (S3ObjectStream object = openStream(fileKey)) {
+            return object.getInputStream().readAllBytes();
+
+        } catch (IOException e) {
+            log.error("Failed to download file from S3: {}", e.getMessage(), e);
+            throw new BadRequestException("Failed to download file from S3: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public S3ObjectStream openStream(String fileKey) {
+        S3ObjectStream cached = openCached(fileKey, 0, Long.MAX_VALUE);
+        if (cached != null) {
+            return cached;
+        }
+        misses.increment();
+
+        S3ObjectStream object = delegate.openStream(fileKey);
+        if (object.getETag() == null || object.getContentLength() < 0 || object.getContentLength() > maxObjectBytes) {
+            return object;
+        }
+
+        Path file = directory.resolve(UUID.randomUUID() + SUFFIX);
+        try {
+            OutputStream copy = Files.newOutputStream(file);
+            return new S3ObjectStream(new FillingInputStream(object, fileKey, file, copy),
+                    object.getContentLength(), object.getTotalLength(), object.getETag());
+        } catch (IOException e) {
+            log.warn("Could not create cache file for {}, serving it uncached: {}", fileKey, e.getMessage());
+            return object;
+        }
+    }
+
+    @Override
+    public S3ObjectStream openStream(String fileKey, long start, long endInclusive) {
+        S3ObjectStream cached = openCached(fileKey, start, endInclusive);
+        if (cached != null) {
+            return cached;
+        }
+        misses.increment();
+        return delegate.openStream(fileKey, start, endInclusive);
+    }
+
+    @Override
+    public String getETag(String fileKey) {
+        return delegate.getETag(fileKey);
+    }
+
+    @Override
+    public void deleteFile(String fileKey) {
+        delegate.deleteFile(fileKey);
+        invalidate(fileKey);
+    }
+
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        return lookups == 0 ? 0.0 : (double) hitCount / lookups;
+    }
+
+    // Bytes served from disk instead of being downloaded from S3
+    public long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    public long getStaleEntries() {
+        return staleEntries.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("qurag.s3.cache.lookups", hits, LongAdder::sum)
+                .description("S3 cache lookups by result")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("qurag.s3.cache.lookups", misses, LongAdder::sum)
+                .description("S3 cache lookups by result")
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("qurag.s3.cache.stale", staleEntries, LongAdder::sum)
+                .description("Cached objects dropped because their ETag changed")
+                .register(registry);
+        FunctionCounter.builder("qurag.s3.cache.evictions", evictions, LongAdder::sum)
+                .description("Cached objects evicted to stay within the size limit")
+                .register(registry);
+        FunctionCounter.builder("qurag.s3.cache.bytes.saved", bytesSaved, LongAdder::sum)
+                .description("Bytes served from the local cache instead of S3")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("qurag.s3.cache.hit.ratio", this, CachingS3Service::getHitRatio)
+                .description("Share of S3 reads served from the local cache")
+                .register(registry);
+        Gauge.builder("qurag.s3.cache.size", this, CachingS3Service::getCachedBytes)
+                .description("Bytes held in the local S3 cache")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    private S3ObjectStream openCached(String fileKey, long start, long endInclusive) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(fileKey);
+        }
+        if (entry == null) {
+            return null;
+        }
+
+        if (System.nanoTime() - entry.checkedAt() >= revalidateAfterNanos) {
+            if (!entry.eTag().equals(delegate.getETag(fileKey))) {
+                staleEntries.increment();
+                log.debug("Cached copy of {} is stale, reading it again", fileKey);
+                remove(fileKey, entry);
+                return null;
+            }
+            entry = revalidated(fileKey, entry);
+        }
+
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(entry.file(), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            // Evicted between the lookup and the open
+            return null;
+        } catch (IOException e) {
+            log.warn("Could not read cached copy of {}: {}", fileKey, e.getMessage());
+            remove(fileKey, entry);
+            return null;
+        }
+
+        long end = Math.min(endInclusive, entry.size() - 1);
+        long length = Math.max(0, end - start + 1);
+        hits.increment();
+        bytesSaved.add(length);
+        return new CachedObjectStream(channel, start, length, entry.size(), entry.eTag());
+    }
+
+    private void commit(String fileKey, Entry entry) {
+        synchronized (this) {
+            Entry previous = entries.put(fileKey, entry);
+            cachedBytes += entry.size();
+            if (previous != null) {
+                cachedBytes -= previous.size();
+                delete(previous.file());
+            }
+
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (cachedBytes > maxBytes && eldest.hasNext()) {
+                Entry evicted = eldest.next().getValue();
+                eldest.remove();
+                cachedBytes -= evicted.size();
+                delete(evicted.file());
+                evictions.increment();
+            }
+        }
+        log.debug("Cached {} ({} bytes)", fileKey, entry.size());
+    }
+
+    // Replaced rather than updated in place, so a concurrent remove or commit of the same key still matches
+    private synchronized Entry revalidated(String fileKey, Entry entry) {
+        Entry checked = new Entry(entry.file(), entry.size(), entry.eTag(), System.nanoTime());
+        return entries.replace(fileKey, entry, checked) ? checked : entry;
+    }
+
+    private void invalidate(String fileKey) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(fileKey);
+        }
+        if (entry != null) {
+            remove(fileKey, entry);
+        }
+    }
+
+    private synchronized void remove(String fileKey, Entry entry) {
+        if (entries.remove(fileKey, entry)) {
+            cachedBytes -= entry.size();
+            delete(entry.file());
+        }
+    }
+
+    // Open readers keep their handle; the space is released once they close it
+    private void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete cache file {}: {}", file, e.getMessage());
+        }
+    }
+
+    // Only files this cache wrote, in case the directory is shared
+    private void clearLeftovers() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    // checkedAt is the System.nanoTime() of the last time the ETag was known to match
+    private record Entry(Path file, long size, String eTag, long checkedAt) {
+    }
+
+    // Copies what the caller reads into the cache file, and keeps the file only if the whole object was read
+    private class FillingInputStream extends InputStream {
+
+        private final S3ObjectStream source;
+        private final String fileKey;
+        private final Path file;
+        private OutputStream copy;
+        private long copied;
+
+        FillingInputStream(S3ObjectStream source, String fileKey, Path file, OutputStream copy) {
+            this.source = source;
+            this.fileKey = fileKey;
+            this.file = file;
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = source.getInputStream().read();
+            if (b >= 0) {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = source.getInputStream().read(buffer, offset, length);
+            if (read > 0) {
+                write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                source.close();
+            } finally {
+                finish();
+            }
+        }
+
+        // A failing cache write only stops the copy; the caller's read carries on
+        private void write(byte[] buffer, int offset, int length) {
+            if (copy == null) {
+                return;
+            }
+            try {
+                copy.write(buffer, offset, length);
+                copied += length;
+            } catch (IOException e) {
+                log.warn("Could not write cache file for {}: {}", fileKey, e.getMessage());
+                abandon();
+            }
+        }
+
+        private void finish() {
+            if (copy == null) {
+                return;
+            }
+            try {
+                copy.close();
+                copy = null;
+            } catch (IOException e) {
+                abandon();
+                return;
+            }
+            if (copied == source.getContentLength()) {
+                commit(fileKey, new Entry(file, copied, Objects.requireNonNull(source.getETag()), System.nanoTime()));
+            } else {
+                delete(file);
+            }
+        }
+
+        private void abandon() {
+            try {
+                copy.close();
+            } catch (IOException e) {
+                log.debug("Could not close abandoned cache file {}: {}", file, e.getMessage());
+            }
+            copy = null;
+            delete(file);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package dev.slethware.qurag.service.S3;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * An open S3 object body, or a byte range of it, plus the lengths needed to describe it to a client.
+ * The caller owns the stream and must close it.
+ */
+@Getter
+@AllArgsConstructor
+public class S3ObjectStream implements Closeable {
+
+    private final InputStream inputStream;
+
+    // Bytes in this stream; equals totalLength unless a range was requested
+    private final long contentLength;
+
+    private final long totalLength;
+
+    private final String eTag;
+
+    // Copies the body to out; objects served from the local cache override this to copy straight from their file
+    public long transferTo(OutputStream out) throws IOException {
+        return inputStream.transferTo(out);
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
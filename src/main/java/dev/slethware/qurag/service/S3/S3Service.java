@@ -2,7 +2,14 @@ package dev.slethware.qurag.service.S3;
 
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
+
 public interface S3Service {
     String uploadFile(MultipartFile file, String filename);
+    String uploadFile(InputStream inputStream, long contentLength, String contentType, String filename);
     byte[] downloadFile(String fileKey);
-}
\ No newline at end of file
+    S3ObjectStream openStream(String fileKey);
+    S3ObjectStream openStream(String fileKey, long start, long endInclusive);
+    String getETag(String fileKey);
+    void deleteFile(String fileKey);
+}
@@ -6,12 +6,16 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.GetObjectRequest;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 @Slf4j
 @Service
@@ -23,16 +27,38 @@ public class S3ServiceImpl implements S3Service {
     @Value("${aws.s3.bucket-name}")
     private String bucketName;
 
+    @Value("${aws.s3.multipart-threshold-bytes}")
+    private long multipartThreshold;
+
+    @Value("${aws.s3.multipart-part-size-bytes}")
+    private int partSize;
+
     @Override
     public String uploadFile(MultipartFile file, String filename) {
+        try (InputStream inputStream = file.getInputStream()) {
+            return uploadFile(inputStream, file.getSize(), file.getContentType(), filename);
+
+        } catch (IOException e) {
+            log.error("Failed to upload file to S3: {}", e.getMessage(), e);
+            throw new BadRequestException("Failed to upload file to S3: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String uploadFile(InputStream inputStream, long contentLength, String contentType, String filename) {
         try {
-            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(filename)
-                    .contentType(file.getContentType())
-                    .build();
+            if (contentLength > multipartThreshold) {
+                uploadMultipart(inputStream, contentLength, contentType, filename);
+            } else {
+                PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                        .bucket(bucketName)
+                        .key(filename)
+                        .contentType(contentType)
+                        .contentLength(contentLength)
+                        .build();
 
-            s3Client.putObject(putObjectRequest, RequestBody.fromBytes(file.getBytes()));
+                s3Client.putObject(putObjectRequest, RequestBody.fromInputStream(inputStream, contentLength));
+            }
 
             String s3Url = String.format("https://%s.s3.amazonaws.com/%s", bucketName, filename);
             log.info("File uploaded to S3: {}", s3Url);
@@ -44,19 +70,126 @@ public class S3ServiceImpl implements S3Service {
         }
     }
 
-    @Override
-    public byte[] downloadFile(String fileKey) {
+    // Sends the stream in fixed-size parts through a single reused buffer, so memory does not grow with file size
+    private void uploadMultipart(InputStream inputStream, long contentLength, String contentType, String filename)
+            throws IOException {
+        CreateMultipartUploadResponse upload = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(filename)
+                .contentType(contentType)
+                .build());
+
         try {
-            GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+            byte[] buffer = new byte[partSize];
+            List<CompletedPart> completedParts = new ArrayList<>();
+            long remaining = contentLength;
+            int partNumber = 1;
+
+            while (remaining > 0) {
+                int length = inputStream.readNBytes(buffer, 0, (int) Math.min(partSize, remaining));
+                if (length == 0) {
+                    throw new IOException("Stream ended " + remaining + " bytes before the declared length");
+                }
+
+                UploadPartResponse part = s3Client.uploadPart(UploadPartRequest.builder()
+                                .bucket(bucketName)
+                                .key(filename)
+                                .uploadId(upload.uploadId())
+                                .partNumber(partNumber)
+                                .contentLength((long) length)
+                                .build(),
+                        RequestBody.fromContentProvider(() -> new ByteArrayInputStream(buffer, 0, length), length, contentType));
+
+                completedParts.add(CompletedPart.builder()
+                        .partNumber(partNumber)
+                        .eTag(part.eTag())
+                        .build());
+                remaining -= length;
+                partNumber++;
+            }
+
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
                     .bucket(bucketName)
-                    .key(fileKey)
-                    .build();
+                    .key(filename)
+                    .uploadId(upload.uploadId())
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                    .build());
+
+        } catch (IOException | RuntimeException e) {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(filename)
+                    .uploadId(upload.uploadId())
+                    .build());
+            throw e;
+        }
+    }
 
-            return s3Client.getObject(getObjectRequest).readAllBytes();
+    @Override
+    public byte[] downloadFile(String fileKey) {
+        try (S3ObjectStream object = openStream(fileKey)) {
+            return object.getInputStream().readAllBytes();
 
         } catch (IOException e) {
             log.error("Failed to download file from S3: {}", e.getMessage(), e);
             throw new BadRequestException("Failed to download file from S3: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public S3ObjectStream openStream(String fileKey) {
+        return getObject(GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(fileKey)
+                .build());
+    }
+
+    @Override
+    public S3ObjectStream openStream(String fileKey, long start, long endInclusive) {
+        return getObject(GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(fileKey)
+                .range("bytes=" + start + "-" + endInclusive)
+                .build());
+    }
+
+    // A HEAD request, so the body is not transferred
+    @Override
+    public String getETag(String fileKey) {
+        return s3Client.headObject(HeadObjectRequest.builder()
+                .bucket(bucketName)
+                .key(fileKey)
+                .build())
+                .eTag();
+    }
+
+    @Override
+    public void deleteFile(String fileKey) {
+        s3Client.deleteObject(DeleteObjectRequest.builder()
+                .bucket(bucketName)
+                .key(fileKey)
+                .build());
+        log.info("File deleted from S3: {}", fileKey);
+    }
+
+    private S3ObjectStream getObject(GetObjectRequest getObjectRequest) {
+        ResponseInputStream<GetObjectResponse> stream = s3Client.getObject(getObjectRequest);
+        GetObjectResponse response = stream.response();
+        long contentLength = response.contentLength() != null ? response.contentLength() : -1L;
+
+        return new S3ObjectStream(stream, contentLength,
+                parseTotalLength(response.contentRange(), contentLength), response.eTag());
+    }
+
+    // Content-Range looks like "bytes 0-1023/4096"; without it the body is the whole object
+    private long parseTotalLength(String contentRange, long contentLength) {
+        if (contentRange == null) {
+            return contentLength;
+        }
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0 || contentRange.endsWith("*")) {
+            return contentLength;
+        }
+        return Long.parseLong(contentRange.substring(slash + 1).trim());
+    }
+}
@@ -0,0 +1,275 @@
+package dev.slethware.qurag.service.concurrency;
+
+import dev.slethware.qurag.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.RestClientResponseException;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Paces outbound calls to one AI provider so they stay within its request quota.
+ * <p>
+ * A token bucket refilled at the configured rate admits calls, up to {@code burst} at once. Callers that find
+ * it empty queue by {@link CallPriority}, interactive ahead of background and first come first served within a
+ * priority, so a query waits behind at most the call in progress rather than behind a whole ingestion burst.
+ * Interactive callers give up after {@code interactiveMaxWait} with a {@link ServiceUnavailableException};
+ * background callers wait as long as it takes.
+ * <p>
+ * The rate adapts: a rate-limited response (429 / RESOURCE_EXHAUSTED) halves it, down to a twentieth of the
+ * configured rate, and every successful call wins back a fiftieth. Only calls admitted after the last
+ * slowdown can cause another, so one burst of rejections counts once.
+ */
+@Slf4j
+public class AiCallScheduler implements MeterBinder {
+
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final double INCREASE_FRACTION = 0.02;
+    private static final double MIN_RATE_FRACTION = 0.05;
+
+    // How quota errors begin once the status is turned into a message: "429 - <body>" from Spring AI's HTTP
+    // clients, "429 RESOURCE_EXHAUSTED. <message>" from the Gemini SDK, "RESOURCE_EXHAUSTED: <description>" from gRPC
+    private static final Pattern QUOTA_STATUS = Pattern.compile("(429|RESOURCE_EXHAUSTED)\\b");
+
+    private final String name;
+    private final double maxRate;
+    private final int burst;
+    private final Duration interactiveMaxWait;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(
+            Comparator.comparing(Waiter::priority).thenComparingLong(Waiter::sequence));
+    private long nextSequence;
+    private double rate;
+    private double tokens;
+    private long refilledAt;
+    private long slowedDownAt;
+
+    private final Map<CallPriority, AtomicInteger> queued = new EnumMap<>(CallPriority.class);
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    // Set once bound to a registry; waits before that are not recorded
+    private volatile Map<CallPriority, Timer> waitTimers;
+
+    public AiCallScheduler(String name, double requestsPerSecond, int burst, Duration interactiveMaxWait) {
+        this.name = name;
+        this.maxRate = requestsPerSecond;
+        this.burst = burst;
+        this.interactiveMaxWait = interactiveMaxWait;
+        this.rate = requestsPerSecond;
+        this.tokens = burst;
+        this.refilledAt = System.nanoTime();
+        this.slowedDownAt = refilledAt;
+        for (CallPriority priority : CallPriority.values()) {
+            queued.put(priority, new AtomicInteger());
+        }
+    }
+
+    public <T> T call(Supplier<T> work) {
+        long admittedAt = acquire(CallPriority.current());
+        try {
+            T result = work.get();
+            onSuccess();
+            return result;
+        } catch (RuntimeException e) {
+            onFailure(e, admittedAt);
+            throw e;
+        }
+    }
+
+    // Admission happens on subscription; the outcome is judged once the stream terminates
+    public <T> Flux<T> flux(Supplier<Flux<T>> source) {
+        return Flux.defer(() -> {
+            long admittedAt = acquire(CallPriority.current());
+            return source.get()
+                    .doOnComplete(this::onSuccess)
+                    .doOnError(e -> onFailure(e, admittedAt));
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Requests per second currently allowed
+    public double getRate() {
+        lock.lock();
+        try {
+            return rate;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued(CallPriority priority) {
+        return queued.get(priority).get();
+    }
+
+    public long getThrottled() {
+        return throttled.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Map<CallPriority, Timer> timers = new EnumMap<>(CallPriority.class);
+        for (CallPriority priority : CallPriority.values()) {
+            String tag = priority.name().toLowerCase(Locale.ROOT);
+            Gauge.builder("qurag.ai.queue.depth", queued.get(priority), AtomicInteger::get)
+                    .description("Calls waiting for the AI call scheduler to admit them")
+                    .tags("name", name, "priority", tag)
+                    .register(registry);
+            timers.put(priority, Timer.builder("qurag.ai.queue.wait")
+                    .description("Time calls waited for the AI call scheduler to admit them")
+                    .tags("name", name, "priority", tag)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(registry));
+        }
+        waitTimers = timers;
+
+        Gauge.builder("qurag.ai.rate", this, AiCallScheduler::getRate)
+                .description("Requests per second the AI call scheduler currently admits")
+                .tag("name", name)
+                .register(registry);
+        FunctionCounter.builder("qurag.ai.throttled", throttled, LongAdder::sum)
+                .description("Rate-limited responses that slowed the AI call scheduler down")
+                .tag("name", name)
+                .register(registry);
+        FunctionCounter.builder("qurag.ai.rejections", rejections, LongAdder::sum)
+                .description("Interactive calls refused after waiting too long for the AI call scheduler")
+                .tag("name", name)
+                .register(registry);
+    }
+
+    // Returns when the call was admitted, as a System.nanoTime() value
+    private long acquire(CallPriority priority) {
+        long start = System.nanoTime();
+        long deadline = priority == CallPriority.INTERACTIVE ? start + interactiveMaxWait.toNanos() : Long.MAX_VALUE;
+
+        queued.get(priority).incrementAndGet();
+        lock.lock();
+        Waiter waiter = new Waiter(priority, nextSequence++, lock.newCondition());
+        waiters.add(waiter);
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                refill(now);
+                boolean first = waiters.peek() == waiter;
+                if (first && tokens >= 1) {
+                    tokens -= 1;
+                    break;
+                }
+                if (deadline != Long.MAX_VALUE && deadline - now <= 0) {
+                    rejections.increment();
+                    log.warn("{} call waited {} ms for the request quota, refusing it",
+                            name, interactiveMaxWait.toMillis());
+                    throw new ServiceUnavailableException("The " + name
+                            + " service is over its request quota, please retry shortly");
+                }
+
+                // Only the first waiter sleeps until a token is due; the rest wait to be signalled
+                long wait = first ? (long) Math.ceil((1 - tokens) / rate * 1e9) : Long.MAX_VALUE;
+                if (deadline != Long.MAX_VALUE) {
+                    wait = Math.min(wait, deadline - now);
+                }
+                if (wait == Long.MAX_VALUE) {
+                    waiter.ready().await();
+                } else {
+                    waiter.ready().awaitNanos(wait);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Interrupted while waiting for the " + name + " service");
+        } finally {
+            waiters.remove(waiter);
+            Waiter next = waiters.peek();
+            if (next != null) {
+                next.ready().signal();
+            }
+            lock.unlock();
+            queued.get(priority).decrementAndGet();
+        }
+
+        long admittedAt = System.nanoTime();
+        Map<CallPriority, Timer> timers = waitTimers;
+        if (timers != null) {
+            timers.get(priority).record(admittedAt - start, TimeUnit.NANOSECONDS);
+        }
+        return admittedAt;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(burst, tokens + (now - refilledAt) / 1e9 * rate);
+        refilledAt = now;
+    }
+
+    private void onSuccess() {
+        lock.lock();
+        try {
+            rate = Math.min(maxRate, rate + maxRate * INCREASE_FRACTION);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onFailure(Throwable error, long admittedAt) {
+        if (!isRateLimited(error)) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (admittedAt - slowedDownAt < 0) {
+                return;
+            }
+            long now = System.nanoTime();
+            refill(now);
+            rate = Math.max(maxRate * MIN_RATE_FRACTION, rate * DECREASE_FACTOR);
+            tokens = 0;
+            slowedDownAt = now;
+            throttled.increment();
+            log.warn("{} calls were rate limited, slowing down to {} requests per second",
+                    name, String.format(Locale.ROOT, "%.2f", rate));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether the provider refused the call for quota: HTTP 429 or gRPC {@code RESOURCE_EXHAUSTED}. Other
+     * transient failures, such as 5xx responses and timeouts, are not, so they never slow the scheduler down.
+     */
+    public static boolean isRateLimited(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof RestClientResponseException response) {
+                return response.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value();
+            }
+            String message = t.getMessage();
+            if (message != null && QUOTA_STATUS.matcher(message).lookingAt()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record Waiter(CallPriority priority, long sequence, Condition ready) {
+    }
+}
@@ -0,0 +1,127 @@
+package dev.slethware.qurag.service.concurrency;
+
+import dev.slethware.qurag.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Caps the number of concurrent calls to one downstream dependency.
+ * <p>
+ * Callers wait up to {@code maxWait} for a permit and are then refused with a
+ * {@link ServiceUnavailableException}, so a slow dependency fills its own bulkhead instead of every request
+ * thread. With virtual threads the waiting itself is cheap; the limit protects the dependency and its quota.
+ */
+@Slf4j
+public class Bulkhead implements MeterBinder {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final Duration maxWait;
+    private final Semaphore permits;
+
+    private final LongAdder rejections = new LongAdder();
+
+    public Bulkhead(String name, int maxConcurrent, Duration maxWait) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxWait = maxWait;
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    public <T> T call(Supplier<T> work) {
+        acquire();
+        try {
+            return work.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * For calls whose result keeps using the dependency after they return, such as a response body read
+     * later. {@code work} gets the permit's release action and must run it once the result is done with; it
+     * runs at most once however often it is called, and straight away if {@code work} throws.
+     */
+    public <T> T open(Function<Runnable, T> work) {
+        acquire();
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        };
+        try {
+            return work.apply(release);
+        } catch (RuntimeException | Error e) {
+            release.run();
+            throw e;
+        }
+    }
+
+    // The permit is taken on subscription and held until the stream terminates or is cancelled
+    public <T> Flux<T> flux(Supplier<Flux<T>> source) {
+        return Flux.defer(() -> {
+            acquire();
+            try {
+                return source.get().doFinally(signal -> permits.release());
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getActive() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("qurag.bulkhead.active", this, Bulkhead::getActive)
+                .description("Calls currently holding a bulkhead permit")
+                .tag("name", name)
+                .register(registry);
+        Gauge.builder("qurag.bulkhead.limit", () -> maxConcurrent)
+                .description("Maximum concurrent calls allowed through a bulkhead")
+                .tag("name", name)
+                .register(registry);
+        FunctionCounter.builder("qurag.bulkhead.rejections", rejections, LongAdder::sum)
+                .description("Calls refused because a bulkhead stayed full for the whole wait")
+                .tag("name", name)
+                .register(registry);
+    }
+
+    private void acquire() {
+        try {
+            if (permits.tryAcquire(maxWait.toMillis(), TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejections.increment();
+        log.warn("Bulkhead {} is full ({} concurrent calls), refusing call after {} ms",
+                name, maxConcurrent, maxWait.toMillis());
+        throw new ServiceUnavailableException("The " + name + " service is busy, please retry shortly");
+    }
+}
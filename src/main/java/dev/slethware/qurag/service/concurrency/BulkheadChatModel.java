@@ -0,0 +1,37 @@
+package dev.slethware.qurag.service.concurrency;
+
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+/**
+ * Routes every call to the application's {@link ChatModel} through the chat {@link Bulkhead}.
+ * A streamed answer holds its permit until the last token has been received.
+ */
+public class BulkheadChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+    private final Bulkhead bulkhead;
+
+    public BulkheadChatModel(ChatModel delegate, Bulkhead bulkhead) {
+        this.delegate = delegate;
+        this.bulkhead = bulkhead;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        return bulkhead.call(() -> delegate.call(prompt));
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return bulkhead.flux(() -> delegate.stream(prompt));
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return delegate.getDefaultOptions();
+    }
+}
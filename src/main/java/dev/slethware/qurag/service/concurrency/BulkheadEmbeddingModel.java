@@ -0,0 +1,36 @@
+package dev.slethware.qurag.service.concurrency;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+/**
+ * Routes every call to the application's {@link EmbeddingModel} through the embedding {@link Bulkhead}.
+ * It sits beneath the embedding cache, so only texts that actually reach the provider take a permit.
+ */
+public class BulkheadEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final Bulkhead bulkhead;
+
+    public BulkheadEmbeddingModel(EmbeddingModel delegate, Bulkhead bulkhead) {
+        this.delegate = delegate;
+        this.bulkhead = bulkhead;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return bulkhead.call(() -> delegate.call(request));
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return bulkhead.call(() -> delegate.embed(document));
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+}
@@ -0,0 +1,30 @@
+package dev.slethware.qurag.service.concurrency;
+
+import java.util.function.Supplier;
+
+/**
+ * Priority of outbound AI calls made by the current thread, used by {@link AiCallScheduler}.
+ * Calls are interactive unless made inside {@link #background(Supplier)}, as ingestion does.
+ */
+public enum CallPriority {
+
+    // Declared in scheduling order
+    INTERACTIVE,
+    BACKGROUND;
+
+    private static final ThreadLocal<CallPriority> CURRENT = ThreadLocal.withInitial(() -> INTERACTIVE);
+
+    public static CallPriority current() {
+        return CURRENT.get();
+    }
+
+    public static <T> T background(Supplier<T> work) {
+        CallPriority previous = CURRENT.get();
+        CURRENT.set(BACKGROUND);
+        try {
+            return work.get();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package dev.slethware.qurag.service.concurrency;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stops calling a downstream dependency after it has failed too many times in a row.
+ * <p>
+ * After {@code failureThreshold} consecutive failures the breaker opens and {@link #tryAcquire()} refuses every
+ * call for {@code openDuration}, so callers fall back straight away instead of waiting on a dependency that is
+ * not answering. After that one trial call is let through: success closes the breaker, failure opens it again.
+ */
+@Slf4j
+public class CircuitBreaker implements MeterBinder {
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final String name;
+    private final int failureThreshold;
+    private final Duration openDuration;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openUntilNanos;
+
+    private final LongAdder shortCircuits = new LongAdder();
+
+    public CircuitBreaker(String name, int failureThreshold, Duration openDuration) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    // Every call allowed through must be followed by onSuccess, onFailure or onIgnored
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.nanoTime() - openUntilNanos >= 0) {
+            state = State.HALF_OPEN;
+            log.info("Circuit breaker {} is half-open, letting a trial call through", name);
+            return true;
+        }
+        if (state == State.CLOSED) {
+            return true;
+        }
+        shortCircuits.increment();
+        return false;
+    }
+
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("Circuit breaker {} closed", name);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openUntilNanos = System.nanoTime() + openDuration.toNanos();
+            log.warn("Circuit breaker {} opened after {} consecutive failures, skipping calls for {} ms",
+                    name, consecutiveFailures, openDuration.toMillis());
+        }
+    }
+
+    // For a call that never reached the dependency, such as one rejected by a local limit: it counts as neither
+    // outcome, and a half-open breaker lets the next call through as its trial instead
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+            openUntilNanos = System.nanoTime();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public long getShortCircuits() {
+        return shortCircuits.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("qurag.circuit.open", this, breaker -> breaker.getState() == State.CLOSED ? 0 : 1)
+                .description("Whether a circuit breaker is open or half-open")
+                .tag("name", name)
+                .register(registry);
+        FunctionCounter.builder("qurag.circuit.short.circuits", shortCircuits, LongAdder::sum)
+                .description("Calls skipped because a circuit breaker was open")
+                .tag("name", name)
+                .register(registry);
+    }
+}
@@ -0,0 +1,37 @@
+package dev.slethware.qurag.service.concurrency;
+
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+/**
+ * Admits every call to the application's {@link ChatModel} through the chat {@link AiCallScheduler}.
+ * It sits outside the chat bulkhead, so calls queued for the quota do not hold a bulkhead permit.
+ */
+public class ScheduledChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+    private final AiCallScheduler scheduler;
+
+    public ScheduledChatModel(ChatModel delegate, AiCallScheduler scheduler) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        return scheduler.call(() -> delegate.call(prompt));
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return scheduler.flux(() -> delegate.stream(prompt));
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return delegate.getDefaultOptions();
+    }
+}
@@ -0,0 +1,48 @@
+package dev.slethware.qurag.service.concurrency;
+
+import dev.slethware.qurag.service.embedding.QueryEmbeddings;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.List;
+
+/**
+ * Admits every call to the application's {@link EmbeddingModel} through the embedding {@link AiCallScheduler}.
+ * Like the bulkhead it sits beneath the embedding cache, and it sits outside the bulkhead so calls queued for
+ * the quota do not hold a permit. A question already embedded by the caller, offered through
+ * {@link QueryEmbeddings}, is answered without a call.
+ */
+public class ScheduledEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final AiCallScheduler scheduler;
+
+    public ScheduledEmbeddingModel(EmbeddingModel delegate, AiCallScheduler scheduler) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        if (request.getInstructions().size() == 1) {
+            float[] offered = QueryEmbeddings.lookup(request.getInstructions().get(0));
+            if (offered != null) {
+                return new EmbeddingResponse(List.of(new Embedding(offered, 0)));
+            }
+        }
+        return scheduler.call(() -> delegate.call(request));
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return scheduler.call(() -> delegate.embed(document));
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+}
@@ -0,0 +1,714 @@
+package dev.slethware.qurag.service.document;
+
+import dev.slethware.qurag.entity.Document;
+import dev.slethware.qurag.entity.DocumentChunk;
+import dev.slethware.qurag.entity.DocumentContent;
+import dev.slethware.qurag.entity.ProcessingStatus;
+import dev.slethware.qurag.event.DocumentsChangedEvent;
+import dev.slethware.qurag.exception.BadRequestException;
+import dev.slethware.qurag.exception.ResourceNotFoundException;
+import dev.slethware.qurag.repository.DocumentChunkRepository;
+import dev.slethware.qurag.repository.DocumentContentRepository;
+import dev.slethware.qurag.repository.DocumentRepository;
+import dev.slethware.qurag.service.S3.S3ObjectStream;
+import dev.slethware.qurag.service.S3.S3Service;
+import dev.slethware.qurag.service.metrics.QuragMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Runs parse, chunk and embed for uploaded documents off the request thread.
+ * <p>
+ * Text is extracted and chunked on the parse pool while the file streams in from S3; a single upload hands
+ * its chunks to the embed pool in batches as they fill, so neither the file nor its full text is ever held in
+ * memory. The number of jobs admitted at once is capped so that uploads are refused up front instead of
+ * queueing without bound.
+ * Documents submitted through a {@link BulkIngestion} are parsed the same way, but their chunks are
+ * pooled and embedded together, so many small files share full-size embedding batches.
+ * <p>
+ * A new version of an existing document is chunked the same way and compared with the stored chunks by
+ * content hash; only chunks that are new or have moved are written, and chunks that are gone are deleted.
+ * The previous version stays searchable until then: its vectors, chunk rows and stored file are only replaced
+ * once every new vector is written, and a failed update removes just the vectors it wrote and puts the
+ * previous version's fields back.
+ * <p>
+ * When any stage of a new upload fails, the chunk rows and vectors the document already has are removed before
+ * its status is set, so a failed document leaves nothing searchable behind.
+ */
+@Slf4j
+@Component
+public class DocumentIngestionPipeline {
+
+    private static final int MAX_FAILURE_REASON_LENGTH = 2000;
+
+    // Bulk embed groups span file types, so their embed stage is tagged with this instead
+    private static final String MIXED_FILE_TYPES = "mixed";
+
+    private static final long ADMISSION_POLL_MS = 100;
+
+    private final DocumentRepository documentRepository;
+    private final DocumentChunkRepository documentChunkRepository;
+    private final DocumentContentRepository documentContentRepository;
+    private final EmbeddingBatchWriter embeddingBatchWriter;
+    private final S3Service s3Service;
+    private final ThreadPoolTaskExecutor parseExecutor;
+    private final ThreadPoolTaskExecutor embedExecutor;
+    private final ApplicationEventPublisher eventPublisher;
+    private final QuragMetrics metrics;
+    private final Semaphore admissions;
+    private final int bulkEmbedChunks;
+    private final Duration bulkAdmissionWait;
+    private final int streamBatchChunks;
+    private final int maxBatchesInFlight;
+    private final int maxStoredTextChars;
+
+    public DocumentIngestionPipeline(DocumentRepository documentRepository,
+                                     DocumentChunkRepository documentChunkRepository,
+                                     DocumentContentRepository documentContentRepository,
+                                     EmbeddingBatchWriter embeddingBatchWriter,
+                                     S3Service s3Service,
+                                     @Qualifier("ingestionParseExecutor") ThreadPoolTaskExecutor parseExecutor,
+                                     @Qualifier("ingestionEmbedExecutor") ThreadPoolTaskExecutor embedExecutor,
+                                     ApplicationEventPublisher eventPublisher,
+                                     QuragMetrics metrics,
+                                     @Value("${qurag.ingestion.max-pending-jobs}") int maxPendingJobs,
+                                     @Value("${qurag.ingestion.bulk.embed-chunks}") int bulkEmbedChunks,
+                                     @Value("${qurag.ingestion.bulk.admission-wait-seconds}") long bulkAdmissionWaitSeconds,
+                                     @Value("${qurag.ingestion.stream.batch-chunks}") int streamBatchChunks,
+                                     @Value("${qurag.ingestion.stream.max-batches-in-flight}") int maxBatchesInFlight,
+                                     @Value("${qurag.ingestion.stored-text-max-chars}") int maxStoredTextChars) {
+        this.documentRepository = documentRepository;
+        this.documentChunkRepository = documentChunkRepository;
+        this.documentContentRepository = documentContentRepository;
+        this.embeddingBatchWriter = embeddingBatchWriter;
+        this.s3Service = s3Service;
+        this.parseExecutor = parseExecutor;
+        this.embedExecutor = embedExecutor;
+        this.eventPublisher = eventPublisher;
+        this.metrics = metrics;
+        this.admissions = new Semaphore(maxPendingJobs);
+        this.bulkEmbedChunks = bulkEmbedChunks;
+        this.bulkAdmissionWait = Duration.ofSeconds(bulkAdmissionWaitSeconds);
+        this.streamBatchChunks = streamBatchChunks;
+        this.maxBatchesInFlight = maxBatchesInFlight;
+        this.maxStoredTextChars = maxStoredTextChars;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpParsers() {
+        DocumentParsers.warmUp();
+    }
+
+    // Reserve a slot before the upload is stored; every successful reservation must end in submit or release
+    public boolean tryReserve() {
+        return admissions.tryAcquire();
+    }
+
+    public void release() {
+        admissions.release();
+    }
+
+    // Ingestion time is measured from here, so it includes any wait for a parse thread
+    public void submit(UUID documentId) {
+        long submittedAt = System.nanoTime();
+        parseExecutor.execute(() -> parse(documentId, submittedAt, null, null));
+    }
+
+    // Re-ingests a document whose file was replaced; with rewriteUnchanged, kept chunks are written again too
+    void submitUpdate(UUID documentId, boolean rewriteUnchanged, DocumentVersion previous) {
+        long submittedAt = System.nanoTime();
+        parseExecutor.execute(() -> parse(documentId, submittedAt, null, new Update(rewriteUnchanged, previous)));
+    }
+
+    public BulkIngestion openBulk() {
+        return new BulkIngestion();
+    }
+
+    private void parse(UUID documentId, long submittedAt, BulkIngestion bulk, Update update) {
+        try {
+            Document document = updateStatus(documentId, ProcessingStatus.PARSING);
+
+            if (bulk == null && update == null) {
+                stream(document, submittedAt);
+                return;
+            }
+
+            // Bulk groups and updates act on all of a document's chunks at once, so these are collected first
+            List<org.springframework.ai.document.Document> chunks = new ArrayList<>();
+            StreamingChunker.ExtractedText text = metrics.timeIngestStage("parse", document.getFileType(),
+                    () -> extract(document, chunks::addAll));
+
+            if (chunks.isEmpty()) {
+                throw new BadRequestException("Failed to extract text from document");
+            }
+
+            chunked(documentId, text, chunks, submittedAt, bulk, update);
+
+        } catch (Exception e) {
+            if (update != null) {
+                failUpdate(documentId, update, List.of(), e, submittedAt);
+            } else {
+                fail(documentId, e, submittedAt);
+            }
+            if (bulk != null) {
+                bulk.settle();
+            }
+        }
+    }
+
+    // Extract and chunk text straight from the S3 stream
+    private StreamingChunker.ExtractedText extract(Document document,
+                                                   Consumer<List<org.springframework.ai.document.Document>> batches)
+            throws IOException {
+        try (S3ObjectStream object = s3Service.openStream(document.getFilename())) {
+            return StreamingChunker.extract(object.getInputStream(), document.getFileType(), streamBatchChunks,
+                    maxStoredTextChars, batches);
+        }
+    }
+
+    // Chunks are persisted and embedded batch by batch while the rest of the file is still being parsed
+    private void stream(Document document, long submittedAt) throws Exception {
+        StreamedIngestion ingestion = new StreamedIngestion(document);
+        StreamingChunker.ExtractedText text;
+        try {
+            text = metrics.timeIngestStage("parse", document.getFileType(), () -> extract(document, ingestion::accept));
+        } finally {
+            ingestion.drain();
+        }
+        ingestion.rethrowFailure();
+
+        if (text.chunkCount() == 0) {
+            throw new BadRequestException("Failed to extract text from document");
+        }
+
+        documentContentRepository.save(content(document.getId(), text));
+        complete(document.getId(), text.chunkCount(), submittedAt, ingestion.tokens.get());
+    }
+
+    private void chunked(UUID documentId, StreamingChunker.ExtractedText text,
+                         List<org.springframework.ai.document.Document> chunks, long submittedAt,
+                         BulkIngestion bulk, Update update) {
+        Document document = updateStatus(documentId, ProcessingStatus.CHUNKING);
+        stampMetadata(chunks, document, 0);
+
+        if (update != null) {
+            ChunkDiff diff = diff(documentChunkRepository
+                    .findByDocumentIdOrderByChunkIndexAsc(documentId, Pageable.unpaged())
+                    .getContent(), chunks, update.rewriteUnchanged());
+            documentRepository.updateChunkCount(documentId, diff.chunks().size());
+
+            embedExecutor.execute(() -> embedChanges(document, text, diff, update, submittedAt));
+            return;
+        }
+
+        metrics.timeIngestStage("persist", document.getFileType(), () -> {
+            persist(document, text, chunks);
+            return null;
+        });
+
+        bulk.add(new ChunkedDocument(documentId, chunks, submittedAt));
+    }
+
+    private void persist(Document document, StreamingChunker.ExtractedText text,
+                         List<org.springframework.ai.document.Document> chunks) {
+        // Keep text and chunks so the detail view never has to re-parse the original
+        documentContentRepository.save(content(document.getId(), text));
+        saveChunkRows(document.getId(), chunks, 0);
+
+        document.setChunkCount(chunks.size());
+        documentRepository.save(document);
+    }
+
+    private DocumentContent content(UUID documentId, StreamingChunker.ExtractedText text) {
+        return DocumentContent.builder()
+                .documentId(documentId)
+                .extractedText(text.text())
+                .truncated(text.truncated())
+                .build();
+    }
+
+    private void saveChunkRows(UUID documentId, List<org.springframework.ai.document.Document> chunks, int firstIndex) {
+        List<DocumentChunk> chunkRows = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            chunkRows.add(DocumentChunk.builder()
+                    .documentId(documentId)
+                    .chunkIndex(firstIndex + i)
+                    .vectorId(chunks.get(i).getId())
+                    .content(chunks.get(i).getText())
+                    .build());
+        }
+        documentChunkRepository.saveAll(chunkRows);
+    }
+
+    // The previous version is only taken down once the new one is fully written, so until then it still answers
+    private void embedChanges(Document document, StreamingChunker.ExtractedText text, ChunkDiff diff, Update update,
+                              long submittedAt) {
+        UUID documentId = document.getId();
+        try {
+            String fileType = updateStatus(documentId, ProcessingStatus.EMBEDDING).getFileType();
+
+            // Kept chunks are already in the store
+            AtomicInteger processed = new AtomicInteger(diff.chunks().size() - diff.changed().size());
+            documentRepository.updateProcessedChunks(documentId, processed.get());
+            int tokens = metrics.timeIngestStage("embed", fileType, () -> embeddingBatchWriter.write(diff.changed(),
+                    batchSize -> documentRepository.updateProcessedChunks(documentId, processed.addAndGet(batchSize))));
+
+            embeddingBatchWriter.delete(diff.removedVectorIds());
+            metrics.timeIngestStage("persist", fileType, () -> {
+                documentChunkRepository.deleteByDocumentId(documentId);
+                persist(document, text, diff.chunks());
+                return null;
+            });
+
+            log.info("Updated document {}: {} of {} chunks written, {} removed", documentId, diff.changed().size(),
+                    diff.chunks().size(), diff.removedVectorIds().size());
+            complete(documentId, diff.chunks().size(), submittedAt, tokens);
+            deleteStoredFile(update.previous().filename());
+
+        } catch (Exception e) {
+            failUpdate(documentId, update, diff.changed().stream()
+                    .map(org.springframework.ai.document.Document::getId)
+                    .toList(), e, submittedAt);
+        }
+    }
+
+    /**
+     * Pairs each new chunk with a stored chunk of identical content, which keeps its vector id. A kept chunk
+     * at a new position is still written, because its vector metadata carries the chunk index; it gets a new
+     * vector id so the stored one keeps serving until the update completes, and its embedding is served by the
+     * embedding cache. The vectors of stored chunks that were moved or left unpaired are returned for removal.
+     */
+    static ChunkDiff diff(List<DocumentChunk> stored, List<org.springframework.ai.document.Document> chunks,
+                          boolean rewriteUnchanged) {
+        Map<String, Deque<DocumentChunk>> storedByHash = new HashMap<>();
+        for (DocumentChunk row : stored) {
+            storedByHash.computeIfAbsent(contentHash(row.getContent()), hash -> new ArrayDeque<>()).add(row);
+        }
+
+        List<org.springframework.ai.document.Document> merged = new ArrayList<>(chunks.size());
+        List<org.springframework.ai.document.Document> changed = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            org.springframework.ai.document.Document chunk = chunks.get(i);
+            Deque<DocumentChunk> matches = storedByHash.get(contentHash(chunk.getText()));
+            DocumentChunk match = matches != null ? matches.poll() : null;
+
+            if (match == null || rewriteUnchanged || match.getChunkIndex() != i) {
+                merged.add(chunk);
+                changed.add(chunk);
+                if (match != null) {
+                    removed.add(match.getVectorId());
+                }
+                continue;
+            }
+
+            merged.add(new org.springframework.ai.document.Document(match.getVectorId(), chunk.getText(),
+                    chunk.getMetadata()));
+        }
+
+        storedByHash.values().forEach(unpaired -> unpaired.forEach(row -> removed.add(row.getVectorId())));
+        return new ChunkDiff(merged, changed, removed);
+    }
+
+    private static String contentHash(String text) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Embeds the chunks of several documents as one stream of batches; a failed write fails every document in it
+    private void embedGroup(List<ChunkedDocument> group) {
+        List<org.springframework.ai.document.Document> chunks = new ArrayList<>();
+        Map<String, AtomicInteger> processed = new HashMap<>();
+        for (ChunkedDocument document : group) {
+            chunks.addAll(document.chunks());
+            processed.put(document.documentId().toString(), new AtomicInteger());
+        }
+
+        int tokens;
+        try {
+            for (ChunkedDocument document : group) {
+                updateStatus(document.documentId(), ProcessingStatus.EMBEDDING);
+            }
+
+            tokens = metrics.timeIngestStage("embed", MIXED_FILE_TYPES, () -> embeddingBatchWriter.writeBatches(chunks,
+                    batch -> batch.stream()
+                            .collect(Collectors.groupingBy(chunk -> (String) chunk.getMetadata().get("document_id"),
+                                    Collectors.counting()))
+                            .forEach((id, count) -> documentRepository.updateProcessedChunks(UUID.fromString(id),
+                                    processed.get(id).addAndGet(count.intValue())))));
+            log.info("Embedded {} chunks from {} bulk-uploaded documents together", chunks.size(), group.size());
+
+        } catch (Exception e) {
+            for (ChunkedDocument document : group) {
+                fail(document.documentId(), e, document.submittedAt());
+            }
+            return;
+        }
+
+        for (ChunkedDocument document : group) {
+            try {
+                // Token counts are only known per group, so each document is attributed its share by chunk count
+                complete(document.documentId(), document.chunks().size(), document.submittedAt(),
+                        (int) ((long) tokens * document.chunks().size() / Math.max(chunks.size(), 1)));
+            } catch (Exception e) {
+                fail(document.documentId(), e, document.submittedAt());
+            }
+        }
+    }
+
+    private void complete(UUID documentId, int chunkCount, long submittedAt, int tokens) {
+        Document document = findDocument(documentId);
+        document.setChunkCount(chunkCount);
+        document.setProcessedChunks(chunkCount);
+        document.setStatus(ProcessingStatus.COMPLETED);
+        documentRepository.save(document);
+
+        log.info("Document processed successfully: {} with {} chunks", document.getOriginalFilename(), chunkCount);
+        metrics.recordIngest(document.getFileType(), QuragMetrics.SUCCESS, elapsed(submittedAt), document.getFileSize(),
+                chunkCount, tokens);
+        eventPublisher.publishEvent(new DocumentsChangedEvent(this, documentId));
+        release();
+    }
+
+    // Everything a query can be scoped by; uploaded_at is epoch milliseconds in UTC, as QueryScope compares it
+    static void stampMetadata(List<org.springframework.ai.document.Document> chunks, Document document,
+                              int firstIndex) {
+        String id = document.getId().toString();
+        Long uploadedAt = document.getUploadedAt() != null
+                ? document.getUploadedAt().toInstant(ZoneOffset.UTC).toEpochMilli()
+                : null;
+        for (int i = 0; i < chunks.size(); i++) {
+            Map<String, Object> metadata = chunks.get(i).getMetadata();
+            metadata.put("document_id", id);
+            metadata.put("chunk_index", firstIndex + i);
+            metadata.put("filename", document.getOriginalFilename());
+            if (document.getFileType() != null) {
+                metadata.put("file_type", document.getFileType());
+            }
+            if (uploadedAt != null) {
+                metadata.put("uploaded_at", uploadedAt);
+            }
+        }
+    }
+
+    private Document updateStatus(UUID documentId, ProcessingStatus status) {
+        Document document = findDocument(documentId);
+        document.setStatus(status);
+        return documentRepository.save(document);
+    }
+
+    private void fail(UUID documentId, Exception e, long submittedAt) {
+        log.error("Failed to process document {}: {}", documentId, e.getMessage(), e);
+        // Before the status, which is what lets a delete or a new version go ahead
+        removeChunks(documentId);
+        try {
+            Document document = findDocument(documentId);
+            document.setStatus(ProcessingStatus.FAILED);
+            document.setFailureReason(abbreviate(e.getMessage()));
+            documentRepository.save(document);
+            metrics.recordIngest(document.getFileType(), QuragMetrics.ERROR, elapsed(submittedAt),
+                    document.getFileSize(), document.getChunkCount() != null ? document.getChunkCount() : 0, 0);
+        } catch (Exception statusError) {
+            log.error("Failed to record failure for document {}: {}", documentId, statusError.getMessage());
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Undoes a failed update. Its vectors are not in the chunk rows yet, so they are removed by id; the previous
+     * version's rows and vectors were never touched, so it is restored with the failure noted. Without an indexed
+     * previous version there is nothing to go back to, and the document fails like a new upload.
+     */
+    private void failUpdate(UUID documentId, Update update, List<String> writtenVectorIds, Exception e,
+                            long submittedAt) {
+        try {
+            embeddingBatchWriter.delete(writtenVectorIds);
+        } catch (Exception removeError) {
+            log.error("Failed to remove vectors of failed update of document {}: {}", documentId,
+                    removeError.getMessage());
+        }
+
+        DocumentVersion previous = update.previous();
+        if (!previous.indexed()) {
+            fail(documentId, e, submittedAt);
+            deleteStoredFile(previous.filename());
+            return;
+        }
+
+        log.error("Failed to process new version of document {}, keeping the previous one: {}", documentId,
+                e.getMessage(), e);
+        try {
+            Document document = findDocument(documentId);
+            String failedFilename = document.getFilename();
+            metrics.recordIngest(document.getFileType(), QuragMetrics.ERROR, elapsed(submittedAt),
+                    document.getFileSize(), document.getChunkCount() != null ? document.getChunkCount() : 0, 0);
+
+            previous.restore(document);
+            document.setFailureReason(abbreviate("Update failed, previous version kept: " + e.getMessage()));
+            documentRepository.save(document);
+            eventPublisher.publishEvent(new DocumentsChangedEvent(this, documentId));
+            deleteStoredFile(failedFilename);
+        } catch (Exception restoreError) {
+            log.error("Failed to restore previous version of document {}: {}", documentId, restoreError.getMessage());
+        } finally {
+            release();
+        }
+    }
+
+    // The document no longer points at the file, so a leftover object is only logged
+    private void deleteStoredFile(String filename) {
+        try {
+            s3Service.deleteFile(filename);
+        } catch (RuntimeException e) {
+            log.warn("Failed to delete {} from S3: {}", filename, e.getMessage());
+        }
+    }
+
+    // Batches written before the failure would otherwise stay searchable. Rows go after their vectors, so if
+    // removing the vectors fails they are still there for a delete or a new version to find.
+    private void removeChunks(UUID documentId) {
+        try {
+            embeddingBatchWriter.delete(documentChunkRepository.findVectorIdsByDocumentId(documentId));
+            documentChunkRepository.deleteByDocumentId(documentId);
+            eventPublisher.publishEvent(new DocumentsChangedEvent(this, documentId));
+        } catch (Exception removeError) {
+            log.error("Failed to remove chunks of failed document {}: {}", documentId, removeError.getMessage());
+        }
+    }
+
+    private Duration elapsed(long startNanos) {
+        return Duration.ofNanos(System.nanoTime() - startNanos);
+    }
+
+    private String abbreviate(String message) {
+        if (message == null || message.length() <= MAX_FAILURE_REASON_LENGTH) {
+            return message;
+        }
+        return message.substring(0, MAX_FAILURE_REASON_LENGTH);
+    }
+
+    private Document findDocument(UUID documentId) {
+        return documentRepository.findById(documentId)
+                .orElseThrow(() -> new ResourceNotFoundException("Document not found with id: " + documentId));
+    }
+
+    /**
+     * One bulk upload. Documents are submitted as they are stored; once parsed and chunked, their chunks wait
+     * here until at least {@code bulk.embed-chunks} are pending, then the group is embedded together. Whatever
+     * is left is flushed when the upload is closed and its last document has been chunked.
+     */
+    public class BulkIngestion {
+
+        private final List<ChunkedDocument> pending = new ArrayList<>();
+        private int pendingChunks;
+        private int submitted;
+        private int settled;
+        private boolean closed;
+
+        // Pending documents keep their admission slots until embedded, so they are flushed while waiting for one
+        public boolean reserve() {
+            long deadline = System.nanoTime() + bulkAdmissionWait.toNanos();
+            try {
+                while (!admissions.tryAcquire(ADMISSION_POLL_MS, TimeUnit.MILLISECONDS)) {
+                    flush();
+                    if (System.nanoTime() >= deadline) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        // Counted once the parse pool has taken it, so a rejected document never holds back the final flush
+        public void submit(UUID documentId) {
+            long submittedAt = System.nanoTime();
+            parseExecutor.execute(() -> parse(documentId, submittedAt, this, null));
+            synchronized (this) {
+                submitted++;
+            }
+        }
+
+        // No more documents will be submitted
+        public void close() {
+            boolean done;
+            synchronized (this) {
+                closed = true;
+                done = settled == submitted;
+            }
+            if (done) {
+                flush();
+            }
+        }
+
+        void add(ChunkedDocument document) {
+            boolean full;
+            synchronized (this) {
+                pending.add(document);
+                pendingChunks += document.chunks().size();
+                full = pendingChunks >= bulkEmbedChunks;
+            }
+            if (full) {
+                flush();
+            }
+            settle();
+        }
+
+        // Called once per submitted document, when it has been chunked or has failed
+        void settle() {
+            boolean done;
+            synchronized (this) {
+                settled++;
+                done = closed && settled == submitted;
+            }
+            if (done) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            List<ChunkedDocument> group;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                group = new ArrayList<>(pending);
+                pending.clear();
+                pendingChunks = 0;
+            }
+            try {
+                embedExecutor.execute(() -> embedGroup(group));
+            } catch (RejectedExecutionException e) {
+                // The embed queue stayed full for the whole hand-off wait; the group fails as a failed write would
+                for (ChunkedDocument document : group) {
+                    fail(document.documentId(), e, document.submittedAt());
+                }
+            }
+        }
+    }
+
+    /**
+     * One document ingested as a stream. Each batch of chunks is persisted on the parse thread and embedded on
+     * the embed pool; at most {@code stream.max-batches-in-flight} batches are embedding at once, after which
+     * parsing waits, so memory stays bounded however far parsing runs ahead.
+     */
+    private class StreamedIngestion {
+
+        private final Document document;
+        private final UUID documentId;
+        private final String fileType;
+        private final Semaphore inFlight = new Semaphore(maxBatchesInFlight);
+        private final AtomicInteger processed = new AtomicInteger();
+        private final AtomicInteger tokens = new AtomicInteger();
+        private final AtomicReference<Exception> failure = new AtomicReference<>();
+        private int chunkCount;
+
+        StreamedIngestion(Document document) {
+            this.document = document;
+            this.documentId = document.getId();
+            this.fileType = document.getFileType();
+        }
+
+        // Called on the parse thread for every batch the chunker emits
+        void accept(List<org.springframework.ai.document.Document> batch) {
+            rethrowFailure();
+            if (chunkCount == 0) {
+                updateStatus(documentId, ProcessingStatus.EMBEDDING);
+            }
+
+            stampMetadata(batch, document, chunkCount);
+            int firstIndex = chunkCount;
+            metrics.timeIngestStage("persist", fileType, () -> {
+                saveChunkRows(documentId, batch, firstIndex);
+                return null;
+            });
+            chunkCount += batch.size();
+            documentRepository.updateChunkCount(documentId, chunkCount);
+
+            inFlight.acquireUninterruptibly();
+            try {
+                embedExecutor.execute(() -> embed(batch));
+            } catch (RuntimeException e) {
+                inFlight.release();
+                throw e;
+            }
+        }
+
+        private void embed(List<org.springframework.ai.document.Document> batch) {
+            try {
+                tokens.addAndGet(metrics.timeIngestStage("embed", fileType, () -> embeddingBatchWriter.write(batch,
+                        batchSize -> documentRepository.updateProcessedChunks(documentId,
+                                processed.addAndGet(batchSize)))));
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                inFlight.release();
+            }
+        }
+
+        // Waits for every batch handed to the embed pool
+        void drain() {
+            inFlight.acquireUninterruptibly(maxBatchesInFlight);
+            inFlight.release(maxBatchesInFlight);
+        }
+
+        void rethrowFailure() {
+            Exception e = failure.get();
+            if (e instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e != null) {
+                throw new IllegalStateException("Failed to embed document chunks", e);
+            }
+        }
+    }
+
+    private record Update(boolean rewriteUnchanged, DocumentVersion previous) {
+    }
+
+    // The new version's chunks, the subset that has to be written, and the stored vectors it replaces
+    record ChunkDiff(List<org.springframework.ai.document.Document> chunks,
+                     List<org.springframework.ai.document.Document> changed,
+                     List<String> removedVectorIds) {
+    }
+
+    private record ChunkedDocument(UUID documentId, List<org.springframework.ai.document.Document> chunks,
+                                   long submittedAt) {
+    }
+}
@@ -0,0 +1,184 @@
+package dev.slethware.qurag.service.document;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.parser.microsoft.OfficeParserConfig;
+import org.apache.tika.parser.microsoft.ooxml.OOXMLParser;
+import org.apache.tika.parser.pdf.PDFParser;
+import org.apache.tika.parser.pdf.PDFParserConfig;
+import org.apache.tika.parser.txt.CharsetDetector;
+import org.apache.tika.parser.txt.CharsetMatch;
+import org.apache.tika.sax.BodyContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Text extraction by validated content type.
+ * <p>
+ * Plain text is decoded directly after detecting its charset, PDFs go straight to the PDF parser and DOCX files
+ * to the OOXML parser, so none of them pays for Tika's type detection or for building a parser per request.
+ * The parsers are thread-safe and shared; anything without a known content type still goes through
+ * auto-detection. {@link #warmUp()} runs one small document of each format through extraction and chunking so
+ * the first upload does not pay for class loading and the tokenizer's encoding tables.
+ */
+@Slf4j
+final class DocumentParsers {
+
+    static final String PDF = "application/pdf";
+    static final String DOCX = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+    static final String TEXT = "text/plain";
+
+    private static final Map<String, Parser> PARSERS = Map.of(
+            PDF, new PDFParser(),
+            DOCX, new OOXMLParser()
+    );
+    private static final AutoDetectParser FALLBACK = new AutoDetectParser();
+
+    // PDFBox keeps parsed structures beyond this in a temp file instead of on the heap
+    private static final long PDF_MAX_MAIN_MEMORY_BYTES = 64L * 1024 * 1024;
+
+    // Enough for the charset detector, which looks at no more than the first 8000 bytes
+    private static final int CHARSET_SNIFF_BYTES = 8 * 1024;
+    private static final int READ_BUFFER_CHARS = 8 * 1024;
+
+    private DocumentParsers() {
+    }
+
+    /**
+     * Writes the text of {@code inputStream} to {@code out} as it is read.
+     *
+     * @param contentType the content type the upload was validated against, or null if unknown
+     */
+    static void parse(InputStream inputStream, String contentType, Writer out) throws IOException {
+        if (TEXT.equals(contentType)) {
+            readText(inputStream, out);
+            return;
+        }
+
+        Parser parser = contentType == null ? FALLBACK : PARSERS.getOrDefault(contentType, FALLBACK);
+        try (TikaInputStream stream = TikaInputStream.get(inputStream)) {
+            parser.parse(stream, new BodyContentHandler(out), new Metadata(), parseContext());
+        } catch (SAXException | TikaException e) {
+            throw new IOException("Failed to extract text: " + e.getMessage(), e);
+        }
+    }
+
+    static void warmUp() {
+        long start = System.nanoTime();
+        Map<String, byte[]> samples;
+        try {
+            samples = samples();
+        } catch (UncheckedIOException e) {
+            log.warn("Could not build the documents to warm up the parsers with: {}", e.getMessage());
+            return;
+        }
+        samples.forEach((contentType, body) -> {
+            try {
+                StreamingChunker.extract(new ByteArrayInputStream(body), contentType, 10, 1_000, chunks -> {
+                });
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not warm up the {} parser: {}", contentType, e.getMessage());
+            }
+        });
+        log.info("Warmed up document parsers in {} ms", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // A short document of each supported format, built in memory
+    static Map<String, byte[]> samples() {
+        String text = "quRAG warm-up document. It has a couple of sentences so the tokenizer has work to do.";
+        Map<String, byte[]> samples = new LinkedHashMap<>();
+        samples.put(TEXT, text.getBytes(StandardCharsets.UTF_8));
+        samples.put(PDF, pdf(text));
+        samples.put(DOCX, docx(text));
+        return samples;
+    }
+
+    private static void readText(InputStream inputStream, Writer out) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(inputStream, CHARSET_SNIFF_BYTES);
+        try (Reader reader = new InputStreamReader(buffered, detectCharset(buffered))) {
+            char[] buffer = new char[READ_BUFFER_CHARS];
+            int read = reader.read(buffer);
+            // Decoders leave a byte order mark in place as a leading character
+            if (read > 0 && buffer[0] == '\uFEFF') {
+                out.write(buffer, 1, read - 1);
+                read = reader.read(buffer);
+            }
+            while (read >= 0) {
+                out.write(buffer, 0, read);
+                read = reader.read(buffer);
+            }
+        }
+    }
+
+    // Leaves the stream where it was
+    private static Charset detectCharset(BufferedInputStream inputStream) throws IOException {
+        CharsetMatch match = new CharsetDetector().setText(inputStream).detect();
+        if (match != null && Charset.isSupported(match.getName())) {
+            return Charset.forName(match.getName());
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private static ParseContext parseContext() {
+        PDFParserConfig pdfConfig = new PDFParserConfig();
+        pdfConfig.setMaxMainMemoryBytes(PDF_MAX_MAIN_MEMORY_BYTES);
+        OfficeParserConfig officeConfig = new OfficeParserConfig();
+        officeConfig.setUseSAXDocxExtractor(true);
+        ParseContext context = new ParseContext();
+        context.set(PDFParserConfig.class, pdfConfig);
+        context.set(OfficeParserConfig.class, officeConfig);
+        return context;
+    }
+
+    private static byte[] pdf(String text) {
+        try (PDDocument document = new PDDocument(); ByteArrayOutputStream bytes = new ByteArrayOutputStream()) {
+            PDPage page = new PDPage();
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.beginText();
+                content.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA), 12);
+                content.newLineAtOffset(72, 720);
+                content.showText(text);
+                content.endText();
+            }
+            document.save(bytes);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] docx(String text) {
+        try (XWPFDocument document = new XWPFDocument(); ByteArrayOutputStream bytes = new ByteArrayOutputStream()) {
+            document.createParagraph().createRun().setText(text);
+            document.write(bytes);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
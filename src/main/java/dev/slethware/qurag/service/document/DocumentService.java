@@ -1,15 +1,24 @@
 package dev.slethware.qurag.service.document;
 
+import dev.slethware.qurag.dto.response.BulkUploadResponse;
 import dev.slethware.qurag.dto.response.DocumentDetailResponse;
+import dev.slethware.qurag.dto.response.DocumentPageResponse;
 import dev.slethware.qurag.dto.response.DocumentResponse;
+import dev.slethware.qurag.dto.response.DocumentStatusResponse;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public interface DocumentService {
     DocumentResponse uploadDocument(MultipartFile file);
-    List<DocumentResponse> getAllDocuments();
-    DocumentDetailResponse getDocumentById(UUID documentId);
+    BulkUploadResponse uploadDocuments(List<MultipartFile> files);
+    DocumentPageResponse getAllDocuments(String cursor, int limit, String fileType, String filenamePrefix);
+    void exportDocuments(String fileType, String filenamePrefix, Consumer<DocumentResponse> consumer);
+    DocumentDetailResponse getDocumentById(UUID documentId, int page, int size);
     DocumentResponse getDocumentMetadata(UUID documentId);
+    DocumentStatusResponse getDocumentStatus(UUID documentId);
+    DocumentResponse updateDocument(UUID documentId, MultipartFile file);
+    void deleteDocument(UUID documentId);
 }
\ No newline at end of file
@@ -1,27 +1,55 @@
 package dev.slethware.qurag.service.document;
 
+import dev.slethware.qurag.dto.response.BulkUploadOutcome;
+import dev.slethware.qurag.dto.response.BulkUploadResponse;
+import dev.slethware.qurag.dto.response.BulkUploadResult;
 import dev.slethware.qurag.dto.response.DocumentDetailResponse;
+import dev.slethware.qurag.dto.response.DocumentPageResponse;
 import dev.slethware.qurag.dto.response.DocumentResponse;
+import dev.slethware.qurag.dto.response.DocumentStatusResponse;
+import dev.slethware.qurag.dto.response.ErrorResponse;
 import dev.slethware.qurag.entity.Document;
+import dev.slethware.qurag.entity.DocumentChunk;
+import dev.slethware.qurag.entity.DocumentContent;
+import dev.slethware.qurag.entity.ProcessingStatus;
+import dev.slethware.qurag.event.DocumentsChangedEvent;
 import dev.slethware.qurag.exception.BadRequestException;
 import dev.slethware.qurag.exception.ResourceNotFoundException;
+import dev.slethware.qurag.exception.ServiceUnavailableException;
+import dev.slethware.qurag.repository.DocumentChunkRepository;
+import dev.slethware.qurag.repository.DocumentContentRepository;
 import dev.slethware.qurag.repository.DocumentRepository;
+import dev.slethware.qurag.repository.DocumentSummary;
+import dev.slethware.qurag.service.S3.S3ObjectStream;
 import dev.slethware.qurag.service.S3.S3Service;
+import dev.slethware.qurag.service.metrics.QuragMetrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.ai.document.DocumentReader;
-import org.springframework.ai.reader.tika.TikaDocumentReader;
-import org.springframework.ai.transformer.splitter.TextSplitter;
-import org.springframework.ai.transformer.splitter.TokenTextSplitter;
-import org.springframework.ai.vectorstore.VectorStore;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 @Slf4j
 @Service
@@ -29,40 +57,108 @@ import java.util.stream.Collectors;
 public class DocumentServiceImpl implements DocumentService {
 
     private final DocumentRepository documentRepository;
-    private final VectorStore vectorStore;
+    private final DocumentChunkRepository documentChunkRepository;
+    private final DocumentContentRepository documentContentRepository;
     private final S3Service s3Service;
+    private final DocumentIngestionPipeline ingestionPipeline;
+    private final EmbeddingBatchWriter embeddingBatchWriter;
+    private final ApplicationEventPublisher eventPublisher;
+    private final QuragMetrics metrics;
 
     private static final Set<String> ALLOWED_FILE_TYPES = Set.of(
-            "application/pdf",
-            "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
-            "text/plain"
+            DocumentParsers.PDF,
+            DocumentParsers.DOCX,
+            DocumentParsers.TEXT
     );
 
+    private static final Map<String, String> CONTENT_TYPES_BY_EXTENSION = Map.of(
+            "pdf", DocumentParsers.PDF,
+            "docx", DocumentParsers.DOCX,
+            "txt", DocumentParsers.TEXT
+    );
+
+    private static final Set<String> ZIP_CONTENT_TYPES = Set.of("application/zip", "application/x-zip-compressed");
+
     private static final long MAX_FILE_SIZE = 200 * 1024 * 1024; // 200MB
 
+    private static final int MAX_BULK_FILES = 5000;
+
+    private static final String BULK_LIMIT_MESSAGE = "Bulk uploads are limited to " + MAX_BULK_FILES + " files";
+
+    private static final int MAX_CHUNK_PAGE_SIZE = 500;
+
+    // Text returned for documents that have to be re-parsed, matching what ingestion stores by default
+    private static final int MAX_REPARSED_TEXT_CHARS = 1_000_000;
+
+    private static final int MAX_LIST_LIMIT = 500;
+
+    private static final int EXPORT_BATCH_SIZE = 500;
+
     @Override
-    @Transactional
     public DocumentResponse uploadDocument(MultipartFile file) {
+        return accept(file, ingestionPipeline::tryReserve, ingestionPipeline::submit);
+    }
+
+    @Override
+    public BulkUploadResponse uploadDocuments(List<MultipartFile> files) {
+        if (files == null || files.isEmpty()) {
+            throw new BadRequestException("At least one file is required");
+        }
+
+        List<BulkUploadResult> results = new ArrayList<>();
+        DocumentIngestionPipeline.BulkIngestion bulk = ingestionPipeline.openBulk();
+        try {
+            for (MultipartFile file : files) {
+                if (isZipArchive(file)) {
+                    acceptArchive(file, bulk, results);
+                } else if (results.size() < MAX_BULK_FILES) {
+                    results.add(acceptBulkEntry(file, bulk));
+                } else {
+                    results.add(rejected(file.getOriginalFilename(), HttpStatus.BAD_REQUEST, BULK_LIMIT_MESSAGE));
+                }
+            }
+        } finally {
+            bulk.close();
+        }
+
+        Map<BulkUploadOutcome, Long> counts = results.stream()
+                .collect(Collectors.groupingBy(BulkUploadResult::getOutcome, Collectors.counting()));
+        log.info("Bulk upload processed {} files: {}", results.size(), counts);
+
+        return BulkUploadResponse.builder()
+                .results(results)
+                .accepted(counts.getOrDefault(BulkUploadOutcome.ACCEPTED, 0L).intValue())
+                .duplicates(counts.getOrDefault(BulkUploadOutcome.DUPLICATE, 0L).intValue())
+                .rejected(counts.getOrDefault(BulkUploadOutcome.REJECTED, 0L).intValue())
+                .build();
+    }
+
+    // Validates, de-duplicates and stores one file, then hands it to the pipeline through the given admission
+    private DocumentResponse accept(MultipartFile file, BooleanSupplier reserve, Consumer<UUID> submit) {
         validateFile(file);
 
+        // An identical file that is already indexed, or on its way there, is not parsed or embedded again
+        String checksum = checksum(file);
+        Optional<Document> existing = documentRepository.findFirstByChecksumAndStatusNot(checksum, ProcessingStatus.FAILED);
+        if (existing.isPresent()) {
+            log.info("Upload of {} matches existing document {}, skipping processing",
+                    file.getOriginalFilename(), existing.get().getId());
+            DocumentResponse response = mapToDocumentResponse(existing.get());
+            response.setDuplicate(true);
+            return response;
+        }
+
+        if (!reserve.getAsBoolean()) {
+            throw new ServiceUnavailableException("Too many documents are being processed, please retry later");
+        }
+
         String originalFilename = file.getOriginalFilename();
         String filename = UUID.randomUUID() + "_" + originalFilename;
 
         try {
             // Upload to S3
-            String s3Url = s3Service.uploadFile(file, filename);
-
-            // Extract text
-            DocumentReader reader = new TikaDocumentReader(new ByteArrayResource(file.getBytes()));
-            List<org.springframework.ai.document.Document> documents = reader.get();
-
-            if (documents.isEmpty()) {
-                throw new BadRequestException("Failed to extract text from document");
-            }
-
-            // Chunk the documents
-            TextSplitter textSplitter = new TokenTextSplitter();
-            List<org.springframework.ai.document.Document> chunks = textSplitter.apply(documents);
+            String s3Url = metrics.timeIngestStage("store", file.getContentType(),
+                    () -> s3Service.uploadFile(file, filename));
 
             Document document = Document.builder()
                     .filename(filename)
@@ -70,76 +166,377 @@ public class DocumentServiceImpl implements DocumentService {
                     .s3Url(s3Url)
                     .fileType(file.getContentType())
                     .fileSize(file.getSize())
-                    .chunkCount(chunks.size())
+                    .checksum(checksum)
+                    .chunkCount(0)
+                    .processedChunks(0)
+                    .status(ProcessingStatus.PENDING)
                     .build();
 
             documentRepository.save(document);
 
-            String documentId = document.getId().toString();
-            for (int i = 0; i < chunks.size(); i++) {
-                org.springframework.ai.document.Document chunk = chunks.get(i);
-                chunk.getMetadata().put("document_id", documentId);
-                chunk.getMetadata().put("chunk_index", i);
-                chunk.getMetadata().put("filename", originalFilename);
+            // Parse, chunk and embed continue in the background
+            submit.accept(document.getId());
+
+            log.info("Document accepted for processing: {} ({})", originalFilename, document.getId());
+
+            return mapToDocumentResponse(document);
+
+        } catch (RuntimeException e) {
+            ingestionPipeline.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public DocumentResponse updateDocument(UUID documentId, MultipartFile file) {
+        Document document = documentRepository.findById(documentId)
+                .orElseThrow(() -> new ResourceNotFoundException("Document not found with id: " + documentId));
+        claim(document);
+
+        // Until the pipeline has it, every way out puts the document back as it was
+        DocumentVersion previous = null;
+        boolean submitted = false;
+        try {
+            validateFile(file);
+
+            String checksum = checksum(file);
+            if (checksum.equals(document.getChecksum()) && document.getStatus() != ProcessingStatus.FAILED) {
+                log.info("Update of document {} is identical to the stored version, skipping processing", documentId);
+                DocumentResponse response = mapToDocumentResponse(document);
+                response.setDuplicate(true);
+                return response;
             }
 
-            vectorStore.add(chunks);
+            if (!ingestionPipeline.tryReserve()) {
+                throw new ServiceUnavailableException("Too many documents are being processed, please retry later");
+            }
 
-            log.info("Document uploaded successfully: {} with {} chunks", originalFilename, chunks.size());
+            // Kept vectors carry the filename and file type in their metadata, and a failed version may not have
+            // written them all
+            boolean rewriteUnchanged = document.getStatus() == ProcessingStatus.FAILED
+                    || !document.getOriginalFilename().equals(file.getOriginalFilename())
+                    || !Objects.equals(document.getFileType(), file.getContentType());
+            String filename = UUID.randomUUID() + "_" + file.getOriginalFilename();
+
+            try {
+                String s3Url = metrics.timeIngestStage("store", file.getContentType(),
+                        () -> s3Service.uploadFile(file, filename));
+
+                // Without chunk rows there is nothing to diff against, so untracked vectors are cleared up front
+                List<String> vectorIds = documentChunkRepository.findVectorIdsByDocumentId(documentId);
+                if (hasUntrackedVectors(document, vectorIds)) {
+                    embeddingBatchWriter.deleteDocument(documentId);
+                }
+                previous = DocumentVersion.of(document,
+                        document.getStatus() != ProcessingStatus.FAILED && !vectorIds.isEmpty());
+
+                document.setFilename(filename);
+                document.setOriginalFilename(file.getOriginalFilename());
+                document.setS3Url(s3Url);
+                document.setFileType(file.getContentType());
+                document.setFileSize(file.getSize());
+                document.setChecksum(checksum);
+                document.setProcessedChunks(0);
+                document.setFailureReason(null);
+                document.setStatus(ProcessingStatus.PENDING);
+                documentRepository.save(document);
+
+                // The previous file is deleted by the pipeline, once the new version has replaced it
+                ingestionPipeline.submitUpdate(documentId, rewriteUnchanged, previous);
+                submitted = true;
+
+            } catch (RuntimeException e) {
+                ingestionPipeline.release();
+                throw e;
+            }
+        } finally {
+            if (!submitted) {
+                unclaim(document, previous);
+            }
+        }
 
-            return mapToDocumentResponse(document);
+        log.info("New version of document {} accepted for processing: {}", documentId, file.getOriginalFilename());
+
+        return mapToDocumentResponse(document);
+    }
+
+    @Override
+    public void deleteDocument(UUID documentId) {
+        Document document = documentRepository.findById(documentId)
+                .orElseThrow(() -> new ResourceNotFoundException("Document not found with id: " + documentId));
+        claim(document);
+
+        // Vectors go first, so if removing them fails the document is still there to retry the delete
+        List<String> vectorIds;
+        try {
+            vectorIds = documentChunkRepository.findVectorIdsByDocumentId(documentId);
+            if (hasUntrackedVectors(document, vectorIds)) {
+                embeddingBatchWriter.deleteDocument(documentId);
+            } else {
+                embeddingBatchWriter.delete(vectorIds);
+            }
+
+            documentChunkRepository.deleteByDocumentId(documentId);
+            documentContentRepository.deleteById(documentId);
+            documentRepository.delete(document);
+        } catch (RuntimeException e) {
+            unclaim(document, null);
+            throw e;
+        }
+        deleteStoredFile(document.getFilename());
+
+        eventPublisher.publishEvent(new DocumentsChangedEvent(this, documentId));
+        log.info("Document deleted: {} ({}) with {} vectors", document.getOriginalFilename(), documentId,
+                vectorIds.size());
+    }
+
+    // A document still in the pipeline would get vectors written after they were removed here, and two
+    // updates or deletes of one document would interleave, so the status moves to PENDING in one statement
+    // that only succeeds for a settled document
+    private void claim(Document document) {
+        if (documentRepository.claimSettled(document.getId(), ProcessingStatus.PENDING) == 0) {
+            throw new BadRequestException("Document is still being processed, retry once it has completed");
+        }
+    }
+
+    // The loaded entity still holds the status from before the claim; changed fields are put back first
+    private void unclaim(Document document, DocumentVersion previous) {
+        if (previous != null) {
+            previous.restore(document);
+        }
+        try {
+            documentRepository.save(document);
+        } catch (RuntimeException e) {
+            log.error("Failed to release document {}: {}", document.getId(), e.getMessage());
+        }
+    }
 
+    // Documents indexed before chunk rows were kept have vectors whose ids were never recorded
+    private boolean hasUntrackedVectors(Document document, List<String> vectorIds) {
+        return vectorIds.isEmpty() && document.getStatus() == null;
+    }
+
+    // The index is already consistent by now, so a leftover object is only logged
+    private void deleteStoredFile(String filename) {
+        try {
+            s3Service.deleteFile(filename);
+        } catch (RuntimeException e) {
+            log.warn("Failed to delete {} from S3: {}", filename, e.getMessage());
+        }
+    }
+
+    // Entries are read one at a time from the upload stream; only the current entry is ever on disk
+    private void acceptArchive(MultipartFile archive, DocumentIngestionPipeline.BulkIngestion bulk,
+                               List<BulkUploadResult> results) {
+        try (ZipInputStream zip = new ZipInputStream(archive.getInputStream())) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String name = entryFilename(entry);
+                if (name == null) {
+                    continue;
+                }
+                if (results.size() >= MAX_BULK_FILES) {
+                    results.add(rejected(name, HttpStatus.BAD_REQUEST, BULK_LIMIT_MESSAGE));
+                    return;
+                }
+                results.add(acceptArchiveEntry(zip, name, bulk));
+            }
         } catch (IOException e) {
-            log.error("Failed to process document: {}", e.getMessage(), e);
-            throw new BadRequestException("Failed to process document: " + e.getMessage());
+            log.error("Failed to read archive {}: {}", archive.getOriginalFilename(), e.getMessage(), e);
+            results.add(rejected(archive.getOriginalFilename(), HttpStatus.BAD_REQUEST,
+                    "Failed to read ZIP archive: " + e.getMessage()));
+        }
+    }
+
+    private BulkUploadResult acceptArchiveEntry(ZipInputStream zip, String name,
+                                                DocumentIngestionPipeline.BulkIngestion bulk) throws IOException {
+        Path spool = Files.createTempFile("qurag-entry-", ".tmp");
+        try {
+            // Copying stops just past the size limit, so an oversized entry is rejected by validation without
+            // being written out in full
+            long size;
+            try (OutputStream out = Files.newOutputStream(spool)) {
+                size = copy(zip, out, MAX_FILE_SIZE + 1);
+            }
+            return acceptBulkEntry(new SpooledMultipartFile(name, contentTypeOf(name), spool, size), bulk);
+        } finally {
+            Files.deleteIfExists(spool);
         }
     }
 
+    private BulkUploadResult acceptBulkEntry(MultipartFile file, DocumentIngestionPipeline.BulkIngestion bulk) {
+        try {
+            DocumentResponse document = accept(file, bulk::reserve, bulk::submit);
+            return BulkUploadResult.builder()
+                    .filename(file.getOriginalFilename())
+                    .outcome(document.isDuplicate() ? BulkUploadOutcome.DUPLICATE : BulkUploadOutcome.ACCEPTED)
+                    .document(document)
+                    .build();
+
+        } catch (BadRequestException e) {
+            return rejected(file.getOriginalFilename(), HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (ServiceUnavailableException e) {
+            return rejected(file.getOriginalFilename(), HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("Failed to accept {} from bulk upload: {}", file.getOriginalFilename(), e.getMessage(), e);
+            return rejected(file.getOriginalFilename(), HttpStatus.INTERNAL_SERVER_ERROR, "Failed to store file");
+        }
+    }
+
+    private BulkUploadResult rejected(String filename, HttpStatus status, String message) {
+        return BulkUploadResult.builder()
+                .filename(filename)
+                .outcome(BulkUploadOutcome.REJECTED)
+                .error(ErrorResponse.builder()
+                        .message(message)
+                        .error(status.getReasonPhrase())
+                        .statusCode(status.value())
+                        .build())
+                .build();
+    }
+
+    private boolean isZipArchive(MultipartFile file) {
+        String filename = file.getOriginalFilename();
+        return ZIP_CONTENT_TYPES.contains(file.getContentType())
+                || (filename != null && filename.toLowerCase(Locale.ROOT).endsWith(".zip"));
+    }
+
+    // Directories, hidden files and macOS resource forks are skipped; entries are named by their last path segment
+    private String entryFilename(ZipEntry entry) {
+        if (entry.isDirectory() || entry.getName().startsWith("__MACOSX/")) {
+            return null;
+        }
+        String name = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+        return name.isEmpty() || name.startsWith(".") ? null : name;
+    }
+
+    // Archive entries carry no content type, so it is inferred from the extension
+    private String contentTypeOf(String filename) {
+        int dot = filename.lastIndexOf('.');
+        return dot < 0 ? null : CONTENT_TYPES_BY_EXTENSION.get(filename.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private long copy(InputStream in, OutputStream out, long limit) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+        int read;
+        while (total < limit && (read = in.read(buffer, 0, (int) Math.min(buffer.length, limit - total))) != -1) {
+            out.write(buffer, 0, read);
+            total += read;
+        }
+        return total;
+    }
+
     @Override
-    public List<DocumentResponse> getAllDocuments() {
-        return documentRepository.findAll().stream()
-                .map(this::mapToDocumentResponse)
-                .collect(Collectors.toList());
+    public DocumentPageResponse getAllDocuments(String cursor, int limit, String fileType, String filenamePrefix) {
+        if (limit < 1 || limit > MAX_LIST_LIMIT) {
+            throw new BadRequestException("Limit must be between 1 and " + MAX_LIST_LIMIT);
+        }
+
+        return fetchPage(decodeCursor(cursor), limit, fileType, filenamePrefix);
+    }
+
+    @Override
+    public void exportDocuments(String fileType, String filenamePrefix, Consumer<DocumentResponse> consumer) {
+        // Walk the same keyset pages so only one batch is ever in memory
+        String cursor = null;
+        DocumentPageResponse page;
+        do {
+            page = fetchPage(decodeCursor(cursor), EXPORT_BATCH_SIZE, fileType, filenamePrefix);
+            page.getDocuments().forEach(consumer);
+            cursor = page.getNextCursor();
+        } while (page.isHasMore());
+    }
+
+    private DocumentPageResponse fetchPage(Cursor after, int limit, String fileType, String filenamePrefix) {
+        // One extra row tells us whether another page exists without a count query
+        List<DocumentSummary> rows = documentRepository.findPage(
+                StringUtils.hasText(fileType) ? fileType : null,
+                StringUtils.hasText(filenamePrefix) ? likePrefix(filenamePrefix) : null,
+                after != null ? after.uploadedAt() : null,
+                after != null ? after.id() : null,
+                Limit.of(limit + 1));
+
+        boolean hasMore = rows.size() > limit;
+        List<DocumentSummary> page = hasMore ? rows.subList(0, limit) : rows;
+
+        return DocumentPageResponse.builder()
+                .documents(page.stream().map(this::mapToDocumentResponse).collect(Collectors.toList()))
+                .nextCursor(hasMore ? encodeCursor(page.get(page.size() - 1)) : null)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    private String likePrefix(String prefix) {
+        return prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    private String encodeCursor(DocumentSummary last) {
+        String value = last.getUploadedAt() + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Cursor decodeCursor(String cursor) {
+        if (!StringUtils.hasText(cursor)) {
+            return null;
+        }
+
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+            LocalDateTime uploadedAt = LocalDateTime.parse(parts[0]);
+            UUID id = UUID.fromString(parts[1]);
+            return new Cursor(uploadedAt, id);
+        } catch (RuntimeException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
     }
 
     @Override
-    public DocumentDetailResponse getDocumentById(UUID documentId) {
+    public DocumentDetailResponse getDocumentById(UUID documentId, int page, int size) {
+        validatePage(page, size);
+
         Document document = documentRepository.findById(documentId)
                 .orElseThrow(() -> new ResourceNotFoundException("Document not found with id: " + documentId));
 
-        // Download file from S3
-        String fileKey = document.getFilename();
-        byte[] fileBytes = s3Service.downloadFile(fileKey);
+        Optional<DocumentContent> content = documentContentRepository.findById(documentId);
 
-        try {
-            // Extract text again for display
-            DocumentReader reader = new TikaDocumentReader(new ByteArrayResource(fileBytes));
-            List<org.springframework.ai.document.Document> documents = reader.get();
+        // Documents ingested before chunks were persisted still have to be re-parsed from S3
+        if (content.isEmpty() && document.getStatus() == null) {
+            return reparseDocument(document, page, size);
+        }
 
-            String extractedText = documents.stream()
-                    .map(org.springframework.ai.document.Document::getText)
-                    .collect(Collectors.joining("\n\n"));
+        Page<DocumentChunk> chunkPage = documentChunkRepository
+                .findByDocumentIdOrderByChunkIndexAsc(documentId, PageRequest.of(page, size));
 
-            // Chunk the documents for display
-            TextSplitter textSplitter = new TokenTextSplitter();
-            List<org.springframework.ai.document.Document> chunks = textSplitter.apply(documents);
+        List<String> chunkContents = chunkPage.getContent().stream()
+                .map(DocumentChunk::getContent)
+                .collect(Collectors.toList());
+
+        return mapToDocumentDetailResponse(document,
+                content.map(DocumentContent::getExtractedText).orElse(null),
+                content.map(DocumentContent::getTruncated).orElse(false),
+                chunkContents, page, size, chunkPage.getTotalPages());
+    }
 
-            List<String> chunkContents = chunks.stream()
+    private DocumentDetailResponse reparseDocument(Document document, int page, int size) {
+        // Stream file from S3
+        String fileKey = document.getFilename();
+
+        try (S3ObjectStream object = s3Service.openStream(fileKey)) {
+            // Extract and chunk the text again for display
+            List<org.springframework.ai.document.Document> chunks = new ArrayList<>();
+            StreamingChunker.ExtractedText text = StreamingChunker.extract(object.getInputStream(),
+                    document.getFileType(), MAX_CHUNK_PAGE_SIZE, MAX_REPARSED_TEXT_CHARS, chunks::addAll);
+
+            int from = Math.min(page * size, chunks.size());
+            int to = Math.min(from + size, chunks.size());
+            List<String> chunkContents = chunks.subList(from, to).stream()
                     .map(org.springframework.ai.document.Document::getText)
                     .collect(Collectors.toList());
 
-            return DocumentDetailResponse.builder()
-                    .id(document.getId())
-                    .filename(document.getFilename())
-                    .originalFilename(document.getOriginalFilename())
-                    .fileType(document.getFileType())
-                    .fileSize(document.getFileSize())
-                    .chunkCount(document.getChunkCount())
-                    .uploadedAt(document.getUploadedAt())
-                    .s3Url(document.getS3Url())
-                    .extractedText(extractedText)
-                    .chunks(chunkContents)
-                    .build();
+            int totalPages = (chunks.size() + size - 1) / size;
+            return mapToDocumentDetailResponse(document, text.text(), text.truncated(), chunkContents, page, size,
+                    totalPages);
 
         } catch (Exception e) {
             log.error("Failed to extract document details: {}", e.getMessage(), e);
@@ -147,6 +544,27 @@ public class DocumentServiceImpl implements DocumentService {
         }
     }
 
+    private String checksum(MultipartFile file) {
+        try (DigestInputStream in = new DigestInputStream(file.getInputStream(), MessageDigest.getInstance("SHA-256"))) {
+            in.transferTo(OutputStream.nullOutputStream());
+            return HexFormat.of().formatHex(in.getMessageDigest().digest());
+
+        } catch (IOException | NoSuchAlgorithmException e) {
+            log.error("Failed to read uploaded file: {}", e.getMessage(), e);
+            throw new BadRequestException("Failed to read uploaded file: " + e.getMessage());
+        }
+    }
+
+    private void validatePage(int page, int size) {
+        if (page < 0) {
+            throw new BadRequestException("Page index cannot be negative");
+        }
+
+        if (size < 1 || size > MAX_CHUNK_PAGE_SIZE) {
+            throw new BadRequestException("Page size must be between 1 and " + MAX_CHUNK_PAGE_SIZE);
+        }
+    }
+
     private void validateFile(MultipartFile file) {
         if (file == null || file.isEmpty()) {
             throw new BadRequestException("File cannot be empty");
@@ -167,6 +585,23 @@ public class DocumentServiceImpl implements DocumentService {
         }
     }
 
+    @Override
+    public DocumentStatusResponse getDocumentStatus(UUID documentId) {
+        Document document = documentRepository.findById(documentId)
+                .orElseThrow(() -> new ResourceNotFoundException("Document not found with id: " + documentId));
+
+        return DocumentStatusResponse.builder()
+                .id(document.getId())
+                .status(resolveStatus(document.getStatus()))
+                .chunkCount(document.getChunkCount())
+                .processedChunks(document.getProcessedChunks() != null
+                        ? document.getProcessedChunks()
+                        : document.getChunkCount())
+                .failureReason(document.getFailureReason())
+                .updatedAt(document.getUpdatedAt() != null ? document.getUpdatedAt() : document.getUploadedAt())
+                .build();
+    }
+
     @Override
     public DocumentResponse getDocumentMetadata(UUID documentId) {
         Document document = documentRepository.findById(documentId)
@@ -175,6 +610,41 @@ public class DocumentServiceImpl implements DocumentService {
         return mapToDocumentResponse(document);
     }
 
+    private DocumentDetailResponse mapToDocumentDetailResponse(Document document, String extractedText,
+                                                               Boolean truncated, List<String> chunks, int page,
+                                                               int size, int totalPages) {
+        return DocumentDetailResponse.builder()
+                .id(document.getId())
+                .filename(document.getFilename())
+                .originalFilename(document.getOriginalFilename())
+                .fileType(document.getFileType())
+                .fileSize(document.getFileSize())
+                .chunkCount(document.getChunkCount())
+                .uploadedAt(document.getUploadedAt())
+                .s3Url(document.getS3Url())
+                .extractedText(extractedText)
+                .extractedTextTruncated(Boolean.TRUE.equals(truncated))
+                .chunks(chunks)
+                .chunkPage(page)
+                .chunkPageSize(size)
+                .totalChunkPages(totalPages)
+                .build();
+    }
+
+    private DocumentResponse mapToDocumentResponse(DocumentSummary document) {
+        return DocumentResponse.builder()
+                .id(document.getId())
+                .filename(document.getFilename())
+                .originalFilename(document.getOriginalFilename())
+                .fileType(document.getFileType())
+                .fileSize(document.getFileSize())
+                .chunkCount(document.getChunkCount())
+                .uploadedAt(document.getUploadedAt())
+                .s3Url(document.getS3Url())
+                .status(resolveStatus(document.getStatus()))
+                .build();
+    }
+
     private DocumentResponse mapToDocumentResponse(Document document) {
         return DocumentResponse.builder()
                 .id(document.getId())
@@ -185,6 +655,16 @@ public class DocumentServiceImpl implements DocumentService {
                 .chunkCount(document.getChunkCount())
                 .uploadedAt(document.getUploadedAt())
                 .s3Url(document.getS3Url())
+                .status(resolveStatus(document.getStatus()))
                 .build();
     }
-}
\ No newline at end of file
+
+    // Documents ingested before processing states were tracked have no status but are fully indexed
+    private ProcessingStatus resolveStatus(ProcessingStatus status) {
+        return status != null ? status : ProcessingStatus.COMPLETED;
+    }
+
+    // Position of the last row on the previous page
+    private record Cursor(LocalDateTime uploadedAt, UUID id) {
+    }
+}
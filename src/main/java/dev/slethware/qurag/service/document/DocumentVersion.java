@@ -0,0 +1,32 @@
+package dev.slethware.qurag.service.document;
+
+import dev.slethware.qurag.entity.Document;
+import dev.slethware.qurag.entity.ProcessingStatus;
+
+/**
+ * A document's fields as they were before a new version was submitted, so that a failed update can put them
+ * back. {@code indexed} is false when there are no tracked chunks to fall back on, e.g. for a failed version.
+ */
+record DocumentVersion(String filename, String originalFilename, String s3Url, String fileType, Long fileSize,
+                       String checksum, Integer chunkCount, Integer processedChunks, ProcessingStatus status,
+                       String failureReason, boolean indexed) {
+
+    static DocumentVersion of(Document document, boolean indexed) {
+        return new DocumentVersion(document.getFilename(), document.getOriginalFilename(), document.getS3Url(),
+                document.getFileType(), document.getFileSize(), document.getChecksum(), document.getChunkCount(),
+                document.getProcessedChunks(), document.getStatus(), document.getFailureReason(), indexed);
+    }
+
+    void restore(Document document) {
+        document.setFilename(filename);
+        document.setOriginalFilename(originalFilename);
+        document.setS3Url(s3Url);
+        document.setFileType(fileType);
+        document.setFileSize(fileSize);
+        document.setChecksum(checksum);
+        document.setChunkCount(chunkCount);
+        document.setProcessedChunks(processedChunks);
+        document.setStatus(status);
+        document.setFailureReason(failureReason);
+    }
+}
@@ -0,0 +1,245 @@
+package dev.slethware.qurag.service.document;
+
+import dev.slethware.qurag.service.concurrency.AiCallScheduler;
+import dev.slethware.qurag.service.concurrency.CallPriority;
+import dev.slethware.qurag.service.metrics.QuragMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Writes chunks to the vector store in token-bounded batches.
+ * <p>
+ * The vector store embeds each batch as part of {@code add}, so every batch is one embedding request
+ * followed by its upsert. Batches run on virtual threads; a shared semaphore caps how many are in flight
+ * across all documents being ingested. Vectors of removed chunks are deleted through the same writer.
+ */
+@Slf4j
+@Component
+public class EmbeddingBatchWriter {
+
+    private final VectorStore vectorStore;
+    private final QuragMetrics metrics;
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+    private final int maxBatchTokens;
+    private final int maxBatchChunks;
+    private final int maxRetries;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final Semaphore permits;
+
+    public EmbeddingBatchWriter(VectorStore vectorStore,
+                                QuragMetrics metrics,
+                                @Value("${qurag.embedding.batch-max-tokens}") int maxBatchTokens,
+                                @Value("${qurag.embedding.batch-max-chunks}") int maxBatchChunks,
+                                @Value("${qurag.embedding.concurrency}") int concurrency,
+                                @Value("${qurag.embedding.max-retries}") int maxRetries,
+                                @Value("${qurag.embedding.initial-backoff-ms}") long initialBackoffMs,
+                                @Value("${qurag.embedding.max-backoff-ms}") long maxBackoffMs) {
+        this.vectorStore = vectorStore;
+        this.metrics = metrics;
+        this.maxBatchTokens = maxBatchTokens;
+        this.maxBatchChunks = maxBatchChunks;
+        this.maxRetries = maxRetries;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.permits = new Semaphore(concurrency);
+    }
+
+    /**
+     * Embeds and upserts the chunks, reporting the size of every batch once it is stored.
+     * Blocks until all batches are written. After the first failing batch no further batch starts, and the
+     * failure is only thrown once the batches already writing have finished, so nothing is stored after it.
+     *
+     * @return the estimated token count of all chunks
+     */
+    public int write(List<Document> chunks, IntConsumer progress) {
+        return writeBatches(chunks, batch -> progress.accept(batch.size()));
+    }
+
+    /**
+     * Same as {@link #write(List, IntConsumer)}, but reports the chunks of each stored batch, for callers
+     * that write chunks of several documents at once.
+     *
+     * @return the estimated token count of all chunks
+     */
+    public int writeBatches(List<Document> chunks, Consumer<List<Document>> stored) {
+        List<Batch> batches = batches(chunks);
+        log.debug("Writing {} chunks in {} batches", chunks.size(), batches.size());
+
+        // Not Future.cancel: a cancelled task counts as done, and close() would return while it still writes
+        AtomicBoolean failed = new AtomicBoolean();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Batch batch : batches) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        if (writeBatch(batch, failed)) {
+                            stored.accept(batch.chunks());
+                        }
+                    } catch (Exception e) {
+                        failed.set(true);
+                        throw e;
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    failed.set(true);
+                    if (e.getCause() instanceof RuntimeException runtimeException) {
+                        throw runtimeException;
+                    }
+                    throw new IllegalStateException("Failed to write embedding batch", e.getCause());
+                } catch (InterruptedException e) {
+                    failed.set(true);
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while writing embeddings", e);
+                }
+            }
+        }
+        return batches.stream().mapToInt(Batch::tokens).sum();
+    }
+
+    List<List<Document>> partition(List<Document> chunks) {
+        return batches(chunks).stream().map(Batch::chunks).toList();
+    }
+
+    private List<Batch> batches(List<Document> chunks) {
+        List<Batch> batches = new ArrayList<>();
+        List<Document> current = new ArrayList<>();
+        int currentTokens = 0;
+
+        for (Document chunk : chunks) {
+            int tokens = tokenCountEstimator.estimate(chunk.getText());
+            if (!current.isEmpty() && (currentTokens + tokens > maxBatchTokens || current.size() >= maxBatchChunks)) {
+                batches.add(new Batch(current, currentTokens));
+                current = new ArrayList<>();
+                currentTokens = 0;
+            }
+            current.add(chunk);
+            currentTokens += tokens;
+        }
+
+        if (!current.isEmpty()) {
+            batches.add(new Batch(current, currentTokens));
+        }
+        return batches;
+    }
+
+    /**
+     * Removes vectors by id, in batches of at most {@code batch-max-chunks} ids. Failed batches are retried
+     * like writes.
+     */
+    public void delete(List<String> vectorIds) {
+        for (int from = 0; from < vectorIds.size(); from += maxBatchChunks) {
+            List<String> batch = vectorIds.subList(from, Math.min(from + maxBatchChunks, vectorIds.size()));
+            retrying("Vector delete", () -> vectorStore.delete(batch));
+        }
+        log.debug("Deleted {} vectors", vectorIds.size());
+    }
+
+    // For documents indexed before their chunk rows were kept, whose vector ids are not known
+    public void deleteDocument(UUID documentId) {
+        Filter.Expression filter = new FilterExpressionBuilder().eq("document_id", documentId.toString()).build();
+        retrying("Vector delete", () -> vectorStore.delete(filter));
+    }
+
+    // Skipped, returning false, once another batch of the same write has failed
+    private boolean writeBatch(Batch batch, AtomicBoolean failed) throws InterruptedException {
+        permits.acquire();
+        if (failed.get()) {
+            permits.release();
+            return false;
+        }
+        long start = System.nanoTime();
+        String outcome = QuragMetrics.ERROR;
+        try {
+            // Queued behind interactive queries by the embedding scheduler
+            CallPriority.background(() -> {
+                retrying("Embedding batch", () -> vectorStore.add(batch.chunks()));
+                return null;
+            });
+            outcome = QuragMetrics.SUCCESS;
+        } finally {
+            permits.release();
+            metrics.recordEmbeddingBatch(outcome, Duration.ofNanos(System.nanoTime() - start),
+                    batch.chunks().size(), batch.tokens());
+        }
+        return true;
+    }
+
+    private void retrying(String operation, Runnable call) {
+        int attempt = 0;
+        while (true) {
+            try {
+                call.run();
+                return;
+            } catch (RuntimeException e) {
+                if (!isRetryable(e) || attempt >= maxRetries) {
+                    throw e;
+                }
+                long backoff = backoffMillis(attempt++);
+                log.warn("{} failed ({}), retrying in {} ms (attempt {}/{})",
+                        operation, e.getMessage(), backoff, attempt, maxRetries);
+                sleep(backoff);
+            }
+        }
+    }
+
+    // Quota errors, and the 5xx and I/O failures that Spring AI's own retry template treats as transient
+    private static boolean isRetryable(Throwable error) {
+        if (AiCallScheduler.isRateLimited(error)) {
+            return true;
+        }
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof TransientAiException || t instanceof ResourceAccessException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry", e);
+        }
+    }
+
+    // Exponential backoff, jittered over the upper half of the window
+    private long backoffMillis(int attempt) {
+        long ceiling = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    private record Batch(List<Document> chunks, int tokens) {
+    }
+}
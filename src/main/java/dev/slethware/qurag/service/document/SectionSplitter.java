@@ -0,0 +1,154 @@
+package dev.slethware.qurag.service.document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Cuts extracted text into sections at line breaks, which are then chunked independently.
+ * <p>
+ * Whether a break is a cut depends only on the line before it and the length since the previous cut,
+ * so an edit can move cuts within its own section at most. Later sections, and so their chunks, come out
+ * identical, which is what lets an updated document keep the vectors of everything that did not change.
+ * Text shorter than the minimum section stays whole.
+ * <p>
+ * Text is appended as it is extracted and only the current section is buffered. Runs of blank lines are
+ * collapsed into one, as Tika output used to be formatted.
+ */
+final class SectionSplitter {
+
+    static final int MIN_SECTION_CHARS = 8_000;
+    static final int MAX_SECTION_CHARS = 24_000;
+
+    // Text without line breaks is still cut, preferably at whitespace, so a section cannot grow without bound
+    private static final int HARD_SECTION_CHARS = 2 * MAX_SECTION_CHARS;
+
+    // Roughly one in sixteen line breaks past the minimum length becomes a cut
+    private static final int CUT_MODULUS = 16;
+
+    private final Consumer<String> sections;
+    private final StringBuilder section = new StringBuilder();
+
+    // Whitespace following a line break, held until the next line starts
+    private final StringBuilder breakRun = new StringBuilder();
+    private boolean inBreak;
+    private boolean dropBreak;
+    private int lineBreaks;
+    private char previous;
+
+    private int lineStart;
+
+    SectionSplitter(Consumer<String> sections) {
+        this.sections = sections;
+    }
+
+    static List<String> sections(String text) {
+        List<String> sections = new ArrayList<>();
+        SectionSplitter splitter = new SectionSplitter(sections::add);
+        splitter.append(text);
+        splitter.finish();
+        return sections;
+    }
+
+    void append(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            accept(text.charAt(i));
+        }
+    }
+
+    void append(char[] text, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            accept(text[i]);
+        }
+    }
+
+    void finish() {
+        if (inBreak) {
+            endBreak();
+        }
+        if (!section.toString().isBlank()) {
+            emit();
+        }
+        section.setLength(0);
+    }
+
+    private void accept(char c) {
+        if (inBreak) {
+            if (isWhitespace(c)) {
+                if (isLineBreak(c) && !(c == '\n' && previous == '\r')) {
+                    lineBreaks++;
+                }
+                breakRun.append(c);
+                previous = c;
+                return;
+            }
+            endBreak();
+        } else if (isLineBreak(c)) {
+            startBreak(c);
+            previous = c;
+            return;
+        } else if (section.length() >= HARD_SECTION_CHARS
+                && (isWhitespace(c) || section.length() >= 2 * HARD_SECTION_CHARS)) {
+            emit();
+            lineStart = 0;
+            if (isWhitespace(c)) {
+                return;
+            }
+        }
+        section.append(c);
+        previous = c;
+    }
+
+    private void startBreak(char c) {
+        int length = section.length();
+        dropBreak = length >= MAX_SECTION_CHARS
+                || (length >= MIN_SECTION_CHARS && isCut(section.substring(lineStart)));
+        if (dropBreak) {
+            emit();
+        }
+        inBreak = true;
+        lineBreaks = 1;
+        breakRun.setLength(0);
+        breakRun.append(c);
+    }
+
+    // A cut drops the break; otherwise it is kept, with blank lines collapsed into one
+    private void endBreak() {
+        if (!dropBreak) {
+            if (lineBreaks >= 2) {
+                int indent = lastLineBreak(breakRun) + 1;
+                section.append("\n\n").append(breakRun, indent, breakRun.length());
+            } else {
+                section.append(breakRun);
+            }
+        }
+        inBreak = false;
+        lineStart = section.length();
+    }
+
+    private void emit() {
+        sections.accept(section.toString());
+        section.setLength(0);
+    }
+
+    private static boolean isCut(String line) {
+        return Math.floorMod(line.strip().hashCode(), CUT_MODULUS) == 0;
+    }
+
+    private static int lastLineBreak(CharSequence text) {
+        for (int i = text.length() - 1; i >= 0; i--) {
+            if (isLineBreak(text.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isLineBreak(char c) {
+        return c == '\n' || c == '\r';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+    }
+}
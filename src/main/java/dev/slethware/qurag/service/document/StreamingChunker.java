@@ -0,0 +1,124 @@
+package dev.slethware.qurag.service.document;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Extracts text with {@link DocumentParsers} and chunks it while the file is still being read.
+ * <p>
+ * The parsers report text as they go: page by page for PDFs, element by element for DOCX
+ * and buffer by buffer for plain text. The text goes straight into a {@link SectionSplitter}; each finished
+ * section is token-split and its chunks are handed on in batches. Only the current section, one batch and a
+ * bounded prefix of the text kept for display are held in memory, whatever the size of the file.
+ */
+final class StreamingChunker {
+
+    // Thread-safe and expensive to build, so every extraction shares it
+    static final TokenTextSplitter TOKEN_SPLITTER = new TokenTextSplitter();
+
+    private final int batchSize;
+    private final int maxStoredChars;
+    private final Consumer<List<Document>> batches;
+    private final SectionSplitter sectionSplitter = new SectionSplitter(this::onSection);
+    private final StringBuilder storedText = new StringBuilder();
+    private boolean truncated;
+    private List<Document> batch = new ArrayList<>();
+    private int chunkCount;
+    private RuntimeException downstreamFailure;
+
+    private StreamingChunker(int batchSize, int maxStoredChars, Consumer<List<Document>> batches) {
+        this.batchSize = batchSize;
+        this.maxStoredChars = maxStoredChars;
+        this.batches = batches;
+    }
+
+    /**
+     * Parses the stream and passes its chunks to {@code batches}, at most {@code batchSize} at a time and in
+     * document order, on the calling thread. An exception thrown by {@code batches} stops parsing and is rethrown.
+     */
+    static ExtractedText extract(InputStream inputStream, String contentType, int batchSize, int maxStoredChars,
+                                 Consumer<List<Document>> batches) throws IOException {
+        StreamingChunker chunker = new StreamingChunker(batchSize, maxStoredChars, batches);
+
+        try {
+            DocumentParsers.parse(inputStream, contentType, chunker.new TextWriter());
+        } catch (IOException e) {
+            chunker.rethrowDownstreamFailure();
+            throw e;
+        }
+
+        chunker.sectionSplitter.finish();
+        chunker.flush();
+        return new ExtractedText(chunker.storedText.toString(), chunker.truncated, chunker.chunkCount);
+    }
+
+    private void onText(char[] text, int offset, int length) {
+        int stored = Math.min(length, maxStoredChars - storedText.length());
+        if (stored > 0) {
+            storedText.append(text, offset, stored);
+        }
+        truncated |= stored < length;
+        sectionSplitter.append(text, offset, length);
+    }
+
+    private void onSection(String section) {
+        for (Document chunk : TOKEN_SPLITTER.apply(List.of(new Document(section)))) {
+            batch.add(chunk);
+            chunkCount++;
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Document> full = batch;
+        batch = new ArrayList<>();
+        try {
+            batches.accept(full);
+        } catch (RuntimeException e) {
+            downstreamFailure = e;
+            throw e;
+        }
+    }
+
+    private void rethrowDownstreamFailure() {
+        if (downstreamFailure != null) {
+            throw downstreamFailure;
+        }
+    }
+
+    // The parser writes extracted text here as it goes
+    private class TextWriter extends Writer {
+
+        @Override
+        public void write(char[] text, int offset, int length) {
+            onText(text, offset, length);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * @param text      the extracted text, up to the configured number of characters
+     * @param truncated whether the text was longer than that
+     */
+    record ExtractedText(String text, boolean truncated, int chunkCount) {
+    }
+}
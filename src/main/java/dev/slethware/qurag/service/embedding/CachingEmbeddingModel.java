@@ -0,0 +1,199 @@
+package dev.slethware.qurag.service.embedding;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.slethware.qurag.entity.EmbeddingCacheEntry;
+import dev.slethware.qurag.repository.EmbeddingCacheRepository;
+import dev.slethware.qurag.service.concurrency.CallPriority;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.embedding.EmbeddingResponseMetadata;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Content-addressed cache in front of the application's {@link EmbeddingModel}.
+ * <p>
+ * Texts are keyed by a SHA-256 of the model name and the text itself. Lookups go to an in-memory tier first,
+ * then to the {@code embedding_cache} table, and only the texts missing from both are sent to the model.
+ * The persistent tier is best-effort: if the database is unavailable, embedding still succeeds.
+ * <p>
+ * Only embeddings made in the background, i.e. of ingested chunks, are written to the table, so it grows with
+ * the indexed content. Questions and other query-time texts are read from both tiers but kept in memory only.
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final Supplier<EmbeddingCacheRepository> repository;
+    private final String modelName;
+    private final Cache<String, float[]> memory;
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder storeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, Supplier<EmbeddingCacheRepository> repository,
+                                 String modelName, long maxSize) {
+        this.delegate = delegate;
+        this.repository = repository;
+        this.modelName = modelName;
+        this.memory = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        float[][] vectors = new float[texts.size()][];
+
+        // Resolve from memory, remembering which positions still need a vector
+        Map<String, List<Integer>> pending = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            String key = key(texts.get(i));
+            float[] cached = memory.getIfPresent(key);
+            if (cached != null) {
+                memoryHits.increment();
+                vectors[i] = cached;
+            } else {
+                pending.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            for (EmbeddingCacheEntry entry : loadStored(pending.keySet())) {
+                float[] vector = toFloats(entry.getVector());
+                memory.put(entry.getContentHash(), vector);
+                for (int index : pending.remove(entry.getContentHash())) {
+                    storeHits.increment();
+                    vectors[index] = vector;
+                }
+            }
+        }
+
+        EmbeddingResponseMetadata metadata = new EmbeddingResponseMetadata();
+        if (!pending.isEmpty()) {
+            // Each distinct missing text is embedded once, even if it appears several times in the request
+            List<String> keys = new ArrayList<>(pending.keySet());
+            List<String> missingTexts = keys.stream()
+                    .map(key -> texts.get(pending.get(key).get(0)))
+                    .toList();
+
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(missingTexts, request.getOptions()));
+            metadata = response.getMetadata();
+
+            boolean persist = CallPriority.current() == CallPriority.BACKGROUND;
+            List<EmbeddingCacheEntry> entries = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                float[] vector = response.getResults().get(i).getOutput();
+                memory.put(keys.get(i), vector);
+                for (int index : pending.get(keys.get(i))) {
+                    misses.increment();
+                    vectors[index] = vector;
+                }
+                if (persist) {
+                    entries.add(EmbeddingCacheEntry.builder()
+                            .contentHash(keys.get(i))
+                            .modelName(modelName)
+                            .dimensions(vector.length)
+                            .vector(toBytes(vector))
+                            .build());
+                }
+            }
+            store(entries);
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(vectors.length);
+        for (int i = 0; i < vectors.length; i++) {
+            embeddings.add(new Embedding(vectors[i], i));
+        }
+        return new EmbeddingResponse(embeddings, metadata);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.sum();
+    }
+
+    public long getStoreHits() {
+        return storeHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private List<EmbeddingCacheEntry> loadStored(Collection<String> keys) {
+        EmbeddingCacheRepository store = repository.get();
+        if (store == null) {
+            return List.of();
+        }
+        try {
+            return store.findAllById(keys);
+        } catch (RuntimeException e) {
+            log.warn("Embedding cache lookup failed, embedding {} texts without it: {}", keys.size(), e.getMessage());
+            return List.of();
+        }
+    }
+
+    private void store(List<EmbeddingCacheEntry> entries) {
+        EmbeddingCacheRepository store = repository.get();
+        if (store == null || entries.isEmpty()) {
+            return;
+        }
+        try {
+            store.insertAllIfAbsent(entries);
+        } catch (RuntimeException e) {
+            log.warn("Failed to persist {} cached embeddings: {}", entries.size(), e.getMessage());
+        }
+    }
+
+    private String key(String text) {
+        MessageDigest digest = sha256();
+        digest.update(modelName.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static byte[] toBytes(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    static float[] toFloats(byte[] bytes) {
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+}
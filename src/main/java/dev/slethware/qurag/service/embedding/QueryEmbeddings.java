@@ -0,0 +1,40 @@
+package dev.slethware.qurag.service.embedding;
+
+import java.util.function.Supplier;
+
+/**
+ * A question embedding the caller already holds, offered to the embedding model for the duration of one call.
+ * <p>
+ * Vector stores embed the query text themselves when they search. Inside {@link #using} that request is
+ * answered from here instead of reaching the provider, whether or not the embedding cache is enabled.
+ */
+public final class QueryEmbeddings {
+
+    private static final ThreadLocal<Offered> CURRENT = new ThreadLocal<>();
+
+    private QueryEmbeddings() {
+    }
+
+    public static <T> T using(String text, float[] embedding, Supplier<T> work) {
+        Offered previous = CURRENT.get();
+        CURRENT.set(new Offered(text, embedding));
+        try {
+            return work.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    // Null unless this exact text was offered on the current thread
+    public static float[] lookup(String text) {
+        Offered offered = CURRENT.get();
+        return offered != null && offered.text().equals(text) ? offered.embedding() : null;
+    }
+
+    private record Offered(String text, float[] embedding) {
+    }
+}
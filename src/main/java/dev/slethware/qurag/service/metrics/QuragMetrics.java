@@ -0,0 +1,151 @@
+package dev.slethware.qurag.service.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Meters for the ingest and query paths.
+ * <p>
+ * Every timer and summary publishes client-side percentiles (p50, p95, p99) as well as a histogram, so
+ * latency can be read from any registry, including a {@link SimpleMeterRegistry} in tests, and aggregated
+ * across instances from the Prometheus buckets. Tag values are bounded: stage and mode names, the allowed
+ * upload content types, and outcome.
+ */
+@Component
+public class QuragMetrics {
+
+    public static final String SUCCESS = "success";
+    public static final String ERROR = "error";
+    // Answered without the chat model, from the retrieved chunks
+    public static final String DEGRADED = "degraded";
+
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    private final MeterRegistry registry;
+
+    public QuragMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    // For code constructed outside the application context that does not inspect its metrics, such as
+    // tests and benchmarks; an empty composite registry hands out no-op meters
+    public static QuragMetrics noop() {
+        return new QuragMetrics(new CompositeMeterRegistry());
+    }
+
+    public <T, E extends Exception> T timeIngestStage(String stage, String fileType, Work<T, E> work) throws E {
+        return time("qurag.ingest.stage", "Duration of one ingestion stage", work,
+                "stage", stage, "file_type", tagValue(fileType));
+    }
+
+    public <T, E extends Exception> T timeQueryStage(String stage, String mode, Work<T, E> work) throws E {
+        return time("qurag.query.stage", "Duration of one query stage", work,
+                "stage", stage, "mode", mode);
+    }
+
+    // For stages that end asynchronously, such as a streamed answer
+    public void recordQueryStage(String stage, String mode, String outcome, Duration duration) {
+        timer("qurag.query.stage", "Duration of one query stage",
+                "stage", stage, "mode", mode, "outcome", outcome).record(duration);
+    }
+
+    // End to end, from submission to the parse pool until the document is searchable or has failed
+    public void recordIngest(String fileType, String outcome, Duration duration, long bytes, int chunks, int tokens) {
+        timer("qurag.ingest", "Duration of a document ingestion",
+                "file_type", tagValue(fileType), "outcome", outcome).record(duration);
+        summary("qurag.ingest.bytes", "Size of ingested files", "bytes",
+                "file_type", tagValue(fileType), "outcome", outcome).record(bytes);
+        summary("qurag.ingest.chunks", "Chunks per ingested document", "chunks",
+                "file_type", tagValue(fileType), "outcome", outcome).record(chunks);
+        summary("qurag.ingest.tokens", "Estimated tokens per ingested document", "tokens",
+                "file_type", tagValue(fileType), "outcome", outcome).record(tokens);
+    }
+
+    public void recordEmbeddingBatch(String outcome, Duration duration, int chunks, int tokens) {
+        timer("qurag.embedding.batch", "Duration of one embed-and-upsert batch, retries included",
+                "outcome", outcome).record(duration);
+        summary("qurag.embedding.batch.size", "Chunks per embedding batch", "chunks", "outcome", outcome)
+                .record(chunks);
+        summary("qurag.embedding.batch.tokens", "Estimated tokens per embedding batch", "tokens", "outcome", outcome)
+                .record(tokens);
+    }
+
+    public void recordQuery(String mode, String outcome, boolean cached, Duration duration, int chunks) {
+        timer("qurag.query", "Duration of a query", "mode", mode, "outcome", outcome,
+                "cached", String.valueOf(cached)).record(duration);
+        summary("qurag.query.chunks", "Chunks sent to the chat model per query", "chunks",
+                "mode", mode, "outcome", outcome).record(chunks);
+    }
+
+    // A query that waited for an identical in-flight query instead of generating its own answer
+    public void recordCoalescedQuery(String mode) {
+        Counter.builder("qurag.query.coalesced")
+                .description("Queries answered by joining an identical in-flight query")
+                .tag("mode", mode)
+                .register(registry)
+                .increment();
+    }
+
+    public void recordTimeToFirstToken(String mode, Duration duration) {
+        timer("qurag.query.first.token", "Time until the first streamed answer token", "mode", mode)
+                .record(duration);
+    }
+
+    // phase is "candidates" for what retrieval returned and "packed" for what was sent
+    public void recordContextTokens(String phase, int tokens) {
+        summary("qurag.query.context.tokens", "Estimated prompt context tokens", "tokens", "phase", phase)
+                .record(tokens);
+    }
+
+    private <T, E extends Exception> T time(String name, String description, Work<T, E> work, String... tags)
+            throws E {
+        long start = System.nanoTime();
+        String outcome = ERROR;
+        try {
+            T result = work.run();
+            outcome = SUCCESS;
+            return result;
+        } finally {
+            String[] allTags = new String[tags.length + 2];
+            System.arraycopy(tags, 0, allTags, 0, tags.length);
+            allTags[tags.length] = "outcome";
+            allTags[tags.length + 1] = outcome;
+            timer(name, description, allTags).record(Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    private Timer timer(String name, String description, String... tags) {
+        return Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private DistributionSummary summary(String name, String description, String baseUnit, String... tags) {
+        return DistributionSummary.builder(name)
+                .description(description)
+                .baseUnit(baseUnit)
+                .tags(tags)
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static String tagValue(String value) {
+        return value != null ? value : "unknown";
+    }
+
+    @FunctionalInterface
+    public interface Work<T, E extends Exception> {
+        T run() throws E;
+    }
+}
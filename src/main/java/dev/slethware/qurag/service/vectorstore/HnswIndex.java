@@ -0,0 +1,310 @@
+package dev.slethware.qurag.service.vectorstore;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * Hierarchical navigable small world graph (Malkov and Yashunin) over unit-length vectors.
+ * <p>
+ * Vectors are normalized on the way in, so the dot product is the cosine similarity. Vectors live off-heap in
+ * {@link OffHeapVectors}; neighbour lists are int arrays whose first slot holds the current count.
+ * Not thread-safe: {@link HnswVectorStore} guards it with a read-write lock.
+ */
+class HnswIndex {
+
+    private static final Comparator<Candidate> BEST_FIRST = Comparator.comparingDouble(Candidate::score).reversed();
+    private static final Comparator<Candidate> WORST_FIRST = Comparator.comparingDouble(Candidate::score);
+
+    private final int dimensions;
+    private final int m;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final OffHeapVectors vectors;
+    private final List<int[][]> links = new ArrayList<>();
+    private final Random random;
+
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    HnswIndex(int dimensions, int m, int efConstruction, long seed) {
+        this.dimensions = dimensions;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.vectors = new OffHeapVectors(dimensions);
+        this.random = new Random(seed);
+    }
+
+    int add(float[] vector) {
+        float[] unit = normalize(vector);
+        int node = vectors.add(unit);
+        int level = randomLevel();
+
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[maxConnections(l) + 1];
+        }
+        links.add(nodeLinks);
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+
+        // Descend greedily through the layers above the new node, then link it on each layer it lives in
+        int entry = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            entry = greedyClosest(unit, entry, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> candidates = searchLayer(unit, entry, efConstruction, l);
+            for (int neighbour : selectNeighbours(candidates, m)) {
+                append(nodeLinks[l], neighbour);
+                connect(neighbour, node, l);
+            }
+            entry = candidates.get(0).node();
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+        return node;
+    }
+
+    // Approximate nearest neighbours, best first; ef bounds the candidate list kept while walking layer 0
+    List<Candidate> search(float[] query, int ef) {
+        if (entryPoint < 0) {
+            return List.of();
+        }
+        float[] unit = normalize(query);
+        int entry = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            entry = greedyClosest(unit, entry, l);
+        }
+        return searchLayer(unit, entry, ef, 0);
+    }
+
+    // Exact scan used for verification and for selective filters the graph walk cannot satisfy
+    List<Candidate> bruteForce(float[] query, int k, IntPredicate accept) {
+        float[] unit = normalize(query);
+        PriorityQueue<Candidate> best = new PriorityQueue<>(WORST_FIRST);
+        for (int node = 0; node < vectors.size(); node++) {
+            if (!accept.test(node)) {
+                continue;
+            }
+            float score = vectors.dot(node, unit);
+            if (best.size() < k) {
+                best.add(new Candidate(node, score));
+            } else if (score > best.peek().score()) {
+                best.poll();
+                best.add(new Candidate(node, score));
+            }
+        }
+        List<Candidate> sorted = new ArrayList<>(best);
+        sorted.sort(BEST_FIRST);
+        return sorted;
+    }
+
+    float[] vector(int node) {
+        return vectors.get(node);
+    }
+
+    int size() {
+        return vectors.size();
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(dimensions);
+        out.writeInt(m);
+        out.writeInt(efConstruction);
+        out.writeInt(size());
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+        for (int node = 0; node < size(); node++) {
+            for (float value : vectors.get(node)) {
+                out.writeFloat(value);
+            }
+            int[][] nodeLinks = links.get(node);
+            out.writeInt(nodeLinks.length);
+            for (int[] level : nodeLinks) {
+                out.writeInt(level[0]);
+                for (int i = 1; i <= level[0]; i++) {
+                    out.writeInt(level[i]);
+                }
+            }
+        }
+    }
+
+    static HnswIndex readFrom(DataInputStream in) throws IOException {
+        HnswIndex index = new HnswIndex(in.readInt(), in.readInt(), in.readInt(), System.nanoTime());
+        int size = in.readInt();
+        index.entryPoint = in.readInt();
+        index.maxLevel = in.readInt();
+        for (int node = 0; node < size; node++) {
+            float[] vector = new float[index.dimensions];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = in.readFloat();
+            }
+            index.vectors.add(vector);
+
+            int[][] nodeLinks = new int[in.readInt()][];
+            for (int l = 0; l < nodeLinks.length; l++) {
+                nodeLinks[l] = new int[index.maxConnections(l) + 1];
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    append(nodeLinks[l], in.readInt());
+                }
+            }
+            index.links.add(nodeLinks);
+        }
+        return index;
+    }
+
+    private List<Candidate> searchLayer(float[] query, int entry, int ef, int level) {
+        BitSet visited = new BitSet(size());
+        visited.set(entry);
+
+        Candidate first = new Candidate(entry, vectors.dot(entry, query));
+        PriorityQueue<Candidate> frontier = new PriorityQueue<>(BEST_FIRST);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(WORST_FIRST);
+        frontier.add(first);
+        results.add(first);
+
+        while (!frontier.isEmpty()) {
+            Candidate current = frontier.poll();
+            if (results.size() >= ef && current.score() < results.peek().score()) {
+                break;
+            }
+
+            int[] neighbours = links.get(current.node())[level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+
+                float score = vectors.dot(neighbour, query);
+                if (results.size() < ef || score > results.peek().score()) {
+                    Candidate candidate = new Candidate(neighbour, score);
+                    frontier.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(BEST_FIRST);
+        return sorted;
+    }
+
+    private int greedyClosest(float[] query, int entry, int level) {
+        int current = entry;
+        float best = vectors.dot(current, query);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbours = links.get(current)[level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                float score = vectors.dot(neighbours[i], query);
+                if (score > best) {
+                    best = score;
+                    current = neighbours[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    // Prefers candidates closer to the base than to any neighbour already kept, which keeps the graph navigable
+    // across clusters; the remaining slots are then filled with the closest of the rest
+    private int[] selectNeighbours(List<Candidate> candidates, int max) {
+        int[] selected = new int[max];
+        int count = 0;
+        List<Candidate> skipped = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (count == max) {
+                break;
+            }
+            boolean diverse = true;
+            for (int i = 0; i < count; i++) {
+                if (vectors.dot(candidate.node(), selected[i]) > candidate.score()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[count++] = candidate.node();
+            } else {
+                skipped.add(candidate);
+            }
+        }
+        for (int i = 0; i < skipped.size() && count < max; i++) {
+            selected[count++] = skipped.get(i).node();
+        }
+        return Arrays.copyOf(selected, count);
+    }
+
+    private void connect(int node, int neighbour, int level) {
+        int[] list = links.get(node)[level];
+        if (list[0] < maxConnections(level)) {
+            append(list, neighbour);
+            return;
+        }
+
+        List<Candidate> candidates = new ArrayList<>(list[0] + 1);
+        for (int i = 1; i <= list[0]; i++) {
+            candidates.add(new Candidate(list[i], vectors.dot(node, list[i])));
+        }
+        candidates.add(new Candidate(neighbour, vectors.dot(node, neighbour)));
+        candidates.sort(BEST_FIRST);
+
+        int[] kept = selectNeighbours(candidates, maxConnections(level));
+        list[0] = kept.length;
+        System.arraycopy(kept, 0, list, 1, kept.length);
+    }
+
+    private static void append(int[] list, int neighbour) {
+        list[++list[0]] = neighbour;
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? 2 * m : m;
+    }
+
+    private int randomLevel() {
+        return (int) Math.floor(-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+    }
+
+    private float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float[] unit = new float[vector.length];
+        if (norm == 0) {
+            return unit;
+        }
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            unit[i] = vector[i] * scale;
+        }
+        return unit;
+    }
+
+    record Candidate(int node, float score) {
+    }
+}
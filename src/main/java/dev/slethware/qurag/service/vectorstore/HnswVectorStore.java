@@ -0,0 +1,363 @@
+package dev.slethware.qurag.service.vectorstore;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.converter.SimpleVectorStoreFilterExpressionConverter;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * In-process {@link VectorStore} backed by an {@link HnswIndex}, selected with {@code spring.ai.vectorstore.type=hnsw}.
+ * <p>
+ * Metadata filters use the same expression support as Spring AI's SimpleVectorStore. Deleted documents are
+ * tombstoned and the graph is rebuilt once tombstones outnumber live entries. When a snapshot path is set, the
+ * index is loaded from it at startup and written back periodically while dirty and on shutdown. Search results
+ * carry their stored vector under {@link #EMBEDDING_METADATA} so post-retrieval stages need not re-embed them.
+ */
+@Slf4j
+public class HnswVectorStore implements VectorStore {
+
+    public static final String EMBEDDING_METADATA = "embedding";
+
+    private static final int SNAPSHOT_MAGIC = 0x51484E53;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final EmbeddingModel embeddingModel;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final Path snapshotPath;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SpelExpressionParser expressionParser = new SpelExpressionParser();
+    private final SimpleVectorStoreFilterExpressionConverter filterConverter = new SimpleVectorStoreFilterExpressionConverter();
+    private final ScheduledExecutorService snapshotScheduler;
+
+    private HnswIndex index;
+    private List<StoredDocument> documents = new ArrayList<>();
+    private Map<String, Integer> nodesById = new HashMap<>();
+    private BitSet deleted = new BitSet();
+    private volatile boolean dirty;
+
+    public HnswVectorStore(EmbeddingModel embeddingModel, int m, int efConstruction, int efSearch,
+                           Path snapshotPath, long snapshotIntervalSeconds) {
+        this.embeddingModel = embeddingModel;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.snapshotPath = snapshotPath;
+
+        if (snapshotPath != null && Files.exists(snapshotPath)) {
+            loadSnapshot();
+        }
+
+        if (snapshotPath != null && snapshotIntervalSeconds > 0) {
+            snapshotScheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                    .name("hnsw-snapshot")
+                    .daemon(true)
+                    .factory());
+            snapshotScheduler.scheduleWithFixedDelay(this::saveSnapshotIfDirty,
+                    snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            snapshotScheduler = null;
+        }
+    }
+
+    @Override
+    public void add(List<Document> documentsToAdd) {
+        if (documentsToAdd.isEmpty()) {
+            return;
+        }
+
+        // Embed outside the lock so searches are not held up by the model
+        List<float[]> embeddings = embeddingModel.embed(documentsToAdd.stream().map(Document::getText).toList());
+
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < documentsToAdd.size(); i++) {
+                Document document = documentsToAdd.get(i);
+                if (index == null) {
+                    index = new HnswIndex(embeddings.get(i).length, m, efConstruction, System.nanoTime());
+                }
+
+                Integer previous = nodesById.get(document.getId());
+                if (previous != null) {
+                    deleted.set(previous);
+                }
+
+                int node = index.add(embeddings.get(i));
+                documents.add(new StoredDocument(document.getId(), document.getText(),
+                        new HashMap<>(document.getMetadata())));
+                nodesById.put(document.getId(), node);
+            }
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            for (String id : idList) {
+                Integer node = nodesById.remove(id);
+                if (node != null) {
+                    deleted.set(node);
+                }
+            }
+            afterDelete();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        Predicate<Map<String, Object>> filter = filterPredicate(filterExpression);
+
+        lock.writeLock().lock();
+        try {
+            for (int node = 0; node < documents.size(); node++) {
+                if (!deleted.get(node) && filter.test(documents.get(node).metadata())) {
+                    nodesById.remove(documents.get(node).id());
+                    deleted.set(node);
+                }
+            }
+            afterDelete();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        float[] query = embeddingModel.embed(request.getQuery());
+        Predicate<Map<String, Object>> filter = filterPredicate(request.getFilterExpression());
+        int topK = request.getTopK();
+        double threshold = request.getSimilarityThreshold();
+
+        lock.readLock().lock();
+        try {
+            if (index == null) {
+                return List.of();
+            }
+
+            List<Document> results = new ArrayList<>(topK);
+            boolean rejected = false;
+            for (HnswIndex.Candidate candidate : index.search(query, Math.max(efSearch, topK))) {
+                if (results.size() == topK || candidate.score() < threshold) {
+                    break;
+                }
+                if (deleted.get(candidate.node()) || !filter.test(documents.get(candidate.node()).metadata())) {
+                    rejected = true;
+                    continue;
+                }
+                results.add(toDocument(candidate));
+            }
+
+            // A selective filter or many tombstones can starve the graph walk; fall back to an exact scan
+            if (rejected && results.size() < topK) {
+                results.clear();
+                for (HnswIndex.Candidate candidate : index.bruteForce(query, topK,
+                        node -> !deleted.get(node) && filter.test(documents.get(node).metadata()))) {
+                    if (candidate.score() >= threshold) {
+                        results.add(toDocument(candidate));
+                    }
+                }
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "HnswVectorStore";
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodesById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void saveSnapshot() {
+        if (snapshotPath == null) {
+            return;
+        }
+
+        lock.readLock().lock();
+        try {
+            Path parent = snapshotPath.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, "hnsw-", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeBoolean(index != null);
+                if (index != null) {
+                    out.writeInt(documents.size());
+                    for (int node = 0; node < documents.size(); node++) {
+                        StoredDocument document = documents.get(node);
+                        out.writeBoolean(deleted.get(node));
+                        writeString(out, document.id());
+                        writeString(out, document.text());
+                        writeString(out, objectMapper.writeValueAsString(document.metadata()));
+                    }
+                    index.writeTo(out);
+                }
+            }
+            // Readers never see a half-written snapshot
+            Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+            log.info("Saved HNSW snapshot with {} documents to {}", nodesById.size(), snapshotPath);
+
+        } catch (IOException e) {
+            log.error("Failed to save HNSW snapshot to {}: {}", snapshotPath, e.getMessage(), e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void close() {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdown();
+        }
+        saveSnapshotIfDirty();
+    }
+
+    private void saveSnapshotIfDirty() {
+        if (dirty) {
+            saveSnapshot();
+        }
+    }
+
+    private void loadSnapshot() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                log.warn("Ignoring HNSW snapshot {} with an unknown format", snapshotPath);
+                return;
+            }
+            if (!in.readBoolean()) {
+                return;
+            }
+
+            int count = in.readInt();
+            for (int node = 0; node < count; node++) {
+                boolean isDeleted = in.readBoolean();
+                String id = readString(in);
+                String text = readString(in);
+                Map<String, Object> metadata = objectMapper.readValue(readString(in), new TypeReference<>() {
+                });
+                documents.add(new StoredDocument(id, text, metadata));
+                if (isDeleted) {
+                    deleted.set(node);
+                } else {
+                    nodesById.put(id, node);
+                }
+            }
+            index = HnswIndex.readFrom(in);
+            log.info("Loaded HNSW snapshot with {} documents from {}", nodesById.size(), snapshotPath);
+
+        } catch (IOException e) {
+            // Starting empty is recoverable by re-ingesting; refusing to start is not
+            log.error("Failed to load HNSW snapshot from {}, starting with an empty index: {}",
+                    snapshotPath, e.getMessage(), e);
+            index = null;
+            documents = new ArrayList<>();
+            nodesById = new HashMap<>();
+            deleted = new BitSet();
+        }
+    }
+
+    private void afterDelete() {
+        dirty = true;
+        if (index != null && deleted.cardinality() > nodesById.size()) {
+            rebuild();
+        }
+    }
+
+    // Re-inserts the live vectors into a fresh graph; called with the write lock held
+    private void rebuild() {
+        HnswIndex rebuilt = new HnswIndex(index.dimensions(), m, efConstruction, System.nanoTime());
+        List<StoredDocument> liveDocuments = new ArrayList<>(nodesById.size());
+        Map<String, Integer> liveNodes = new HashMap<>();
+        for (int node = 0; node < documents.size(); node++) {
+            if (!deleted.get(node)) {
+                int newNode = rebuilt.add(index.vector(node));
+                liveDocuments.add(documents.get(node));
+                liveNodes.put(documents.get(node).id(), newNode);
+            }
+        }
+        log.info("Rebuilt HNSW index: {} live documents, {} tombstones dropped",
+                liveNodes.size(), deleted.cardinality());
+        index = rebuilt;
+        documents = liveDocuments;
+        nodesById = liveNodes;
+        deleted = new BitSet();
+    }
+
+    private Predicate<Map<String, Object>> filterPredicate(Filter.Expression filterExpression) {
+        if (filterExpression == null) {
+            return metadata -> true;
+        }
+        Expression expression = expressionParser.parseExpression(filterConverter.convertExpression(filterExpression));
+        return metadata -> {
+            StandardEvaluationContext context = new StandardEvaluationContext();
+            context.setVariable("metadata", metadata);
+            return Boolean.TRUE.equals(expression.getValue(context, Boolean.class));
+        };
+    }
+
+    private Document toDocument(HnswIndex.Candidate candidate) {
+        StoredDocument stored = documents.get(candidate.node());
+        Map<String, Object> metadata = new HashMap<>(stored.metadata());
+        metadata.put("distance", 1.0 - candidate.score());
+        metadata.put(EMBEDDING_METADATA, index.vector(candidate.node()).clone());
+        return Document.builder()
+                .id(stored.id())
+                .text(stored.text())
+                .metadata(metadata)
+                .score((double) candidate.score())
+                .build();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+    }
+
+    private record StoredDocument(String id, String text, Map<String, Object> metadata) {
+    }
+}
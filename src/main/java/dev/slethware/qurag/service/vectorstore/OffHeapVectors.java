@@ -0,0 +1,78 @@
+package dev.slethware.qurag.service.vectorstore;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only float vectors held in direct buffers, so large indexes add almost nothing to the Java heap.
+ * Storage grows in fixed-size blocks; existing vectors are never copied.
+ */
+class OffHeapVectors {
+
+    private static final int VECTORS_PER_BLOCK = 4096;
+
+    private final int dimensions;
+    private final List<FloatBuffer> blocks = new ArrayList<>();
+    private int size;
+
+    OffHeapVectors(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    int add(float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions but got " + vector.length);
+        }
+        int block = size / VECTORS_PER_BLOCK;
+        if (block == blocks.size()) {
+            blocks.add(ByteBuffer.allocateDirect(VECTORS_PER_BLOCK * dimensions * Float.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asFloatBuffer());
+        }
+        blocks.get(block).put(offset(size), vector);
+        return size++;
+    }
+
+    float[] get(int node) {
+        float[] vector = new float[dimensions];
+        block(node).get(offset(node), vector);
+        return vector;
+    }
+
+    float dot(int node, float[] query) {
+        FloatBuffer block = block(node);
+        int offset = offset(node);
+        float sum = 0;
+        for (int i = 0; i < dimensions; i++) {
+            sum += block.get(offset + i) * query[i];
+        }
+        return sum;
+    }
+
+    float dot(int a, int b) {
+        FloatBuffer blockA = block(a);
+        FloatBuffer blockB = block(b);
+        int offsetA = offset(a);
+        int offsetB = offset(b);
+        float sum = 0;
+        for (int i = 0; i < dimensions; i++) {
+            sum += blockA.get(offsetA + i) * blockB.get(offsetB + i);
+        }
+        return sum;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private FloatBuffer block(int node) {
+        return blocks.get(node / VECTORS_PER_BLOCK);
+    }
+
+    private int offset(int node) {
+        return (node % VECTORS_PER_BLOCK) * dimensions;
+    }
+}
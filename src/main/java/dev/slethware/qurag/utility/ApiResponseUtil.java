@@ -22,4 +22,13 @@ public class ApiResponseUtil {
                 .data(data)
                 .build();
     }
+
+    public static <T> ApiResponse<T> accepted(String message, T data) {
+        return ApiResponse.<T>builder()
+                .status("success")
+                .statusCode(HttpStatus.ACCEPTED.value())
+                .message(message)
+                .data(data)
+                .build();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,67 @@
+package dev.slethware.qurag.config;
+
+import dev.slethware.qurag.exception.ServiceUnavailableException;
+import dev.slethware.qurag.service.concurrency.Bulkhead;
+import dev.slethware.qurag.support.LocalS3Client;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConcurrencyConfigTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void streamedS3ObjectsHoldTheirPermitUntilClosed() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("s3", 1, Duration.ofMillis(50));
+        S3Client s3Client = ConcurrencyConfig.guard(new LocalS3Client(tempDir), bulkhead);
+        s3Client.putObject(PutObjectRequest.builder().bucket("qurag-test").key("a.txt").build(),
+                RequestBody.fromString("first"));
+        s3Client.putObject(PutObjectRequest.builder().bucket("qurag-test").key("b.txt").build(),
+                RequestBody.fromString("second"));
+        assertThat(bulkhead.getActive()).isZero();
+
+        ResponseInputStream<GetObjectResponse> first = s3Client.getObject(get("a.txt"));
+        assertThat(bulkhead.getActive()).isEqualTo(1);
+
+        // The first body has not been read yet, so it still counts against the limit
+        assertThatThrownBy(() -> s3Client.getObject(get("b.txt")))
+                .isInstanceOf(ServiceUnavailableException.class);
+        assertThatThrownBy(() -> s3Client.headObject(HeadObjectRequest.builder()
+                .bucket("qurag-test").key("b.txt").build()))
+                .isInstanceOf(ServiceUnavailableException.class);
+
+        assertThat(new String(first.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("first");
+        first.close();
+        assertThat(bulkhead.getActive()).isZero();
+
+        try (ResponseInputStream<GetObjectResponse> second = s3Client.getObject(get("b.txt"))) {
+            assertThat(second.response().contentLength()).isEqualTo(6);
+            assertThat(new String(second.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("second");
+        }
+
+        // Closing again, or aborting after close, gives nothing back twice
+        first.close();
+        first.abort();
+        assertThat(bulkhead.getActive()).isZero();
+        assertThat(bulkhead.getRejections()).isEqualTo(2);
+    }
+
+    private static GetObjectRequest get(String key) {
+        return GetObjectRequest.builder().bucket("qurag-test").key(key).build();
+    }
+}
@@ -0,0 +1,133 @@
+package dev.slethware.qurag.controller;
+
+import dev.slethware.qurag.dto.response.DocumentResponse;
+import dev.slethware.qurag.exception.GlobalExceptionHandler;
+import dev.slethware.qurag.service.S3.S3ServiceImpl;
+import dev.slethware.qurag.service.document.DocumentService;
+import dev.slethware.qurag.support.LocalS3Client;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class DocumentControllerTest {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+
+    @TempDir
+    Path tempDir;
+
+    private MockMvc mockMvc;
+    private DocumentService documentService;
+    private UUID documentId;
+
+    @BeforeEach
+    void setUp() {
+        S3ServiceImpl s3Service = new S3ServiceImpl(new LocalS3Client(tempDir));
+        ReflectionTestUtils.setField(s3Service, "bucketName", "qurag-test");
+        ReflectionTestUtils.setField(s3Service, "multipartThreshold", 16L * 1024 * 1024);
+        ReflectionTestUtils.setField(s3Service, "partSize", 8 * 1024 * 1024);
+        byte[] bytes = CONTENT.getBytes(StandardCharsets.UTF_8);
+        s3Service.uploadFile(new ByteArrayInputStream(bytes), bytes.length, "text/plain", "stored.txt");
+
+        documentId = UUID.randomUUID();
+        documentService = mock(DocumentService.class);
+        when(documentService.getDocumentMetadata(documentId)).thenReturn(DocumentResponse.builder()
+                .id(documentId)
+                .filename("stored.txt")
+                .originalFilename("notes.txt")
+                .fileType("text/plain")
+                .fileSize((long) bytes.length)
+                .build());
+
+        mockMvc = MockMvcBuilders.standaloneSetup(new DocumentController(documentService, s3Service,
+                        Jackson2ObjectMapperBuilder.json().build()))
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+    }
+
+    @Test
+    void downloadStreamsWholeFile() throws Exception {
+        MvcResult result = mockMvc.perform(get("/documents/{id}/download", documentId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(content().string(CONTENT));
+    }
+
+    @Test
+    void downloadServesRequestedRange() throws Exception {
+        MvcResult result = mockMvc.perform(get("/documents/{id}/download", documentId)
+                        .header(HttpHeaders.RANGE, "bytes=10-14"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 10-14/20"))
+                .andExpect(content().string("abcde"));
+    }
+
+    @Test
+    void unsatisfiableRangeIsRejected() throws Exception {
+        mockMvc.perform(get("/documents/{id}/download", documentId)
+                        .header(HttpHeaders.RANGE, "bytes=50-60"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */20"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void exportWritesOneJsonDocumentPerLine() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<DocumentResponse> consumer = invocation.getArgument(2);
+            consumer.accept(DocumentResponse.builder().id(documentId).originalFilename("notes.txt").build());
+            consumer.accept(DocumentResponse.builder().id(UUID.randomUUID()).originalFilename("notes-2.txt").build());
+            return null;
+        }).when(documentService).exportDocuments(eq("text/plain"), isNull(), any(Consumer.class));
+
+        MvcResult result = mockMvc.perform(get("/documents/export").param("fileType", "text/plain"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/x-ndjson"))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).startsWith("{").contains("\"original_filename\":\"notes.txt\"");
+        assertThat(lines[1]).contains("\"original_filename\":\"notes-2.txt\"");
+    }
+}
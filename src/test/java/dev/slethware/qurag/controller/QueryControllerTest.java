@@ -0,0 +1,133 @@
+package dev.slethware.qurag.controller;
+
+import dev.slethware.qurag.exception.GlobalExceptionHandler;
+import dev.slethware.qurag.service.RAG.BatchQueryServiceImpl;
+import dev.slethware.qurag.service.RAG.Bm25Index;
+import dev.slethware.qurag.service.RAG.ContextPacker;
+import dev.slethware.qurag.service.RAG.DeadlineGuard;
+import dev.slethware.qurag.service.RAG.QueryResultCache;
+import dev.slethware.qurag.service.RAG.QueryScopeResolver;
+import dev.slethware.qurag.service.RAG.RagQueryServiceImpl;
+import dev.slethware.qurag.service.concurrency.CircuitBreaker;
+import dev.slethware.qurag.service.metrics.QuragMetrics;
+import dev.slethware.qurag.support.CountingVectorStore;
+import dev.slethware.qurag.support.FakeChatModel;
+import dev.slethware.qurag.support.FakeEmbeddingModel;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.document.Document;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class QueryControllerTest {
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        FakeEmbeddingModel embeddingModel = new FakeEmbeddingModel();
+        CountingVectorStore vectorStore = new CountingVectorStore(embeddingModel);
+        vectorStore.add(List.of(new Document("Refunds are processed within five business days.",
+                Map.of("document_id", "doc-1", "chunk_index", 0))));
+
+        FakeChatModel chatModel = new FakeChatModel("Five business days.");
+        chatModel.setTokenDelayMillis(10);
+        QueryResultCache cache = new QueryResultCache(embeddingModel, false, 100, 10, false, 0.0);
+
+        RagQueryServiceImpl ragQueryService = new RagQueryServiceImpl(ChatClient.builder(chatModel), vectorStore,
+                cache, new Bm25Index(), new QueryScopeResolver(),
+                new ContextPacker(QuragMetrics.noop(), false, 3, 0.7, 3000),
+                QuragMetrics.noop(),
+                new DeadlineGuard(new CircuitBreaker("chat", 5, Duration.ofSeconds(30)), 15_000));
+        BatchQueryServiceImpl batchQueryService = new BatchQueryServiceImpl(ragQueryService, embeddingModel,
+                Validation.buildDefaultValidatorFactory().getValidator(), 10, 4, 2);
+
+        mockMvc = MockMvcBuilders.standaloneSetup(new QueryController(ragQueryService, batchQueryService))
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+    }
+
+    @Test
+    void streamWritesChunksTokensAndSummaryAsServerSentEvents() throws Exception {
+        MvcResult result = mockMvc.perform(post("/query/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"question\": \"How long do refunds take?\", \"topK\": 1, \"similarityThreshold\": 0.0}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        assertThat(body).containsSubsequence(
+                "event:chunks", "\"document_id\":\"doc-1\"",
+                "event:token", "{\"text\":\"Five \"}",
+                "event:token", "{\"text\":\"days.\"}",
+                "event:summary", "\"answer\":\"Five business days.\"", "\"time_to_first_token_ms\"");
+    }
+
+    @Test
+    void blankQuestionIsRejectedBeforeStreaming() throws Exception {
+        mockMvc.perform(post("/query/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"question\": \" \"}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void nullRetrievalModeFallsBackToVectorSearch() throws Exception {
+        String body = mockMvc.perform(post("/query")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"question\": \"How long do refunds take?\", \"topK\": 1, "
+                                + "\"similarityThreshold\": 0.0, \"retrievalMode\": null}"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        assertThat(body).containsSubsequence("\"answer\":\"Five business days.\"", "\"document_id\":\"doc-1\"");
+    }
+
+    @Test
+    void batchReportsPerItemErrorsWithoutFailingTheRequest() throws Exception {
+        String body = mockMvc.perform(post("/query/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"queries\": [{\"question\": \"How long do refunds take?\", \"topK\": 1, "
+                                + "\"similarityThreshold\": 0.0}, {\"question\": \"\"}], \"retrievalOnly\": true}"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        assertThat(body).containsSubsequence(
+                "\"index\":0", "\"document_id\":\"doc-1\"",
+                "\"index\":1", "\"message\":\"Question cannot be blank\"", "\"status_code\":400",
+                "\"succeeded\":1", "\"failed\":1");
+    }
+
+    @Test
+    void emptyBatchIsRejected() throws Exception {
+        mockMvc.perform(post("/query/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"queries\": []}"))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,44 @@
+package dev.slethware.qurag.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Latency and failures for one load-test stand-in: every call waits the base latency plus up to {@code jitterMs}
+ * more, then fails with probability {@code errorRate}.
+ */
+public class FaultInjector {
+
+    private final long latencyMs;
+    private final long jitterMs;
+    private final double errorRate;
+    private final LongAdder injectedErrors = new LongAdder();
+
+    public FaultInjector(long latencyMs, long jitterMs, double errorRate) {
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+        this.errorRate = errorRate;
+    }
+
+    public void apply(Supplier<? extends RuntimeException> failure) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = latencyMs + (jitterMs > 0 ? random.nextLong(jitterMs + 1) : 0);
+        try {
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while simulating latency", e);
+        }
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            injectedErrors.increment();
+            throw failure.get();
+        }
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.sum();
+    }
+}
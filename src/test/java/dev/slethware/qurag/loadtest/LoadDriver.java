@@ -0,0 +1,188 @@
+package dev.slethware.qurag.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Open-loop HTTP load generator.
+ * <p>
+ * Each endpoint has its own fixed-rate arrival schedule, and every request is sent on its own virtual thread when
+ * it is due whether or not earlier ones have returned, so a slow server faces a growing backlog rather than a
+ * client that politely slows down with it. Latency is measured from when a request was due, not when it was
+ * sent, so time spent waiting for one of the driver's {@code maxInFlight} slots counts against the server too.
+ */
+public class LoadDriver {
+
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(60);
+
+    private final HttpClient client;
+    private final Semaphore inFlight;
+
+    public LoadDriver(HttpClient client, int maxInFlight) {
+        this.client = client;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    public Report run(Duration duration, List<Endpoint> endpoints) throws InterruptedException {
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+
+        List<Stats> stats = new ArrayList<>();
+        List<Thread> schedulers = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            Stats endpointStats = new Stats(endpoint.name());
+            stats.add(endpointStats);
+            schedulers.add(Thread.ofPlatform().name("load-" + endpoint.name()).start(() ->
+                    schedule(endpoint, endpointStats, start, end)));
+        }
+        for (Thread scheduler : schedulers) {
+            scheduler.join();
+        }
+
+        // Let the requests still in flight finish so their latencies are not lost
+        long drainDeadline = System.nanoTime() + DRAIN_TIMEOUT.toNanos();
+        while (stats.stream().anyMatch(Stats::pending) && System.nanoTime() - drainDeadline < 0) {
+            Thread.sleep(50);
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        return new Report(duration, elapsedSeconds, stats.stream().map(s -> s.result(elapsedSeconds)).toList());
+    }
+
+    private void schedule(Endpoint endpoint, Stats stats, long start, long end) {
+        long interval = (long) (1e9 / endpoint.ratePerSecond());
+        for (long due = start; due - end < 0; due += interval) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            HttpRequest request = endpoint.request().get();
+            if (request == null) {
+                continue;
+            }
+            inFlight.acquireUninterruptibly();
+            stats.sent.increment();
+            long dueAt = due;
+            Thread.startVirtualThread(() -> {
+                try {
+                    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                    stats.record(dueAt, response.statusCode());
+                    if (response.statusCode() / 100 == 2) {
+                        endpoint.onSuccess().accept(response.body());
+                    }
+                } catch (Exception e) {
+                    stats.record(dueAt, 0);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+    }
+
+    /**
+     * @param request   builds the next request, or returns null to skip this arrival
+     * @param onSuccess receives the body of every 2xx response
+     */
+    public record Endpoint(String name, double ratePerSecond, Supplier<HttpRequest> request,
+                           Consumer<String> onSuccess) {
+
+        public Endpoint(String name, double ratePerSecond, Supplier<HttpRequest> request) {
+            this(name, ratePerSecond, request, body -> {
+            });
+        }
+    }
+
+    /**
+     * @param statuses responses by HTTP status; 0 counts requests that got no response at all
+     */
+    public record Result(String endpoint, long requests, long errors, double throughput, double p50Ms,
+                         double p95Ms, double p99Ms, double maxMs, Map<Integer, Long> statuses) {
+
+        public long succeeded() {
+            return requests - errors;
+        }
+    }
+
+    public record Report(Duration duration, double elapsedSeconds, List<Result> results) {
+
+        public void print(PrintStream out) {
+            out.printf(Locale.ROOT, "Load test: %ds of arrivals, %.1fs until the last response%n",
+                    duration.toSeconds(), elapsedSeconds);
+            out.printf(Locale.ROOT, "%-10s %9s %7s %10s %9s %9s %9s %9s  %s%n",
+                    "endpoint", "requests", "errors", "ok/s", "p50 ms", "p95 ms", "p99 ms", "max ms", "statuses");
+            for (Result result : results) {
+                out.printf(Locale.ROOT, "%-10s %9d %7d %10.2f %9.1f %9.1f %9.1f %9.1f  %s%n",
+                        result.endpoint(), result.requests(), result.errors(), result.throughput(), result.p50Ms(),
+                        result.p95Ms(), result.p99Ms(), result.maxMs(), result.statuses());
+            }
+        }
+
+        public Result result(String endpoint) {
+            return results.stream()
+                    .filter(result -> result.endpoint().equals(endpoint))
+                    .findFirst()
+                    .orElseThrow();
+        }
+    }
+
+    private static class Stats {
+
+        private final String name;
+        // Microseconds, to three significant digits
+        private final Histogram latencies = new ConcurrentHistogram(3);
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+        Stats(String name) {
+            this.name = name;
+        }
+
+        void record(long dueAt, int status) {
+            latencies.recordValue(Math.max(1, (System.nanoTime() - dueAt) / 1_000));
+            statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+            if (status / 100 != 2) {
+                errors.increment();
+            }
+            completed.increment();
+        }
+
+        boolean pending() {
+            return completed.sum() < sent.sum();
+        }
+
+        Result result(double elapsedSeconds) {
+            Map<Integer, Long> counts = new TreeMap<>();
+            statuses.forEach((status, count) -> counts.put(status, count.sum()));
+            long requests = completed.sum();
+            long failed = errors.sum();
+            return new Result(name, requests, failed, (requests - failed) / elapsedSeconds,
+                    latencies.getValueAtPercentile(50) / 1_000.0, latencies.getValueAtPercentile(95) / 1_000.0,
+                    latencies.getValueAtPercentile(99) / 1_000.0, latencies.getMaxValue() / 1_000.0, counts);
+        }
+    }
+}
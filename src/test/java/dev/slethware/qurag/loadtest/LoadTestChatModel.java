@@ -0,0 +1,39 @@
+package dev.slethware.qurag.loadtest;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.retry.TransientAiException;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+
+/**
+ * Gemini chat stand-in with a fixed answer. Injected failures look like Gemini's quota errors, so they slow the
+ * chat call scheduler down the way real ones would.
+ */
+public class LoadTestChatModel implements ChatModel {
+
+    static final String ANSWER = "According to the indexed documents, refunds are processed within five business days.";
+
+    private final FaultInjector faults;
+
+    public LoadTestChatModel(FaultInjector faults) {
+        this.faults = faults;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        faults.apply(() -> new TransientAiException("429 RESOURCE_EXHAUSTED: injected by the load test"));
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(ANSWER))));
+    }
+
+    // The whole answer arrives as one piece once the simulated latency has passed
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> Flux.just(call(prompt))).subscribeOn(Schedulers.boundedElastic());
+    }
+}
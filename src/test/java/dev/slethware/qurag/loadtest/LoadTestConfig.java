@@ -0,0 +1,76 @@
+package dev.slethware.qurag.loadtest;
+
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Stand-ins for Gemini, Pinecone and S3, for the {@code loadtest} profile. The profile switches off the Gemini
+ * and Pinecone auto-configuration, so these are the only models and store; the real S3 client is still built
+ * but never used. Latency and error rates come from {@code qurag.loadtest.fake.<backend>.*}.
+ * <p>
+ * The application's own post-processors still wrap the models, so the load goes through the same embedding
+ * cache, bulkheads and call schedulers as in production.
+ */
+@TestConfiguration(proxyBeanMethods = false)
+public class LoadTestConfig {
+
+    @Bean
+    public FaultInjector embeddingFaults(Environment environment) {
+        return faults(environment, "embedding");
+    }
+
+    @Bean
+    public FaultInjector chatFaults(Environment environment) {
+        return faults(environment, "chat");
+    }
+
+    @Bean
+    public FaultInjector vectorStoreFaults(Environment environment) {
+        return faults(environment, "vector-store");
+    }
+
+    @Bean
+    public FaultInjector s3Faults(Environment environment) {
+        return faults(environment, "s3");
+    }
+
+    @Bean
+    public EmbeddingModel embeddingModel(@Qualifier("embeddingFaults") FaultInjector faults) {
+        return new LoadTestEmbeddingModel(faults);
+    }
+
+    @Bean
+    public ChatModel chatModel(@Qualifier("chatFaults") FaultInjector faults) {
+        return new LoadTestChatModel(faults);
+    }
+
+    @Bean
+    public VectorStore vectorStore(EmbeddingModel embeddingModel,
+                                   @Qualifier("vectorStoreFaults") FaultInjector faults) {
+        return new LoadTestVectorStore(embeddingModel, faults);
+    }
+
+    @Bean(destroyMethod = "close")
+    @Primary
+    public S3Client loadTestS3Client(@Qualifier("s3Faults") FaultInjector faults) throws IOException {
+        return new LoadTestS3Client(Files.createTempDirectory("qurag-loadtest-s3"), faults);
+    }
+
+    private static FaultInjector faults(Environment environment, String backend) {
+        String prefix = "qurag.loadtest.fake." + backend + ".";
+        return new FaultInjector(
+                environment.getRequiredProperty(prefix + "latency-ms", Long.class),
+                environment.getRequiredProperty(prefix + "jitter-ms", Long.class),
+                environment.getRequiredProperty(prefix + "error-rate", Double.class));
+    }
+}
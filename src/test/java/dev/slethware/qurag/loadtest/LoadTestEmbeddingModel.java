@@ -0,0 +1,24 @@
+package dev.slethware.qurag.loadtest;
+
+import dev.slethware.qurag.support.FakeEmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.retry.TransientAiException;
+
+/**
+ * Gemini embedding stand-in: the deterministic fake vectors, behind simulated latency and quota errors.
+ */
+public class LoadTestEmbeddingModel extends FakeEmbeddingModel {
+
+    private final FaultInjector faults;
+
+    public LoadTestEmbeddingModel(FaultInjector faults) {
+        this.faults = faults;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        faults.apply(() -> new TransientAiException("429 RESOURCE_EXHAUSTED: injected by the load test"));
+        return super.call(request);
+    }
+}
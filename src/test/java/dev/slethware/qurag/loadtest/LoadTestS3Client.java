@@ -0,0 +1,58 @@
+package dev.slethware.qurag.loadtest;
+
+import dev.slethware.qurag.support.LocalS3Client;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.nio.file.Path;
+
+/**
+ * S3 stand-in: the file-backed client, with simulated latency and 503 Slow Down errors on every call.
+ */
+public class LoadTestS3Client extends LocalS3Client {
+
+    private final FaultInjector faults;
+
+    public LoadTestS3Client(Path root, FaultInjector faults) {
+        super(root);
+        this.faults = faults;
+    }
+
+    @Override
+    public PutObjectResponse putObject(PutObjectRequest request, RequestBody requestBody) {
+        faults.apply(LoadTestS3Client::slowDown);
+        return super.putObject(request, requestBody);
+    }
+
+    @Override
+    public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody requestBody) {
+        faults.apply(LoadTestS3Client::slowDown);
+        return super.uploadPart(request, requestBody);
+    }
+
+    @Override
+    public ResponseInputStream<GetObjectResponse> getObject(GetObjectRequest request) {
+        faults.apply(LoadTestS3Client::slowDown);
+        return super.getObject(request);
+    }
+
+    @Override
+    public HeadObjectResponse headObject(HeadObjectRequest request) {
+        faults.apply(LoadTestS3Client::slowDown);
+        return super.headObject(request);
+    }
+
+    @Override
+    public DeleteObjectResponse deleteObject(DeleteObjectRequest request) {
+        faults.apply(LoadTestS3Client::slowDown);
+        return super.deleteObject(request);
+    }
+
+    private static S3Exception slowDown() {
+        return (S3Exception) S3Exception.builder()
+                .statusCode(503)
+                .message("Slow Down: injected by the load test")
+                .build();
+    }
+}
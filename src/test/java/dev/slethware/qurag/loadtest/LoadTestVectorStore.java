@@ -0,0 +1,51 @@
+package dev.slethware.qurag.loadtest;
+
+import dev.slethware.qurag.support.CountingVectorStore;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.List;
+
+/**
+ * Pinecone stand-in: an in-memory store that embeds on add like Pinecone does, with simulated network latency
+ * and failures on every call.
+ */
+public class LoadTestVectorStore extends CountingVectorStore {
+
+    private final FaultInjector faults;
+
+    public LoadTestVectorStore(EmbeddingModel embeddingModel, FaultInjector faults) {
+        super(embeddingModel);
+        this.faults = faults;
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        faults.apply(LoadTestVectorStore::unavailable);
+        super.add(documents);
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        faults.apply(LoadTestVectorStore::unavailable);
+        super.delete(idList);
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        faults.apply(LoadTestVectorStore::unavailable);
+        super.delete(filterExpression);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        faults.apply(LoadTestVectorStore::unavailable);
+        return super.similaritySearch(request);
+    }
+
+    private static IllegalStateException unavailable() {
+        return new IllegalStateException("Vector store unavailable: injected by the load test");
+    }
+}
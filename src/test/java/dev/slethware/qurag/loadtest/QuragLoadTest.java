@@ -0,0 +1,210 @@
+package dev.slethware.qurag.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Mixed upload, document and query traffic against the whole application, backed by the {@link LoadTestConfig}
+ * stand-ins and an in-memory H2 database. Only runs with the {@code loadtest} Maven profile:
+ * <pre>
+ * mvn -P loadtest test -Dqurag.loadtest.duration-seconds=60 -Dqurag.loadtest.query-per-second=2
+ * </pre>
+ * Rates, document size and backend latencies and error rates are in {@code application-loadtest.properties}.
+ */
+@Tag("loadtest")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("loadtest")
+@Import(LoadTestConfig.class)
+class QuragLoadTest {
+
+    private static final String BOUNDARY = "qurag-loadtest-boundary";
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+    private static final Duration SEED_TIMEOUT = Duration.ofSeconds(120);
+
+    private static final String[] TOPICS = {"refund", "invoice", "warranty", "holiday", "contract", "delivery",
+            "payment", "approval", "budget", "support"};
+    private static final String[] WORDS = {"the", "policy", "customer", "account", "processed", "within", "days",
+            "business", "after", "request", "must", "be", "reviewed", "signed", "archived", "office", "quarter"};
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("embeddingFaults")
+    private FaultInjector embeddingFaults;
+
+    @Autowired
+    @Qualifier("chatFaults")
+    private FaultInjector chatFaults;
+
+    @Autowired
+    @Qualifier("vectorStoreFaults")
+    private FaultInjector vectorStoreFaults;
+
+    @Autowired
+    @Qualifier("s3Faults")
+    private FaultInjector s3Faults;
+
+    @Value("${qurag.loadtest.duration-seconds}")
+    private long durationSeconds;
+
+    @Value("${qurag.loadtest.seed-documents}")
+    private int seedDocuments;
+
+    @Value("${qurag.loadtest.document-bytes}")
+    private int documentBytes;
+
+    @Value("${qurag.loadtest.max-in-flight}")
+    private int maxInFlight;
+
+    @Value("${qurag.loadtest.upload-per-second}")
+    private double uploadsPerSecond;
+
+    @Value("${qurag.loadtest.get-per-second}")
+    private double getsPerSecond;
+
+    @Value("${qurag.loadtest.query-per-second}")
+    private double queriesPerSecond;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+    private final List<UUID> documentIds = new CopyOnWriteArrayList<>();
+    private final AtomicInteger uploads = new AtomicInteger();
+
+    @Test
+    void mixedTraffic() throws Exception {
+        seed();
+
+        LoadDriver driver = new LoadDriver(client, maxInFlight);
+        LoadDriver.Report report = driver.run(Duration.ofSeconds(durationSeconds), List.of(
+                new LoadDriver.Endpoint("upload", uploadsPerSecond, this::upload,
+                        body -> documentIds.add(documentId(body))),
+                new LoadDriver.Endpoint("document", getsPerSecond, this::getDocument),
+                new LoadDriver.Endpoint("query", queriesPerSecond, this::query)));
+
+        report.print(System.out);
+        System.out.printf("Injected failures: embedding=%d, chat=%d, vector store=%d, s3=%d%n",
+                embeddingFaults.getInjectedErrors(), chatFaults.getInjectedErrors(),
+                vectorStoreFaults.getInjectedErrors(), s3Faults.getInjectedErrors());
+
+        assertThat(report.results()).allSatisfy(result ->
+                assertThat(result.succeeded()).as(result.endpoint()).isPositive());
+    }
+
+    // Documents for the first document and query requests to find, fully indexed before the clock starts
+    private void seed() throws IOException, InterruptedException {
+        List<UUID> seeded = new ArrayList<>();
+        for (int i = 0; i < seedDocuments; i++) {
+            HttpResponse<String> response = client.send(upload(), HttpResponse.BodyHandlers.ofString());
+            assertThat(response.statusCode()).as(response.body()).isEqualTo(202);
+            seeded.add(documentId(response.body()));
+        }
+
+        long deadline = System.nanoTime() + SEED_TIMEOUT.toNanos();
+        for (UUID id : seeded) {
+            String status;
+            do {
+                Thread.sleep(100);
+                HttpResponse<String> response = client.send(request("/documents/" + id + "/status").GET().build(),
+                        HttpResponse.BodyHandlers.ofString());
+                status = objectMapper.readTree(response.body()).path("data").path("status").asText();
+            } while (!"COMPLETED".equals(status) && !"FAILED".equals(status) && System.nanoTime() - deadline < 0);
+            assertThat(status).as("seed document %s", id).isEqualTo("COMPLETED");
+        }
+        documentIds.addAll(seeded);
+    }
+
+    private HttpRequest upload() {
+        int n = uploads.incrementAndGet();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.writeBytes(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"loadtest-" + n + ".txt\"\r\n"
+                + "Content-Type: text/plain\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(document(n).getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return request("/documents/upload")
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+    }
+
+    private HttpRequest getDocument() {
+        UUID id = documentIds.get(ThreadLocalRandom.current().nextInt(documentIds.size()));
+        return request("/documents/" + id + "?page=0&size=20").GET().build();
+    }
+
+    private HttpRequest query() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String question = "How long does " + TOPICS[random.nextInt(TOPICS.length)] + " "
+                + WORDS[random.nextInt(WORDS.length)] + " take to be processed?";
+        try {
+            String json = objectMapper.writeValueAsString(Map.of("question", question, "topK", 5));
+            return request("/query")
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(json))
+                    .build();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).timeout(REQUEST_TIMEOUT);
+    }
+
+    private UUID documentId(String body) {
+        try {
+            JsonNode data = objectMapper.readTree(body).path("data");
+            return UUID.fromString(data.path("id").asText());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Unique per upload, so none is turned away as a duplicate
+    private String document(int n) {
+        Random random = new Random(n);
+        StringBuilder text = new StringBuilder("Load test document ").append(n).append(".\n\n");
+        while (text.length() < documentBytes) {
+            text.append("The ").append(TOPICS[random.nextInt(TOPICS.length)]);
+            for (int i = 0; i < 8 + random.nextInt(8); i++) {
+                text.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            text.append(random.nextInt(10) == 0 ? ".\n\n" : ". ");
+        }
+        return text.toString();
+    }
+}
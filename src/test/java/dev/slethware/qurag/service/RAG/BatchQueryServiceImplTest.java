@@ -0,0 +1,162 @@
+package dev.slethware.qurag.service.RAG;
+
+import dev.slethware.qurag.dto.request.BatchQueryRequest;
+import dev.slethware.qurag.dto.request.QueryRequest;
+import dev.slethware.qurag.dto.request.RetrievalMode;
+import dev.slethware.qurag.dto.response.BatchQueryResponse;
+import dev.slethware.qurag.dto.response.BatchQueryResult;
+import dev.slethware.qurag.service.concurrency.AiCallScheduler;
+import dev.slethware.qurag.service.concurrency.CircuitBreaker;
+import dev.slethware.qurag.service.concurrency.ScheduledEmbeddingModel;
+import dev.slethware.qurag.service.embedding.CachingEmbeddingModel;
+import dev.slethware.qurag.service.metrics.QuragMetrics;
+import dev.slethware.qurag.support.CountingVectorStore;
+import dev.slethware.qurag.support.FakeChatModel;
+import dev.slethware.qurag.support.FakeEmbeddingModel;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchQueryServiceImplTest {
+
+    private FakeEmbeddingModel embeddingModel;
+    private CountingVectorStore vectorStore;
+    private FakeChatModel chatModel;
+    private BatchQueryServiceImpl batchQueryService;
+
+    @BeforeEach
+    void setUp() {
+        embeddingModel = new FakeEmbeddingModel();
+        // The application's model sits behind the embedding cache, which is what lets the searches reuse the batch
+        CachingEmbeddingModel cachingModel = new CachingEmbeddingModel(embeddingModel, () -> null, "fake", 1_000);
+        vectorStore = indexedStore(cachingModel);
+        chatModel = new FakeChatModel("Five business days.");
+        batchQueryService = batchQueryService(cachingModel, vectorStore);
+    }
+
+    @Test
+    void questionsAreEmbeddedInOneCallAndResultsKeepRequestOrder() {
+        List<QueryRequest> queries = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            queries.add(query(i % 2 == 0 ? "How long are refunds processed? #" + i : "How long are invoices archived? #" + i));
+        }
+        queries.set(5, query(" "));
+
+        BatchQueryResponse response = batchQueryService.query(BatchQueryRequest.builder().queries(queries).build());
+
+        assertThat(embeddingModel.getCalls()).isEqualTo(1);
+        assertThat(embeddingModel.getEmbeddedTexts()).isEqualTo(19);
+        assertThat(vectorStore.getSearches()).isEqualTo(19);
+        assertThat(chatModel.getCalls()).isEqualTo(19);
+        assertThat(response.getSucceeded()).isEqualTo(19);
+        assertThat(response.getFailed()).isEqualTo(1);
+
+        List<BatchQueryResult> results = response.getResults();
+        assertThat(results).extracting(BatchQueryResult::getIndex).containsExactlyElementsOf(
+                IntStream.range(0, 20).boxed().toList());
+        assertThat(results.get(5).getResult()).isNull();
+        assertThat(results.get(5).getError().getStatusCode()).isEqualTo(400);
+        assertThat(results.get(5).getError().getMessage()).isEqualTo("Question cannot be blank");
+        assertThat(results.get(4).getResult().getChunksUsed().get(0).getContent()).startsWith("Refunds");
+        assertThat(results.get(7).getResult().getChunksUsed().get(0).getContent()).startsWith("Invoices");
+        assertThat(results.get(7).getResult().getAnswer()).isEqualTo("Five business days.");
+    }
+
+    @Test
+    void retrievalOnlyBatchesNeverCallTheChatModel() {
+        BatchQueryResponse response = batchQueryService.query(BatchQueryRequest.builder()
+                .queries(List.of(query("How long are refunds processed?"), query("How long are invoices archived?")))
+                .retrievalOnly(true)
+                .build());
+
+        assertThat(chatModel.getCalls()).isZero();
+        assertThat(response.getFailed()).isZero();
+        assertThat(response.getResults()).allSatisfy(result -> {
+            assertThat(result.getResult().getAnswer()).isNull();
+            assertThat(result.getResult().getTotalChunks()).isEqualTo(1);
+        });
+    }
+
+    @Test
+    void chatCallsAreCappedByTheGenerationLimitWhileSearchesUseTheirOwn() {
+        chatModel.setTokenDelayMillis(10);
+        List<QueryRequest> queries = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            queries.add(query("How long are refunds processed? #" + i));
+        }
+
+        BatchQueryResponse response = batchQueryService.query(BatchQueryRequest.builder().queries(queries).build());
+
+        assertThat(response.getFailed()).isZero();
+        assertThat(vectorStore.getSearches()).isEqualTo(8);
+        assertThat(chatModel.getCalls()).isEqualTo(8);
+        assertThat(chatModel.getMaxConcurrentCalls()).isBetween(1, 2);
+    }
+
+    @Test
+    void withoutTheEmbeddingCacheSearchesStillReuseTheBatchEmbeddings() {
+        // As wired when the cache is disabled, with the scheduler outermost
+        EmbeddingModel applicationModel = new ScheduledEmbeddingModel(embeddingModel,
+                new AiCallScheduler("embedding", 1_000, 1_000, Duration.ofSeconds(1)));
+        vectorStore = indexedStore(applicationModel);
+        batchQueryService = batchQueryService(applicationModel, vectorStore);
+
+        QueryRequest hybrid = query("How long are invoices archived?");
+        hybrid.setRetrievalMode(RetrievalMode.HYBRID);
+        BatchQueryResponse response = batchQueryService.query(BatchQueryRequest.builder()
+                .queries(List.of(query("How long are refunds processed?"), hybrid,
+                        query("How long are refunds processed?")))
+                .build());
+
+        assertThat(embeddingModel.getCalls()).isEqualTo(1);
+        assertThat(embeddingModel.getEmbeddedTexts()).isEqualTo(2);
+        assertThat(vectorStore.getSearches()).isEqualTo(3);
+        assertThat(response.getFailed()).isZero();
+        assertThat(response.getResults().get(1).getResult().getChunksUsed().get(0).getContent())
+                .startsWith("Invoices");
+        assertThat(response.getResults().get(2).getResult().getChunksUsed().get(0).getContent())
+                .startsWith("Refunds");
+    }
+
+    private CountingVectorStore indexedStore(EmbeddingModel model) {
+        CountingVectorStore store = new CountingVectorStore(model);
+        store.add(List.of(
+                new Document("Invoices are archived for seven years.",
+                        Map.of("document_id", "doc-1", "chunk_index", 0)),
+                new Document("Refunds are processed within five business days.",
+                        Map.of("document_id", "doc-1", "chunk_index", 1))));
+        embeddingModel.reset();
+        store.reset();
+        return store;
+    }
+
+    private BatchQueryServiceImpl batchQueryService(EmbeddingModel model, CountingVectorStore store) {
+        QueryResultCache disabledCache = new QueryResultCache(model, false, 100, 10, false, 0.0);
+        RagQueryServiceImpl ragQueryService = new RagQueryServiceImpl(ChatClient.builder(chatModel), store,
+                disabledCache, new Bm25Index(), new QueryScopeResolver(),
+                new ContextPacker(QuragMetrics.noop(), false, 3, 0.7, 3000),
+                QuragMetrics.noop(),
+                new DeadlineGuard(new CircuitBreaker("chat", 5, Duration.ofSeconds(30)), 15_000));
+        return new BatchQueryServiceImpl(ragQueryService, model,
+                Validation.buildDefaultValidatorFactory().getValidator(), 100, 8, 2);
+    }
+
+    private QueryRequest query(String question) {
+        return QueryRequest.builder()
+                .question(question)
+                .topK(1)
+                .similarityThreshold(0.0)
+                .build();
+    }
+}
@@ -0,0 +1,101 @@
+package dev.slethware.qurag.service.RAG;
+
+import dev.slethware.qurag.event.DocumentsChangedEvent;
+import dev.slethware.qurag.repository.DocumentChunkRepository;
+import dev.slethware.qurag.repository.DocumentRepository;
+import dev.slethware.qurag.repository.IndexedChunkSummary;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.data.domain.SliceImpl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class Bm25IndexTest {
+
+    @Test
+    void tokenizeIndexesCompoundIdentifiersWholeJoinedAndSplit() {
+        assertThat(Bm25Index.tokenize("Error ERR-4012, see part_77."))
+                .containsExactly("error", "err-4012", "err4012", "err", "4012", "see", "part-77", "part77", "part", "77");
+    }
+
+    @Test
+    void searchRanksRareTermMatchesFirstAndForgetsRemovedDocuments() {
+        Bm25Index index = new Bm25Index();
+        index.add(List.of(
+                chunk("a", "doc-1", "The refund is processed after approval."),
+                chunk("b", "doc-1", "Error ERR-4012 means the refund was declined."),
+                chunk("c", "doc-2", "The refund policy covers thirty days.")));
+
+        List<Document> results = index.search("err4012 refund", 3);
+
+        assertThat(results).extracting(Document::getId).first().isEqualTo("b");
+        assertThat(results.get(0).getScore()).isGreaterThan(results.get(1).getScore());
+
+        index.removeDocument("doc-1");
+
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(index.search("err-4012", 3)).isEmpty();
+    }
+
+    @Test
+    void persistedChunksAreLoadedOnTheFirstSearchAndChangesAppliedInTheBackground() throws InterruptedException {
+        DocumentRepository documentRepository = mock(DocumentRepository.class);
+        DocumentChunkRepository documentChunkRepository = mock(DocumentChunkRepository.class);
+        UUID documentId = UUID.randomUUID();
+        IndexedChunkSummary persisted = mock(IndexedChunkSummary.class);
+        when(persisted.getVectorId()).thenReturn("a");
+        when(persisted.getContent()).thenReturn("Error ERR-4012 means the refund was declined.");
+        when(persisted.getDocumentId()).thenReturn(documentId);
+        when(persisted.getChunkIndex()).thenReturn(0);
+        when(persisted.getFilename()).thenReturn("errors.txt");
+        when(documentChunkRepository.findChunksOfIndexedDocuments(any()))
+                .thenReturn(new SliceImpl<>(List.of(persisted)));
+        Bm25Index index = new Bm25Index(documentRepository, documentChunkRepository);
+
+        index.onDocumentsChanged(new DocumentsChangedEvent(this, documentId));
+        Thread.sleep(100);
+        verifyNoInteractions(documentChunkRepository, documentRepository);
+
+        assertThat(index.search("err4012", 3)).extracting(Document::getId).containsExactly("a");
+        verify(documentChunkRepository).findChunksOfIndexedDocuments(any());
+
+        // Deleted: the update runs on the index's own thread, not the publisher's
+        when(documentRepository.findById(documentId)).thenReturn(Optional.empty());
+        index.onDocumentsChanged(new DocumentsChangedEvent(this, documentId));
+        for (int i = 0; i < 100 && index.size() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(index.size()).isZero();
+        index.close();
+    }
+
+    @Test
+    void reciprocalRankFusionFavoursDocumentsRankedByBothLists() {
+        Document vectorOnly = chunk("v", "doc-1", "vector");
+        Document both = chunk("x", "doc-1", "both");
+        Document lexicalOnly = chunk("l", "doc-1", "lexical");
+
+        List<Document> fused = ReciprocalRankFusion.fuse(
+                List.of(List.of(vectorOnly, both), List.of(lexicalOnly, both)), ReciprocalRankFusion.DEFAULT_K, 2);
+
+        assertThat(fused).extracting(Document::getId).containsExactly("x", "v");
+    }
+
+    private Document chunk(String id, String documentId, String text) {
+        return Document.builder()
+                .id(id)
+                .text(text)
+                .metadata(Map.of("document_id", documentId, "chunk_index", 0))
+                .build();
+    }
+}
@@ -0,0 +1,84 @@
+package dev.slethware.qurag.service.RAG;
+
+import dev.slethware.qurag.service.metrics.QuragMetrics;
+import dev.slethware.qurag.service.vectorstore.HnswVectorStore;
+import dev.slethware.qurag.support.FakeEmbeddingModel;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContextPackerTest {
+
+    private final FakeEmbeddingModel embeddingModel = new FakeEmbeddingModel();
+
+    @Test
+    void mmrPrefersADifferentChunkOverANearDuplicate() {
+        ContextPacker packer = new ContextPacker(QuragMetrics.noop(), true, 3, 0.5, 3000);
+
+        List<Document> packed = packer.pack(List.of(
+                embedded(chunk("doc-1", 0, "Refunds are processed within five business days.")),
+                embedded(chunk("doc-2", 4, "Refunds are processed within five business days!")),
+                embedded(chunk("doc-3", 2, "Store credit never expires."))), 2);
+
+        assertThat(packed).extracting(Document::getText)
+                .containsExactly("Refunds are processed within five business days.", "Store credit never expires.");
+    }
+
+    @Test
+    void candidatesWithoutVectorsKeepRetrievalOrderWithoutEmbedding() {
+        ContextPacker packer = new ContextPacker(QuragMetrics.noop(), true, 3, 0.5, 3000);
+
+        List<Document> packed = packer.pack(List.of(
+                chunk("doc-1", 0, "Refunds are processed within five business days."),
+                chunk("doc-2", 4, "Refunds are processed within five business days!"),
+                chunk("doc-3", 2, "Store credit never expires.")), 2);
+
+        assertThat(packed).extracting(Document::getText).containsExactly(
+                "Refunds are processed within five business days.", "Refunds are processed within five business days!");
+        assertThat(embeddingModel.getCalls()).isZero();
+    }
+
+    @Test
+    void consecutiveChunksOfADocumentAreMergedInDocumentOrder() {
+        ContextPacker packer = new ContextPacker(QuragMetrics.noop(), true, 3, 1.0, 3000);
+
+        List<Document> packed = packer.pack(List.of(
+                chunk("doc-1", 3, "Approval takes a day."),
+                chunk("doc-2", 0, "The office is closed on holidays."),
+                chunk("doc-1", 2, "Refunds need approval.")), 3);
+
+        assertThat(packed).hasSize(2);
+        assertThat(packed.get(0).getText()).isEqualTo("Refunds need approval." + System.lineSeparator() + "Approval takes a day.");
+        assertThat(ChunkInfoMapper.map(packed.get(0)).getChunkIndex()).isEqualTo(2);
+        assertThat(ChunkInfoMapper.map(packed.get(0)).getLastChunkIndex()).isEqualTo(3);
+        assertThat(packed.get(1).getText()).isEqualTo("The office is closed on holidays.");
+    }
+
+    @Test
+    void passagesBeyondTheTokenBudgetAreDropped() {
+        ContextPacker packer = new ContextPacker(QuragMetrics.noop(), true, 3, 1.0, 16);
+
+        List<Document> packed = packer.pack(List.of(
+                chunk("doc-1", 0, "Refunds are processed within five business days."),
+                chunk("doc-2", 0, "Invoices are archived for seven years, then securely destroyed by the records team."),
+                chunk("doc-3", 0, "Store credit never expires.")), 3);
+
+        assertThat(packed).extracting(Document::getText)
+                .containsExactly("Refunds are processed within five business days.", "Store credit never expires.");
+    }
+
+    private Document chunk(String documentId, int chunkIndex, String text) {
+        return new Document(text, new HashMap<>(Map.of("document_id", documentId, "chunk_index", chunkIndex)));
+    }
+
+    // Attaches the vector a store such as HnswVectorStore returns with each result
+    private Document embedded(Document chunk) {
+        chunk.getMetadata().put(HnswVectorStore.EMBEDDING_METADATA, embeddingModel.embed(chunk.getText()));
+        return chunk;
+    }
+}
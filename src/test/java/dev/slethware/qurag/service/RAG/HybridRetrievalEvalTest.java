@@ -0,0 +1,102 @@
+package dev.slethware.qurag.service.RAG;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.slethware.qurag.dto.request.QueryRequest;
+import dev.slethware.qurag.dto.request.RetrievalMode;
+import dev.slethware.qurag.dto.response.ChunkInfo;
+import dev.slethware.qurag.dto.response.QueryResponse;
+import dev.slethware.qurag.service.concurrency.CircuitBreaker;
+import dev.slethware.qurag.service.metrics.QuragMetrics;
+import dev.slethware.qurag.support.CountingVectorStore;
+import dev.slethware.qurag.support.FakeChatModel;
+import dev.slethware.qurag.support.FakeEmbeddingModel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.document.Document;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Offline recall comparison over src/test/resources/eval/retrieval-eval.json: queries that name identifiers
+// and error codes, answered from a corpus of similarly worded chunks
+class HybridRetrievalEvalTest {
+
+    private final List<EvalQuery> queries = new ArrayList<>();
+    private final List<String> chunkIds = new ArrayList<>();
+    private RagQueryServiceImpl ragQueryService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        JsonNode eval;
+        try (InputStream in = getClass().getResourceAsStream("/eval/retrieval-eval.json")) {
+            eval = new ObjectMapper().readTree(in);
+        }
+
+        List<Document> chunks = new ArrayList<>();
+        for (JsonNode chunk : eval.get("chunks")) {
+            chunks.add(Document.builder()
+                    .id(chunk.get("id").asText())
+                    .text(chunk.get("text").asText())
+                    .metadata(Map.of("document_id", chunk.get("document_id").asText(), "chunk_index", chunks.size()))
+                    .build());
+            chunkIds.add(chunk.get("id").asText());
+        }
+        for (JsonNode query : eval.get("queries")) {
+            Set<String> relevant = new HashSet<>();
+            query.get("relevant").forEach(id -> relevant.add(id.asText()));
+            queries.add(new EvalQuery(query.get("question").asText(), relevant));
+        }
+
+        FakeEmbeddingModel embeddingModel = new FakeEmbeddingModel();
+        CountingVectorStore vectorStore = new CountingVectorStore(embeddingModel);
+        vectorStore.add(chunks);
+        Bm25Index bm25Index = new Bm25Index();
+        bm25Index.add(chunks);
+
+        ragQueryService = new RagQueryServiceImpl(ChatClient.builder(new FakeChatModel("ok")), vectorStore,
+                new QueryResultCache(embeddingModel, false, 100, 10, false, 0.0), bm25Index,
+                new QueryScopeResolver(),
+                new ContextPacker(QuragMetrics.noop(), false, 3, 0.7, 3000),
+                QuragMetrics.noop(),
+                new DeadlineGuard(new CircuitBreaker("chat", 5, Duration.ofSeconds(30)), 15_000));
+    }
+
+    @Test
+    void hybridRetrievalAtLowerTopKRecallsAtLeastAsMuchAsVectorRetrieval() {
+        double vectorAt5 = recall(RetrievalMode.VECTOR, 5);
+        double vectorAt2 = recall(RetrievalMode.VECTOR, 2);
+        double hybridAt2 = recall(RetrievalMode.HYBRID, 2);
+
+        assertThat(hybridAt2).as("hybrid@2 vs vector@2").isGreaterThan(vectorAt2);
+        assertThat(hybridAt2).as("hybrid@2 vs vector@5").isGreaterThanOrEqualTo(vectorAt5);
+    }
+
+    // Fraction of relevant chunks retrieved, averaged over the queries
+    private double recall(RetrievalMode mode, int topK) {
+        double total = 0;
+        for (EvalQuery query : queries) {
+            QueryResponse response = ragQueryService.query(QueryRequest.builder()
+                    .question(query.question())
+                    .topK(topK)
+                    .similarityThreshold(0.0)
+                    .retrievalMode(mode)
+                    .build());
+
+            long found = response.getChunksUsed().stream()
+                    .map(chunk -> chunkIds.get(chunk.getChunkIndex()))
+                    .filter(query.relevant()::contains)
+                    .count();
+            total += (double) found / query.relevant().size();
+        }
+        return total / queries.size();
+    }
+
+    private record EvalQuery(String question, Set<String> relevant) {
+    }
+}
@@ -0,0 +1,142 @@
+package dev.slethware.qurag.service.RAG;
+
+import dev.slethware.qurag.dto.request.QueryRequest;
+import dev.slethware.qurag.dto.response.QueryResponse;
+import dev.slethware.qurag.service.concurrency.Bulkhead;
+import dev.slethware.qurag.service.concurrency.BulkheadChatModel;
+import dev.slethware.qurag.service.concurrency.CircuitBreaker;
+import dev.slethware.qurag.service.metrics.QuragMetrics;
+import dev.slethware.qurag.support.CountingVectorStore;
+import dev.slethware.qurag.support.FakeChatModel;
+import dev.slethware.qurag.support.FakeEmbeddingModel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.document.Document;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives the query path concurrently against a chat model that takes 150 ms per answer.
+ */
+class QueryConcurrencyLoadTest {
+
+    private static final int REQUESTS = 64;
+    private static final int PLATFORM_POOL_SIZE = 8;
+    private static final int CHAT_BULKHEAD = 32;
+
+    private FakeEmbeddingModel embeddingModel;
+    private CountingVectorStore vectorStore;
+
+    @BeforeEach
+    void setUp() {
+        embeddingModel = new FakeEmbeddingModel();
+        vectorStore = new CountingVectorStore(embeddingModel);
+        vectorStore.add(List.of(
+                new Document("Invoices are archived for seven years.",
+                        Map.of("document_id", "doc-1", "chunk_index", 0)),
+                new Document("Refunds are processed within five business days.",
+                        Map.of("document_id", "doc-1", "chunk_index", 1))));
+    }
+
+    @Test
+    void identicalInFlightQuestionsShareOneChatCall() throws Exception {
+        FakeChatModel chatModel = slowChatModel(100);
+        RagQueryServiceImpl service = service(chatModel);
+
+        List<QueryResponse> responses = runConcurrently(Executors.newVirtualThreadPerTaskExecutor(), service,
+                i -> (i % 2 == 0 ? "How long are refunds processed?" : "  how long are REFUNDS processed "));
+
+        assertThat(chatModel.getCalls()).isEqualTo(1);
+        assertThat(responses).hasSize(REQUESTS)
+                .allSatisfy(response -> assertThat(response.getAnswer()).isEqualTo("Five business days."));
+    }
+
+    @Test
+    void virtualThreadsOutpaceAFixedPoolOnASlowBackend() throws Exception {
+        FakeChatModel pooledChatModel = slowChatModel(50);
+        long pooledMillis = timeMillis(() -> runConcurrently(Executors.newFixedThreadPool(PLATFORM_POOL_SIZE),
+                service(pooledChatModel), this::distinctQuestion));
+
+        FakeChatModel virtualChatModel = slowChatModel(50);
+        long virtualMillis = timeMillis(() -> runConcurrently(Executors.newVirtualThreadPerTaskExecutor(),
+                service(virtualChatModel), this::distinctQuestion));
+
+        // The pool serves 8 requests per 150 ms round; virtual threads are only limited by the chat bulkhead
+        assertThat(pooledChatModel.getMaxConcurrentCalls()).isEqualTo(PLATFORM_POOL_SIZE);
+        assertThat(virtualChatModel.getMaxConcurrentCalls()).isGreaterThan(PLATFORM_POOL_SIZE)
+                .isLessThanOrEqualTo(CHAT_BULKHEAD);
+        assertThat(virtualChatModel.getCalls()).isEqualTo(REQUESTS);
+        // Wall time also includes CPU work that a single-core runner cannot overlap, so only the order is checked
+        assertThat(virtualMillis).isLessThan(pooledMillis);
+    }
+
+    private String distinctQuestion(int i) {
+        return "How long are refunds processed for order " + i + "?";
+    }
+
+    private List<QueryResponse> runConcurrently(ExecutorService executor, RagQueryServiceImpl service,
+                                                IntFunction<String> question) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<QueryResponse>> futures = new ArrayList<>(REQUESTS);
+        try (executor) {
+            for (int i = 0; i < REQUESTS; i++) {
+                QueryRequest request = QueryRequest.builder()
+                        .question(question.apply(i))
+                        .topK(1)
+                        .similarityThreshold(0.0)
+                        .build();
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return service.query(request);
+                }));
+            }
+            start.countDown();
+
+            List<QueryResponse> responses = new ArrayList<>(REQUESTS);
+            for (Future<QueryResponse> future : futures) {
+                responses.add(future.get(30, TimeUnit.SECONDS));
+            }
+            return responses;
+        }
+    }
+
+    private long timeMillis(Run run) throws Exception {
+        long start = System.nanoTime();
+        run.run();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    // Three words, so each blocking answer takes three times the token delay
+    private FakeChatModel slowChatModel(long tokenDelayMillis) {
+        FakeChatModel chatModel = new FakeChatModel("Five business days.");
+        chatModel.setTokenDelayMillis(tokenDelayMillis);
+        return chatModel;
+    }
+
+    private RagQueryServiceImpl service(FakeChatModel chatModel) {
+        Bulkhead chatBulkhead = new Bulkhead("chat", CHAT_BULKHEAD, Duration.ofSeconds(10));
+        QueryResultCache disabledCache = new QueryResultCache(embeddingModel, false, 100, 10, false, 0.0);
+        return new RagQueryServiceImpl(ChatClient.builder(new BulkheadChatModel(chatModel, chatBulkhead)),
+                vectorStore, disabledCache, new Bm25Index(), new QueryScopeResolver(),
+                new ContextPacker(QuragMetrics.noop(), false, 3, 0.7, 3000),
+                QuragMetrics.noop(),
+                new DeadlineGuard(new CircuitBreaker("chat", 5, Duration.ofSeconds(30)), 15_000));
+    }
+
+    @FunctionalInterface
+    private interface Run {
+        void run() throws Exception;
+    }
+}
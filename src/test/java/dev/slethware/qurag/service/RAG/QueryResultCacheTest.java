@@ -0,0 +1,121 @@
+package dev.slethware.qurag.service.RAG;
+
+import dev.slethware.qurag.dto.request.QueryRequest;
+import dev.slethware.qurag.dto.response.QueryCacheStatsResponse;
+import dev.slethware.qurag.dto.response.QueryResponse;
+import dev.slethware.qurag.event.DocumentsChangedEvent;
+import dev.slethware.qurag.service.concurrency.CircuitBreaker;
+import dev.slethware.qurag.service.metrics.QuragMetrics;
+import dev.slethware.qurag.support.CountingVectorStore;
+import dev.slethware.qurag.support.FakeChatModel;
+import dev.slethware.qurag.support.FakeEmbeddingModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.document.Document;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryResultCacheTest {
+
+    private final FakeEmbeddingModel embeddingModel = new FakeEmbeddingModel();
+
+    @Test
+    void exactTierMatchesNormalizedQuestionAndParameters() {
+        QueryResultCache cache = new QueryResultCache(embeddingModel, true, 100, 10, false, 0.0);
+        QueryResponse response = QueryResponse.builder().answer("Five days").build();
+
+        cache.put(request("How long do refunds take?", 5), response);
+
+        assertThat(cache.get(request("  how LONG do   refunds take ", 5))).isSameAs(response);
+        assertThat(cache.get(request("How long do refunds take?", 3))).isNull();
+        assertThat(embeddingModel.getCalls()).isZero();
+
+        QueryCacheStatsResponse stats = cache.getStats();
+        assertThat(stats.getExactHits()).isEqualTo(1);
+        assertThat(stats.getMisses()).isEqualTo(1);
+        assertThat(stats.getHitRatio()).isEqualTo(0.5);
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+        assertThat(registry.get("qurag.query.cache.lookups").tag("result", "exact_hit").functionCounter().count())
+                .isEqualTo(1);
+        assertThat(registry.get("qurag.query.cache.lookups").tag("result", "miss").functionCounter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void semanticTierReusesAnswersForNearbyQuestions() {
+        QueryResultCache cache = new QueryResultCache(embeddingModel, true, 100, 10, true, 0.05);
+        QueryResponse response = QueryResponse.builder().answer("Five days").build();
+
+        cache.put(request("How long do refunds take?", 5), response);
+
+        assertThat(cache.get(request("Refunds take how long do?", 5))).isSameAs(response);
+        assertThat(cache.get(request("Where is the head office?", 5))).isNull();
+        assertThat(cache.getStats().getSemanticHits()).isEqualTo(1);
+    }
+
+    @Test
+    void documentChangesInvalidateEverything() {
+        QueryResultCache cache = new QueryResultCache(embeddingModel, true, 100, 10, false, 0.0);
+        cache.put(request("How long do refunds take?", 5), QueryResponse.builder().answer("Five days").build());
+
+        cache.onDocumentsChanged(new DocumentsChangedEvent(this, UUID.randomUUID()));
+
+        assertThat(cache.get(request("How long do refunds take?", 5))).isNull();
+        assertThat(cache.getStats().getInvalidations()).isEqualTo(1);
+    }
+
+    @Test
+    void answersFromBeforeADocumentChangeAreNotStored() {
+        QueryResultCache cache = new QueryResultCache(embeddingModel, true, 100, 10, false, 0.0);
+        long queryStarted = cache.generation();
+
+        // The query retrieves from the old documents, an upload lands, then the query finishes
+        cache.onDocumentsChanged(new DocumentsChangedEvent(this, UUID.randomUUID()));
+        cache.put(request("How long do refunds take?", 5), QueryResponse.builder().answer("Ten days").build(),
+                queryStarted);
+
+        assertThat(cache.get(request("How long do refunds take?", 5))).isNull();
+
+        QueryResponse fresh = QueryResponse.builder().answer("Five days").build();
+        cache.put(request("How long do refunds take?", 5), fresh, cache.generation());
+        assertThat(cache.get(request("How long do refunds take?", 5))).isSameAs(fresh);
+    }
+
+    @Test
+    void cachedQueriesSkipRetrievalAndChat() {
+        CountingVectorStore vectorStore = new CountingVectorStore(embeddingModel);
+        vectorStore.add(List.of(new Document("Refunds take five business days.", Map.of("document_id", "doc-1"))));
+        embeddingModel.reset();
+        FakeChatModel chatModel = new FakeChatModel("Five business days.");
+        QueryResultCache cache = new QueryResultCache(embeddingModel, true, 100, 10, false, 0.0);
+        RagQueryServiceImpl service = new RagQueryServiceImpl(ChatClient.builder(chatModel), vectorStore, cache,
+                new Bm25Index(), new QueryScopeResolver(),
+                new ContextPacker(QuragMetrics.noop(), false, 3, 0.7, 3000),
+                QuragMetrics.noop(),
+                new DeadlineGuard(new CircuitBreaker("chat", 5, Duration.ofSeconds(30)), 15_000));
+
+        service.query(request("How long do refunds take?", 5));
+        QueryResponse second = service.query(request("how long do refunds take", 5));
+
+        assertThat(second.getAnswer()).isEqualTo("Five business days.");
+        assertThat(chatModel.getCalls()).isEqualTo(1);
+        assertThat(vectorStore.getSearches()).isEqualTo(1);
+        assertThat(embeddingModel.getCalls()).isEqualTo(1);
+    }
+
+    private QueryRequest request(String question, int topK) {
+        return QueryRequest.builder()
+                .question(question)
+                .topK(topK)
+                .similarityThreshold(0.0)
+                .build();
+    }
+}
@@ -0,0 +1,431 @@
+package dev.slethware.qurag.service.RAG;
+
+import dev.slethware.qurag.dto.request.QueryRequest;
+import dev.slethware.qurag.dto.request.RetrievalMode;
+import dev.slethware.qurag.dto.response.ChunkInfo;
+import dev.slethware.qurag.dto.response.QueryResponse;
+import dev.slethware.qurag.dto.response.QueryStreamSummary;
+import dev.slethware.qurag.exception.ServiceUnavailableException;
+import dev.slethware.qurag.service.concurrency.CircuitBreaker;
+import dev.slethware.qurag.service.metrics.QuragMetrics;
+import dev.slethware.qurag.support.CountingVectorStore;
+import dev.slethware.qurag.support.FakeChatModel;
+import dev.slethware.qurag.support.FakeEmbeddingModel;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.document.Document;
+import org.springframework.http.codec.ServerSentEvent;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RagQueryServiceImplTest {
+
+    private FakeEmbeddingModel embeddingModel;
+    private CountingVectorStore vectorStore;
+    private FakeChatModel chatModel;
+    private RagQueryServiceImpl ragQueryService;
+
+    @BeforeEach
+    void setUp() {
+        embeddingModel = new FakeEmbeddingModel();
+        vectorStore = new CountingVectorStore(embeddingModel);
+        vectorStore.add(List.of(
+                new Document("Invoices are archived for seven years.",
+                        Map.of("document_id", "doc-1", "chunk_index", 0)),
+                new Document("Refunds are processed within five business days.",
+                        Map.of("document_id", "doc-1", "chunk_index", 1)),
+                new Document("The office is closed on public holidays.",
+                        Map.of("document_id", "doc-2", "chunk_index", 0))));
+        embeddingModel.reset();
+        vectorStore.reset();
+
+        chatModel = new FakeChatModel("Five business days.");
+        QueryResultCache disabledCache = new QueryResultCache(embeddingModel, false, 100, 10, false, 0.0);
+        ragQueryService = new RagQueryServiceImpl(ChatClient.builder(chatModel), vectorStore, disabledCache,
+                new Bm25Index(), new QueryScopeResolver(),
+                new ContextPacker(QuragMetrics.noop(), false, 3, 0.7, 3000),
+                QuragMetrics.noop(), deadlineGuard());
+    }
+
+    @Test
+    void queryEmbedsAndSearchesExactlyOnce() {
+        QueryResponse response = ragQueryService.query(QueryRequest.builder()
+                .question("How long are refunds processed?")
+                .topK(2)
+                .similarityThreshold(0.0)
+                .build());
+
+        assertThat(embeddingModel.getCalls()).isEqualTo(1);
+        assertThat(vectorStore.getSearches()).isEqualTo(1);
+        assertThat(chatModel.getCalls()).isEqualTo(1);
+        assertThat(response.getAnswer()).isEqualTo("Five business days.");
+        assertThat(response.getTotalChunks()).isEqualTo(2);
+    }
+
+    @Test
+    void promptContextMatchesReturnedChunks() {
+        QueryResponse response = ragQueryService.query(QueryRequest.builder()
+                .question("How long are refunds processed?")
+                .topK(1)
+                .similarityThreshold(0.0)
+                .build());
+
+        String prompt = chatModel.getPrompts().get(0).getUserMessage().getText();
+        assertThat(response.getChunksUsed()).hasSize(1);
+        assertThat(response.getChunksUsed().get(0).getContent())
+                .isEqualTo("Refunds are processed within five business days.");
+        assertThat(response.getChunksUsed().get(0).getDocumentId()).isEqualTo("doc-1");
+        assertThat(response.getChunksUsed().get(0).getChunkIndex()).isEqualTo(1);
+        assertThat(prompt).contains("How long are refunds processed?")
+                .contains("Refunds are processed within five business days.")
+                .doesNotContain("The office is closed on public holidays.");
+    }
+
+    @Test
+    void repeatedQueriesDoNotAccumulateRetrievals() {
+        QueryRequest request = QueryRequest.builder()
+                .question("When is the office closed?")
+                .topK(1)
+                .similarityThreshold(0.0)
+                .build();
+
+        ragQueryService.query(request);
+        ragQueryService.query(request);
+        ragQueryService.query(request);
+
+        assertThat(embeddingModel.getCalls()).isEqualTo(3);
+        assertThat(vectorStore.getSearches()).isEqualTo(3);
+    }
+
+    @Test
+    void streamSendsChunksBeforeTokensAndReachesFirstTokenBeforeBlockingCompletes() {
+        chatModel = new FakeChatModel("Refunds are processed within five business days.");
+        chatModel.setTokenDelayMillis(60);
+        QueryResultCache disabledCache = new QueryResultCache(embeddingModel, false, 100, 10, false, 0.0);
+        ragQueryService = new RagQueryServiceImpl(ChatClient.builder(chatModel), vectorStore, disabledCache,
+                new Bm25Index(), new QueryScopeResolver(),
+                new ContextPacker(QuragMetrics.noop(), false, 3, 0.7, 3000),
+                QuragMetrics.noop(), deadlineGuard());
+        QueryRequest request = QueryRequest.builder()
+                .question("How long are refunds processed?")
+                .topK(2)
+                .similarityThreshold(0.0)
+                .build();
+
+        // Warm both paths first so one-off class loading does not land in either measurement
+        ragQueryService.query(request);
+        ragQueryService.streamQuery(request).blockLast();
+        vectorStore.reset();
+
+        long blockingStart = System.nanoTime();
+        ragQueryService.query(request);
+        long blockingMillis = (System.nanoTime() - blockingStart) / 1_000_000;
+
+        List<ServerSentEvent<Object>> events = ragQueryService.streamQuery(request).collectList().block();
+
+        assertThat(events).isNotNull();
+        assertThat(events.get(0).event()).isEqualTo("chunks");
+        assertThat(events.get(events.size() - 1).event()).isEqualTo("summary");
+        assertThat(events.subList(1, events.size() - 1)).hasSize(7)
+                .allMatch(event -> "token".equals(event.event()));
+
+        QueryStreamSummary summary = (QueryStreamSummary) events.get(events.size() - 1).data();
+        assertThat(summary.getAnswer()).isEqualTo("Refunds are processed within five business days.");
+        assertThat(summary.getTotalChunks()).isEqualTo(2);
+        assertThat(summary.getTimeToFirstTokenMs()).isLessThan(blockingMillis / 2);
+        assertThat(vectorStore.getSearches()).isEqualTo(2);
+    }
+
+    @Test
+    void scopedQueriesOnlySearchTheRequestedDocumentsAndFilenames() {
+        UUID handbook = UUID.randomUUID();
+        UUID policy = UUID.randomUUID();
+        List<Document> chunks = List.of(
+                new Document("Refunds are processed within five business days.",
+                        Map.of("document_id", handbook.toString(), "chunk_index", 0, "filename", "handbook.pdf")),
+                new Document("Refunds for damaged goods are processed within ten business days.",
+                        Map.of("document_id", policy.toString(), "chunk_index", 0, "filename", "policy.pdf")));
+        vectorStore.add(chunks);
+        Bm25Index bm25Index = new Bm25Index();
+        bm25Index.add(chunks);
+        QueryResultCache disabledCache = new QueryResultCache(embeddingModel, false, 100, 10, false, 0.0);
+        ragQueryService = new RagQueryServiceImpl(ChatClient.builder(chatModel), vectorStore, disabledCache,
+                bm25Index, new QueryScopeResolver(),
+                new ContextPacker(QuragMetrics.noop(), false, 3, 0.7, 3000),
+                QuragMetrics.noop(), deadlineGuard());
+
+        for (RetrievalMode mode : RetrievalMode.values()) {
+            QueryResponse byId = ragQueryService.query(QueryRequest.builder()
+                    .question("How long are refunds processed?")
+                    .topK(5)
+                    .similarityThreshold(0.0)
+                    .retrievalMode(mode)
+                    .documentIds(List.of(policy.toString()))
+                    .build());
+            QueryResponse byFilename = ragQueryService.query(QueryRequest.builder()
+                    .question("How long are refunds processed?")
+                    .topK(5)
+                    .similarityThreshold(0.0)
+                    .retrievalMode(mode)
+                    .filenames(List.of("handbook.pdf"))
+                    .build());
+
+            assertThat(byId.getChunksUsed()).extracting(ChunkInfo::getDocumentId)
+                    .containsExactly(policy.toString());
+            assertThat(byFilename.getChunksUsed()).extracting(ChunkInfo::getDocumentId)
+                    .containsExactly(handbook.toString());
+        }
+    }
+
+    @Test
+    void fileTypeAndUploadDateCriteriaFilterOnChunkMetadata() {
+        LocalDateTime lastWeek = LocalDateTime.of(2026, 3, 2, 9, 0);
+        LocalDateTime yesterday = LocalDateTime.of(2026, 3, 8, 9, 0);
+        List<Document> chunks = List.of(
+                new Document("Refunds are processed within five business days.", Map.of(
+                        "document_id", "doc-1", "chunk_index", 0, "filename", "handbook.pdf",
+                        "file_type", "application/pdf", "uploaded_at", QueryScope.uploadedAtMetadata(lastWeek))),
+                new Document("Refunds for damaged goods are processed within ten business days.", Map.of(
+                        "document_id", "doc-2", "chunk_index", 0, "filename", "policy.txt",
+                        "file_type", "text/plain", "uploaded_at", QueryScope.uploadedAtMetadata(yesterday))));
+        vectorStore.add(chunks);
+        Bm25Index bm25Index = new Bm25Index();
+        bm25Index.add(chunks);
+        QueryResultCache disabledCache = new QueryResultCache(embeddingModel, false, 100, 10, false, 0.0);
+        ragQueryService = new RagQueryServiceImpl(ChatClient.builder(chatModel), vectorStore, disabledCache,
+                bm25Index, new QueryScopeResolver(),
+                new ContextPacker(QuragMetrics.noop(), false, 3, 0.7, 3000),
+                QuragMetrics.noop(), deadlineGuard());
+
+        for (RetrievalMode mode : RetrievalMode.values()) {
+            QueryResponse byFileType = ragQueryService.query(QueryRequest.builder()
+                    .question("How long are refunds processed?")
+                    .topK(5)
+                    .similarityThreshold(0.0)
+                    .retrievalMode(mode)
+                    .fileTypes(List.of("text/plain"))
+                    .build());
+            QueryResponse byUploadDate = ragQueryService.query(QueryRequest.builder()
+                    .question("How long are refunds processed?")
+                    .topK(5)
+                    .similarityThreshold(0.0)
+                    .retrievalMode(mode)
+                    .uploadedAfter(lastWeek)
+                    .uploadedBefore(yesterday)
+                    .build());
+
+            assertThat(byFileType.getChunksUsed()).extracting(ChunkInfo::getDocumentId).containsExactly("doc-2");
+            assertThat(byUploadDate.getChunksUsed()).extracting(ChunkInfo::getDocumentId).containsExactly("doc-1");
+        }
+    }
+
+    @Test
+    void queryStagesAreTimedWithPercentiles() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        QueryResultCache cache = new QueryResultCache(embeddingModel, true, 100, 10, false, 0.0);
+        ragQueryService = new RagQueryServiceImpl(ChatClient.builder(chatModel), vectorStore, cache,
+                new Bm25Index(), new QueryScopeResolver(),
+                new ContextPacker(QuragMetrics.noop(), false, 3, 0.7, 3000),
+                new QuragMetrics(registry), deadlineGuard());
+
+        for (int i = 0; i < 5; i++) {
+            ragQueryService.query(QueryRequest.builder()
+                    .question("How long are refunds processed? " + i)
+                    .similarityThreshold(0.0)
+                    .build());
+        }
+        ragQueryService.query(QueryRequest.builder()
+                .question("How long are refunds processed? 0")
+                .similarityThreshold(0.0)
+                .build());
+
+        for (String stage : List.of("retrieve", "pack", "generate")) {
+            assertThat(registry.get("qurag.query.stage").tags("stage", stage, "mode", "vector", "outcome", "success")
+                    .timer().count()).isEqualTo(5);
+        }
+        assertThat(registry.get("qurag.query.stage").tag("stage", "cache").timer().count()).isEqualTo(6);
+        assertThat(registry.get("qurag.query").tag("cached", "true").timer().count()).isEqualTo(1);
+
+        Timer uncached = registry.get("qurag.query").tags("cached", "false", "outcome", "success").timer();
+        HistogramSnapshot snapshot = uncached.takeSnapshot();
+        assertThat(snapshot.count()).isEqualTo(5);
+        assertThat(snapshot.percentileValues()).extracting(ValueAtPercentile::percentile)
+                .containsExactly(0.5, 0.95, 0.99);
+        assertThat(snapshot.percentileValues()[2].value(TimeUnit.NANOSECONDS)).isPositive();
+    }
+
+    @Test
+    void slowGenerationIsCancelledAndAnsweredFromTheChunksWithinTheBudget() throws InterruptedException {
+        chatModel.setTokenDelayMillis(1_000);
+        QueryRequest request = QueryRequest.builder()
+                .question("How long are refunds processed?")
+                .topK(2)
+                .similarityThreshold(0.0)
+                .latencyBudgetMs(300L)
+                .build();
+
+        long start = System.nanoTime();
+        QueryResponse response = ragQueryService.query(request);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertThat(elapsedMillis).isLessThan(1_500);
+        assertThat(response.isDegraded()).isTrue();
+        assertThat(response.getDegradedReason()).isEqualTo(DeadlineGuard.DEADLINE_EXCEEDED);
+        assertThat(response.getAnswer()).isEqualTo("Refunds are processed within five business days.");
+        assertThat(response.getTotalChunks()).isEqualTo(2);
+
+        // The late call is interrupted rather than left to finish its three seconds of generation
+        for (int i = 0; i < 100 && chatModel.getActiveCalls() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(chatModel.getActiveCalls()).isZero();
+    }
+
+    @Test
+    void repeatedTimeoutsOpenTheCircuitAndSkipGeneration() {
+        chatModel.setTokenDelayMillis(1_000);
+        CircuitBreaker breaker = new CircuitBreaker("chat", 2, Duration.ofSeconds(30));
+        QueryResultCache disabledCache = new QueryResultCache(embeddingModel, false, 100, 10, false, 0.0);
+        ragQueryService = new RagQueryServiceImpl(ChatClient.builder(chatModel), vectorStore, disabledCache,
+                new Bm25Index(), new QueryScopeResolver(),
+                new ContextPacker(QuragMetrics.noop(), false, 3, 0.7, 3000),
+                QuragMetrics.noop(), new DeadlineGuard(breaker, 100));
+        QueryRequest request = QueryRequest.builder()
+                .question("When is the office closed?")
+                .topK(1)
+                .similarityThreshold(0.0)
+                .build();
+
+        ragQueryService.query(request);
+        ragQueryService.query(request);
+        QueryResponse response = ragQueryService.query(request);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(chatModel.getCalls()).isEqualTo(2);
+        assertThat(response.isDegraded()).isTrue();
+        assertThat(response.getDegradedReason()).isEqualTo(DeadlineGuard.CIRCUIT_OPEN);
+        assertThat(response.getAnswer()).isEqualTo("The office is closed on public holidays.");
+    }
+
+    @Test
+    void generationRejectedLocallyFallsBackWithoutCountingAgainstTheCircuit() {
+        CircuitBreaker breaker = new CircuitBreaker("chat", 1, Duration.ofSeconds(30));
+        ChatModel busyModel = prompt -> {
+            throw new ServiceUnavailableException("The chat service is busy, please retry shortly");
+        };
+        QueryResultCache disabledCache = new QueryResultCache(embeddingModel, false, 100, 10, false, 0.0);
+        ragQueryService = new RagQueryServiceImpl(ChatClient.builder(busyModel), vectorStore, disabledCache,
+                new Bm25Index(), new QueryScopeResolver(),
+                new ContextPacker(QuragMetrics.noop(), false, 3, 0.7, 3000),
+                QuragMetrics.noop(), new DeadlineGuard(breaker, 15_000));
+
+        QueryResponse response = ragQueryService.query(QueryRequest.builder()
+                .question("When is the office closed?")
+                .topK(1)
+                .similarityThreshold(0.0)
+                .build());
+
+        assertThat(response.isDegraded()).isTrue();
+        assertThat(response.getDegradedReason()).isEqualTo(DeadlineGuard.OVERLOADED);
+        assertThat(response.getAnswer()).isEqualTo("The office is closed on public holidays.");
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void streamsAnswerExtractivelyWhileTheCircuitIsOpen() {
+        CircuitBreaker breaker = new CircuitBreaker("chat", 1, Duration.ofSeconds(30));
+        breaker.tryAcquire();
+        breaker.onFailure();
+        QueryResultCache disabledCache = new QueryResultCache(embeddingModel, false, 100, 10, false, 0.0);
+        ragQueryService = new RagQueryServiceImpl(ChatClient.builder(chatModel), vectorStore, disabledCache,
+                new Bm25Index(), new QueryScopeResolver(),
+                new ContextPacker(QuragMetrics.noop(), false, 3, 0.7, 3000),
+                QuragMetrics.noop(), new DeadlineGuard(breaker, 15_000));
+
+        List<ServerSentEvent<Object>> events = ragQueryService.streamQuery(QueryRequest.builder()
+                .question("When is the office closed?")
+                .topK(1)
+                .similarityThreshold(0.0)
+                .build()).collectList().block();
+
+        assertThat(events).extracting(ServerSentEvent::event).containsExactly("chunks", "token", "summary");
+        QueryStreamSummary summary = (QueryStreamSummary) events.get(2).data();
+        assertThat(summary.isDegraded()).isTrue();
+        assertThat(summary.getDegradedReason()).isEqualTo(DeadlineGuard.CIRCUIT_OPEN);
+        assertThat(summary.getAnswer()).isEqualTo("The office is closed on public holidays.");
+        assertThat(chatModel.getPrompts()).isEmpty();
+    }
+
+    @Test
+    void aTighterBudgetDoesNotWaitForAnIdenticalQueryWithALongerOne() throws InterruptedException {
+        chatModel.setTokenDelayMillis(500);
+        CompletableFuture<QueryResponse> patient =
+                CompletableFuture.supplyAsync(() -> ragQueryService.query(refundQuestion(15_000L)));
+        awaitGeneration();
+
+        long start = System.nanoTime();
+        QueryResponse hurried = ragQueryService.query(refundQuestion(300L));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertThat(elapsedMillis).isLessThan(1_000);
+        assertThat(hurried.isDegraded()).isTrue();
+        assertThat(patient.join().getAnswer()).isEqualTo("Five business days.");
+        assertThat(chatModel.getCalls()).isEqualTo(2);
+    }
+
+    @Test
+    void aJoinedDegradedAnswerIsRecordedAsDegraded() throws InterruptedException {
+        chatModel.setTokenDelayMillis(1_000);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        QueryResultCache disabledCache = new QueryResultCache(embeddingModel, false, 100, 10, false, 0.0);
+        ragQueryService = new RagQueryServiceImpl(ChatClient.builder(chatModel), vectorStore, disabledCache,
+                new Bm25Index(), new QueryScopeResolver(),
+                new ContextPacker(QuragMetrics.noop(), false, 3, 0.7, 3000),
+                new QuragMetrics(registry), deadlineGuard());
+
+        CompletableFuture<QueryResponse> leader =
+                CompletableFuture.supplyAsync(() -> ragQueryService.query(refundQuestion(500L)));
+        awaitGeneration();
+        QueryResponse joined = ragQueryService.query(refundQuestion(500L));
+
+        assertThat(joined).isSameAs(leader.join());
+        assertThat(joined.isDegraded()).isTrue();
+        assertThat(registry.get("qurag.query.coalesced").counter().count()).isEqualTo(1);
+        assertThat(registry.get("qurag.query").tag("outcome", "degraded").timer().count()).isEqualTo(2);
+        assertThat(registry.find("qurag.query").tag("outcome", "success").timer()).isNull();
+    }
+
+    private static QueryRequest refundQuestion(long latencyBudgetMs) {
+        return QueryRequest.builder()
+                .question("How long are refunds processed?")
+                .topK(2)
+                .similarityThreshold(0.0)
+                .latencyBudgetMs(latencyBudgetMs)
+                .build();
+    }
+
+    private void awaitGeneration() throws InterruptedException {
+        for (int i = 0; i < 200 && chatModel.getActiveCalls() == 0; i++) {
+            Thread.sleep(5);
+        }
+        assertThat(chatModel.getActiveCalls()).isPositive();
+    }
+
+    private static DeadlineGuard deadlineGuard() {
+        return new DeadlineGuard(new CircuitBreaker("chat", 5, Duration.ofSeconds(30)), 15_000);
+    }
+}
@@ -0,0 +1,116 @@
+package dev.slethware.qurag.service.S3;
+
+import dev.slethware.qurag.support.LocalS3Client;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CachingS3ServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private LocalS3Client s3Client;
+    private S3ServiceImpl s3Service;
+
+    @BeforeEach
+    void setUp() {
+        s3Client = new LocalS3Client(tempDir.resolve("s3"));
+        s3Service = new S3ServiceImpl(s3Client);
+        ReflectionTestUtils.setField(s3Service, "bucketName", "qurag-test");
+        ReflectionTestUtils.setField(s3Service, "multipartThreshold", 16L * 1024 * 1024);
+        ReflectionTestUtils.setField(s3Service, "partSize", 8 * 1024 * 1024);
+    }
+
+    @Test
+    void repeatedReadsAreServedFromDisk() throws IOException {
+        CachingS3Service cache = new CachingS3Service(s3Service, tempDir.resolve("cache"), 1024 * 1024, 1024 * 1024,
+                Duration.ofMinutes(5));
+        byte[] content = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8);
+        cache.uploadFile(new ByteArrayInputStream(content), content.length, "text/plain", "fox.txt");
+
+        assertThat(cache.downloadFile("fox.txt")).isEqualTo(content);
+        assertThat(cache.downloadFile("fox.txt")).isEqualTo(content);
+
+        ByteArrayOutputStream transferred = new ByteArrayOutputStream();
+        try (S3ObjectStream object = cache.openStream("fox.txt")) {
+            assertThat(object.getETag()).isEqualTo(s3Service.getETag("fox.txt"));
+            object.transferTo(transferred);
+        }
+        try (S3ObjectStream range = cache.openStream("fox.txt", 4, 8)) {
+            assertThat(new String(range.getInputStream().readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("quick");
+            assertThat(range.getContentLength()).isEqualTo(5);
+            assertThat(range.getTotalLength()).isEqualTo(content.length);
+        }
+
+        assertThat(transferred.toByteArray()).isEqualTo(content);
+        assertThat(s3Client.getGetRequests()).isEqualTo(1);
+        // Checked when cached, so hits within the revalidation interval make no HEAD requests of their own
+        assertThat(s3Client.getHeadRequests()).isEqualTo(1);
+        assertThat(cache.getHitRatio()).isEqualTo(0.75);
+        assertThat(cache.getBytesSaved()).isEqualTo(2L * content.length + 5);
+    }
+
+    @Test
+    void changedObjectsAreReadAgainInsteadOfServedStale() throws IOException {
+        CachingS3Service cache = new CachingS3Service(s3Service, tempDir.resolve("cache"), 1024 * 1024, 1024 * 1024,
+                Duration.ZERO);
+        byte[] original = "Refunds take five days.".getBytes(StandardCharsets.UTF_8);
+        byte[] replaced = "Refunds take ten business days.".getBytes(StandardCharsets.UTF_8);
+        cache.uploadFile(new ByteArrayInputStream(original), original.length, "text/plain", "policy.txt");
+        cache.downloadFile("policy.txt");
+
+        // Written by another instance, so this cache was not told
+        s3Service.uploadFile(new ByteArrayInputStream(replaced), replaced.length, "text/plain", "policy.txt");
+
+        assertThat(cache.downloadFile("policy.txt")).isEqualTo(replaced);
+        assertThat(cache.downloadFile("policy.txt")).isEqualTo(replaced);
+        assertThat(cache.getStaleEntries()).isEqualTo(1);
+        assertThat(s3Client.getGetRequests()).isEqualTo(2);
+    }
+
+    @Test
+    void leastRecentlyUsedObjectsAreEvictedAndPartialReadsAreNotKept() throws IOException {
+        CachingS3Service cache = new CachingS3Service(s3Service, tempDir.resolve("cache"), 250, 250, Duration.ofMinutes(5));
+        for (String key : new String[]{"a", "b", "c", "d"}) {
+            byte[] content = new byte[100];
+            Arrays.fill(content, (byte) key.charAt(0));
+            cache.uploadFile(new ByteArrayInputStream(content), content.length, "application/octet-stream", key);
+        }
+
+        cache.downloadFile("a");
+        cache.downloadFile("b");
+        cache.downloadFile("a");
+        cache.downloadFile("c");
+        assertThat(cache.getCachedBytes()).isEqualTo(200);
+        assertThat(s3Client.getGetRequests()).isEqualTo(3);
+
+        // b was least recently used, so it went to make room for c
+        cache.downloadFile("a");
+        cache.downloadFile("c");
+        assertThat(s3Client.getGetRequests()).isEqualTo(3);
+        cache.downloadFile("b");
+        assertThat(s3Client.getGetRequests()).isEqualTo(4);
+
+        try (S3ObjectStream object = cache.openStream("d")) {
+            object.getInputStream().readNBytes(10);
+        }
+        cache.downloadFile("d");
+        assertThat(s3Client.getGetRequests()).isEqualTo(6);
+
+        cache.deleteFile("d");
+        assertThat(cache.getCachedBytes()).isEqualTo(100);
+        assertThat(tempDir.resolve("cache").toFile().list()).hasSize(1);
+    }
+}
@@ -0,0 +1,152 @@
+package dev.slethware.qurag.service.S3;
+
+import dev.slethware.qurag.support.LocalS3Client;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class S3ServiceImplTest {
+
+    private static final String BUCKET = "qurag-test";
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+    private static final long MB = 1024 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private LocalS3Client s3Client;
+    private S3ServiceImpl s3Service;
+
+    @BeforeEach
+    void setUp() {
+        s3Client = new LocalS3Client(tempDir);
+        s3Service = new S3ServiceImpl(s3Client);
+        ReflectionTestUtils.setField(s3Service, "bucketName", BUCKET);
+        ReflectionTestUtils.setField(s3Service, "multipartThreshold", 8 * MB);
+        ReflectionTestUtils.setField(s3Service, "partSize", PART_SIZE);
+    }
+
+    @Test
+    void smallFilesRoundTripAndServeRanges() throws IOException {
+        byte[] content = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8);
+        s3Service.uploadFile(new java.io.ByteArrayInputStream(content), content.length, "text/plain", "fox.txt");
+
+        try (S3ObjectStream whole = s3Service.openStream("fox.txt")) {
+            assertThat(whole.getInputStream().readAllBytes()).isEqualTo(content);
+            assertThat(whole.getTotalLength()).isEqualTo(content.length);
+        }
+
+        try (S3ObjectStream range = s3Service.openStream("fox.txt", 4, 8)) {
+            assertThat(new String(range.getInputStream().readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("quick");
+            assertThat(range.getContentLength()).isEqualTo(5);
+            assertThat(range.getTotalLength()).isEqualTo(content.length);
+        }
+    }
+
+    @Test
+    void largeFilesUseMultipartUploadAndKeepTheirContent() throws IOException {
+        long size = 3 * PART_SIZE + 12_345;
+        s3Service.uploadFile(new PatternInputStream(size), size, "application/pdf", "large.pdf");
+
+        try (S3ObjectStream object = s3Service.openStream("large.pdf")) {
+            assertThat(object.getETag()).endsWith("-4\"");
+            assertThat(object.getContentLength()).isEqualTo(size);
+            assertThat(sameContent(object.getInputStream(), new PatternInputStream(size))).isTrue();
+        }
+
+        long offset = 2L * PART_SIZE - 10;
+        try (S3ObjectStream range = s3Service.openStream("large.pdf", offset, offset + 19)) {
+            PatternInputStream expected = new PatternInputStream(size);
+            expected.skipNBytes(offset);
+            assertThat(range.getInputStream().readAllBytes()).isEqualTo(expected.readNBytes(20));
+        }
+    }
+
+    @Test
+    void heapUsageStaysFlatAsFileSizeGrows() throws IOException {
+        // Warm up class loading and JIT paths so they do not count against the first measurement
+        transfer("warmup.bin", 16 * MB);
+
+        long smallAllocation = transfer("small.bin", 16 * MB);
+        long largeAllocation = transfer("large.bin", 128 * MB);
+
+        // Buffering would allocate at least the extra 112MB; streaming reuses one part buffer
+        assertThat(largeAllocation - smallAllocation)
+                .as("allocated for 16MB file=%d KB, 128MB file=%d KB", smallAllocation / 1024, largeAllocation / 1024)
+                .isLessThan(16 * MB);
+    }
+
+    private long transfer(String key, long size) throws IOException {
+        long before = allocatedBytes();
+
+        s3Service.uploadFile(new PatternInputStream(size), size, "application/pdf", key);
+        try (S3ObjectStream object = s3Service.openStream(key)) {
+            object.getInputStream().transferTo(OutputStream.nullOutputStream());
+        }
+
+        return allocatedBytes() - before;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    private static boolean sameContent(InputStream actual, InputStream expected) throws IOException {
+        byte[] a = new byte[64 * 1024];
+        byte[] b = new byte[64 * 1024];
+        while (true) {
+            int read = actual.readNBytes(a, 0, a.length);
+            int expectedRead = expected.readNBytes(b, 0, read == 0 ? b.length : read);
+            if (read != expectedRead) {
+                return false;
+            }
+            if (read == 0) {
+                return true;
+            }
+            if (!java.util.Arrays.equals(a, 0, read, b, 0, read)) {
+                return false;
+            }
+        }
+    }
+
+    // Generates a deterministic byte pattern without ever holding the content in memory
+    private static class PatternInputStream extends InputStream {
+
+        private final long size;
+        private long position;
+
+        PatternInputStream(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public int read() {
+            if (position >= size) {
+                return -1;
+            }
+            return (int) ((position++ * 31) & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (position >= size) {
+                return -1;
+            }
+            int count = (int) Math.min(length, size - position);
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (byte) ((position++ * 31) & 0xFF);
+            }
+            return count;
+        }
+    }
+}
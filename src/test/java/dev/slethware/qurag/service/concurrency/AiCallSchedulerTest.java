@@ -0,0 +1,97 @@
+package dev.slethware.qurag.service.concurrency;
+
+import dev.slethware.qurag.support.QuotaEnforcingEmbeddingModel;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AiCallSchedulerTest {
+
+    @Test
+    void interactiveCallsGoAheadOfQueuedBackgroundCalls() throws InterruptedException {
+        AiCallScheduler scheduler = new AiCallScheduler("embedding", 10, 1, Duration.ofSeconds(10));
+        List<String> admitted = new CopyOnWriteArrayList<>();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            String name = "background-" + i;
+            threads.add(Thread.ofVirtual().start(() -> CallPriority.background(
+                    () -> scheduler.call(() -> admitted.add(name)))));
+        }
+        while (admitted.size() + scheduler.getQueued(CallPriority.BACKGROUND) < 6) {
+            Thread.sleep(5);
+        }
+
+        int admittedBefore = admitted.size();
+        threads.add(Thread.ofVirtual().start(() -> scheduler.call(() -> admitted.add("interactive"))));
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // At 10 per second the background queue takes half a second to drain; the query waits for one token
+        assertThat(admittedBefore).isLessThan(4);
+        assertThat(admitted).hasSize(7);
+        assertThat(admitted.indexOf("interactive")).isLessThanOrEqualTo(admittedBefore + 1);
+        assertThat(scheduler.getQueued(CallPriority.BACKGROUND)).isZero();
+    }
+
+    @Test
+    void slowsDownToTheQuotaAfterRateLimitedResponses() {
+        // The provider allows 20 requests per second; the scheduler is configured five times too high
+        QuotaEnforcingEmbeddingModel provider = new QuotaEnforcingEmbeddingModel(10, Duration.ofMillis(500));
+        AiCallScheduler scheduler = new AiCallScheduler("embedding", 100, 10, Duration.ofSeconds(10));
+        EmbeddingModel model = new ScheduledEmbeddingModel(provider, scheduler);
+
+        int succeeded = 0;
+        while (succeeded < 40) {
+            try {
+                model.embed("refund policy " + succeeded);
+                succeeded++;
+            } catch (RuntimeException e) {
+                assertThat(AiCallScheduler.isRateLimited(e)).isTrue();
+            }
+        }
+
+        // Held at 100 per second, four out of five attempts past the first burst would be rejected
+        assertThat(scheduler.getThrottled()).isPositive();
+        assertThat(provider.getRejected()).isLessThan(30);
+        assertThat(scheduler.getRate()).isLessThan(100);
+    }
+
+    @Test
+    void onlyQuotaErrorsCountAsRateLimited() {
+        assertThat(AiCallScheduler.isRateLimited(new TransientAiException("429 - {\"error\":\"quota\"}"))).isTrue();
+        assertThat(AiCallScheduler.isRateLimited(new RuntimeException("wrapped",
+                new IllegalStateException("RESOURCE_EXHAUSTED: quota exceeded")))).isTrue();
+        assertThat(AiCallScheduler.isRateLimited(HttpClientErrorException.create(
+                HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", null, null, null))).isTrue();
+
+        assertThat(AiCallScheduler.isRateLimited(new TransientAiException("503 - Service Unavailable"))).isFalse();
+        assertThat(AiCallScheduler.isRateLimited(new TransientAiException("500 - request 4291 failed"))).isFalse();
+        assertThat(AiCallScheduler.isRateLimited(new IllegalStateException("Chunk 429 could not be parsed"))).isFalse();
+    }
+
+    @Test
+    void serverErrorsDoNotSlowTheSchedulerDown() {
+        AiCallScheduler scheduler = new AiCallScheduler("embedding", 100, 10, Duration.ofSeconds(10));
+
+        for (int i = 0; i < 20; i++) {
+            assertThatThrownBy(() -> scheduler.call(() -> {
+                throw new TransientAiException("503 - Service Unavailable");
+            })).isInstanceOf(TransientAiException.class);
+        }
+
+        assertThat(scheduler.getThrottled()).isZero();
+        assertThat(scheduler.getRate()).isEqualTo(100);
+    }
+}
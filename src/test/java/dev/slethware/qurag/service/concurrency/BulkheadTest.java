@@ -0,0 +1,70 @@
+package dev.slethware.qurag.service.concurrency;
+
+import dev.slethware.qurag.exception.ServiceUnavailableException;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BulkheadTest {
+
+    @Test
+    void fullBulkheadRefusesCallsWithoutAffectingOthers() throws Exception {
+        Bulkhead chat = new Bulkhead("chat", 1, Duration.ofMillis(50));
+        Bulkhead s3 = new Bulkhead("s3", 1, Duration.ofMillis(50));
+
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> slowCall = CompletableFuture.supplyAsync(() -> chat.call(() -> {
+            holding.countDown();
+            await(release);
+            return "slow";
+        }), Thread.ofVirtual()::start);
+        holding.await();
+
+        assertThatThrownBy(() -> chat.call(() -> "second"))
+                .isInstanceOf(ServiceUnavailableException.class)
+                .hasMessageContaining("chat");
+        assertThat(chat.getRejections()).isEqualTo(1);
+        assertThat(s3.call(() -> "unaffected")).isEqualTo("unaffected");
+
+        release.countDown();
+        assertThat(slowCall.get()).isEqualTo("slow");
+        assertThat(chat.call(() -> "after")).isEqualTo("after");
+        assertThat(chat.getActive()).isZero();
+    }
+
+    @Test
+    void streamsHoldTheirPermitUntilTheyTerminate() {
+        Bulkhead chat = new Bulkhead("chat", 1, Duration.ZERO);
+        List<Integer> activeWhileStreaming = new CopyOnWriteArrayList<>();
+
+        List<String> tokens = chat.flux(() -> Flux.just("a", "b", "c"))
+                .doOnNext(token -> activeWhileStreaming.add(chat.getActive()))
+                .collectList()
+                .block();
+
+        assertThat(tokens).containsExactly("a", "b", "c");
+        assertThat(activeWhileStreaming).containsOnly(1);
+        assertThat(chat.getActive()).isZero();
+
+        // A client that disconnects early gives its permit back as well
+        chat.flux(() -> Flux.just("a", "b", "c")).take(1).blockLast();
+        assertThat(chat.getActive()).isZero();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package dev.slethware.qurag.service.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    @Test
+    void opensAfterConsecutiveFailuresAndClosesAfterASuccessfulTrial() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker("chat", 2, Duration.ofMillis(100));
+
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onFailure();
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onSuccess();
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onFailure();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onFailure();
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+        assertThat(breaker.getShortCircuits()).isEqualTo(1);
+
+        Thread.sleep(150);
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        // Only one trial call at a time
+        assertThat(breaker.tryAcquire()).isFalse();
+        breaker.onSuccess();
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void failedTrialOpensTheBreakerAgain() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker("chat", 1, Duration.ofMillis(100));
+        breaker.tryAcquire();
+        breaker.onFailure();
+
+        Thread.sleep(150);
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onFailure();
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void ignoredCallsNeitherCountNorUseUpTheTrial() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker("chat", 1, Duration.ofMillis(100));
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onIgnored();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        breaker.tryAcquire();
+        breaker.onFailure();
+        Thread.sleep(150);
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onIgnored();
+
+        // The next call is let through as the trial straight away
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        breaker.onSuccess();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+}
@@ -0,0 +1,53 @@
+package dev.slethware.qurag.service.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    @Test
+    void waitersShareTheLeadersFailureAndTheKeyIsFreedAfterwards() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch fail = new CountDownLatch(1);
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+            executions.incrementAndGet();
+            started.countDown();
+            await(fail);
+            throw new IllegalStateException("provider down");
+        }), Thread.ofVirtual()::start);
+        started.await();
+
+        CompletableFuture<String> waiter = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+            executions.incrementAndGet();
+            return "own answer";
+        }), Thread.ofVirtual()::start);
+        while (singleFlight.getCoalesced() == 0) {
+            Thread.onSpinWait();
+        }
+        fail.countDown();
+
+        assertThatThrownBy(leader::get).isInstanceOf(ExecutionException.class).hasRootCauseMessage("provider down");
+        assertThatThrownBy(waiter::get).isInstanceOf(ExecutionException.class).hasRootCauseMessage("provider down");
+        assertThat(executions).hasValue(1);
+
+        assertThat(singleFlight.execute("key", () -> "retried")).isEqualTo("retried");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
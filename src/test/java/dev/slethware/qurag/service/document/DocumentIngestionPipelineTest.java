@@ -0,0 +1,335 @@
+package dev.slethware.qurag.service.document;
+
+import dev.slethware.qurag.entity.Document;
+import dev.slethware.qurag.entity.DocumentChunk;
+import dev.slethware.qurag.entity.ProcessingStatus;
+import dev.slethware.qurag.repository.DocumentChunkRepository;
+import dev.slethware.qurag.repository.DocumentContentRepository;
+import dev.slethware.qurag.repository.DocumentRepository;
+import dev.slethware.qurag.service.S3.S3ServiceImpl;
+import dev.slethware.qurag.service.metrics.QuragMetrics;
+import dev.slethware.qurag.support.CountingVectorStore;
+import dev.slethware.qurag.support.FakeEmbeddingModel;
+import dev.slethware.qurag.support.LocalS3Client;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DocumentIngestionPipelineTest {
+
+    private static final int DOCUMENTS = 6;
+
+    @TempDir
+    Path tempDir;
+
+    private final Map<UUID, Document> documents = new ConcurrentHashMap<>();
+    private final Map<UUID, List<DocumentChunk>> chunkRows = new ConcurrentHashMap<>();
+    private FakeEmbeddingModel embeddingModel;
+    private CountingVectorStore vectorStore;
+    private ThreadPoolTaskExecutor parseExecutor;
+    private ThreadPoolTaskExecutor embedExecutor;
+    private S3ServiceImpl s3Service;
+    private DocumentIngestionPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        DocumentRepository documentRepository = mock(DocumentRepository.class);
+        when(documentRepository.findById(any())).thenAnswer(invocation ->
+                Optional.ofNullable(documents.get(invocation.<UUID>getArgument(0))));
+        when(documentRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        s3Service = new S3ServiceImpl(new LocalS3Client(tempDir));
+        ReflectionTestUtils.setField(s3Service, "bucketName", "qurag-test");
+        ReflectionTestUtils.setField(s3Service, "multipartThreshold", 16L * 1024 * 1024);
+        ReflectionTestUtils.setField(s3Service, "partSize", 8 * 1024 * 1024);
+
+        DocumentChunkRepository chunkRepository = mock(DocumentChunkRepository.class);
+        when(chunkRepository.saveAll(any())).thenAnswer(invocation -> {
+            List<DocumentChunk> rows = new ArrayList<>();
+            invocation.<Iterable<DocumentChunk>>getArgument(0).forEach(rows::add);
+            rows.forEach(row -> chunkRows.computeIfAbsent(row.getDocumentId(), id -> new ArrayList<>()).add(row));
+            return rows;
+        });
+        when(chunkRepository.findByDocumentIdOrderByChunkIndexAsc(any(), any())).thenAnswer(invocation ->
+                new PageImpl<>(chunkRows.getOrDefault(invocation.<UUID>getArgument(0), List.of())));
+        when(chunkRepository.findVectorIdsByDocumentId(any())).thenAnswer(invocation ->
+                chunkRows.getOrDefault(invocation.<UUID>getArgument(0), List.of()).stream()
+                        .map(DocumentChunk::getVectorId)
+                        .toList());
+        when(chunkRepository.deleteByDocumentId(any())).thenAnswer(invocation ->
+                Optional.ofNullable(chunkRows.remove(invocation.<UUID>getArgument(0))).map(List::size).orElse(0));
+
+        embeddingModel = new FakeEmbeddingModel();
+        vectorStore = new CountingVectorStore(embeddingModel);
+        EmbeddingBatchWriter writer = new EmbeddingBatchWriter(vectorStore, QuragMetrics.noop(),
+                8000, 100, 2, 0, 10, 10);
+
+        parseExecutor = executor(2);
+        embedExecutor = executor(1);
+        pipeline = new DocumentIngestionPipeline(documentRepository, chunkRepository,
+                mock(DocumentContentRepository.class), writer, s3Service, parseExecutor, embedExecutor,
+                mock(ApplicationEventPublisher.class), QuragMetrics.noop(), DOCUMENTS, 100, 5, 100, 2, 1_000_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        parseExecutor.shutdown();
+        embedExecutor.shutdown();
+    }
+
+    @Test
+    void bulkDocumentsShareEmbeddingBatches() throws InterruptedException {
+        DocumentIngestionPipeline.BulkIngestion bulk = pipeline.openBulk();
+        for (UUID id : storeDocuments()) {
+            assertThat(bulk.reserve()).isTrue();
+            bulk.submit(id);
+        }
+        bulk.close();
+        awaitCompletion();
+
+        // Six one-chunk documents fit in a single batch instead of one batch each
+        assertThat(vectorStore.getAdds()).isEqualTo(1);
+        assertThat(documents.values()).allSatisfy(document -> {
+            assertThat(document.getStatus()).isEqualTo(ProcessingStatus.COMPLETED);
+            assertThat(document.getProcessedChunks()).isEqualTo(1);
+        });
+    }
+
+    @Test
+    void bulkSubmitRejectedByTheParsePoolDoesNotHoldBackTheRest() throws InterruptedException {
+        DocumentIngestionPipeline.BulkIngestion bulk = pipeline.openBulk();
+        List<UUID> ids = storeDocuments();
+        for (UUID id : ids.subList(0, DOCUMENTS - 1)) {
+            assertThat(bulk.reserve()).isTrue();
+            bulk.submit(id);
+        }
+
+        // Lets the documents already taken finish parsing, but refuses new ones
+        parseExecutor.getThreadPoolExecutor().shutdown();
+        UUID rejected = ids.get(DOCUMENTS - 1);
+        assertThat(bulk.reserve()).isTrue();
+        assertThatThrownBy(() -> bulk.submit(rejected)).isInstanceOf(RejectedExecutionException.class);
+        pipeline.release();
+        documents.remove(rejected);
+
+        bulk.close();
+        awaitCompletion();
+
+        assertThat(documents.values()).allSatisfy(document ->
+                assertThat(document.getStatus()).isEqualTo(ProcessingStatus.COMPLETED));
+    }
+
+    @Test
+    void singleUploadsAreEmbeddedOnTheirOwn() throws InterruptedException {
+        for (UUID id : storeDocuments()) {
+            assertThat(pipeline.tryReserve()).isTrue();
+            pipeline.submit(id);
+        }
+        awaitCompletion();
+
+        assertThat(vectorStore.getAdds()).isEqualTo(DOCUMENTS);
+    }
+
+    @Test
+    void updateOnlyWritesChangedChunks() throws InterruptedException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 1_500; i++) {
+            lines.add("Line " + i + " of the handbook covers policy item " + (i * 7919 % 1000) + " in some detail.");
+        }
+        UUID id = storeDocument("handbook.txt", String.join("\n", lines));
+        assertThat(pipeline.tryReserve()).isTrue();
+        pipeline.submit(id);
+        awaitCompletion();
+
+        int chunks = documents.get(id).getChunkCount();
+        List<String> vectorIdsBefore = vectorIds(id);
+        DocumentVersion previous = DocumentVersion.of(documents.get(id), true);
+        embeddingModel.reset();
+
+        lines.set(700, "This line was rewritten and is now noticeably longer than it was before the edit.");
+        replaceFile(id, String.join("\n", lines));
+        assertThat(pipeline.tryReserve()).isTrue();
+        pipeline.submitUpdate(id, false, previous);
+        awaitCompletion();
+
+        assertThat(documents.get(id).getStatus()).isEqualTo(ProcessingStatus.COMPLETED);
+        awaitDeleted(previous.filename());
+        assertThat(stored(documents.get(id).getFilename())).isTrue();
+        assertThat(chunks).isGreaterThan(20);
+        assertThat(embeddingModel.getEmbeddedTexts()).isPositive().isLessThan(chunks / 4);
+        assertThat(chunkRows.get(id)).anySatisfy(row -> assertThat(row.getContent()).contains("rewritten"));
+
+        // Every stored row points at a live vector, and the replaced chunks' vectors are gone
+        List<String> vectorIdsAfter = vectorIds(id);
+        List<String> removed = new ArrayList<>(vectorIdsBefore);
+        removed.removeAll(vectorIdsAfter);
+        assertThat(removed).isNotEmpty();
+        assertThat(vectorStore.similaritySearch(SearchRequest.builder().query("handbook").topK(1_000).build()))
+                .extracting(org.springframework.ai.document.Document::getId)
+                .containsExactlyInAnyOrderElementsOf(vectorIdsAfter);
+    }
+
+    @Test
+    void failedUpdateKeepsThePreviousVersion() throws InterruptedException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 1_500; i++) {
+            lines.add("Line " + i + " of the handbook covers policy item " + (i * 7919 % 1000) + " in some detail.");
+        }
+        UUID id = storeDocument("handbook.txt", String.join("\n", lines));
+        assertThat(pipeline.tryReserve()).isTrue();
+        pipeline.submit(id);
+        awaitCompletion();
+
+        List<String> vectorIdsBefore = vectorIds(id);
+        DocumentVersion previous = DocumentVersion.of(documents.get(id), true);
+
+        lines.set(700, "This line was rewritten and is now noticeably longer than it was before the edit.");
+        replaceFile(id, String.join("\n", lines));
+        String failedFilename = documents.get(id).getFilename();
+        embeddingModel.failOnCall(1);
+        assertThat(pipeline.tryReserve()).isTrue();
+        pipeline.submitUpdate(id, false, previous);
+        awaitCompletion();
+
+        Document document = documents.get(id);
+        assertThat(document.getStatus()).isEqualTo(ProcessingStatus.COMPLETED);
+        assertThat(document.getFilename()).isEqualTo(previous.filename());
+        assertThat(document.getFileSize()).isEqualTo(previous.fileSize());
+        assertThat(document.getFailureReason()).startsWith("Update failed, previous version kept");
+        awaitDeleted(failedFilename);
+        assertThat(stored(previous.filename())).isTrue();
+
+        // The previous version's rows and vectors are all still there, and nothing the update wrote is left
+        assertThat(vectorIds(id)).containsExactlyElementsOf(vectorIdsBefore);
+        assertThat(vectorStore.similaritySearch(SearchRequest.builder().query("handbook").topK(1_000).build()))
+                .extracting(org.springframework.ai.document.Document::getId)
+                .containsExactlyInAnyOrderElementsOf(vectorIdsBefore);
+    }
+
+    @Test
+    void failedIngestionRemovesChunksAlreadyWritten() throws InterruptedException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 1_500; i++) {
+            lines.add("Line " + i + " of the handbook covers policy item " + (i * 7919 % 1000) + " in some detail.");
+        }
+        UUID id = storeDocument("handbook.txt", String.join("\n", lines));
+        embeddingModel.failOnCall(2);
+        assertThat(pipeline.tryReserve()).isTrue();
+        pipeline.submit(id);
+        awaitCompletion();
+
+        assertThat(documents.get(id).getStatus()).isEqualTo(ProcessingStatus.FAILED);
+        assertThat(vectorStore.getAdds()).isGreaterThan(1);
+        assertThat(vectorStore.getDeletes()).isPositive();
+        assertThat(chunkRows.get(id)).isNull();
+        assertThat(vectorStore.similaritySearch(SearchRequest.builder().query("handbook").topK(1_000).build()))
+                .isEmpty();
+    }
+
+    private List<UUID> storeDocuments() {
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            UUID id = UUID.randomUUID();
+            String filename = id + "_note-" + i + ".txt";
+            byte[] body = ("Note " + i + ": refunds are processed within five business days.")
+                    .getBytes(StandardCharsets.UTF_8);
+            s3Service.uploadFile(new ByteArrayInputStream(body), body.length, "text/plain", filename);
+            documents.put(id, Document.builder()
+                    .id(id)
+                    .filename(filename)
+                    .originalFilename("note-" + i + ".txt")
+                    .fileType("text/plain")
+                    .fileSize((long) body.length)
+                    .chunkCount(0)
+                    .processedChunks(0)
+                    .status(ProcessingStatus.PENDING)
+                    .build());
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private UUID storeDocument(String originalFilename, String text) {
+        UUID id = UUID.randomUUID();
+        documents.put(id, Document.builder()
+                .id(id)
+                .originalFilename(originalFilename)
+                .fileType("text/plain")
+                .chunkCount(0)
+                .processedChunks(0)
+                .status(ProcessingStatus.PENDING)
+                .build());
+        replaceFile(id, text);
+        return id;
+    }
+
+    // Stores a new version under a fresh key, as an update does
+    private void replaceFile(UUID id, String text) {
+        Document document = documents.get(id);
+        String filename = UUID.randomUUID() + "_" + document.getOriginalFilename();
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        s3Service.uploadFile(new ByteArrayInputStream(body), body.length, "text/plain", filename);
+        document.setFilename(filename);
+        document.setFileSize((long) body.length);
+        document.setProcessedChunks(0);
+        document.setStatus(ProcessingStatus.PENDING);
+    }
+
+    private boolean stored(String filename) {
+        return Files.exists(tempDir.resolve("buckets").resolve("qurag-test").resolve(filename));
+    }
+
+    // The replaced file is deleted just after the status is set
+    private void awaitDeleted(String filename) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (stored(filename)) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private List<String> vectorIds(UUID id) {
+        return chunkRows.get(id).stream().map(DocumentChunk::getVectorId).toList();
+    }
+
+    private void awaitCompletion() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!documents.values().stream().allMatch(document -> document.getStatus() == ProcessingStatus.COMPLETED
+                || document.getStatus() == ProcessingStatus.FAILED)) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private ThreadPoolTaskExecutor executor(int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.initialize();
+        return executor;
+    }
+}
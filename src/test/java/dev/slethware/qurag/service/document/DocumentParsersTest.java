@@ -0,0 +1,98 @@
+package dev.slethware.qurag.service.document;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.sax.BodyContentHandler;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DocumentParsersTest {
+
+    private static final int WARM_UP_RUNS = 10;
+    private static final int MEASURED_RUNS = 20;
+
+    @Test
+    void eachFormatIsExtractedByContentType() throws IOException {
+        for (Map.Entry<String, byte[]> sample : DocumentParsers.samples().entrySet()) {
+            assertThat(parse(sample.getValue(), sample.getKey()))
+                    .as(sample.getKey())
+                    .contains("quRAG warm-up document.");
+        }
+    }
+
+    @Test
+    void plainTextCharsetIsDetected() throws IOException {
+        String text = "Le café sert une crème brûlée à côté du théâtre. Les élèves préfèrent la crêpe au déjeuner. ";
+        String repeated = text.repeat(5);
+
+        assertThat(parse(repeated.getBytes(StandardCharsets.ISO_8859_1), DocumentParsers.TEXT)).isEqualTo(repeated);
+        assertThat(parse(repeated.getBytes(StandardCharsets.UTF_8), DocumentParsers.TEXT)).isEqualTo(repeated);
+
+        ByteArrayOutputStream utf16 = new ByteArrayOutputStream();
+        utf16.write(new byte[]{(byte) 0xFF, (byte) 0xFE});
+        utf16.write(repeated.getBytes(StandardCharsets.UTF_16LE));
+        assertThat(parse(utf16.toByteArray(), DocumentParsers.TEXT)).isEqualTo(repeated);
+    }
+
+    @Test
+    void registryIsCheaperThanAutoDetectingWithANewParser() throws IOException {
+        Map<String, byte[]> samples = new LinkedHashMap<>(DocumentParsers.samples());
+        samples.put(DocumentParsers.TEXT, "A policy line that goes on for a while.\n".repeat(1_000)
+                .getBytes(StandardCharsets.UTF_8));
+
+        Map<String, long[]> costs = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> sample : samples.entrySet()) {
+            long before = averageMicros(() -> autoDetect(sample.getValue()));
+            long after = averageMicros(() -> parse(sample.getValue(), sample.getKey()));
+            costs.put(sample.getKey(), new long[]{before, after});
+        }
+
+        // Plain text skips type detection and SAX entirely, so it must come out ahead however noisy the timer;
+        // DocumentParsersBenchmark reports the per-type costs
+        assertThat(costs.get(DocumentParsers.TEXT)[1]).as("registry vs auto-detect parser, in us")
+                .isLessThan(costs.get(DocumentParsers.TEXT)[0]);
+    }
+
+    private static String parse(byte[] body, String contentType) throws IOException {
+        StringWriter out = new StringWriter();
+        DocumentParsers.parse(new ByteArrayInputStream(body), contentType, out);
+        return out.toString();
+    }
+
+    // What every extraction used to do: build a parser and let it detect the type
+    private static String autoDetect(byte[] body) throws IOException {
+        BodyContentHandler handler = new BodyContentHandler(-1);
+        try {
+            new AutoDetectParser().parse(new ByteArrayInputStream(body), handler, new Metadata(), new ParseContext());
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        return handler.toString();
+    }
+
+    private static long averageMicros(Extraction extraction) throws IOException {
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            extraction.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            extraction.run();
+        }
+        return (System.nanoTime() - start) / MEASURED_RUNS / 1_000;
+    }
+
+    private interface Extraction {
+
+        String run() throws IOException;
+    }
+}
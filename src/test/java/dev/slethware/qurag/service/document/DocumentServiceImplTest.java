@@ -0,0 +1,333 @@
+package dev.slethware.qurag.service.document;
+
+import dev.slethware.qurag.dto.response.BulkUploadOutcome;
+import dev.slethware.qurag.dto.response.BulkUploadResponse;
+import dev.slethware.qurag.dto.response.BulkUploadResult;
+import dev.slethware.qurag.dto.response.DocumentDetailResponse;
+import dev.slethware.qurag.dto.response.DocumentPageResponse;
+import dev.slethware.qurag.dto.response.DocumentResponse;
+import dev.slethware.qurag.entity.Document;
+import dev.slethware.qurag.entity.DocumentChunk;
+import dev.slethware.qurag.entity.DocumentContent;
+import dev.slethware.qurag.entity.ProcessingStatus;
+import dev.slethware.qurag.event.DocumentsChangedEvent;
+import dev.slethware.qurag.exception.BadRequestException;
+import dev.slethware.qurag.repository.DocumentChunkRepository;
+import dev.slethware.qurag.repository.DocumentContentRepository;
+import dev.slethware.qurag.repository.DocumentRepository;
+import dev.slethware.qurag.repository.DocumentSummary;
+import dev.slethware.qurag.service.S3.S3ObjectStream;
+import dev.slethware.qurag.service.S3.S3Service;
+import dev.slethware.qurag.service.metrics.QuragMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class DocumentServiceImplTest {
+
+    @Mock
+    private DocumentRepository documentRepository;
+
+    @Mock
+    private DocumentChunkRepository documentChunkRepository;
+
+    @Mock
+    private DocumentContentRepository documentContentRepository;
+
+    @Mock
+    private S3Service s3Service;
+
+    @Mock
+    private DocumentIngestionPipeline ingestionPipeline;
+
+    @Mock
+    private EmbeddingBatchWriter embeddingBatchWriter;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Spy
+    private QuragMetrics metrics = QuragMetrics.noop();
+
+    @InjectMocks
+    private DocumentServiceImpl documentService;
+
+    private UUID documentId;
+
+    @BeforeEach
+    void setUp() {
+        documentId = UUID.randomUUID();
+    }
+
+    @Test
+    void detailIsServedFromStoredChunks() {
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document(ProcessingStatus.COMPLETED, 3)));
+        when(documentContentRepository.findById(documentId)).thenReturn(Optional.of(
+                DocumentContent.builder().documentId(documentId).extractedText("full text").build()));
+        when(documentChunkRepository.findByDocumentIdOrderByChunkIndexAsc(documentId, PageRequest.of(1, 2)))
+                .thenReturn(new PageImpl<>(List.of(chunk(2, "third")), PageRequest.of(1, 2), 3));
+
+        DocumentDetailResponse response = documentService.getDocumentById(documentId, 1, 2);
+
+        assertThat(response.getExtractedText()).isEqualTo("full text");
+        assertThat(response.getChunks()).containsExactly("third");
+        assertThat(response.getChunkPage()).isEqualTo(1);
+        assertThat(response.getTotalChunkPages()).isEqualTo(2);
+        verify(s3Service, never()).openStream(any());
+    }
+
+    @Test
+    void legacyDocumentsFallBackToReparsing() {
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document(null, 1)));
+        when(documentContentRepository.findById(documentId)).thenReturn(Optional.empty());
+        byte[] body = "Legacy document body that was never stored as chunks.".getBytes(StandardCharsets.UTF_8);
+        when(s3Service.openStream("report.txt"))
+                .thenReturn(new S3ObjectStream(new ByteArrayInputStream(body), body.length, body.length, "\"etag\""));
+
+        DocumentDetailResponse response = documentService.getDocumentById(documentId, 0, 50);
+
+        assertThat(response.getExtractedText()).contains("Legacy document body");
+        assertThat(response.getChunks()).hasSize(1);
+        assertThat(response.getTotalChunkPages()).isEqualTo(1);
+    }
+
+    @Test
+    void identicalReuploadReturnsTheExistingDocument() {
+        byte[] body = "Refunds take five business days.".getBytes(StandardCharsets.UTF_8);
+        MockMultipartFile file = new MockMultipartFile("file", "report.txt", "text/plain", body);
+        when(documentRepository.findFirstByChecksumAndStatusNot(any(), eq(ProcessingStatus.FAILED)))
+                .thenReturn(Optional.of(document(ProcessingStatus.COMPLETED, 1)));
+
+        DocumentResponse response = documentService.uploadDocument(file);
+
+        assertThat(response.getId()).isEqualTo(documentId);
+        assertThat(response.isDuplicate()).isTrue();
+        verify(s3Service, never()).uploadFile(any(MultipartFile.class), any());
+        verify(ingestionPipeline, never()).submit(any());
+    }
+
+    @Test
+    void zipEntriesAreValidatedAndReportedOneByOne() throws IOException {
+        DocumentIngestionPipeline.BulkIngestion bulk = mock(DocumentIngestionPipeline.BulkIngestion.class);
+        when(ingestionPipeline.openBulk()).thenReturn(bulk);
+        when(bulk.reserve()).thenReturn(true);
+        when(documentRepository.findFirstByChecksumAndStatusNot(any(), eq(ProcessingStatus.FAILED)))
+                .thenReturn(Optional.empty());
+        List<String> stored = new ArrayList<>();
+        when(s3Service.uploadFile(any(MultipartFile.class), any())).thenAnswer(invocation -> {
+            MultipartFile entry = invocation.getArgument(0);
+            stored.add(entry.getOriginalFilename() + ":" + entry.getContentType() + ":"
+                    + new String(entry.getBytes(), StandardCharsets.UTF_8));
+            return "https://bucket.s3.amazonaws.com/" + invocation.getArgument(1);
+        });
+
+        MockMultipartFile archive = new MockMultipartFile("files", "corpus.zip", "application/zip", zip(Map.of(
+                "policies/refunds.txt", "Refunds take five business days.",
+                "__MACOSX/policies/._refunds.txt", "resource fork",
+                "tools/setup.exe", "binary",
+                "empty.txt", "")));
+        MockMultipartFile single = new MockMultipartFile("files", "invoices.txt", "text/plain",
+                "Invoices are archived for seven years.".getBytes(StandardCharsets.UTF_8));
+
+        BulkUploadResponse response = documentService.uploadDocuments(List.of(archive, single));
+
+        assertThat(response.getResults()).extracting(BulkUploadResult::getFilename, BulkUploadResult::getOutcome)
+                .containsExactlyInAnyOrder(
+                        tuple("refunds.txt", BulkUploadOutcome.ACCEPTED),
+                        tuple("setup.exe", BulkUploadOutcome.REJECTED),
+                        tuple("empty.txt", BulkUploadOutcome.REJECTED),
+                        tuple("invoices.txt", BulkUploadOutcome.ACCEPTED));
+        assertThat(response.getResults().get(response.getResults().size() - 1).getFilename()).isEqualTo("invoices.txt");
+        assertThat(response.getAccepted()).isEqualTo(2);
+        assertThat(response.getRejected()).isEqualTo(2);
+        assertThat(stored).containsExactly("refunds.txt:text/plain:Refunds take five business days.",
+                "invoices.txt:text/plain:Invoices are archived for seven years.");
+        verify(bulk, times(2)).submit(any());
+        verify(bulk).close();
+        verify(ingestionPipeline, never()).tryReserve();
+    }
+
+    @Test
+    void listingPagesWithAKeysetCursor() {
+        LocalDateTime newest = LocalDateTime.of(2026, 3, 1, 12, 0);
+        List<DocumentSummary> rows = List.of(summary(UUID.randomUUID(), newest), summary(UUID.randomUUID(), newest.minusHours(1)),
+                summary(UUID.randomUUID(), newest.minusHours(2)));
+        when(documentRepository.findPage(null, "q1\\_report%", null, null, Limit.of(3))).thenReturn(rows);
+
+        DocumentPageResponse first = documentService.getAllDocuments(null, 2, " ", "q1_report");
+
+        assertThat(first.getDocuments()).hasSize(2);
+        assertThat(first.isHasMore()).isTrue();
+
+        when(documentRepository.findPage(null, null, rows.get(1).getUploadedAt(), rows.get(1).getId(), Limit.of(3)))
+                .thenReturn(List.of(rows.get(2)));
+
+        DocumentPageResponse second = documentService.getAllDocuments(first.getNextCursor(), 2, null, null);
+
+        assertThat(second.getDocuments()).extracting(DocumentResponse::getId).containsExactly(rows.get(2).getId());
+        assertThat(second.isHasMore()).isFalse();
+        assertThat(second.getNextCursor()).isNull();
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThatThrownBy(() -> documentService.getAllDocuments("not-a-cursor", 10, null, null))
+                .isInstanceOf(BadRequestException.class);
+    }
+
+    @Test
+    void invalidPageSizeIsRejected() {
+        assertThatThrownBy(() -> documentService.getDocumentById(documentId, 0, 0))
+                .isInstanceOf(BadRequestException.class);
+    }
+
+    @Test
+    void deleteRemovesVectorsRowsAndStoredFile() {
+        Document document = document(ProcessingStatus.COMPLETED, 2);
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document));
+        when(documentRepository.claimSettled(documentId, ProcessingStatus.PENDING)).thenReturn(1);
+        when(documentChunkRepository.findVectorIdsByDocumentId(documentId)).thenReturn(List.of("v1", "v2"));
+
+        documentService.deleteDocument(documentId);
+
+        verify(embeddingBatchWriter).delete(List.of("v1", "v2"));
+        verify(documentChunkRepository).deleteByDocumentId(documentId);
+        verify(documentContentRepository).deleteById(documentId);
+        verify(documentRepository).delete(document);
+        verify(s3Service).deleteFile("report.txt");
+        verify(eventPublisher).publishEvent(any(DocumentsChangedEvent.class));
+    }
+
+    @Test
+    void concurrentDeletesOfOneDocumentRunOnce() {
+        // Both requests loaded the document while it was still completed; only the first claims it
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document(ProcessingStatus.COMPLETED, 2)));
+        when(documentRepository.claimSettled(documentId, ProcessingStatus.PENDING)).thenReturn(1, 0);
+        when(documentChunkRepository.findVectorIdsByDocumentId(documentId)).thenReturn(List.of("v1", "v2"));
+
+        documentService.deleteDocument(documentId);
+        assertThatThrownBy(() -> documentService.deleteDocument(documentId))
+                .isInstanceOf(BadRequestException.class);
+
+        verify(embeddingBatchWriter, times(1)).delete(List.of("v1", "v2"));
+        verify(s3Service, times(1)).deleteFile("report.txt");
+    }
+
+    @Test
+    void updateKeepsThePreviousVersionUntilTheNewOneCompletes() {
+        Document document = document(ProcessingStatus.COMPLETED, 2);
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document));
+        when(documentRepository.claimSettled(documentId, ProcessingStatus.PENDING)).thenReturn(1);
+        when(ingestionPipeline.tryReserve()).thenReturn(true);
+        when(s3Service.uploadFile(any(MultipartFile.class), any())).thenReturn("https://bucket/new.txt");
+        when(documentChunkRepository.findVectorIdsByDocumentId(documentId)).thenReturn(List.of("v1", "v2"));
+        MockMultipartFile file = new MockMultipartFile("file", "report.txt", "text/plain",
+                "Corrected report".getBytes(StandardCharsets.UTF_8));
+
+        documentService.updateDocument(documentId, file);
+
+        // Nothing of the previous version is removed here; the pipeline does that once the new one is written
+        verify(s3Service, never()).deleteFile(any());
+        verify(embeddingBatchWriter, never()).delete(any());
+        verify(ingestionPipeline).submitUpdate(documentId, false, new DocumentVersion("report.txt", "report.txt",
+                "https://bucket.s3.amazonaws.com/report.txt", "text/plain", 128L, null, 2, null,
+                ProcessingStatus.COMPLETED, null, true));
+        assertThat(document.getStatus()).isEqualTo(ProcessingStatus.PENDING);
+    }
+
+    @Test
+    void documentsStillProcessingCannotBeReplaced() {
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document(ProcessingStatus.EMBEDDING, 2)));
+        MockMultipartFile file = new MockMultipartFile("file", "report.txt", "text/plain",
+                "Corrected report".getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> documentService.updateDocument(documentId, file))
+                .isInstanceOf(BadRequestException.class);
+        verify(s3Service, never()).uploadFile(any(MultipartFile.class), any());
+        verify(ingestionPipeline, never()).submitUpdate(any(), eq(false), any());
+    }
+
+    private Document document(ProcessingStatus status, int chunkCount) {
+        return Document.builder()
+                .id(documentId)
+                .filename("report.txt")
+                .originalFilename("report.txt")
+                .s3Url("https://bucket.s3.amazonaws.com/report.txt")
+                .fileType("text/plain")
+                .fileSize(128L)
+                .chunkCount(chunkCount)
+                .status(status)
+                .uploadedAt(LocalDateTime.now())
+                .build();
+    }
+
+    private DocumentSummary summary(UUID id, LocalDateTime uploadedAt) {
+        return new SpelAwareProxyProjectionFactory().createProjection(DocumentSummary.class, Map.of(
+                "id", id,
+                "filename", id + "_report.txt",
+                "originalFilename", "report.txt",
+                "fileType", "text/plain",
+                "fileSize", 128L,
+                "chunkCount", 1,
+                "uploadedAt", uploadedAt,
+                "status", ProcessingStatus.COMPLETED));
+    }
+
+    private DocumentChunk chunk(int index, String content) {
+        return DocumentChunk.builder()
+                .documentId(documentId)
+                .chunkIndex(index)
+                .vectorId(UUID.randomUUID().toString())
+                .content(content)
+                .build();
+    }
+
+    private byte[] zip(Map<String, String> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, String> entry : new TreeMap<>(entries).entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
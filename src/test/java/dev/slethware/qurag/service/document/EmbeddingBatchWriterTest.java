@@ -0,0 +1,161 @@
+package dev.slethware.qurag.service.document;
+
+import dev.slethware.qurag.service.metrics.QuragMetrics;
+import dev.slethware.qurag.support.CountingVectorStore;
+import dev.slethware.qurag.support.FakeEmbeddingModel;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmbeddingBatchWriterTest {
+
+    private static final int CHUNKS = 64;
+    private static final long EMBEDDING_LATENCY_MS = 40;
+
+    @Test
+    void partitionRespectsTokenAndChunkLimits() {
+        EmbeddingBatchWriter writer = writer(new CountingVectorStore(new FakeEmbeddingModel()), 50, 4, 1);
+
+        List<List<Document>> batches = writer.partition(chunks(10, "word ".repeat(20)));
+
+        assertThat(batches).hasSize(5);
+        assertThat(batches).allSatisfy(batch -> assertThat(batch).hasSizeLessThanOrEqualTo(2));
+        assertThat(batches.stream().mapToInt(List::size).sum()).isEqualTo(10);
+    }
+
+    @Test
+    void parallelBatchesImproveThroughput() {
+        FakeEmbeddingModel sequentialModel = new FakeEmbeddingModel(EMBEDDING_LATENCY_MS);
+        long sequentialMillis = timeWrite(writer(new CountingVectorStore(sequentialModel), 10_000, 8, 1));
+
+        FakeEmbeddingModel parallelModel = new FakeEmbeddingModel(EMBEDDING_LATENCY_MS);
+        long parallelMillis = timeWrite(writer(new CountingVectorStore(parallelModel), 10_000, 8, 4));
+
+        // 8 batches of 8 chunks: one embedding call per batch either way
+        assertThat(sequentialModel.getCalls()).isEqualTo(8);
+        assertThat(parallelModel.getCalls()).isEqualTo(8);
+        assertThat(sequentialModel.getMaxInFlight()).isEqualTo(1);
+        assertThat(parallelModel.getMaxInFlight()).isBetween(2, 4);
+        assertThat(parallelMillis).as("%d chunks at concurrency 4 vs sequential=%d ms", CHUNKS, sequentialMillis)
+                .isLessThan(sequentialMillis / 2);
+    }
+
+    @Test
+    void progressIsReportedPerBatch() {
+        CountingVectorStore vectorStore = new CountingVectorStore(new FakeEmbeddingModel());
+        AtomicInteger processed = new AtomicInteger();
+
+        writer(vectorStore, 10_000, 10, 2).write(chunks(25, "some chunk text"), processed::addAndGet);
+
+        assertThat(processed.get()).isEqualTo(25);
+        assertThat(vectorStore.getAdds()).isEqualTo(3);
+    }
+
+    @Test
+    void batchSizesAndTokensAreRecorded() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        EmbeddingBatchWriter writer = new EmbeddingBatchWriter(new CountingVectorStore(new FakeEmbeddingModel()),
+                new QuragMetrics(registry), 10_000, 10, 2, 3, 0, 5);
+
+        int tokens = writer.write(chunks(25, "some chunk text"), batchSize -> { });
+
+        DistributionSummary sizes = registry.get("qurag.embedding.batch.size").tag("outcome", "success").summary();
+        assertThat(sizes.count()).isEqualTo(3);
+        assertThat(sizes.totalAmount()).isEqualTo(25);
+        assertThat(registry.get("qurag.embedding.batch.tokens").summary().totalAmount()).isEqualTo(tokens);
+        assertThat(registry.get("qurag.embedding.batch").timer().count()).isEqualTo(3);
+    }
+
+    @Test
+    void rateLimitedBatchesAreRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        CountingVectorStore delegate = new CountingVectorStore(new FakeEmbeddingModel());
+        VectorStore flaky = new RateLimitingVectorStore(delegate, attempts, 2);
+
+        writer(flaky, 10_000, 100, 1).write(chunks(5, "retry me"), batchSize -> { });
+
+        assertThat(attempts.get()).isEqualTo(3);
+        assertThat(delegate.getAdds()).isEqualTo(1);
+    }
+
+    @Test
+    void nonRetryableErrorsFailTheWrite() {
+        VectorStore broken = new RateLimitingVectorStore(null, new AtomicInteger(), 0) {
+            @Override
+            public void add(List<Document> documents) {
+                throw new IllegalArgumentException("Invalid vector dimension");
+            }
+        };
+
+        assertThatThrownBy(() -> writer(broken, 10_000, 100, 1).write(chunks(5, "text"), batchSize -> { }))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid vector dimension");
+    }
+
+    private long timeWrite(EmbeddingBatchWriter writer) {
+        List<Document> chunks = chunks(CHUNKS, "a short chunk of text");
+        long start = System.nanoTime();
+        writer.write(chunks, batchSize -> { });
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private EmbeddingBatchWriter writer(VectorStore vectorStore, int maxBatchTokens, int maxBatchChunks, int concurrency) {
+        return new EmbeddingBatchWriter(vectorStore, QuragMetrics.noop(), maxBatchTokens, maxBatchChunks,
+                concurrency, 3, 0, 5);
+    }
+
+    private List<Document> chunks(int count, String text) {
+        List<Document> chunks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            chunks.add(new Document(text + " " + i, Map.of("chunk_index", i)));
+        }
+        return chunks;
+    }
+
+    private static class RateLimitingVectorStore implements VectorStore {
+
+        private final VectorStore delegate;
+        private final AtomicInteger attempts;
+        private final int failures;
+
+        RateLimitingVectorStore(VectorStore delegate, AtomicInteger attempts, int failures) {
+            this.delegate = delegate;
+            this.attempts = attempts;
+            this.failures = failures;
+        }
+
+        @Override
+        public void add(List<Document> documents) {
+            if (attempts.incrementAndGet() <= failures) {
+                throw new RuntimeException("429 RESOURCE_EXHAUSTED: quota exceeded");
+            }
+            delegate.add(documents);
+        }
+
+        @Override
+        public void delete(List<String> idList) {
+            delegate.delete(idList);
+        }
+
+        @Override
+        public void delete(org.springframework.ai.vectorstore.filter.Filter.Expression filterExpression) {
+            delegate.delete(filterExpression);
+        }
+
+        @Override
+        public List<Document> similaritySearch(SearchRequest request) {
+            return delegate.similaritySearch(request);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package dev.slethware.qurag.service.document;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SectionSplitterTest {
+
+    @Test
+    void shortTextStaysWhole() {
+        String text = "Refunds are processed within five business days.\n\nContact support for help.";
+
+        assertThat(SectionSplitter.sections(text)).containsExactly(text);
+    }
+
+    @Test
+    void editOnlyChangesTheSectionItIsIn() {
+        List<String> lines = lines(1_500);
+        List<String> original = SectionSplitter.sections(String.join("\n", lines));
+
+        List<String> edited = new ArrayList<>(lines);
+        edited.set(700, "This line was rewritten and is now noticeably longer than it was before the edit.");
+        List<String> updated = SectionSplitter.sections(String.join("\n", edited));
+
+        assertThat(original).hasSizeGreaterThan(4);
+        assertThat(original).allSatisfy(section ->
+                assertThat(section.length()).isLessThanOrEqualTo(SectionSplitter.MAX_SECTION_CHARS + 100));
+
+        // All but the edited section, and at most the one after it, come out identical
+        List<String> changed = new ArrayList<>(updated);
+        changed.removeAll(original);
+        assertThat(changed).hasSizeBetween(1, 2);
+        assertThat(String.join("", changed)).contains("rewritten");
+    }
+
+    private List<String> lines(int count) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lines.add("Line " + i + " of the handbook covers policy item " + (i * 7919 % 1000) + " in some detail.");
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,114 @@
+package dev.slethware.qurag.service.document;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamingChunkerTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    void chunksArriveInOrderedBatches() throws IOException {
+        byte[] body = text(200_000).getBytes(StandardCharsets.UTF_8);
+        List<Integer> batchSizes = new ArrayList<>();
+        List<Document> chunks = new ArrayList<>();
+
+        StreamingChunker.ExtractedText text = StreamingChunker.extract(new ByteArrayInputStream(body), "text/plain",
+                10, 1_000, batch -> {
+                    batchSizes.add(batch.size());
+                    chunks.addAll(batch);
+                });
+
+        assertThat(text.chunkCount()).isEqualTo(chunks.size()).isGreaterThan(10);
+        assertThat(batchSizes.subList(0, batchSizes.size() - 1)).containsOnly(10);
+        assertThat(chunks.get(0).getText()).startsWith("Line 0 of the handbook");
+        assertThat(text.text()).hasSize(1_000).startsWith("Line 0 of the handbook");
+        assertThat(text.truncated()).isTrue();
+    }
+
+    @Test
+    void retainedHeapStaysFlatAsFileSizeGrows() throws IOException {
+        // Warm up class loading and the tokenizer so they do not count against the first measurement
+        peakRetainedBytes(4 * MB);
+
+        long small = peakRetainedBytes(4 * MB);
+        long large = peakRetainedBytes(32 * MB);
+
+        // Holding the bytes or the extracted text would retain at least another 28MB
+        assertThat(large - small).as("peak retained for 4MB file=%d KB, 32MB file=%d KB", small / 1024, large / 1024)
+                .isLessThan(12 * MB);
+    }
+
+    // Heap still in use after a full collection, sampled while parsing is under way
+    private long peakRetainedBytes(long size) throws IOException {
+        long[] peak = {0};
+        int[] batches = {0};
+        StreamingChunker.extract(new GeneratedText(size), "text/plain", 100, 1_000_000, batch -> {
+            if (++batches[0] % 5 == 0) {
+                System.gc();
+                peak[0] = Math.max(peak[0], ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+            }
+        });
+        assertThat(batches[0]).isGreaterThanOrEqualTo(5);
+        return peak[0];
+    }
+
+    private static String text(int chars) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < chars; i++) {
+            text.append(line(i));
+        }
+        return text.toString();
+    }
+
+    private static String line(long i) {
+        String line = "Line " + i + " of the handbook covers policy item " + (i * 7919 % 1000) + " in some detail.\n";
+        return i % 10 == 9 ? line + "\n" : line;
+    }
+
+    // Produces the text line by line, so the test itself never holds the whole file
+    private static class GeneratedText extends InputStream {
+
+        private final long size;
+        private long position;
+        private long line;
+        private byte[] current = new byte[0];
+        private int offset;
+
+        GeneratedText(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public int read() {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int off, int length) {
+            if (position >= size) {
+                return -1;
+            }
+            if (offset == current.length) {
+                current = line(line++).getBytes(StandardCharsets.UTF_8);
+                offset = 0;
+            }
+            int count = (int) Math.min(Math.min(length, current.length - offset), size - position);
+            System.arraycopy(current, offset, buffer, off, count);
+            offset += count;
+            position += count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package dev.slethware.qurag.service.embedding;
+
+import dev.slethware.qurag.entity.EmbeddingCacheEntry;
+import dev.slethware.qurag.repository.EmbeddingCacheRepository;
+import dev.slethware.qurag.service.concurrency.CallPriority;
+import dev.slethware.qurag.support.FakeEmbeddingModel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CachingEmbeddingModelTest {
+
+    private final Map<String, EmbeddingCacheEntry> table = new ConcurrentHashMap<>();
+    private FakeEmbeddingModel delegate;
+    private EmbeddingCacheRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        delegate = new FakeEmbeddingModel();
+        repository = Mockito.mock(EmbeddingCacheRepository.class);
+        when(repository.findAllById(anyIterable())).thenAnswer(invocation -> {
+            Iterable<String> ids = invocation.getArgument(0);
+            List<EmbeddingCacheEntry> found = new ArrayList<>();
+            ids.forEach(id -> {
+                if (table.containsKey(id)) {
+                    found.add(table.get(id));
+                }
+            });
+            return found;
+        });
+        doAnswer(invocation -> {
+            List<EmbeddingCacheEntry> entries = invocation.getArgument(0);
+            entries.forEach(entry -> table.putIfAbsent(entry.getContentHash(), entry));
+            return null;
+        }).when(repository).insertAllIfAbsent(anyList());
+    }
+
+    @Test
+    void onlyMissingTextsReachTheModel() {
+        CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, () -> repository, "test-model", 100);
+
+        model.embed(List.of("refunds take five days", "the office is in Lagos"));
+        List<float[]> vectors = model.embed(List.of("the office is in Lagos", "support is open on weekdays",
+                "refunds take five days"));
+
+        assertThat(delegate.getCalls()).isEqualTo(2);
+        assertThat(delegate.getEmbeddedTexts()).isEqualTo(3);
+        assertThat(vectors.get(2)).isEqualTo(FakeEmbeddingModel.vectorize("refunds take five days"));
+        assertThat(model.getMemoryHits()).isEqualTo(2);
+    }
+
+    @Test
+    void persistentTierSurvivesAFreshMemoryTier() {
+        CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, () -> repository, "test-model", 100);
+        CallPriority.background(() -> model.embed(List.of("refunds take five days")));
+        delegate.reset();
+
+        CachingEmbeddingModel restarted = new CachingEmbeddingModel(delegate, () -> repository, "test-model", 100);
+        float[] vector = restarted.embed("refunds take five days");
+
+        assertThat(delegate.getCalls()).isZero();
+        assertThat(restarted.getStoreHits()).isEqualTo(1);
+        assertThat(vector).isEqualTo(FakeEmbeddingModel.vectorize("refunds take five days"));
+    }
+
+    @Test
+    void onlyBackgroundEmbeddingsArePersisted() {
+        CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, () -> repository, "test-model", 100);
+
+        model.embed("how long do refunds take");
+        CallPriority.background(() -> model.embed(List.of("refunds take five days")));
+
+        assertThat(table).hasSize(1);
+        verify(repository, times(1)).insertAllIfAbsent(anyList());
+
+        // Query-time texts still hit the memory tier
+        model.embed("how long do refunds take");
+        assertThat(model.getMemoryHits()).isEqualTo(1);
+    }
+
+    @Test
+    void duplicatesWithinARequestAreEmbeddedOnceAndModelsDoNotShareEntries() {
+        CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, () -> repository, "test-model", 100);
+        model.embed(List.of("same chunk", "same chunk"));
+
+        assertThat(delegate.getEmbeddedTexts()).isEqualTo(1);
+
+        new CachingEmbeddingModel(delegate, () -> repository, "other-model", 100).embed("same chunk");
+        assertThat(delegate.getEmbeddedTexts()).isEqualTo(2);
+    }
+
+    @Test
+    void storeFailuresFallBackToTheModel() {
+        when(repository.findAllById(anyIterable())).thenThrow(new IllegalStateException("database down"));
+        CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, () -> repository, "test-model", 100);
+
+        assertThat(model.embed("refunds take five days")).hasSize(delegate.dimensions());
+        assertThat(model.getMisses()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,83 @@
+package dev.slethware.qurag.service.vectorstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HnswIndexTest {
+
+    private static final int DIMENSIONS = 64;
+    private static final int VECTORS = 5_000;
+    private static final int QUERIES = 200;
+    private static final int K = 10;
+
+    // Recall against the exact cosine scan over the same vectors
+    @Test
+    void recallAgainstBruteForce() {
+        Random random = new Random(42);
+        float[][] centroids = new float[50][];
+        for (int i = 0; i < centroids.length; i++) {
+            centroids[i] = gaussian(random, 1.0f);
+        }
+
+        HnswIndex index = new HnswIndex(DIMENSIONS, 16, 100, 7);
+        for (int i = 0; i < VECTORS; i++) {
+            index.add(around(centroids[random.nextInt(centroids.length)], random));
+        }
+
+        float[][] queries = new float[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = around(centroids[random.nextInt(centroids.length)], random);
+        }
+
+        for (int ef : new int[]{16, 64, 128}) {
+            int hits = 0;
+            for (float[] query : queries) {
+                List<HnswIndex.Candidate> approximate = index.search(query, ef).stream().limit(K).toList();
+                List<HnswIndex.Candidate> exact = index.bruteForce(query, K, node -> true);
+
+                Set<Integer> expected = new HashSet<>();
+                exact.forEach(candidate -> expected.add(candidate.node()));
+                hits += (int) approximate.stream().filter(candidate -> expected.contains(candidate.node())).count();
+            }
+
+            double recall = (double) hits / (QUERIES * K);
+            if (ef >= 64) {
+                assertThat(recall).as("recall@%d at ef=%d", K, ef).isGreaterThanOrEqualTo(0.95);
+            }
+        }
+    }
+
+    @Test
+    void scoresAreCosineSimilarities() {
+        HnswIndex index = new HnswIndex(2, 4, 16, 1);
+        index.add(new float[]{3, 0});
+        index.add(new float[]{0, 5});
+
+        List<HnswIndex.Candidate> results = index.search(new float[]{1, 1}, 4);
+
+        assertThat(results).hasSize(2);
+        assertThat(results.get(0).score()).isCloseTo((float) Math.sqrt(0.5), org.assertj.core.data.Offset.offset(1e-5f));
+    }
+
+    private float[] around(float[] centroid, Random random) {
+        float[] noise = gaussian(random, 0.35f);
+        for (int i = 0; i < noise.length; i++) {
+            noise[i] += centroid[i];
+        }
+        return noise;
+    }
+
+    private float[] gaussian(Random random, float scale) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian() * scale;
+        }
+        return vector;
+    }
+}
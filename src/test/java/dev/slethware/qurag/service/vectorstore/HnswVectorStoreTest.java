@@ -0,0 +1,116 @@
+package dev.slethware.qurag.service.vectorstore;
+
+import dev.slethware.qurag.support.FakeEmbeddingModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HnswVectorStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final FakeEmbeddingModel embeddingModel = new FakeEmbeddingModel();
+
+    @Test
+    void searchReturnsClosestDocumentsWithScoresAndDistance() {
+        HnswVectorStore store = store(null);
+        store.add(corpus());
+
+        List<Document> results = store.similaritySearch(SearchRequest.builder()
+                .query("how long do refunds take")
+                .topK(1)
+                .similarityThreshold(0.0)
+                .build());
+
+        assertThat(results).hasSize(1);
+        assertThat(results.get(0).getText()).isEqualTo("Refunds are processed within five business days.");
+        assertThat(results.get(0).getScore()).isPositive();
+        assertThat(results.get(0).getMetadata()).containsKey("distance").containsEntry("document_id", "doc-1")
+                .containsKey(HnswVectorStore.EMBEDDING_METADATA);
+    }
+
+    @Test
+    void metadataFiltersRestrictResults() {
+        HnswVectorStore store = store(null);
+        store.add(corpus());
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+
+        List<Document> byDocument = store.similaritySearch(SearchRequest.builder()
+                .query("how long do refunds take")
+                .topK(5)
+                .similarityThreshold(0.0)
+                .filterExpression(b.eq("document_id", "doc-2").build())
+                .build());
+        List<Document> byFilename = store.similaritySearch(SearchRequest.builder()
+                .query("how long do refunds take")
+                .topK(5)
+                .similarityThreshold(0.0)
+                .filterExpression(b.in("filename", "policies.pdf").build())
+                .build());
+
+        assertThat(byDocument).extracting(document -> document.getMetadata().get("document_id"))
+                .containsOnly("doc-2");
+        assertThat(byFilename).hasSize(2)
+                .extracting(document -> document.getMetadata().get("filename"))
+                .containsOnly("policies.pdf");
+    }
+
+    @Test
+    void deletedDocumentsAreNotReturned() {
+        HnswVectorStore store = store(null);
+        store.add(corpus());
+
+        store.delete(new FilterExpressionBuilder().eq("document_id", "doc-1").build());
+
+        List<Document> results = store.similaritySearch(SearchRequest.builder()
+                .query("how long do refunds take")
+                .topK(5)
+                .similarityThreshold(0.0)
+                .build());
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(results).extracting(Document::getId).containsExactly("c3");
+    }
+
+    @Test
+    void snapshotRoundTripsDocumentsAndGraph() {
+        Path snapshot = tempDir.resolve("index.bin");
+        HnswVectorStore store = store(snapshot);
+        store.add(corpus());
+        store.delete(List.of("c2"));
+        store.close();
+
+        HnswVectorStore restored = store(snapshot);
+        List<Document> results = restored.similaritySearch(SearchRequest.builder()
+                .query("how long do refunds take")
+                .topK(5)
+                .similarityThreshold(0.0)
+                .build());
+
+        assertThat(restored.size()).isEqualTo(2);
+        assertThat(results).extracting(Document::getId).containsExactlyInAnyOrder("c1", "c3");
+        assertThat(results.get(0).getMetadata()).containsEntry("chunk_index", 0);
+    }
+
+    private HnswVectorStore store(Path snapshot) {
+        return new HnswVectorStore(embeddingModel, 8, 32, 32, snapshot, 0);
+    }
+
+    private List<Document> corpus() {
+        return List.of(
+                new Document("c1", "Refunds are processed within five business days.",
+                        Map.of("document_id", "doc-1", "filename", "policies.pdf", "chunk_index", 0)),
+                new Document("c2", "Invoices are archived for seven years.",
+                        Map.of("document_id", "doc-1", "filename", "policies.pdf", "chunk_index", 1)),
+                new Document("c3", "The office is closed on public holidays.",
+                        Map.of("document_id", "doc-2", "filename", "office.txt", "chunk_index", 0)));
+    }
+}
@@ -0,0 +1,106 @@
+package dev.slethware.qurag.support;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory {@link VectorStore} that records how many adds, deletes and searches reach it.
+ * <p>
+ * Like Pinecone, each {@code add} embeds its documents with a single batched call to the embedding model.
+ */
+public class CountingVectorStore implements VectorStore {
+
+    private final EmbeddingModel embeddingModel;
+    private final SimpleVectorStore delegate;
+    private final Map<String, float[]> pendingEmbeddings = new ConcurrentHashMap<>();
+
+    private final AtomicInteger searches = new AtomicInteger();
+    private final AtomicInteger adds = new AtomicInteger();
+    private final AtomicInteger deletes = new AtomicInteger();
+
+    public CountingVectorStore(EmbeddingModel embeddingModel) {
+        this.embeddingModel = embeddingModel;
+        this.delegate = SimpleVectorStore.builder(new PrecomputedEmbeddingModel()).build();
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        adds.incrementAndGet();
+        List<float[]> embeddings = embeddingModel.embed(documents.stream().map(Document::getText).toList());
+        for (int i = 0; i < documents.size(); i++) {
+            pendingEmbeddings.put(documents.get(i).getId(), embeddings.get(i));
+        }
+        try {
+            delegate.add(documents);
+        } finally {
+            documents.forEach(document -> pendingEmbeddings.remove(document.getId()));
+        }
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        deletes.incrementAndGet();
+        delegate.delete(idList);
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        deletes.incrementAndGet();
+        delegate.delete(filterExpression);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        searches.incrementAndGet();
+        return delegate.similaritySearch(request);
+    }
+
+    public int getSearches() {
+        return searches.get();
+    }
+
+    public int getAdds() {
+        return adds.get();
+    }
+
+    public int getDeletes() {
+        return deletes.get();
+    }
+
+    public void reset() {
+        searches.set(0);
+        adds.set(0);
+        deletes.set(0);
+    }
+
+    // Hands SimpleVectorStore the vectors computed in add; query embeddings still go to the real model
+    private class PrecomputedEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            return embeddingModel.call(request);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            float[] embedding = pendingEmbeddings.get(document.getId());
+            return embedding != null ? embedding : embeddingModel.embed(document);
+        }
+
+        @Override
+        public int dimensions() {
+            return embeddingModel.dimensions();
+        }
+    }
+}
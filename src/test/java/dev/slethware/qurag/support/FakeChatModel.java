@@ -0,0 +1,88 @@
+package dev.slethware.qurag.support;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chat model that answers every prompt with a fixed reply and keeps the prompts it received.
+ * <p>
+ * The reply is produced one word at a time; with a token delay set, blocking calls take as long as the full stream.
+ */
+public class FakeChatModel implements ChatModel {
+
+    private final String answer;
+    private final List<Prompt> prompts = new CopyOnWriteArrayList<>();
+    private final AtomicInteger activeCalls = new AtomicInteger();
+    private final AtomicInteger maxConcurrentCalls = new AtomicInteger();
+    private volatile long tokenDelayMillis;
+
+    public FakeChatModel(String answer) {
+        this.answer = answer;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        prompts.add(prompt);
+        maxConcurrentCalls.accumulateAndGet(activeCalls.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(tokenDelayMillis * tokens().size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating", e);
+        } finally {
+            activeCalls.decrementAndGet();
+        }
+        return response(answer);
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        prompts.add(prompt);
+        Flux<String> tokens = Flux.fromIterable(tokens());
+        if (tokenDelayMillis > 0) {
+            tokens = tokens.delayElements(Duration.ofMillis(tokenDelayMillis));
+        }
+        return tokens.map(this::response);
+    }
+
+    public void setTokenDelayMillis(long tokenDelayMillis) {
+        this.tokenDelayMillis = tokenDelayMillis;
+    }
+
+    public List<Prompt> getPrompts() {
+        return prompts;
+    }
+
+    public int getCalls() {
+        return prompts.size();
+    }
+
+    // Blocking calls still generating, including ones whose caller has stopped waiting
+    public int getActiveCalls() {
+        return activeCalls.get();
+    }
+
+    // Highest number of blocking calls that were generating at the same time
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls.get();
+    }
+
+    // Words keep their trailing space so the streamed pieces concatenate back to the full answer
+    private List<String> tokens() {
+        return Arrays.asList(answer.split("(?<= )"));
+    }
+
+    private ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+}
@@ -0,0 +1,120 @@
+package dev.slethware.qurag.support;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deterministic bag-of-words embedding model that counts how often it is called.
+ */
+public class FakeEmbeddingModel implements EmbeddingModel {
+
+    public static final int DIMENSIONS = 64;
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger embeddedTexts = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile long latencyMillis;
+    private volatile int failingCall;
+
+    public FakeEmbeddingModel() {
+    }
+
+    public FakeEmbeddingModel(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        if (calls.incrementAndGet() == failingCall) {
+            throw new IllegalStateException("Embedding call " + failingCall + " failed");
+        }
+        embeddedTexts.addAndGet(request.getInstructions().size());
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while embedding", e);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+
+        List<Embedding> embeddings = new ArrayList<>();
+        for (int i = 0; i < request.getInstructions().size(); i++) {
+            embeddings.add(new Embedding(vectorize(request.getInstructions().get(i)), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+        return DIMENSIONS;
+    }
+
+    public int getCalls() {
+        return calls.get();
+    }
+
+    public int getEmbeddedTexts() {
+        return embeddedTexts.get();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    // Makes the n-th call from now on throw, counting from 1
+    public void failOnCall(int n) {
+        this.failingCall = calls.get() + n;
+    }
+
+    public void reset() {
+        calls.set(0);
+        embeddedTexts.set(0);
+        maxInFlight.set(0);
+        failingCall = 0;
+    }
+
+    public static float[] vectorize(String text) {
+        float[] vector = new float[DIMENSIONS];
+        for (String token : text.toLowerCase().split("\\W+")) {
+            if (!token.isEmpty()) {
+                vector[Math.floorMod(token.hashCode(), DIMENSIONS)] += 1f;
+            }
+        }
+
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0) {
+            vector[0] = 1f;
+            return vector;
+        }
+
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,275 @@
+package dev.slethware.qurag.support;
+
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * File-backed S3 stand-in covering the object and multipart calls the application uses.
+ * Bodies are streamed to and from disk so tests can measure the caller's own memory use.
+ */
+public class LocalS3Client implements S3Client {
+
+    private final Path root;
+    private final Map<String, String> eTags = new ConcurrentHashMap<>();
+    private final Map<String, String> contentTypes = new ConcurrentHashMap<>();
+    private final AtomicInteger getRequests = new AtomicInteger();
+    private final AtomicInteger headRequests = new AtomicInteger();
+
+    public LocalS3Client(Path root) {
+        this.root = root;
+    }
+
+    @Override
+    public PutObjectResponse putObject(PutObjectRequest request, RequestBody requestBody) {
+        String eTag = write(requestBody, objectPath(request.bucket(), request.key()));
+        eTags.put(objectId(request.bucket(), request.key()), eTag);
+        if (request.contentType() != null) {
+            contentTypes.put(objectId(request.bucket(), request.key()), request.contentType());
+        }
+        return PutObjectResponse.builder().eTag(eTag).build();
+    }
+
+    @Override
+    public CreateMultipartUploadResponse createMultipartUpload(CreateMultipartUploadRequest request) {
+        String uploadId = UUID.randomUUID().toString();
+        try {
+            Files.createDirectories(root.resolve("uploads").resolve(uploadId));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (request.contentType() != null) {
+            contentTypes.put(objectId(request.bucket(), request.key()), request.contentType());
+        }
+        return CreateMultipartUploadResponse.builder()
+                .bucket(request.bucket())
+                .key(request.key())
+                .uploadId(uploadId)
+                .build();
+    }
+
+    @Override
+    public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody requestBody) {
+        Path part = root.resolve("uploads").resolve(request.uploadId()).resolve(String.valueOf(request.partNumber()));
+        return UploadPartResponse.builder().eTag(write(requestBody, part)).build();
+    }
+
+    @Override
+    public CompleteMultipartUploadResponse completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        Path uploadDir = root.resolve("uploads").resolve(request.uploadId());
+        Path target = objectPath(request.bucket(), request.key());
+        try (OutputStream out = Files.newOutputStream(target)) {
+            for (CompletedPart part : request.multipartUpload().parts()) {
+                Files.copy(uploadDir.resolve(String.valueOf(part.partNumber())), out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        deleteRecursively(uploadDir);
+
+        String eTag = "\"" + UUID.randomUUID().toString().replace("-", "") + "-"
+                + request.multipartUpload().parts().size() + "\"";
+        eTags.put(objectId(request.bucket(), request.key()), eTag);
+        return CompleteMultipartUploadResponse.builder().eTag(eTag).build();
+    }
+
+    @Override
+    public AbortMultipartUploadResponse abortMultipartUpload(AbortMultipartUploadRequest request) {
+        deleteRecursively(root.resolve("uploads").resolve(request.uploadId()));
+        return AbortMultipartUploadResponse.builder().build();
+    }
+
+    @Override
+    public ResponseInputStream<GetObjectResponse> getObject(GetObjectRequest request) {
+        getRequests.incrementAndGet();
+        Path path = objectPath(request.bucket(), request.key());
+        if (!Files.exists(path)) {
+            throw NoSuchKeyException.builder().message("The specified key does not exist: " + request.key()).build();
+        }
+
+        try {
+            long size = Files.size(path);
+            long start = 0;
+            long end = size - 1;
+            String contentRange = null;
+            if (request.range() != null) {
+                String[] bounds = request.range().substring("bytes=".length()).split("-", -1);
+                start = Long.parseLong(bounds[0]);
+                end = bounds[1].isEmpty() ? size - 1 : Math.min(Long.parseLong(bounds[1]), size - 1);
+                contentRange = "bytes " + start + "-" + end + "/" + size;
+            }
+
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            channel.position(start);
+            long length = end - start + 1;
+            InputStream body = new BoundedInputStream(Channels.newInputStream(channel), length);
+
+            GetObjectResponse response = GetObjectResponse.builder()
+                    .contentLength(length)
+                    .contentRange(contentRange)
+                    .contentType(contentTypes.get(objectId(request.bucket(), request.key())))
+                    .eTag(eTags.get(objectId(request.bucket(), request.key())))
+                    .build();
+            return new ResponseInputStream<>(response, AbortableInputStream.create(body));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public HeadObjectResponse headObject(HeadObjectRequest request) {
+        headRequests.incrementAndGet();
+        Path path = objectPath(request.bucket(), request.key());
+        if (!Files.exists(path)) {
+            throw NoSuchKeyException.builder().message("The specified key does not exist: " + request.key()).build();
+        }
+        try {
+            return HeadObjectResponse.builder()
+                    .contentLength(Files.size(path))
+                    .contentType(contentTypes.get(objectId(request.bucket(), request.key())))
+                    .eTag(eTags.get(objectId(request.bucket(), request.key())))
+                    .build();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public DeleteObjectResponse deleteObject(DeleteObjectRequest request) {
+        try {
+            Files.deleteIfExists(objectPath(request.bucket(), request.key()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        eTags.remove(objectId(request.bucket(), request.key()));
+        contentTypes.remove(objectId(request.bucket(), request.key()));
+        return DeleteObjectResponse.builder().build();
+    }
+
+    public boolean exists(String bucket, String key) {
+        return Files.exists(objectPath(bucket, key));
+    }
+
+    public int getGetRequests() {
+        return getRequests.get();
+    }
+
+    public int getHeadRequests() {
+        return headRequests.get();
+    }
+
+    @Override
+    public String serviceName() {
+        return "s3";
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private String write(RequestBody requestBody, Path target) {
+        try (InputStream in = new DigestInputStream(requestBody.contentStreamProvider().newStream(), md5());
+             OutputStream out = Files.newOutputStream(target)) {
+            in.transferTo(out);
+            return "\"" + HexFormat.of().formatHex(((DigestInputStream) in).getMessageDigest().digest()) + "\"";
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path objectPath(String bucket, String key) {
+        try {
+            Path bucketDir = root.resolve("buckets").resolve(bucket);
+            Files.createDirectories(bucketDir);
+            return bucketDir.resolve(key.replace('/', '_'));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String objectId(String bucket, String key) {
+        return bucket + "/" + key;
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (var paths = Files.walk(dir)) {
+            paths.sorted((a, b) -> b.getNameCount() - a.getNameCount()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static class BoundedInputStream extends InputStream {
+
+        private final InputStream delegate;
+        private long remaining;
+
+        BoundedInputStream(InputStream delegate, long limit) {
+            this.delegate = delegate;
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = delegate.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = delegate.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
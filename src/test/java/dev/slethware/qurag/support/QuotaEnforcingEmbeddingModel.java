@@ -0,0 +1,49 @@
+package dev.slethware.qurag.support;
+
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.retry.TransientAiException;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Embedding model that, like the Gemini API, answers with RESOURCE_EXHAUSTED once more than {@code limit}
+ * requests arrive within a sliding {@code window}. Rejected requests do not count against the quota.
+ */
+public class QuotaEnforcingEmbeddingModel extends FakeEmbeddingModel {
+
+    private final int limit;
+    private final long windowNanos;
+    private final Deque<Long> accepted = new ArrayDeque<>();
+    private final AtomicInteger rejected = new AtomicInteger();
+
+    public QuotaEnforcingEmbeddingModel(int limit, Duration window) {
+        this.limit = limit;
+        this.windowNanos = window.toNanos();
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        admit();
+        return super.call(request);
+    }
+
+    public int getRejected() {
+        return rejected.get();
+    }
+
+    private synchronized void admit() {
+        long now = System.nanoTime();
+        while (!accepted.isEmpty() && now - accepted.peekFirst() >= windowNanos) {
+            accepted.pollFirst();
+        }
+        if (accepted.size() >= limit) {
+            rejected.incrementAndGet();
+            throw new TransientAiException("429 RESOURCE_EXHAUSTED: quota exceeded");
+        }
+        accepted.addLast(now);
+    }
+}